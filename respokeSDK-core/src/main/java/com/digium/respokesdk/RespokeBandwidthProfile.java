@@ -0,0 +1,81 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+/**
+ *  Limits the bandwidth a call may use. A profile is applied to both the local and the remote session description,
+ *  so it caps what this device sends as well as what it asks the remote party to send. The limits are written as
+ *  b=AS lines at the session and media level, and as Opus format parameters.
+ *
+ *  Use one of the LOW, MEDIUM or HIGH presets, or construct a custom profile.
+ */
+public class RespokeBandwidthProfile {
+
+    public static final int UNLIMITED = 0;  ///< Indicates that no limit should be applied
+
+    public static final RespokeBandwidthProfile LOW = new RespokeBandwidthProfile(300, 32, 256, 16000, true, true);  ///< Suitable for constrained or metered cellular links
+    public static final RespokeBandwidthProfile MEDIUM = new RespokeBandwidthProfile(800, 48, 700, 32000, false, true);  ///< A balance between quality and data use
+    public static final RespokeBandwidthProfile HIGH = new RespokeBandwidthProfile(2500, 64, 2000, 64000, false, true);  ///< For Wi-Fi or other fast, unmetered links
+
+    public final int sessionKbps;  ///< The limit for the whole session, in kilobits per second, or UNLIMITED
+    public final int audioKbps;  ///< The limit for each audio section, in kilobits per second, or UNLIMITED
+    public final int videoKbps;  ///< The limit for each video section, in kilobits per second, or UNLIMITED
+    public final int opusMaxAverageBitrate;  ///< The Opus maxaveragebitrate parameter, in bits per second, or UNLIMITED
+    public final boolean opusUseDtx;  ///< Indicates if Opus should stop sending during silence
+    public final boolean opusUseInbandFec;  ///< Indicates if Opus should include forward error correction to mask packet loss
+
+
+    /**
+     *  Create a custom profile
+     *
+     *  @param sessionKbps            The limit for the whole session, in kilobits per second, or UNLIMITED
+     *  @param audioKbps              The limit for each audio section, in kilobits per second, or UNLIMITED
+     *  @param videoKbps              The limit for each video section, in kilobits per second, or UNLIMITED
+     *  @param opusMaxAverageBitrate  The Opus maxaveragebitrate parameter, in bits per second, or UNLIMITED
+     *  @param opusUseDtx             Specify true to stop sending Opus audio during silence
+     *  @param opusUseInbandFec       Specify true to include Opus forward error correction
+     */
+    public RespokeBandwidthProfile(int sessionKbps, int audioKbps, int videoKbps, int opusMaxAverageBitrate, boolean opusUseDtx, boolean opusUseInbandFec) {
+        this.sessionKbps = sessionKbps;
+        this.audioKbps = audioKbps;
+        this.videoKbps = videoKbps;
+        this.opusMaxAverageBitrate = opusMaxAverageBitrate;
+        this.opusUseDtx = opusUseDtx;
+        this.opusUseInbandFec = opusUseInbandFec;
+    }
+
+
+    /**
+     *  Write the limits of this profile into a session description
+     *
+     *  @param sdp  The description to modify
+     */
+    public void applyTo(RespokeSDP sdp) {
+        if (sessionKbps > UNLIMITED) {
+            sdp.setSessionBandwidth(sessionKbps);
+        }
+
+        if (audioKbps > UNLIMITED) {
+            sdp.setMediaBandwidth(RespokeSDP.MEDIA_AUDIO, audioKbps);
+        }
+
+        if (videoKbps > UNLIMITED) {
+            sdp.setMediaBandwidth(RespokeSDP.MEDIA_VIDEO, videoKbps);
+        }
+
+        if (opusMaxAverageBitrate > UNLIMITED) {
+            sdp.setFormatParameter(RespokeSDP.MEDIA_AUDIO, "opus", "maxaveragebitrate", Integer.toString(opusMaxAverageBitrate));
+        }
+
+        sdp.setFormatParameter(RespokeSDP.MEDIA_AUDIO, "opus", "usedtx", opusUseDtx ? "1" : "0");
+        sdp.setFormatParameter(RespokeSDP.MEDIA_AUDIO, "opus", "useinbandfec", opusUseInbandFec ? "1" : "0");
+    }
+}
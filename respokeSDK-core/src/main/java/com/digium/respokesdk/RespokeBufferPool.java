@@ -0,0 +1,193 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ *  A pool of direct byte buffers, grouped into power-of-two size classes. Direct buffers are slow to allocate and
+ *  their native memory is only returned when the garbage collector finalizes them, so code that sends many messages
+ *  should borrow a buffer with acquire and hand it back with release rather than allocating one per message.
+ *
+ *  Each size class keeps a fixed number of slots which are claimed and filled with compare-and-set, so acquiring and
+ *  releasing a buffer never blocks and, once the pool is warm, never allocates.
+ */
+public class RespokeBufferPool {
+
+    public static final int DEFAULT_MIN_SIZE = 256;  ///< The smallest size class used by the default pool, in bytes
+    public static final int DEFAULT_MAX_SIZE = 64 * 1024;  ///< The largest size class used by the default pool, in bytes
+    public static final int DEFAULT_BUFFERS_PER_SIZE = 4;  ///< How many idle buffers of each size the default pool keeps
+
+    private final int minShift;
+    private final int maxSize;
+    private final AtomicReferenceArray<ByteBuffer>[] classes;
+    private final AtomicLong allocations = new AtomicLong();
+    private final AtomicLong reuses = new AtomicLong();
+    private final AtomicLong discards = new AtomicLong();
+    private final AtomicLong allocatedBytes = new AtomicLong();
+
+
+    /**
+     *  Create a pool with the default size classes
+     */
+    public RespokeBufferPool() {
+        this(DEFAULT_MIN_SIZE, DEFAULT_MAX_SIZE, DEFAULT_BUFFERS_PER_SIZE);
+    }
+
+
+    /**
+     *  Create a pool. The sizes are rounded up to powers of two.
+     *
+     *  @param minSize         The smallest buffer to hand out, in bytes
+     *  @param maxSize         The largest buffer to pool, in bytes. Larger requests are allocated without pooling.
+     *  @param buffersPerSize  How many idle buffers of each size to keep
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public RespokeBufferPool(int minSize, int maxSize, int buffersPerSize) {
+        if ((minSize <= 0) || (maxSize < minSize) || (buffersPerSize <= 0)) {
+            throw new IllegalArgumentException("Invalid buffer pool sizes");
+        }
+
+        minShift = shiftFor(minSize);
+        int maxShift = shiftFor(maxSize);
+        this.maxSize = 1 << maxShift;
+
+        classes = new AtomicReferenceArray[maxShift - minShift + 1];
+        for (int ii = 0; ii < classes.length; ii++) {
+            classes[ii] = new AtomicReferenceArray<ByteBuffer>(buffersPerSize);
+        }
+    }
+
+
+    /**
+     *  Borrow a buffer with room for at least the specified number of bytes. The buffer is positioned at zero with its
+     *  limit set to the requested size. Pass it to release once it is no longer needed.
+     *
+     *  @param size  The number of bytes needed
+     *
+     *  @return A direct buffer
+     */
+    public ByteBuffer acquire(int size) {
+        ByteBuffer buffer = null;
+
+        if (size <= maxSize) {
+            int index = classFor(size);
+            AtomicReferenceArray<ByteBuffer> slots = classes[index];
+
+            for (int ii = 0; (null == buffer) && (ii < slots.length()); ii++) {
+                if (null != slots.get(ii)) {
+                    buffer = slots.getAndSet(ii, null);
+                }
+            }
+
+            if (null != buffer) {
+                reuses.incrementAndGet();
+            } else {
+                buffer = allocate(1 << (index + minShift));
+            }
+        } else {
+            buffer = allocate(size);
+        }
+
+        buffer.clear();
+        buffer.limit(size);
+        return buffer;
+    }
+
+
+    /**
+     *  Return a buffer to the pool. The buffer must not be used after it is released. Buffers that were not pooled,
+     *  or that arrive when their size class is already full, are left for the garbage collector.
+     *
+     *  @param buffer  A buffer obtained from acquire
+     */
+    public void release(ByteBuffer buffer) {
+        if (null == buffer) {
+            return;
+        }
+
+        int capacity = buffer.capacity();
+
+        if (buffer.isDirect() && (capacity <= maxSize) && (capacity >= (1 << minShift)) && (Integer.bitCount(capacity) == 1)) {
+            AtomicReferenceArray<ByteBuffer> slots = classes[classFor(capacity)];
+
+            for (int ii = 0; ii < slots.length(); ii++) {
+                if ((null == slots.get(ii)) && slots.compareAndSet(ii, null, buffer)) {
+                    return;
+                }
+            }
+        }
+
+        discards.incrementAndGet();
+    }
+
+
+    /**
+     *  Get the number of buffers this pool has allocated, including those too large to pool
+     *
+     *  @return The number of allocations
+     */
+    public long getAllocationCount() {
+        return allocations.get();
+    }
+
+
+    /**
+     *  Get the total size of the buffers this pool has allocated
+     *
+     *  @return The number of bytes allocated
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+
+    /**
+     *  Get the number of requests satisfied by an idle buffer
+     *
+     *  @return The number of reuses
+     */
+    public long getReuseCount() {
+        return reuses.get();
+    }
+
+
+    /**
+     *  Get the number of released buffers that could not be kept
+     *
+     *  @return The number of discarded buffers
+     */
+    public long getDiscardCount() {
+        return discards.get();
+    }
+
+
+    //** Private methods
+
+
+    private ByteBuffer allocate(int capacity) {
+        allocations.incrementAndGet();
+        allocatedBytes.addAndGet(capacity);
+        return ByteBuffer.allocateDirect(capacity);
+    }
+
+
+    private int classFor(int size) {
+        return Math.max(0, shiftFor(size) - minShift);
+    }
+
+
+    private static int shiftFor(int size) {
+        return (size <= 1) ? 0 : 32 - Integer.numberOfLeadingZeros(size - 1);
+    }
+}
@@ -0,0 +1,254 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+/**
+ *  Records when each phase of setting up a call was reached, using the monotonic uptime clock. Times are reported
+ *  in milliseconds relative to the moment the call was started or answered. Only the first time a phase is reached
+ *  is recorded.
+ *
+ *  Completed timelines are also added to a process-wide aggregate, so that the typical cost of each phase can be
+ *  compared before and after a change.
+ */
+public class RespokeCallSetupTimeline {
+
+    public static final int PHASE_SETUP_STARTED = 0;  ///< The call was started or answered by the application
+    public static final int PHASE_TURN_FETCH_STARTED = 1;  ///< The request for TURN credentials was sent
+    public static final int PHASE_TURN_FETCH_COMPLETED = 2;  ///< TURN credentials were received
+    public static final int PHASE_PEER_CONNECTION_INITIALIZED = 3;  ///< The WebRTC peer connection was created
+    public static final int PHASE_LOCAL_STREAM_READY = 4;  ///< Local audio and video tracks were added to the peer connection
+    public static final int PHASE_LOCAL_DESCRIPTION_CREATED = 5;  ///< The local offer or answer was created
+    public static final int PHASE_SIGNAL_ACKNOWLEDGED = 6;  ///< The service acknowledged the offer or answer signal
+    public static final int PHASE_REMOTE_DESCRIPTION_APPLIED = 7;  ///< The remote offer or answer was applied to the peer connection
+    public static final int PHASE_FIRST_REMOTE_CANDIDATE = 8;  ///< The first ICE candidate was received from the remote party
+    public static final int PHASE_ICE_CONNECTED = 9;  ///< ICE found a working path between the parties
+    public static final int PHASE_FIRST_MEDIA = 10;  ///< Remote media could first flow: ICE is connected and the remote stream has been added
+    public static final int PHASE_COUNT = 11;
+
+    private static final String[] PHASE_NAMES = {"setupStarted", "turnFetchStarted", "turnFetchCompleted",
+            "peerConnectionInitialized", "localStreamReady", "localDescriptionCreated", "signalAcknowledged",
+            "remoteDescriptionApplied", "firstRemoteCandidate", "iceConnected", "firstMedia"};
+
+    private static final Aggregate aggregate = new Aggregate();
+
+    private final long[] timestamps;  ///< The uptime at which each phase was reached, or zero if it has not been
+    private boolean completed;  ///< Indicates if this timeline has been added to the aggregate
+
+
+    /**
+     *  Statistics for each phase across every completed call setup in this process
+     */
+    public static class Aggregate {
+        private final long[] counts = new long[PHASE_COUNT];
+        private final long[] totals = new long[PHASE_COUNT];
+        private final long[] minimums = new long[PHASE_COUNT];
+        private final long[] maximums = new long[PHASE_COUNT];
+
+
+        /**
+         *  Get the number of completed call setups that reached a phase
+         *
+         *  @param phase  One of the PHASE constants
+         *
+         *  @return The count
+         */
+        public synchronized long getCount(int phase) {
+            return counts[phase];
+        }
+
+
+        /**
+         *  Get the mean time from the start of setup to a phase
+         *
+         *  @param phase  One of the PHASE constants
+         *
+         *  @return The average in milliseconds, or -1 if no call setup has reached the phase
+         */
+        public synchronized long getAverage(int phase) {
+            return (counts[phase] > 0) ? (totals[phase] / counts[phase]) : -1;
+        }
+
+
+        /**
+         *  Get the shortest time from the start of setup to a phase
+         *
+         *  @param phase  One of the PHASE constants
+         *
+         *  @return The minimum in milliseconds, or -1 if no call setup has reached the phase
+         */
+        public synchronized long getMinimum(int phase) {
+            return (counts[phase] > 0) ? minimums[phase] : -1;
+        }
+
+
+        /**
+         *  Get the longest time from the start of setup to a phase
+         *
+         *  @param phase  One of the PHASE constants
+         *
+         *  @return The maximum in milliseconds, or -1 if no call setup has reached the phase
+         */
+        public synchronized long getMaximum(int phase) {
+            return (counts[phase] > 0) ? maximums[phase] : -1;
+        }
+
+
+        /**
+         *  Discard all of the aggregated statistics
+         */
+        public synchronized void reset() {
+            for (int ii = 0; ii < PHASE_COUNT; ii++) {
+                counts[ii] = 0;
+                totals[ii] = 0;
+                minimums[ii] = 0;
+                maximums[ii] = 0;
+            }
+        }
+
+
+        synchronized void add(RespokeCallSetupTimeline timeline) {
+            for (int ii = 0; ii < PHASE_COUNT; ii++) {
+                long elapsed = timeline.getElapsed(ii);
+
+                if (elapsed >= 0) {
+                    minimums[ii] = (counts[ii] > 0) ? Math.min(minimums[ii], elapsed) : elapsed;
+                    maximums[ii] = Math.max(maximums[ii], elapsed);
+                    totals[ii] += elapsed;
+                    counts[ii]++;
+                }
+            }
+        }
+    }
+
+
+    /**
+     *  Get the statistics for every call setup completed in this process
+     *
+     *  @return The aggregate
+     */
+    public static Aggregate getAggregate() {
+        return aggregate;
+    }
+
+
+    /**
+     *  Get a short name for a phase, suitable for logging
+     *
+     *  @param phase  One of the PHASE constants
+     *
+     *  @return The name of the phase
+     */
+    public static String getPhaseName(int phase) {
+        return PHASE_NAMES[phase];
+    }
+
+
+    public RespokeCallSetupTimeline() {
+        timestamps = new long[PHASE_COUNT];
+    }
+
+
+    /**
+     *  Record that a phase was reached now, unless it was already reached. This is used internally to the SDK and should not be called directly by your client application.
+     *
+     *  @param phase  One of the PHASE constants
+     *
+     *  @return True if this was the first time the phase was reached
+     */
+    public synchronized boolean mark(int phase) {
+        if (0 == timestamps[phase]) {
+            timestamps[phase] = RespokePlatform.sharedInstance().elapsedRealtime();
+            return true;
+        }
+
+        return false;
+    }
+
+
+    /**
+     *  Indicates if a phase has been reached
+     *
+     *  @param phase  One of the PHASE constants
+     *
+     *  @return True if the phase was reached
+     */
+    public synchronized boolean hasReached(int phase) {
+        return 0 != timestamps[phase];
+    }
+
+
+    /**
+     *  Get the time from the start of setup until a phase was reached
+     *
+     *  @param phase  One of the PHASE constants
+     *
+     *  @return The elapsed time in milliseconds, or -1 if the phase was not reached
+     */
+    public synchronized long getElapsed(int phase) {
+        if ((0 == timestamps[phase]) || (0 == timestamps[PHASE_SETUP_STARTED])) {
+            return -1;
+        }
+
+        return timestamps[phase] - timestamps[PHASE_SETUP_STARTED];
+    }
+
+
+    /**
+     *  Get the time between two phases
+     *
+     *  @param fromPhase  The earlier phase
+     *  @param toPhase    The later phase
+     *
+     *  @return The duration in milliseconds, or -1 if either phase was not reached
+     */
+    public synchronized long getDuration(int fromPhase, int toPhase) {
+        if ((0 == timestamps[fromPhase]) || (0 == timestamps[toPhase])) {
+            return -1;
+        }
+
+        return timestamps[toPhase] - timestamps[fromPhase];
+    }
+
+
+    /**
+     *  Add this timeline to the process-wide aggregate, once. This is used internally to the SDK and should not be called directly by your client application.
+     *
+     *  @return True if the timeline was added, or false if it already had been
+     */
+    public boolean complete() {
+        synchronized (this) {
+            if (completed) {
+                return false;
+            }
+
+            completed = true;
+        }
+
+        aggregate.add(this);
+        return true;
+    }
+
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder("CallSetupTimeline{");
+
+        for (int ii = 0; ii < PHASE_COUNT; ii++) {
+            if (ii > 0) {
+                builder.append(", ");
+            }
+
+            builder.append(PHASE_NAMES[ii]).append('=').append(getElapsed(ii));
+        }
+
+        return builder.append('}').toString();
+    }
+}
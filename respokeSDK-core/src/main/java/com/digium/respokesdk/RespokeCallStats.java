@@ -0,0 +1,96 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ *  A compact summary of the quality of a call at one point in time, produced by a RespokeStatsSampler. Rates are
+ *  computed over the time since the previous sample, so the first sample of a call reports averages since the
+ *  media started flowing.
+ */
+public class RespokeCallStats {
+
+    public static final int UNKNOWN = -1;  ///< Reported for any figure the media stack did not provide
+
+    public final long timestamp;  ///< When the sample was taken, in milliseconds of device uptime
+    public final List<TrackStats> tracks;  ///< One entry for each audio or video stream sent or received
+
+
+    /**
+     *  The quality figures for a single stream in one direction
+     */
+    public static class TrackStats {
+        public final String ssrc;  ///< The identifier of the RTP stream
+        public final String trackId;  ///< The ID of the media track, if known
+        public final String mediaType;  ///< Either "audio" or "video"
+        public final boolean outbound;  ///< True if this device is sending the stream, false if it is receiving it
+        public final double bitrateKbps;  ///< The bitrate, in kilobits per second
+        public final double packetLossPercent;  ///< The share of packets lost, from 0 to 100
+        public final long rttMillis;  ///< The round trip time, or UNKNOWN. Only reported for outbound streams.
+        public final long jitterMillis;  ///< The interarrival jitter, or UNKNOWN. Only reported for inbound streams.
+        public final int frameRate;  ///< The frames per second, or UNKNOWN. Only reported for video.
+        public final int encodeUsagePercent;  ///< How busy the video encoder is keeping the CPU, or UNKNOWN. Only reported for outbound video.
+
+
+        public TrackStats(String ssrc, String trackId, String mediaType, boolean outbound, double bitrateKbps, double packetLossPercent, long rttMillis, long jitterMillis, int frameRate, int encodeUsagePercent) {
+            this.ssrc = ssrc;
+            this.trackId = trackId;
+            this.mediaType = mediaType;
+            this.outbound = outbound;
+            this.bitrateKbps = bitrateKbps;
+            this.packetLossPercent = packetLossPercent;
+            this.rttMillis = rttMillis;
+            this.jitterMillis = jitterMillis;
+            this.frameRate = frameRate;
+            this.encodeUsagePercent = encodeUsagePercent;
+        }
+
+
+        @Override
+        public String toString() {
+            return String.format("%s %s %s: %.1fkbps loss=%.1f%% rtt=%d jitter=%d fps=%d cpu=%d", mediaType, outbound ? "out" : "in",
+                    ssrc, bitrateKbps, packetLossPercent, rttMillis, jitterMillis, frameRate, encodeUsagePercent);
+        }
+    }
+
+
+    public RespokeCallStats(long timestamp, List<TrackStats> tracks) {
+        this.timestamp = timestamp;
+        this.tracks = Collections.unmodifiableList(tracks);
+    }
+
+
+    /**
+     *  Find the first stream of a given kind and direction
+     *
+     *  @param mediaType  Either "audio" or "video"
+     *  @param outbound   True for a stream this device is sending, false for one it is receiving
+     *
+     *  @return The stream statistics, or null if there is no such stream
+     */
+    public TrackStats getTrack(String mediaType, boolean outbound) {
+        for (TrackStats each : tracks) {
+            if ((each.outbound == outbound) && each.mediaType.equals(mediaType)) {
+                return each;
+            }
+        }
+
+        return null;
+    }
+
+
+    @Override
+    public String toString() {
+        return "CallStats{" + timestamp + ", " + tracks + "}";
+    }
+}
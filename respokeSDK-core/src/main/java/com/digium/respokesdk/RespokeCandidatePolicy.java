@@ -0,0 +1,171 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *  Decides which ICE candidates a call uses. A policy is applied to local candidates before they are signaled and to
+ *  remote candidates before they are added to the peer connection, so a rejected candidate costs neither a signaling
+ *  message nor connectivity checks.
+ *
+ *  Use RELAY_ONLY to force media through the TURN server on networks where direct checks are known to time out. A call
+ *  with a relay-only policy also restricts its peer connection to relay transports, so other candidates are never
+ *  gathered at all.
+ */
+public class RespokeCandidatePolicy {
+
+    public static final int UNLIMITED = -1;  ///< Indicates that any number of host candidates may be used
+
+    public static final String TYPE_HOST = "host";
+    public static final String TYPE_SERVER_REFLEXIVE = "srflx";
+    public static final String TYPE_PEER_REFLEXIVE = "prflx";
+    public static final String TYPE_RELAY = "relay";
+
+    public static final RespokeCandidatePolicy ALL = new RespokeCandidatePolicy(false, true, true, UNLIMITED);  ///< Use every candidate
+    public static final RespokeCandidatePolicy RELAY_ONLY = new RespokeCandidatePolicy(true, true, true, UNLIMITED);  ///< Only use candidates on the TURN server
+
+    public final boolean relayOnly;  ///< Only accept relay candidates
+    public final boolean allowTcp;  ///< Accept candidates that use TCP
+    public final boolean allowIpv6;  ///< Accept candidates with an IPv6 address
+    public final int maxHostCandidates;  ///< The most host candidates to accept in each direction, or UNLIMITED
+
+
+    /**
+     *  Applies a policy to the candidates flowing in one direction, counting the host candidates it has accepted
+     */
+    public class Filter {
+        private final AtomicInteger hostCount = new AtomicInteger();
+
+
+        /**
+         *  Determine if a candidate should be used
+         *
+         *  @param candidate  The candidate attribute, as in "candidate:1 1 udp 2122260223 10.0.0.2 54321 typ host"
+         *
+         *  @return True if the candidate is allowed by the policy
+         */
+        public boolean accept(String candidate) {
+            if (!RespokeCandidatePolicy.this.accept(candidate)) {
+                return false;
+            }
+
+            if ((UNLIMITED != maxHostCandidates) && TYPE_HOST.equals(getType(candidate))) {
+                return hostCount.incrementAndGet() <= maxHostCandidates;
+            }
+
+            return true;
+        }
+
+
+        /**
+         *  Start counting host candidates again, for instance when candidates are gathered afresh for an ICE restart
+         */
+        public void reset() {
+            hostCount.set(0);
+        }
+    }
+
+
+    /**
+     *  Create a policy
+     *
+     *  @param relayOnly          Specify true to only accept relay candidates
+     *  @param allowTcp           Specify false to reject candidates that use TCP
+     *  @param allowIpv6          Specify false to reject candidates with an IPv6 address
+     *  @param maxHostCandidates  The most host candidates to accept in each direction, or UNLIMITED
+     */
+    public RespokeCandidatePolicy(boolean relayOnly, boolean allowTcp, boolean allowIpv6, int maxHostCandidates) {
+        this.relayOnly = relayOnly;
+        this.allowTcp = allowTcp;
+        this.allowIpv6 = allowIpv6;
+        this.maxHostCandidates = maxHostCandidates;
+    }
+
+
+    /**
+     *  Create a filter that applies this policy to the candidates flowing in one direction
+     *
+     *  @return The new filter
+     */
+    public Filter newFilter() {
+        return new Filter();
+    }
+
+
+    /**
+     *  Determine if a candidate is allowed by the type, transport and address rules of this policy. The host candidate
+     *  limit is applied by a Filter, since it depends on the candidates seen before.
+     *
+     *  @param candidate  The candidate attribute
+     *
+     *  @return True if the candidate is allowed
+     */
+    public boolean accept(String candidate) {
+        String[] fields = splitCandidate(candidate);
+
+        if (null == fields) {
+            // Let the media stack decide what to do with anything that cannot be parsed
+            return true;
+        }
+
+        if (relayOnly && !TYPE_RELAY.equals(findType(fields))) {
+            return false;
+        }
+
+        if (!allowTcp && "tcp".equalsIgnoreCase(fields[2])) {
+            return false;
+        }
+
+        return allowIpv6 || (fields[4].indexOf(':') < 0);
+    }
+
+
+    /**
+     *  Get the type of a candidate
+     *
+     *  @param candidate  The candidate attribute
+     *
+     *  @return One of the TYPE constants, or null if the candidate cannot be parsed
+     */
+    public static String getType(String candidate) {
+        String[] fields = splitCandidate(candidate);
+        return (null != fields) ? findType(fields) : null;
+    }
+
+
+    //** Private methods
+
+
+    private static String[] splitCandidate(String candidate) {
+        if (null == candidate) {
+            return null;
+        }
+
+        // Accept the attribute with or without the SDP line prefix
+        String value = candidate.startsWith("a=") ? candidate.substring(2) : candidate;
+        String[] fields = value.trim().split(" ");
+
+        // foundation, component, transport, priority, address, port, "typ", type
+        return ((fields.length >= 8) && fields[0].startsWith("candidate:")) ? fields : null;
+    }
+
+
+    private static String findType(String[] fields) {
+        for (int ii = 6; ii < fields.length - 1; ii++) {
+            if ("typ".equals(fields[ii])) {
+                return fields[ii + 1];
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,170 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *  Holds ICE candidates until the session descriptions they depend on are in place, then passes them straight
+ *  through. The queue moves from QUEUING to DRAINING when drain is called, and to DIRECT once everything queued has
+ *  been delivered. Nothing here blocks: items are added to a lock-free queue and the state is changed with
+ *  compare-and-set, so a candidate arriving on the signaling thread never waits on one arriving from WebRTC.
+ *
+ *  Every item offered is delivered exactly once, whichever thread happens to deliver it. Items queued before drain
+ *  is called are delivered in order, but items offered while the queue changes state may overtake them, which is
+ *  harmless for ICE candidates.
+ *
+ *  @param <T>  The type of item held in the queue
+ */
+public class RespokeCandidateQueue<T> {
+
+    public static final int STATE_QUEUING = 0;  ///< Items are held until drain is called
+    public static final int STATE_DRAINING = 1;  ///< Held items are being delivered; new items join the end of the queue
+    public static final int STATE_DIRECT = 2;  ///< Items are delivered as soon as they are offered
+
+    private final ConcurrentLinkedQueue<T> pending;
+    private final AtomicInteger state;
+    private final Sink<T> sink;
+
+
+    /**
+     *  Receives the items passed through the queue
+     *
+     *  @param <T>  The type of item held in the queue
+     */
+    public interface Sink<T> {
+
+        /**
+         *  Deliver an item. This may be called on any thread that offers an item or drains the queue.
+         *
+         *  @param item  The item
+         */
+        void deliver(T item);
+
+    }
+
+
+    /**
+     *  Create a queue in the QUEUING state
+     *
+     *  @param sink  Receives each item once it may be delivered
+     */
+    public RespokeCandidateQueue(Sink<T> sink) {
+        this.sink = sink;
+        pending = new ConcurrentLinkedQueue<T>();
+        state = new AtomicInteger(STATE_QUEUING);
+    }
+
+
+    /**
+     *  Add an item, delivering it immediately if the queue is in the DIRECT state
+     *
+     *  @param item  The item
+     */
+    public void offer(T item) {
+        if (STATE_DIRECT == state.get()) {
+            sink.deliver(item);
+            return;
+        }
+
+        pending.add(item);
+
+        // The queue may have switched to DIRECT after the state was read but before the item was added, in which
+        // case no drainer will see the item. Become the drainer if so.
+        if ((STATE_DIRECT == state.get()) && state.compareAndSet(STATE_DIRECT, STATE_DRAINING)) {
+            drainPending();
+        }
+    }
+
+
+    /**
+     *  Deliver everything queued so far and switch to delivering new items directly. Does nothing if the queue is
+     *  already draining or direct.
+     */
+    public void drain() {
+        if (state.compareAndSet(STATE_QUEUING, STATE_DRAINING)) {
+            drainPending();
+        }
+    }
+
+
+    /**
+     *  Hold new items again until the next drain, for instance while an ICE restart exchanges new session
+     *  descriptions. Items already queued but not yet delivered are discarded.
+     */
+    public void restartQueuing() {
+        state.set(STATE_QUEUING);
+        pending.clear();
+    }
+
+
+    /**
+     *  Discard any queued items without delivering them
+     */
+    public void clear() {
+        pending.clear();
+    }
+
+
+    /**
+     *  Get the current state
+     *
+     *  @return STATE_QUEUING, STATE_DRAINING or STATE_DIRECT
+     */
+    public int getState() {
+        return state.get();
+    }
+
+
+    /**
+     *  Get the number of items waiting to be delivered. The count is only a snapshot when other threads are offering
+     *  items.
+     *
+     *  @return The number of queued items
+     */
+    public int size() {
+        return pending.size();
+    }
+
+
+    //** Private methods
+
+
+    private void drainPending() {
+        RuntimeException failure = null;
+
+        while (true) {
+            T item;
+
+            while ((STATE_DRAINING == state.get()) && (null != (item = pending.poll()))) {
+                try {
+                    sink.deliver(item);
+                } catch (RuntimeException e) {
+                    // Keep draining so the queue cannot be left stuck in DRAINING, and report the first failure after
+                    if (null == failure) {
+                        failure = e;
+                    }
+                }
+            }
+
+            // If restartQueuing was called while draining, leave the rest for the next drain. Otherwise an item may
+            // have been added after the last poll by a thread that still saw DRAINING, so check once more.
+            if (!state.compareAndSet(STATE_DRAINING, STATE_DIRECT) || pending.isEmpty() || !state.compareAndSet(STATE_DIRECT, STATE_DRAINING)) {
+                break;
+            }
+        }
+
+        if (null != failure) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+/**
+ *  Decides when to step the camera capture format of a call down or back up, based on the loss, round trip time
+ *  and encoder load of the outbound video stream. The format moves along a fixed ladder, one step at a time, and
+ *  only after the same verdict has been reached on several consecutive samples. Stepping down needs fewer samples
+ *  than stepping up, and figures between the degrade and recover thresholds reset both counts, so the format does
+ *  not flap when conditions hover around a single threshold.
+ */
+public class RespokeCaptureController {
+
+    public static final RespokeCaptureFormat[] LADDER = {
+            new RespokeCaptureFormat(1280, 720, 30),
+            new RespokeCaptureFormat(960, 540, 30),
+            new RespokeCaptureFormat(640, 480, 30),
+            new RespokeCaptureFormat(640, 360, 24),
+            new RespokeCaptureFormat(480, 360, 20),
+            new RespokeCaptureFormat(320, 240, 15),
+            new RespokeCaptureFormat(320, 180, 10)
+    };  ///< The formats the controller steps between, largest first
+
+    public static final double DEGRADE_LOSS_PERCENT = 5;  ///< Packet loss at or above which a sample counts against the current format
+    public static final long DEGRADE_RTT_MILLIS = 400;  ///< Round trip time at or above which a sample counts against the current format
+    public static final int DEGRADE_CPU_PERCENT = 85;  ///< Encoder load at or above which a sample counts against the current format
+    public static final double RECOVER_LOSS_PERCENT = 1;  ///< Packet loss at or below which a sample counts toward a larger format
+    public static final long RECOVER_RTT_MILLIS = 200;  ///< Round trip time at or below which a sample counts toward a larger format
+    public static final int RECOVER_CPU_PERCENT = 60;  ///< Encoder load at or below which a sample counts toward a larger format
+    public static final int DEGRADE_SAMPLES = 2;  ///< Consecutive bad samples needed to step down
+    public static final int RECOVER_SAMPLES = 6;  ///< Consecutive good samples needed to step up
+
+    private final int ceilingIndex;  ///< The ladder index of the largest format allowed
+    private final int floorIndex;  ///< The ladder index of the smallest format allowed
+    private int currentIndex;
+    private int badSamples;
+    private int goodSamples;
+
+
+    /**
+     *  Create a controller. The capture starts at the ceiling.
+     *
+     *  @param floor    The smallest format to step down to, or null to allow the smallest step of the ladder
+     *  @param ceiling  The largest format to step up to, or null to allow the largest step of the ladder
+     */
+    public RespokeCaptureController(RespokeCaptureFormat floor, RespokeCaptureFormat ceiling) {
+        int ceilingStep = LADDER.length - 1;
+        int floorStep = 0;
+
+        if (null == ceiling) {
+            ceilingStep = 0;
+        } else {
+            // The largest step that fits within the ceiling
+            for (int ii = 0; ii < LADDER.length; ii++) {
+                if (LADDER[ii].fitsWithin(ceiling)) {
+                    ceilingStep = ii;
+                    break;
+                }
+            }
+        }
+
+        if (null == floor) {
+            floorStep = LADDER.length - 1;
+        } else {
+            // The smallest step that is still at least the floor
+            for (int ii = LADDER.length - 1; ii >= 0; ii--) {
+                if (floor.fitsWithin(LADDER[ii])) {
+                    floorStep = ii;
+                    break;
+                }
+            }
+        }
+
+        ceilingIndex = ceilingStep;
+        floorIndex = Math.max(floorStep, ceilingStep);
+        currentIndex = ceilingIndex;
+    }
+
+
+    /**
+     *  Get the format the camera should currently capture at
+     *
+     *  @return The capture format
+     */
+    public synchronized RespokeCaptureFormat getCurrentFormat() {
+        return LADDER[currentIndex];
+    }
+
+
+    /**
+     *  Get the largest format the controller will step up to
+     *
+     *  @return The capture format
+     */
+    public RespokeCaptureFormat getCeiling() {
+        return LADDER[ceilingIndex];
+    }
+
+
+    /**
+     *  Get the smallest format the controller will step down to
+     *
+     *  @return The capture format
+     */
+    public RespokeCaptureFormat getFloor() {
+        return LADDER[floorIndex];
+    }
+
+
+    /**
+     *  Consider a new statistics sample
+     *
+     *  @param stats  The latest sample of the call
+     *
+     *  @return The new format if the capture should change, or null to leave it as it is
+     */
+    public synchronized RespokeCaptureFormat update(RespokeCallStats stats) {
+        RespokeCallStats.TrackStats video = stats.getTrack("video", true);
+
+        if (null == video) {
+            return null;
+        }
+
+        boolean degraded = (video.packetLossPercent >= DEGRADE_LOSS_PERCENT) || (video.rttMillis >= DEGRADE_RTT_MILLIS)
+                || (video.encodeUsagePercent >= DEGRADE_CPU_PERCENT);
+        boolean healthy = (video.packetLossPercent <= RECOVER_LOSS_PERCENT)
+                && (video.rttMillis <= RECOVER_RTT_MILLIS) && (video.encodeUsagePercent <= RECOVER_CPU_PERCENT);
+
+        if (degraded) {
+            badSamples++;
+            goodSamples = 0;
+
+            if ((badSamples >= DEGRADE_SAMPLES) && (currentIndex < floorIndex)) {
+                return step(1);
+            }
+        } else if (healthy) {
+            goodSamples++;
+            badSamples = 0;
+
+            if ((goodSamples >= RECOVER_SAMPLES) && (currentIndex > ceilingIndex)) {
+                return step(-1);
+            }
+        } else {
+            badSamples = 0;
+            goodSamples = 0;
+        }
+
+        return null;
+    }
+
+
+    //** Private methods
+
+
+    private RespokeCaptureFormat step(int direction) {
+        currentIndex += direction;
+        badSamples = 0;
+        goodSamples = 0;
+
+        return LADDER[currentIndex];
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+/**
+ *  A camera capture resolution and frame rate
+ */
+public class RespokeCaptureFormat {
+
+    public final int width;  ///< The width of each frame, in pixels
+    public final int height;  ///< The height of each frame, in pixels
+    public final int frameRate;  ///< The number of frames per second
+
+
+    public RespokeCaptureFormat(int width, int height, int frameRate) {
+        this.width = width;
+        this.height = height;
+        this.frameRate = frameRate;
+    }
+
+
+    /**
+     *  Determine if this format is no larger than another in any dimension
+     *
+     *  @param other  The format to compare against
+     *
+     *  @return True if the width, height and frame rate are all no greater than those of the other format
+     */
+    public boolean fitsWithin(RespokeCaptureFormat other) {
+        return (width <= other.width) && (height <= other.height) && (frameRate <= other.frameRate);
+    }
+
+
+    @Override
+    public boolean equals(Object other) {
+        if (other instanceof RespokeCaptureFormat) {
+            RespokeCaptureFormat format = (RespokeCaptureFormat) other;
+            return (width == format.width) && (height == format.height) && (frameRate == format.frameRate);
+        }
+
+        return false;
+    }
+
+
+    @Override
+    public int hashCode() {
+        return (((width * 31) + height) * 31) + frameRate;
+    }
+
+
+    @Override
+    public String toString() {
+        return width + "x" + height + "@" + frameRate;
+    }
+}
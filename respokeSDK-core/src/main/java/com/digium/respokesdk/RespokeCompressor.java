@@ -0,0 +1,206 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ *  Compresses messages with raw deflate for clients that have agreed to it. Every message is prefixed with a flags
+ *  byte saying whether it is compressed and whether it holds text, so compressed and uncompressed messages can share
+ *  a data channel.
+ *
+ *  Each message is compressed on its own, since carrying the compression state from one message to the next needs a
+ *  sync flush that older versions of Android do not offer. To make up for it, both ends prime the compressor with the
+ *  same preset dictionary of strings common in JSON, so even short messages shrink. The Deflater, Inflater and their
+ *  scratch arrays are reused rather than allocated per message.
+ *
+ *  Compressing and decompressing are each guarded by their own lock, so one thread may compress while another
+ *  decompresses.
+ */
+public class RespokeCompressor {
+
+    public static final int FLAG_DEFLATED = 0x01;  ///< The payload is compressed
+    public static final int FLAG_TEXT = 0x02;  ///< The payload is UTF-8 text rather than binary data
+
+    public static final int DEFAULT_THRESHOLD = 256;  ///< The default size below which messages are not worth compressing, in bytes
+    public static final int MAX_INFLATED_SIZE = 16 * 1024 * 1024;  ///< The largest message decompress will produce, so a small hostile message cannot exhaust memory
+
+    /**
+     *  The preset dictionary. Changing it breaks compatibility with clients using the old one, so a new dictionary
+     *  needs a new capability name.
+     */
+    private static final byte[] DICTIONARY = ("{\"message\":\"{\"type\":\"{\"id\":\"name\":\"value\":\"data\":\"text\":"
+            + "\"timestamp\":\"time\":\"state\":\"status\":\"error\":\"result\":\"version\":\"content\":\"body\":"
+            + "\"from\":\"to\":\"user\":\"userId\":\"endpointId\":\"key\":\"items\":[{\"\",\"\"},{\"\"}]}"
+            + "true,false,null,0,1,\"update\"\"delete\"\"create\"\"insert\"\"position\"\"x\":\"y\":").getBytes(Charset.forName("UTF-8"));
+
+    private final RespokeBufferPool pool;
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final Inflater inflater = new Inflater(true);
+    private byte[] deflateInput = new byte[1024];  ///< Guarded by deflater
+    private byte[] deflateOutput = new byte[1024];  ///< Guarded by deflater
+    private byte[] inflateInput = new byte[1024];  ///< Guarded by inflater
+    private byte[] inflateOutput = new byte[4096];  ///< Guarded by inflater
+
+
+    /**
+     *  Create a compressor
+     *
+     *  @param pool  Provides the direct buffers compressed messages are returned in
+     */
+    public RespokeCompressor(RespokeBufferPool pool) {
+        this.pool = pool;
+    }
+
+
+    /**
+     *  Compress a message, if doing so makes it smaller
+     *
+     *  @param data  The message, between its position and limit. The position is left unchanged.
+     *  @param text  True if the message is UTF-8 text
+     *
+     *  @return A pooled buffer holding the flags byte and the compressed message, which the caller must release, or
+     *          null if compressing would not save anything
+     */
+    public ByteBuffer compress(ByteBuffer data, boolean text) {
+        synchronized (deflater) {
+            int length = data.remaining();
+
+            if (deflateInput.length < length) {
+                deflateInput = new byte[length];
+            }
+
+            data.duplicate().get(deflateInput, 0, length);
+
+            // Only output smaller than the input is any use, so there is no need to deflate beyond that
+            if (deflateOutput.length < length) {
+                deflateOutput = new byte[length];
+            }
+
+            deflater.reset();
+            deflater.setDictionary(DICTIONARY);
+            deflater.setInput(deflateInput, 0, length);
+            deflater.finish();
+
+            int compressedLength = 0;
+
+            while (!deflater.finished() && (compressedLength < length - 1)) {
+                compressedLength += deflater.deflate(deflateOutput, compressedLength, length - 1 - compressedLength);
+            }
+
+            if (!deflater.finished()) {
+                return null;
+            }
+
+            ByteBuffer frame = pool.acquire(compressedLength + 1);
+            frame.put((byte) (FLAG_DEFLATED | (text ? FLAG_TEXT : 0)));
+            frame.put(deflateOutput, 0, compressedLength);
+            frame.flip();
+            return frame;
+        }
+    }
+
+
+    /**
+     *  Prefix an uncompressed message with its flags byte
+     *
+     *  @param data  The message, between its position and limit. The position is left unchanged.
+     *  @param text  True if the message is UTF-8 text
+     *
+     *  @return A pooled buffer holding the flags byte and the message, which the caller must release
+     */
+    public ByteBuffer wrap(ByteBuffer data, boolean text) {
+        ByteBuffer frame = pool.acquire(data.remaining() + 1);
+        frame.put((byte) (text ? FLAG_TEXT : 0));
+        frame.put(data.duplicate());
+        frame.flip();
+        return frame;
+    }
+
+
+    /**
+     *  Get the flags of a message produced by compress or wrap
+     *
+     *  @param frame  The message, positioned at its flags byte
+     *
+     *  @return The flags
+     */
+    public static int getFlags(ByteBuffer frame) {
+        return frame.get(frame.position()) & 0xFF;
+    }
+
+
+    /**
+     *  Recover the payload of a message produced by compress or wrap
+     *
+     *  @param frame  The message, positioned at its flags byte. The position is left unchanged.
+     *
+     *  @return The payload. If the message was compressed, this is backed by a scratch array that is only valid until
+     *          the next call to this method, so the caller must be done with it by then.
+     *
+     *  @throws DataFormatException if the message is empty, cannot be decompressed or would be larger than
+     *          MAX_INFLATED_SIZE
+     */
+    public ByteBuffer unwrap(ByteBuffer frame) throws DataFormatException {
+        if (!frame.hasRemaining()) {
+            throw new DataFormatException("Missing flags");
+        }
+
+        ByteBuffer payload = frame.duplicate();
+        payload.position(payload.position() + 1);
+
+        if (0 == (getFlags(frame) & FLAG_DEFLATED)) {
+            return payload.slice();
+        }
+
+        synchronized (inflater) {
+            int length = payload.remaining();
+
+            if (inflateInput.length < length) {
+                inflateInput = new byte[length];
+            }
+
+            payload.get(inflateInput, 0, length);
+
+            inflater.reset();
+            inflater.setDictionary(DICTIONARY);
+            inflater.setInput(inflateInput, 0, length);
+
+            int inflatedLength = 0;
+
+            while (!inflater.finished()) {
+                if (inflatedLength == inflateOutput.length) {
+                    if (inflateOutput.length >= MAX_INFLATED_SIZE) {
+                        throw new DataFormatException("Message too large");
+                    }
+
+                    byte[] larger = new byte[Math.min(inflateOutput.length * 2, MAX_INFLATED_SIZE)];
+                    System.arraycopy(inflateOutput, 0, larger, 0, inflatedLength);
+                    inflateOutput = larger;
+                }
+
+                int count = inflater.inflate(inflateOutput, inflatedLength, inflateOutput.length - inflatedLength);
+
+                if ((0 == count) && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("Truncated message");
+                }
+
+                inflatedLength += count;
+            }
+
+            return ByteBuffer.wrap(inflateOutput, 0, inflatedLength).slice();
+        }
+    }
+}
@@ -2,8 +2,6 @@ package com.digium.respokesdk;
 
 import java.util.Date;
 
-import static android.R.id.message;
-
 /**
  *
  */
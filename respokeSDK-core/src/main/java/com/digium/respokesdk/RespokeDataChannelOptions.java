@@ -0,0 +1,69 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+/**
+ *  The delivery guarantees of a named data channel. A reliable, ordered channel delivers every message in order, so
+ *  one lost packet holds up everything behind it. Frequent state updates that are superseded by the next one are
+ *  better sent on an unordered channel with limited retransmissions, where a late message is simply skipped.
+ *
+ *  A channel may limit retransmissions by count or by time, but not both.
+ */
+public class RespokeDataChannelOptions {
+
+    public static final int UNLIMITED = -1;  ///< Indicates that a message is retransmitted until it is delivered
+
+    public static final RespokeDataChannelOptions RELIABLE = new RespokeDataChannelOptions(true, UNLIMITED, UNLIMITED);  ///< Every message is delivered, in order
+    public static final RespokeDataChannelOptions UNRELIABLE = new RespokeDataChannelOptions(false, 0, UNLIMITED);  ///< Messages are sent once and may arrive out of order or not at all
+
+    public final boolean ordered;  ///< Deliver messages in the order they were sent
+    public final int maxRetransmits;  ///< The most times a message is retransmitted, or UNLIMITED
+    public final int maxPacketLifeTime;  ///< How long a message is retransmitted for, in milliseconds, or UNLIMITED
+
+
+    /**
+     *  Create a set of options
+     *
+     *  @param ordered            Specify true to deliver messages in the order they were sent
+     *  @param maxRetransmits     The most times a message is retransmitted, or UNLIMITED
+     *  @param maxPacketLifeTime  How long a message is retransmitted for, in milliseconds, or UNLIMITED
+     */
+    public RespokeDataChannelOptions(boolean ordered, int maxRetransmits, int maxPacketLifeTime) {
+        if ((maxRetransmits < UNLIMITED) || (maxPacketLifeTime < UNLIMITED)) {
+            throw new IllegalArgumentException("Retransmission limits must not be negative");
+        }
+
+        if ((UNLIMITED != maxRetransmits) && (UNLIMITED != maxPacketLifeTime)) {
+            throw new IllegalArgumentException("Only one of maxRetransmits and maxPacketLifeTime may be set");
+        }
+
+        this.ordered = ordered;
+        this.maxRetransmits = maxRetransmits;
+        this.maxPacketLifeTime = maxPacketLifeTime;
+    }
+
+
+    /**
+     *  Determine if every message is retransmitted until it is delivered
+     *
+     *  @return True if the channel is reliable
+     */
+    public boolean isReliable() {
+        return (UNLIMITED == maxRetransmits) && (UNLIMITED == maxPacketLifeTime);
+    }
+
+
+    @Override
+    public String toString() {
+        String reliability = isReliable() ? "reliable" : ((UNLIMITED != maxRetransmits) ? ("max " + maxRetransmits + " retransmits") : ("max " + maxPacketLifeTime + "ms lifetime"));
+        return (ordered ? "ordered, " : "unordered, ") + reliability;
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+/**
+ *  Polls send queues every RespokeSendQueue.POLL_INTERVAL until they have drained, since data channels do not say
+ *  when their buffers empty. At most one drain is pending at a time, and asking for another while one is pending does
+ *  not push it back, so a sender that sends more often than the poll interval cannot keep the queue from draining.
+ */
+public class RespokeDrainScheduler {
+
+    private final Drain drain;
+    private RespokeScheduler thread;  ///< The thread the pending drain will run on. Guarded by this.
+    private boolean scheduled;  ///< Indicates if a drain is pending. Guarded by this.
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            RespokeScheduler drainThread;
+
+            synchronized (RespokeDrainScheduler.this) {
+                if (!scheduled) {
+                    // Cancelled after it had already been dequeued
+                    return;
+                }
+
+                // Cleared before draining, so a message queued during the drain schedules the next one
+                scheduled = false;
+                drainThread = thread;
+            }
+
+            if (drain.drain()) {
+                schedule(drainThread);
+            }
+        }
+    };
+
+
+    /**
+     *  Drains the queues
+     */
+    public interface Drain {
+
+        /**
+         *  Send as many queued messages as the transport has room for
+         *
+         *  @return True if anything is still waiting to be drained
+         */
+        boolean drain();
+
+    }
+
+
+    /**
+     *  Create a scheduler
+     *
+     *  @param drain  Drains the queues
+     */
+    public RespokeDrainScheduler(Drain drain) {
+        this.drain = drain;
+    }
+
+
+    /**
+     *  Drain after the poll interval, unless a drain is already pending
+     *
+     *  @param thread  The thread to drain on
+     */
+    public synchronized void schedule(RespokeScheduler thread) {
+        if (!scheduled) {
+            scheduled = true;
+            this.thread = thread;
+            thread.postDelayed(drainTask, RespokeSendQueue.POLL_INTERVAL);
+        }
+    }
+
+
+    /**
+     *  Cancel the pending drain, if there is one
+     */
+    public synchronized void cancel() {
+        if (scheduled) {
+            scheduled = false;
+            thread.cancel(drainTask);
+        }
+    }
+
+
+    /**
+     *  Determine if a drain is pending
+     *
+     *  @return True if a drain is pending
+     */
+    public synchronized boolean isScheduled() {
+        return scheduled;
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  A scheduler backed by a single-threaded executor, used where there is no Android Looper. The thread is a daemon,
+ *  so an idle scheduler does not keep the process alive.
+ */
+public class RespokeExecutorScheduler implements RespokeScheduler {
+
+    private static final String TAG = "RespokeExecutorScheduler";
+
+    private final ScheduledThreadPoolExecutor executor;
+    private final RespokeLogger logger;
+    private final HashMap<Runnable, ArrayList<PendingRun>> pendingRuns = new HashMap<Runnable, ArrayList<PendingRun>>();  ///< The runs not yet started, by task. Guarded by this.
+
+
+    /**
+     *  One scheduled run of a task, which removes itself from pendingRuns when it starts
+     */
+    private class PendingRun implements Runnable {
+        final Runnable task;
+        ScheduledFuture<?> future;
+        boolean cancelled;  ///< Guarded by the scheduler
+
+
+        PendingRun(Runnable task) {
+            this.task = task;
+        }
+
+
+        @Override
+        public void run() {
+            synchronized (RespokeExecutorScheduler.this) {
+                if (cancelled) {
+                    return;
+                }
+
+                ArrayList<PendingRun> runs = pendingRuns.get(task);
+                runs.remove(this);
+
+                if (runs.isEmpty()) {
+                    pendingRuns.remove(task);
+                }
+            }
+
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                // An executor would otherwise swallow the exception without a trace
+                logger.error(TAG, "Uncaught exception in a scheduled task", e);
+            }
+        }
+    }
+
+
+    /**
+     *  Create a scheduler and start its thread
+     *
+     *  @param name    The name of the thread
+     *  @param logger  Receives exceptions thrown by tasks
+     */
+    public RespokeExecutorScheduler(final String name, RespokeLogger logger) {
+        this.logger = logger;
+
+        executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+
+    @Override
+    public void post(Runnable task) {
+        postDelayed(task, 0);
+    }
+
+
+    @Override
+    public synchronized void postDelayed(Runnable task, long delayMillis) {
+        if (executor.isShutdown()) {
+            return;
+        }
+
+        PendingRun run = new PendingRun(task);
+        ArrayList<PendingRun> runs = pendingRuns.get(task);
+
+        if (null == runs) {
+            runs = new ArrayList<PendingRun>(1);
+            pendingRuns.put(task, runs);
+        }
+
+        runs.add(run);
+
+        // The run cannot start before this method releases the lock, so the future is always set by the time it does
+        run.future = executor.schedule(run, Math.max(delayMillis, 0), TimeUnit.MILLISECONDS);
+    }
+
+
+    @Override
+    public synchronized void cancel(Runnable task) {
+        ArrayList<PendingRun> runs = pendingRuns.remove(task);
+
+        if (null != runs) {
+            cancelRuns(runs);
+        }
+    }
+
+
+    @Override
+    public synchronized void cancelAll() {
+        for (ArrayList<PendingRun> each : pendingRuns.values()) {
+            cancelRuns(each);
+        }
+
+        pendingRuns.clear();
+    }
+
+
+    @Override
+    public synchronized void shutdown() {
+        cancelAll();
+        executor.shutdown();
+    }
+
+
+    //** Private methods
+
+
+    private void cancelRuns(ArrayList<PendingRun> runs) {
+        for (PendingRun each : runs) {
+            each.cancelled = true;
+            each.future.cancel(false);
+        }
+
+        // Drop the cancelled runs now rather than when they would have been due
+        executor.purge();
+    }
+}
@@ -0,0 +1,291 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ *  Builds the requests for persisted group message history and conversations, and parses their responses. Messages
+ *  are returned with the IDs of their group and sender, for the SDK to resolve into groups and endpoints.
+ */
+public class RespokeGroupHistory {
+
+    public static final String HISTORY_SEARCH_URL = "/v1/group-history-search";  ///< The route for the history of several groups
+    public static final String ERROR_NOT_CONNECTED = "Can't complete request when not connected, Please reconnect!";  ///< The error reported for history requests made while disconnected
+    public static final String ERROR_INVALID_RESPONSE = "Invalid response from server";  ///< The error reported when the response is not the expected JSON type
+    public static final String ERROR_PARSING_RESPONSE = "Error parsing JSON response";  ///< The error reported when the response is missing expected fields
+
+
+    /**
+     *  A group message from the history, or from a pubsub event
+     */
+    public static class Message {
+        public final String message;  ///< The body of the message
+        public final String groupID;  ///< The ID of the group the message was sent to
+        public final String endpointID;  ///< The ID of the endpoint that sent the message
+        public final Date timestamp;  ///< The time the message was sent
+
+
+        public Message(String message, String groupID, String endpointID, Date timestamp) {
+            this.message = message;
+            this.groupID = groupID;
+            this.endpointID = endpointID;
+            this.timestamp = timestamp;
+        }
+    }
+
+
+    /**
+     *  A conversation this endpoint has message history with
+     */
+    public static class Conversation {
+        public final String groupID;  ///< The ID of the group holding the conversation
+        public final String sourceID;  ///< The ID of the source of the conversation
+        public final int unreadCount;  ///< The number of messages not yet marked read
+        public final Date timestamp;  ///< The time of the latest message
+        public final Message latestMessage;  ///< The latest message
+
+
+        public Conversation(String groupID, String sourceID, int unreadCount, Date timestamp, Message latestMessage) {
+            this.groupID = groupID;
+            this.sourceID = sourceID;
+            this.unreadCount = unreadCount;
+            this.timestamp = timestamp;
+            this.latestMessage = latestMessage;
+        }
+    }
+
+
+    /**
+     *  Check the arguments of a request for the history of one group
+     *
+     *  @param groupID      The group to pull history for
+     *  @param maxMessages  The maximum number of messages to pull
+     *
+     *  @return The error to report, or null if the arguments are valid
+     */
+    public static String validateHistory(String groupID, Integer maxMessages) {
+        if ((maxMessages == null) || (maxMessages < 1)) {
+            return "maxMessages must be at least 1";
+        }
+
+        if ((groupID == null) || groupID.length() == 0) {
+            return "groupId cannot be blank";
+        }
+
+        return null;
+    }
+
+
+    /**
+     *  Check the arguments of a request for the history of several groups
+     *
+     *  @param groupIDs     The groups to pull history for
+     *  @param maxMessages  The maximum number of messages per group to pull
+     *
+     *  @return The error to report, or null if the arguments are valid
+     */
+    public static String validateHistories(List<String> groupIDs, Integer maxMessages) {
+        if ((maxMessages == null) || (maxMessages < 1)) {
+            return "maxMessages must be at least 1";
+        }
+
+        if ((groupIDs == null) || (groupIDs.size() == 0)) {
+            return "At least 1 group must be specified";
+        }
+
+        return null;
+    }
+
+
+    /**
+     *  Build the URL for the history of one group
+     *
+     *  @param groupID      The group to pull history for
+     *  @param maxMessages  The maximum number of messages to pull
+     *  @param before       Limit messages to those with a timestamp before this value, or null for no limit
+     *
+     *  @return The URL
+     */
+    public static String historyURL(String groupID, Integer maxMessages, Date before) {
+        StringBuilder query = new StringBuilder("?limit=").append(maxMessages);
+
+        if (before != null) {
+            query.append("&before=").append(before.getTime());
+        }
+
+        return String.format("/v1/groups/%s/history%s", groupID, query);
+    }
+
+
+    /**
+     *  Build the body of a request for the history of several groups
+     *
+     *  @param groupIDs     The groups to pull history for
+     *  @param maxMessages  The maximum number of messages per group to pull
+     *
+     *  @return The body
+     *
+     *  @throws JSONException if the body could not be built
+     */
+    public static JSONObject historiesBody(List<String> groupIDs, Integer maxMessages) throws JSONException {
+        JSONObject body = new JSONObject();
+        body.put("limit", maxMessages.toString());
+        body.put("groupIds", new JSONArray(groupIDs));
+        return body;
+    }
+
+
+    /**
+     *  Build the URL for the conversations of an endpoint, which is read with a get and marked read with a put
+     *
+     *  @param endpointID  The ID of the endpoint
+     *
+     *  @return The URL
+     */
+    public static String conversationsURL(String endpointID) {
+        return "/v1/endpoints/" + endpointID + "/conversations";
+    }
+
+
+    /**
+     *  Build the body of a request to mark conversations read
+     *
+     *  @param updates  The group and timestamp of the most recent message read in each conversation
+     *
+     *  @return The body
+     *
+     *  @throws JSONException if the body could not be built
+     */
+    public static JSONObject readStatusBody(List<RespokeConversationReadStatus> updates) throws JSONException {
+        JSONArray groupsJsonArray = new JSONArray();
+
+        // Add each status object to the array.
+        for (RespokeConversationReadStatus status : updates) {
+            JSONObject jsonStatus = new JSONObject();
+            jsonStatus.put("groupId", status.groupId);
+            jsonStatus.put("timestamp", status.timestamp.toString());
+
+            groupsJsonArray.put(jsonStatus);
+        }
+
+        // Set the array to the 'groups' property.
+        JSONObject body = new JSONObject();
+        body.put("groups", groupsJsonArray);
+        return body;
+    }
+
+
+    /**
+     *  Parse a group message, in the format used both for pubsub events and for history
+     *
+     *  @param source  The JSON of the message
+     *
+     *  @return The message
+     *
+     *  @throws JSONException if a required field is missing
+     */
+    public static Message parseMessage(JSONObject source) throws JSONException {
+        if (source == null) {
+            throw new IllegalArgumentException("source cannot be null");
+        }
+
+        final JSONObject header = source.getJSONObject("header");
+        final String endpointID = header.getString("from");
+        final String groupID = header.getString("channel");
+        final String message = source.getString("message");
+        final Date timestamp;
+
+        if (!header.isNull("timestamp")) {
+            timestamp = new Date(header.getLong("timestamp"));
+        } else {
+            // Just use the current time if no date is specified in the header data
+            timestamp = new Date();
+        }
+
+        return new Message(message, groupID, endpointID, timestamp);
+    }
+
+
+    /**
+     *  Parse the response to a request for the history of one group
+     *
+     *  @param json  The response body
+     *
+     *  @return The messages, oldest last as the server sent them
+     *
+     *  @throws JSONException if a message is missing a required field
+     */
+    public static ArrayList<Message> parseHistory(JSONArray json) throws JSONException {
+        ArrayList<Message> results = new ArrayList<Message>(json.length());
+
+        for (int ii = 0; ii < json.length(); ii++) {
+            results.add(parseMessage(json.getJSONObject(ii)));
+        }
+
+        return results;
+    }
+
+
+    /**
+     *  Parse the response to a request for the history of several groups
+     *
+     *  @param json  The response body
+     *
+     *  @return The messages of each group, by group ID
+     *
+     *  @throws JSONException if a group's history is not an array, or a message is missing a required field
+     */
+    public static HashMap<String, List<Message>> parseHistories(JSONObject json) throws JSONException {
+        HashMap<String, List<Message>> results = new HashMap<String, List<Message>>();
+
+        for (Iterator<?> keys = json.keys(); keys.hasNext();) {
+            String key = (String) keys.next();
+            results.put(key, parseHistory(json.getJSONArray(key)));
+        }
+
+        return results;
+    }
+
+
+    /**
+     *  Parse the response to a request for the conversations of an endpoint
+     *
+     *  @param json  The response body
+     *
+     *  @return The conversations
+     *
+     *  @throws JSONException if a conversation is missing a required field
+     */
+    public static ArrayList<Conversation> parseConversations(JSONArray json) throws JSONException {
+        ArrayList<Conversation> results = new ArrayList<Conversation>(json.length());
+
+        for (int ii = 0; ii < json.length(); ii++) {
+            JSONObject jsonConversationInfo = json.getJSONObject(ii);
+
+            results.add(new Conversation(jsonConversationInfo.getString("groupId"),
+                    jsonConversationInfo.getString("sourceId"),
+                    jsonConversationInfo.getInt("unreadCount"),
+                    new Date(jsonConversationInfo.getLong("timestamp")),
+                    parseMessage(jsonConversationInfo.getJSONObject("latestMsg"))));
+        }
+
+        return results;
+    }
+}
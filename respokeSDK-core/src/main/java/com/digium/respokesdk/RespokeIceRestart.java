@@ -0,0 +1,246 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+/**
+ *  Decides when a call renegotiates its ICE connection with fresh candidates, for instance after the device moves
+ *  from Wi-Fi to a cellular network. A connection that fails is restarted straight away, and one that is disconnected
+ *  is restarted once the grace period passes without it recovering. The call gives up if a restart does not reconnect
+ *  within TIMEOUT.
+ *
+ *  Only the caller sends the offer that restarts ICE, so that both ends restarting at once cannot collide. A callee
+ *  that loses its connection asks the caller to restart instead, and accepts the caller's offer whenever it arrives. A
+ *  remote client that does not understand the request, such as a web browser, only restarts once it sees the failure
+ *  itself, and the callee gives up if that does not happen within TIMEOUT.
+ *
+ *  Every method must be called on the thread of the scheduler it was created with.
+ */
+public class RespokeIceRestart {
+
+    public static final long DEFAULT_GRACE_PERIOD = 4000;  ///< How long ICE may stay disconnected before it is restarted, in milliseconds
+    public static final long TIMEOUT = 15000;  ///< How long a restart may take to reconnect before the call gives up, in milliseconds
+
+    private final RespokeScheduler thread;
+    private final Listener listener;
+    private boolean caller;
+    private long gracePeriod = DEFAULT_GRACE_PERIOD;
+    private boolean disconnected;  ///< Indicates if ICE is disconnected and waiting out the grace period
+    private boolean restarting;  ///< Indicates if a restart is in progress
+    private boolean ended;  ///< Set once the call has ended
+    private final Runnable graceTask = new Runnable() {
+        @Override
+        public void run() {
+            if (disconnected && !restarting && !ended) {
+                start(false);
+            }
+        }
+    };
+    private final Runnable timeoutTask = new Runnable() {
+        @Override
+        public void run() {
+            if (restarting && !ended) {
+                ended = true;
+                listener.onFailed();
+            }
+        }
+    };
+
+
+    /**
+     *  Carries out the restart for the call
+     */
+    public interface Listener {
+
+        /**
+         *  A restart has started. Forget the candidates of the old ICE credentials, and hold new ones until the new
+         *  descriptions have been exchanged.
+         */
+        void onRestartStarted();
+
+
+        /**
+         *  Create and send an offer with new ICE credentials. This is only called on the caller's side.
+         */
+        void sendRestartOffer();
+
+
+        /**
+         *  Ask the caller to restart ICE. This is only called on the callee's side.
+         */
+        void requestRestart();
+
+
+        /**
+         *  The connection could not be restored, so the call should be hung up
+         */
+        void onFailed();
+
+    }
+
+
+    /**
+     *  Create a restart policy for a call, which starts out on the callee's side
+     *
+     *  @param thread    The thread the call's events are handled on, which runs the timers
+     *  @param listener  Carries out the restart
+     */
+    public RespokeIceRestart(RespokeScheduler thread, Listener listener) {
+        this.thread = thread;
+        this.listener = listener;
+    }
+
+
+    /**
+     *  Set which side of the call this client is on
+     *
+     *  @param caller  True if this client placed the call
+     */
+    public void setCaller(boolean caller) {
+        this.caller = caller;
+    }
+
+
+    /**
+     *  Set how long ICE may stay disconnected before it is restarted
+     *
+     *  @param gracePeriod  The grace period in milliseconds, or a negative value to give up as soon as ICE fails
+     */
+    public void setGracePeriod(long gracePeriod) {
+        this.gracePeriod = gracePeriod;
+    }
+
+
+    /**
+     *  Get how long ICE may stay disconnected before it is restarted
+     *
+     *  @return The grace period in milliseconds, or a negative value if restarts are disabled
+     */
+    public long getGracePeriod() {
+        return gracePeriod;
+    }
+
+
+    /**
+     *  Determine if a restart is in progress, in which case the descriptions being exchanged belong to the restart
+     *
+     *  @return True if a restart is in progress
+     */
+    public boolean isRestarting() {
+        return restarting;
+    }
+
+
+    /**
+     *  ICE has connected, or reconnected
+     */
+    public void connected() {
+        disconnected = false;
+        thread.cancel(graceTask);
+
+        if (restarting) {
+            restarting = false;
+            thread.cancel(timeoutTask);
+        }
+    }
+
+
+    /**
+     *  ICE has disconnected, and may recover on its own
+     */
+    public void disconnected() {
+        if ((gracePeriod >= 0) && !restarting && !ended) {
+            disconnected = true;
+            thread.cancel(graceTask);
+            thread.postDelayed(graceTask, gracePeriod);
+        }
+    }
+
+
+    /**
+     *  ICE has failed
+     */
+    public void failed() {
+        if (ended || restarting) {
+            return;
+        }
+
+        if (gracePeriod >= 0) {
+            start(false);
+        } else {
+            ended = true;
+            listener.onFailed();
+        }
+    }
+
+
+    /**
+     *  An offer has arrived for the call while it is in progress
+     *
+     *  @return True if the offer restarts ICE and should be answered, or false if it should be ignored
+     */
+    public boolean offerReceived() {
+        if (caller || ended) {
+            return false;
+        }
+
+        if (!restarting) {
+            // The caller has already started this restart, so there is nothing to ask for
+            start(true);
+        }
+
+        return true;
+    }
+
+
+    /**
+     *  The callee has asked for a restart
+     */
+    public void restartRequested() {
+        if (caller && !restarting && !ended) {
+            start(false);
+        }
+    }
+
+
+    /**
+     *  The call has ended, so stop the timers and ignore later events
+     */
+    public void end() {
+        ended = true;
+        restarting = false;
+        thread.cancel(graceTask);
+        thread.cancel(timeoutTask);
+    }
+
+
+    //** Private methods
+
+
+    /**
+     *  Start a restart
+     *
+     *  @param remoteStarted  True if the caller has already started it, so the callee does not need to ask
+     */
+    private void start(boolean remoteStarted) {
+        RespokeMetrics.ICE_RESTARTS.increment();
+        restarting = true;
+        disconnected = false;
+        thread.cancel(graceTask);
+        thread.postDelayed(timeoutTask, TIMEOUT);
+        listener.onRestartStarted();
+
+        if (caller) {
+            listener.sendRestartOffer();
+        } else if (!remoteStarted) {
+            listener.requestRestart();
+        }
+    }
+}
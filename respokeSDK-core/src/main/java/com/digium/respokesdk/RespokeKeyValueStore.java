@@ -0,0 +1,46 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+/**
+ *  Small string values the SDK keeps between runs of the application, such as the push token it last registered.
+ *  Implementations must be safe to call from any thread.
+ */
+public interface RespokeKeyValueStore {
+
+    /**
+     *  Read a value
+     *
+     *  @param key           The name of the value
+     *  @param defaultValue  The value to return if there is none stored
+     *
+     *  @return The stored value, or the default
+     */
+    String getString(String key, String defaultValue);
+
+
+    /**
+     *  Store a value, replacing any previous one
+     *
+     *  @param key    The name of the value
+     *  @param value  The value
+     */
+    void putString(String key, String value);
+
+
+    /**
+     *  Remove a value
+     *
+     *  @param key  The name of the value
+     */
+    void remove(String key);
+
+}
@@ -0,0 +1,36 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+/**
+ *  Receives the SDK's diagnostic output
+ */
+public interface RespokeLogger {
+
+    /**
+     *  Log a debugging message
+     *
+     *  @param tag      The class or component the message is about
+     *  @param message  The message
+     */
+    void debug(String tag, String message);
+
+
+    /**
+     *  Log an error
+     *
+     *  @param tag      The class or component the message is about
+     *  @param message  The message
+     *  @param error    The exception that caused the error, or null
+     */
+    void error(String tag, String message, Throwable error);
+
+}
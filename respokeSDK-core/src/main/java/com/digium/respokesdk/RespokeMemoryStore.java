@@ -0,0 +1,41 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import java.util.HashMap;
+
+/**
+ *  A key-value store that only lasts as long as the process, for tests and for platforms with nowhere to persist
+ *  values
+ */
+public class RespokeMemoryStore implements RespokeKeyValueStore {
+
+    private final HashMap<String, String> values = new HashMap<String, String>();
+
+
+    @Override
+    public synchronized String getString(String key, String defaultValue) {
+        String value = values.get(key);
+        return (null != value) ? value : defaultValue;
+    }
+
+
+    @Override
+    public synchronized void putString(String key, String value) {
+        values.put(key, value);
+    }
+
+
+    @Override
+    public synchronized void remove(String key) {
+        values.remove(key);
+    }
+}
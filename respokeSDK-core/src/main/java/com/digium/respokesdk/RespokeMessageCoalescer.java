@@ -0,0 +1,301 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *  Packs text messages sent in quick succession into a single data channel message, so that a chatty protocol pays
+ *  the per-message transport overhead once per batch rather than once per message.
+ *
+ *  A batch is a string of frames, each the length of a message in UTF-16 code units, a colon, and the message itself,
+ *  for example "5:hello2:hi". A single message sent on its own is a batch of one.
+ *
+ *  Messages are held until the window passes or the batch reaches its maximum length, whichever comes first. Every
+ *  method may be called from any thread, and batches reach the sink in the order their messages were added. The sink
+ *  is never called with a lock held, so a sink that blocks only holds up the thread that called it.
+ */
+public class RespokeMessageCoalescer {
+
+    public static final long DEFAULT_WINDOW = 5;  ///< The default time a message may wait for others to join its batch, in milliseconds
+    public static final int DEFAULT_MAX_LENGTH = 16 * 1024;  ///< The default length at which a batch is sent without waiting, in characters
+
+    private final Sink sink;
+    private final ArrayDeque<Batch> ready = new ArrayDeque<Batch>();  ///< Finished batches waiting for the sending thread. Guarded by this.
+    private boolean sending;  ///< Set while a thread is passing batches to the sink, so that batches cannot overtake each other. Guarded by this.
+    private StringBuilder batch;
+    private ArrayList<RespokeSendQueue.Completion> completions;
+    private long window;
+    private int maxLength;
+    private String closedReason;  ///< The error reported for new messages once closed, or null while open
+
+
+    /**
+     *  Receives finished batches
+     */
+    public interface Sink {
+
+        /**
+         *  Send a batch
+         *
+         *  @param batch       The framed messages
+         *  @param completion  Must be told the outcome of sending the batch, which it passes on to every message in it
+         */
+        void send(String batch, RespokeSendQueue.Completion completion);
+
+    }
+
+
+    /**
+     *  A finished batch, which passes the outcome of sending it on to every message in it
+     */
+    private static class Batch implements RespokeSendQueue.Completion {
+        final String framed;
+        final ArrayList<RespokeSendQueue.Completion> completions;
+
+
+        Batch(String framed, ArrayList<RespokeSendQueue.Completion> completions) {
+            this.framed = framed;
+            this.completions = completions;
+        }
+
+
+        @Override
+        public void onSuccess() {
+            for (RespokeSendQueue.Completion each : completions) {
+                if (null != each) {
+                    each.onSuccess();
+                }
+            }
+        }
+
+
+        @Override
+        public void onError(String errorMessage) {
+            for (RespokeSendQueue.Completion each : completions) {
+                if (null != each) {
+                    each.onError(errorMessage);
+                }
+            }
+        }
+    }
+
+
+    /**
+     *  Create a coalescer with the default window and maximum length
+     *
+     *  @param sink  Receives finished batches
+     */
+    public RespokeMessageCoalescer(Sink sink) {
+        this.sink = sink;
+        configure(DEFAULT_WINDOW, DEFAULT_MAX_LENGTH);
+    }
+
+
+    /**
+     *  Change how long messages wait and how large a batch may grow. Messages already waiting keep their batch.
+     *
+     *  @param window     The time a message may wait for others to join its batch, in milliseconds
+     *  @param maxLength  The length at which a batch is sent without waiting, in characters
+     */
+    public synchronized void configure(long window, int maxLength) {
+        if ((window < 0) || (maxLength <= 0)) {
+            throw new IllegalArgumentException("Invalid coalescing limits");
+        }
+
+        this.window = window;
+        this.maxLength = maxLength;
+    }
+
+
+    /**
+     *  Get the time a message may wait for others to join its batch
+     *
+     *  @return The window, in milliseconds
+     */
+    public synchronized long getWindow() {
+        return window;
+    }
+
+
+    /**
+     *  Add a message to the current batch, sending the batch straight away if it has reached the maximum length
+     *
+     *  @param message     The message
+     *  @param completion  Receives the outcome of sending the batch the message ends up in, or null
+     *
+     *  @return True if this message started a new batch, in which case the caller must call flush once the window passes
+     */
+    public boolean add(String message, RespokeSendQueue.Completion completion) {
+        String errorMessage;
+        boolean started = false;
+        boolean full = false;
+
+        synchronized (this) {
+            errorMessage = closedReason;
+
+            if (null == errorMessage) {
+                started = (null == batch);
+
+                if (started) {
+                    batch = new StringBuilder();
+                    completions = new ArrayList<RespokeSendQueue.Completion>();
+                }
+
+                appendFrame(batch, message);
+                completions.add(completion);
+                full = (batch.length() >= maxLength);
+            }
+        }
+
+        if (null != errorMessage) {
+            if (null != completion) {
+                completion.onError(errorMessage);
+            }
+        } else if (full) {
+            flush();
+        }
+
+        // A batch that was sent because it was full needs no timer
+        return started && !full;
+    }
+
+
+    /**
+     *  Send the current batch, if there is one. If another thread is already passing batches to the sink, the batch is
+     *  left for that thread to send after its own, and this method returns without waiting for it.
+     */
+    public void flush() {
+        synchronized (this) {
+            if (null != batch) {
+                ready.add(new Batch(batch.toString(), completions));
+                batch = null;
+                completions = null;
+            }
+
+            if (sending || ready.isEmpty()) {
+                return;
+            }
+
+            sending = true;
+        }
+
+        while (true) {
+            Batch next;
+
+            synchronized (this) {
+                next = ready.poll();
+
+                if (null == next) {
+                    sending = false;
+                    return;
+                }
+            }
+
+            sink.send(next.framed, next);
+        }
+    }
+
+
+    /**
+     *  Fail the messages waiting in the current batch and any added later
+     *
+     *  @param reason  The error to report
+     */
+    public void close(String reason) {
+        ArrayList<RespokeSendQueue.Completion> failed;
+
+        synchronized (this) {
+            closedReason = reason;
+            failed = completions;
+            batch = null;
+            completions = null;
+        }
+
+        if (null != failed) {
+            for (RespokeSendQueue.Completion each : failed) {
+                if (null != each) {
+                    each.onError(reason);
+                }
+            }
+        }
+    }
+
+
+    /**
+     *  Frame a single message as a batch of one
+     *
+     *  @param message  The message
+     *
+     *  @return The batch
+     */
+    public static String frame(String message) {
+        StringBuilder builder = new StringBuilder(message.length() + 8);
+        appendFrame(builder, message);
+        return builder.toString();
+    }
+
+
+    /**
+     *  Split a batch back into its messages
+     *
+     *  @param batch  The batch
+     *
+     *  @return The messages, in the order they were sent
+     *
+     *  @throws IllegalArgumentException if the batch is not correctly framed
+     */
+    public static List<String> unpack(String batch) {
+        ArrayList<String> messages = new ArrayList<String>();
+        int position = 0;
+
+        while (position < batch.length()) {
+            int colon = batch.indexOf(':', position);
+
+            if ((colon <= position) || (colon - position > 10)) {
+                throw new IllegalArgumentException("Invalid frame length");
+            }
+
+            long length = 0;
+
+            for (int ii = position; ii < colon; ii++) {
+                char digit = batch.charAt(ii);
+
+                if ((digit < '0') || (digit > '9')) {
+                    throw new IllegalArgumentException("Invalid frame length");
+                }
+
+                length = (length * 10) + (digit - '0');
+            }
+
+            int start = colon + 1;
+
+            if (length > batch.length() - start) {
+                throw new IllegalArgumentException("Truncated frame");
+            }
+
+            position = start + (int) length;
+            messages.add(batch.substring(start, position));
+        }
+
+        return messages;
+    }
+
+
+    //** Private methods
+
+
+    private static void appendFrame(StringBuilder builder, String message) {
+        builder.append(message.length()).append(':').append(message);
+    }
+}
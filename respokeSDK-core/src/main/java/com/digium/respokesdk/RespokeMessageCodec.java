@@ -0,0 +1,331 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.List;
+import java.util.zip.DataFormatException;
+
+/**
+ *  Turns messages into the bytes sent on the main data channel of a direct connection and back again, according to
+ *  the capabilities both clients support. Text is wrapped in a JSON object unless raw or framed text was negotiated,
+ *  and, once deflate was negotiated, binary messages carry a RespokeCompressor flags byte and large text messages may
+ *  be sent compressed.
+ *
+ *  Sending may happen on any thread. Receiving must only happen on one thread at a time, since the decoder and the
+ *  decompressor's output are reused from one message to the next.
+ */
+public class RespokeMessageCodec {
+
+    private final RespokeBufferPool pool;
+    private final RespokeCompressor compressor;
+    private final CharsetEncoder encoder = Charset.forName("UTF-8").newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);  ///< Reused to encode outgoing text. Guarded by itself.
+    private final CharsetDecoder decoder = Charset.forName("UTF-8").newDecoder();  ///< Reused to decode incoming text. Only used by receive.
+    private volatile boolean rawText;
+    private volatile boolean framedText;
+    private volatile boolean deflate;
+    private volatile int compressionThreshold;
+
+
+    /**
+     *  Receives the messages decoded by receive
+     */
+    public interface Receiver {
+
+        /**
+         *  A single text message was received
+         *
+         *  @param message  The message
+         */
+        void onMessage(String message);
+
+
+        /**
+         *  A batch of text messages was received
+         *
+         *  @param messages  The messages, in the order they were sent
+         */
+        void onMessages(List<String> messages);
+
+
+        /**
+         *  A binary message was received
+         *
+         *  @param message  The message, which is only valid until this method returns
+         */
+        void onBinaryMessage(ByteBuffer message);
+
+    }
+
+
+    /**
+     *  Create a codec that uses the JSON envelope until told otherwise
+     *
+     *  @param pool  Provides the direct buffers messages are encoded into
+     */
+    public RespokeMessageCodec(RespokeBufferPool pool) {
+        this.pool = pool;
+        compressor = new RespokeCompressor(pool);
+    }
+
+
+    /**
+     *  Set which formats both clients support
+     *
+     *  @param rawText     True to send text without the JSON envelope
+     *  @param framedText  True to send text as RespokeMessageCoalescer batches. Takes precedence over rawText.
+     *  @param deflate     True to prefix binary messages with a flags byte and allow compression
+     */
+    public void setCapabilities(boolean rawText, boolean framedText, boolean deflate) {
+        this.rawText = rawText;
+        this.framedText = framedText;
+        this.deflate = deflate;
+    }
+
+
+    /**
+     *  Determine if text is sent without the JSON envelope
+     *
+     *  @return True if both clients support it
+     */
+    public boolean usesRawText() {
+        return rawText;
+    }
+
+
+    /**
+     *  Determine if text is sent as framed batches
+     *
+     *  @return True if both clients support it
+     */
+    public boolean usesFramedText() {
+        return framedText;
+    }
+
+
+    /**
+     *  Determine if binary messages carry a flags byte and text may be compressed
+     *
+     *  @return True if both clients support it
+     */
+    public boolean usesDeflate() {
+        return deflate;
+    }
+
+
+    /**
+     *  Set the size from which text is compressed, when deflate has been negotiated
+     *
+     *  @param threshold  The size in bytes of UTF-8, or 0 to never compress
+     */
+    public void setCompressionThreshold(int threshold) {
+        compressionThreshold = Math.max(threshold, 0);
+    }
+
+
+    /**
+     *  Get the size from which text is compressed
+     *
+     *  @return The size in bytes of UTF-8, or 0 if text is never compressed
+     */
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+
+    /**
+     *  Wrap a single message in the negotiated text format
+     *
+     *  @param message  The message
+     *
+     *  @return The text to pass to offerText
+     */
+    public String envelope(String message) {
+        if (framedText) {
+            return RespokeMessageCoalescer.frame(message);
+        } else if (rawText) {
+            return message;
+        }
+
+        // Equivalent to serializing a JSONObject with a single "message" key, without building one
+        return "{\"message\":" + JSONObject.quote(message) + "}";
+    }
+
+
+    /**
+     *  Encode text, compressing it if that has been negotiated and is worthwhile, and hand it to a send queue
+     *
+     *  @param text        The text, already in the negotiated format
+     *  @param queue       The send queue for the data channel
+     *  @param completion  Receives the outcome, or null
+     *
+     *  @return The result of offering the message to the queue
+     */
+    public boolean offerText(String text, RespokeSendQueue queue, RespokeSendQueue.Completion completion) {
+        ByteBuffer encoded = encode(text);
+        int threshold = compressionThreshold;
+        ByteBuffer compressed = null;
+
+        try {
+            if (deflate && (threshold > 0) && (encoded.remaining() >= threshold)) {
+                compressed = compressor.compress(encoded, true);
+            }
+
+            if (null != compressed) {
+                return queue.offer(compressed, true, completion);
+            } else {
+                return queue.offer(encoded, false, completion);
+            }
+        } finally {
+            // The queue has either sent the data or copied it, so the buffers can go straight back to the pool
+            pool.release(encoded);
+
+            if (null != compressed) {
+                pool.release(compressed);
+            }
+        }
+    }
+
+
+    /**
+     *  Hand a binary message to a send queue, adding the flags byte if deflate has been negotiated
+     *
+     *  @param data        The message, between its position and limit. The position is left unchanged.
+     *  @param queue       The send queue for the data channel
+     *  @param completion  Receives the outcome, or null
+     *
+     *  @return The result of offering the message to the queue
+     */
+    public boolean offerBinary(ByteBuffer data, RespokeSendQueue queue, RespokeSendQueue.Completion completion) {
+        if (!deflate) {
+            return queue.offer(data.duplicate(), true, completion);
+        }
+
+        // The remote client expects a flags byte in front of every binary message, so this copy cannot be avoided
+        ByteBuffer frame = compressor.wrap(data, false);
+
+        try {
+            return queue.offer(frame, true, completion);
+        } finally {
+            pool.release(frame);
+        }
+    }
+
+
+    /**
+     *  Decode a message received on the data channel. Messages that cannot be decoded are ignored.
+     *
+     *  @param data      The message
+     *  @param binary    True if the message was sent as binary
+     *  @param receiver  Receives the decoded message
+     */
+    public void receive(ByteBuffer data, boolean binary, Receiver receiver) {
+        if (binary && deflate) {
+            try {
+                ByteBuffer payload = compressor.unwrap(data);
+
+                if (0 != (RespokeCompressor.getFlags(data) & RespokeCompressor.FLAG_TEXT)) {
+                    receiveText(payload, receiver);
+                } else {
+                    receiver.onBinaryMessage(payload);
+                }
+            } catch (DataFormatException e) {
+                // If the message can not be decompressed, ignore it
+            }
+        } else if (binary) {
+            receiver.onBinaryMessage(data);
+        } else {
+            receiveText(data, receiver);
+        }
+    }
+
+
+    /**
+     *  Encode text as UTF-8 into a buffer from the pool. Most messages are ASCII, so a buffer with one byte per
+     *  character is tried first and a larger one only if that overflows.
+     *
+     *  @param text  The text to encode
+     *
+     *  @return A pooled buffer holding the encoded text, which the caller must release
+     */
+    public ByteBuffer encode(String text) {
+        synchronized (encoder) {
+            ByteBuffer buffer = pool.acquire(text.length());
+
+            if (!encodeInto(text, buffer)) {
+                pool.release(buffer);
+                buffer = pool.acquire((int) Math.ceil(text.length() * encoder.maxBytesPerChar()));
+                encodeInto(text, buffer);
+            }
+
+            buffer.flip();
+            return buffer;
+        }
+    }
+
+
+    //** Private methods
+
+
+    private boolean encodeInto(String text, ByteBuffer buffer) {
+        encoder.reset();
+        CoderResult result = encoder.encode(CharBuffer.wrap(text), buffer, true);
+
+        if (!result.isOverflow()) {
+            result = encoder.flush(buffer);
+        }
+
+        return !result.isOverflow();
+    }
+
+
+    private void receiveText(ByteBuffer data, Receiver receiver) {
+        String text;
+
+        try {
+            text = decoder.decode(data).toString();
+        } catch (CharacterCodingException e) {
+            // If the message can not be decoded, ignore it
+            return;
+        }
+
+        if (framedText) {
+            try {
+                receiver.onMessages(RespokeMessageCoalescer.unpack(text));
+            } catch (IllegalArgumentException e) {
+                // If the batch is not correctly framed, ignore it
+            }
+        } else if (rawText) {
+            receiver.onMessage(text);
+        } else {
+            try {
+                JSONObject jsonMessage = new JSONObject(text);
+                String messageText = jsonMessage.getString("message");
+
+                if (null != messageText) {
+                    receiver.onMessage(messageText);
+                }
+            } catch (JSONException e) {
+                // If it is not valid json, ignore the message
+            }
+        }
+    }
+}
@@ -0,0 +1,369 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ *  A registry of counters, gauges and histograms describing the SDK's activity, such as connections, calls,
+ *  messages and data sent over direct connections. Recording is disabled until an exporter is installed with
+ *  setExporter, and while disabled every recording call returns after a single volatile read. Once enabled,
+ *  recording updates preallocated atomics and never allocates.
+ *
+ *  The registry is shared by every client in the process. Applications may register their own metrics alongside
+ *  the built-in ones.
+ */
+public final class RespokeMetrics {
+
+    private static final ArrayList<Metric> registry = new ArrayList<Metric>();
+    private static volatile boolean enabled;  ///< Indicates if recording is active, which is only the case while an exporter is installed
+    private static Exporter exporter;
+    private static RespokeScheduler exportThread;
+    private static long exportInterval;
+    private static final Runnable exportTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (RespokeMetrics.class) {
+                if (null != exporter) {
+                    exportTo(exporter);
+                    exportThread.postDelayed(this, exportInterval);
+                }
+            }
+        }
+    };
+
+    public static final long[] LATENCY_BUCKETS = {1, 2, 5, 10, 25, 50, 100, 250, 500, 1000};  ///< The default histogram bucket upper bounds, in milliseconds
+
+    public static final Counter CONNECTS = counter("respoke.client.connects");  ///< Successful connections of the signaling socket
+    public static final Counter RECONNECTS = counter("respoke.client.reconnects");  ///< Automatic reconnect attempts
+    public static final Counter CALLS_STARTED = counter("respoke.calls.started");  ///< Calls placed or answered
+    public static final Counter CALLS_FAILED = counter("respoke.calls.failed");  ///< Calls that reported an error
+    public static final Counter ICE_FAILURES = counter("respoke.calls.ice_failures");  ///< Calls whose ICE connection failed
+    public static final Counter ICE_RESTARTS = counter("respoke.calls.ice_restarts");  ///< ICE restarts attempted after a call lost its connection
+    public static final Counter MESSAGES_SENT = counter("respoke.messages.sent");  ///< Messages sent to endpoints and groups
+    public static final Counter MESSAGES_RECEIVED = counter("respoke.messages.received");  ///< Messages received from endpoints and groups
+    public static final Counter DIRECT_BYTES_SENT = counter("respoke.direct.bytes_sent");  ///< Payload bytes sent over direct connections
+    public static final Counter DIRECT_BYTES_RECEIVED = counter("respoke.direct.bytes_received");  ///< Payload bytes received over direct connections
+    public static final Histogram CALLBACK_DISPATCH_LATENCY = histogram("respoke.callbacks.dispatch_latency", LATENCY_BUCKETS);  ///< How long completion callbacks wait for the UI thread, in milliseconds
+
+
+    /**
+     *  An app-provided receiver for metric values. Export calls are made on a background thread owned by the registry.
+     */
+    public interface Exporter {
+
+        /**
+         *  Receive the current value of a counter
+         *
+         *  @param name   The name of the counter
+         *  @param value  The total since the process started
+         */
+        void exportCounter(String name, long value);
+
+
+        /**
+         *  Receive the current value of a gauge
+         *
+         *  @param name   The name of the gauge
+         *  @param value  The most recently set value
+         */
+        void exportGauge(String name, long value);
+
+
+        /**
+         *  Receive the current contents of a histogram. The arrays are reused between exports, so copy them if they
+         *  need to be kept.
+         *
+         *  @param name          The name of the histogram
+         *  @param bucketBounds  The upper bound of each bucket. The counts array has one more entry, for values above the last bound.
+         *  @param counts        The number of values recorded in each bucket
+         *  @param sum           The sum of all recorded values
+         */
+        void exportHistogram(String name, long[] bucketBounds, long[] counts, long sum);
+
+
+        /**
+         *  Receive a notification that every metric has been exported for this interval
+         */
+        void exportComplete();
+
+    }
+
+
+    /**
+     *  The base class of every metric in the registry
+     */
+    public static abstract class Metric {
+        public final String name;  ///< The name the metric is exported under
+
+
+        Metric(String name) {
+            this.name = name;
+        }
+
+
+        abstract void export(Exporter exporter);
+    }
+
+
+    /**
+     *  A value that only ever increases
+     */
+    public static final class Counter extends Metric {
+        private final AtomicLong value = new AtomicLong();
+
+
+        Counter(String name) {
+            super(name);
+        }
+
+
+        public void increment() {
+            if (enabled) {
+                value.incrementAndGet();
+            }
+        }
+
+
+        public void add(long amount) {
+            if (enabled) {
+                value.addAndGet(amount);
+            }
+        }
+
+
+        public long get() {
+            return value.get();
+        }
+
+
+        void export(Exporter exporter) {
+            exporter.exportCounter(name, value.get());
+        }
+    }
+
+
+    /**
+     *  A value that is set to the latest reading
+     */
+    public static final class Gauge extends Metric {
+        private final AtomicLong value = new AtomicLong();
+
+
+        Gauge(String name) {
+            super(name);
+        }
+
+
+        public void set(long newValue) {
+            if (enabled) {
+                value.set(newValue);
+            }
+        }
+
+
+        public long get() {
+            return value.get();
+        }
+
+
+        void export(Exporter exporter) {
+            exporter.exportGauge(name, value.get());
+        }
+    }
+
+
+    /**
+     *  A distribution of values counted into fixed buckets
+     */
+    public static final class Histogram extends Metric {
+        private final long[] bucketBounds;
+        private final AtomicLongArray counts;
+        private final AtomicLong sum = new AtomicLong();
+        private final long[] exportCounts;  ///< Reused for every export so that exporting does not allocate
+
+
+        Histogram(String name, long[] bucketBounds) {
+            super(name);
+            this.bucketBounds = bucketBounds.clone();
+            counts = new AtomicLongArray(bucketBounds.length + 1);
+            exportCounts = new long[bucketBounds.length + 1];
+        }
+
+
+        public void record(long value) {
+            if (enabled) {
+                int bucket = 0;
+
+                while ((bucket < bucketBounds.length) && (value > bucketBounds[bucket])) {
+                    bucket++;
+                }
+
+                counts.incrementAndGet(bucket);
+                sum.addAndGet(value);
+            }
+        }
+
+
+        /**
+         *  Get the number of values recorded in a bucket
+         *
+         *  @param bucket  The index of the bucket, where bucketBounds.length is the overflow bucket
+         *
+         *  @return The count
+         */
+        public long getCount(int bucket) {
+            return counts.get(bucket);
+        }
+
+
+        public long getSum() {
+            return sum.get();
+        }
+
+
+        void export(Exporter exporter) {
+            for (int ii = 0; ii < exportCounts.length; ii++) {
+                exportCounts[ii] = counts.get(ii);
+            }
+
+            exporter.exportHistogram(name, bucketBounds, exportCounts, sum.get());
+        }
+    }
+
+
+    private RespokeMetrics() {
+    }
+
+
+    /**
+     *  Register a new counter
+     *
+     *  @param name  The name to export the counter under
+     *
+     *  @return The counter
+     */
+    public static Counter counter(String name) {
+        return register(new Counter(name));
+    }
+
+
+    /**
+     *  Register a new gauge
+     *
+     *  @param name  The name to export the gauge under
+     *
+     *  @return The gauge
+     */
+    public static Gauge gauge(String name) {
+        return register(new Gauge(name));
+    }
+
+
+    /**
+     *  Register a new histogram
+     *
+     *  @param name          The name to export the histogram under
+     *  @param bucketBounds  The upper bound of each bucket, in ascending order
+     *
+     *  @return The histogram
+     */
+    public static Histogram histogram(String name, long[] bucketBounds) {
+        return register(new Histogram(name, bucketBounds));
+    }
+
+
+    /**
+     *  Indicates if metrics are currently being recorded
+     *
+     *  @return True if an exporter is installed
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+
+    /**
+     *  Install an exporter and begin recording. The exporter receives every metric at the specified interval. Passing
+     *  null stops both exporting and recording, returning the registry to its no-op state.
+     *
+     *  @param newExporter     The receiver for metric values, or null to disable metrics
+     *  @param intervalMillis  The time between exports, in milliseconds
+     */
+    public static synchronized void setExporter(Exporter newExporter, long intervalMillis) {
+        exporter = newExporter;
+        exportInterval = intervalMillis;
+        enabled = (null != newExporter);
+
+        if (null != exportThread) {
+            exportThread.cancel(exportTask);
+        }
+
+        if (enabled) {
+            if (null == exportThread) {
+                exportThread = RespokePlatform.sharedInstance().createWorker("RespokeMetricsThread");
+            }
+
+            exportThread.postDelayed(exportTask, intervalMillis);
+        } else if (null != exportThread) {
+            exportThread.shutdown();
+            exportThread = null;
+        }
+    }
+
+
+    /**
+     *  Immediately send the current value of every metric to an exporter on the calling thread
+     *
+     *  @param target  The exporter to receive the values
+     */
+    public static synchronized void exportTo(Exporter target) {
+        for (Metric eachMetric : registry) {
+            eachMetric.export(target);
+        }
+
+        target.exportComplete();
+    }
+
+
+    /**
+     *  Get a timestamp to pass to recordSince, or zero if metrics are disabled. This is used internally to the SDK and should not be called directly by your client application.
+     *
+     *  @return The current uptime in milliseconds
+     */
+    public static long startTiming() {
+        return enabled ? RespokePlatform.sharedInstance().elapsedRealtime() : 0;
+    }
+
+
+    /**
+     *  Record the time elapsed since a timestamp returned by startTiming. This is used internally to the SDK and should not be called directly by your client application.
+     *
+     *  @param histogram  The histogram to record into
+     *  @param startTime  The value returned by startTiming
+     */
+    public static void recordSince(Histogram histogram, long startTime) {
+        if (enabled && (0 != startTime)) {
+            histogram.record(RespokePlatform.sharedInstance().elapsedRealtime() - startTime);
+        }
+    }
+
+
+    //** Private methods
+
+
+    private static synchronized <T extends Metric> T register(T metric) {
+        registry.add(metric);
+        return metric;
+    }
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ *  The threads, clock and logging the SDK's logic runs on. The Android library installs RespokeAndroidPlatform, which
+ *  uses the UI thread, HandlerThreads, SystemClock and Log. Anywhere else, such as a unit test or benchmark on a
+ *  plain JVM, the default uses executor threads, System.nanoTime and java.util.logging.
+ *
+ *  An application may install its own platform, for example to run tests against a controllable clock, but must do
+ *  so before creating any clients.
+ */
+public abstract class RespokePlatform {
+
+    private static final String ANDROID_PLATFORM = "com.digium.respokesdk.RespokeAndroidPlatform";
+
+    private static volatile RespokePlatform sharedInstance;
+
+
+    /**
+     *  Get the platform, choosing one the first time this is called if none has been installed
+     *
+     *  @return The platform
+     */
+    public static RespokePlatform sharedInstance() {
+        RespokePlatform platform = sharedInstance;
+
+        if (null == platform) {
+            synchronized (RespokePlatform.class) {
+                if (null == sharedInstance) {
+                    sharedInstance = findPlatform();
+                }
+
+                platform = sharedInstance;
+            }
+        }
+
+        return platform;
+    }
+
+
+    /**
+     *  Install a platform
+     *
+     *  @param platform  The platform, or null to choose one again on next use
+     */
+    public static synchronized void setSharedInstance(RespokePlatform platform) {
+        sharedInstance = platform;
+    }
+
+
+    /**
+     *  Get the scheduler for the thread that application listeners are called on
+     *
+     *  @return The scheduler
+     */
+    public abstract RespokeScheduler getMainThread();
+
+
+    /**
+     *  Create and start a worker thread
+     *
+     *  @param name  The name of the thread
+     *
+     *  @return The scheduler for the new thread, which the caller must shut down when finished with it
+     */
+    public abstract RespokeScheduler createWorker(String name);
+
+
+    /**
+     *  Get the logger
+     *
+     *  @return The logger
+     */
+    public abstract RespokeLogger getLogger();
+
+
+    /**
+     *  Get a monotonic timestamp suitable for measuring intervals
+     *
+     *  @return The time in milliseconds since some fixed point, such as boot
+     */
+    public abstract long elapsedRealtime();
+
+
+    /**
+     *  The platform used when the Android one is not available
+     */
+    public static class JvmPlatform extends RespokePlatform {
+
+        private final RespokeLogger logger = new RespokeLogger() {
+            @Override
+            public void debug(String tag, String message) {
+                Logger.getLogger(tag).fine(message);
+            }
+
+            @Override
+            public void error(String tag, String message, Throwable error) {
+                Logger.getLogger(tag).log(Level.SEVERE, message, error);
+            }
+        };
+        private RespokeScheduler mainThread;
+
+
+        @Override
+        public synchronized RespokeScheduler getMainThread() {
+            // A plain JVM has no UI thread, so listeners are called on a dedicated thread to keep them in order
+            if (null == mainThread) {
+                mainThread = new RespokeExecutorScheduler("RespokeMainThread", logger);
+            }
+
+            return mainThread;
+        }
+
+
+        @Override
+        public RespokeScheduler createWorker(String name) {
+            return new RespokeExecutorScheduler(name, logger);
+        }
+
+
+        @Override
+        public RespokeLogger getLogger() {
+            return logger;
+        }
+
+
+        @Override
+        public long elapsedRealtime() {
+            return System.nanoTime() / 1000000;
+        }
+    }
+
+
+    //** Private methods
+
+
+    private static RespokePlatform findPlatform() {
+        try {
+            return (RespokePlatform) Class.forName(ANDROID_PLATFORM).newInstance();
+        } catch (Exception e) {
+            // Not running inside the Android library, or running against the stub android.jar of a unit test
+        } catch (LinkageError e) {
+            // The Android classes the adapter needs are missing
+        }
+
+        return new JvmPlatform();
+    }
+}
@@ -0,0 +1,215 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ *  Registers for presence updates in batches. Endpoints queued before the batch runs are registered with a single
+ *  request, and an endpoint that is already registered is not registered again until the registrations are cleared.
+ */
+public class RespokePresenceRegistrar {
+
+    private static final String TAG = "RespokePresenceRegistrar";
+
+    private final RespokeScheduler thread;  ///< The thread batches are sent from
+    private final Listener listener;
+    private final ArrayList<String> registrationQueue = new ArrayList<String>();  ///< Endpoints waiting for the next batch. Guarded by this.
+    private final HashSet<String> registered = new HashSet<String>();  ///< Endpoints already registered on this connection. Guarded by this.
+    private boolean registrationTaskWaiting;  ///< Indicates that a batch is scheduled. Guarded by this.
+    private final Runnable registrationTask = new Runnable() {
+        @Override
+        public void run() {
+            registerQueued();
+        }
+    };
+
+
+    /**
+     *  Sends the registrations and receives their results
+     */
+    public interface Listener {
+
+        /**
+         *  Send a registration request, or drop it if there is no connection
+         *
+         *  @param endpointIDs         The endpoints to register for
+         *  @param completionListener  Must be told the outcome if the request is sent
+         */
+        void registerPresence(ArrayList<String> endpointIDs, RespokeSignalingProtocol.RegisterPresenceListener completionListener);
+
+
+        /**
+         *  Receive the presence a connection had when its endpoint was registered
+         *
+         *  @param endpointID    The endpoint ID to which the connection belongs
+         *  @param connectionID  The connection ID
+         *  @param presence      The presence of the connection
+         */
+        void onConnectionPresence(String endpointID, String connectionID, Object presence);
+
+
+        /**
+         *  Receive a notification that a batch has been registered and its initial presence reported
+         *
+         *  @param endpointIDs  The endpoints that were registered
+         */
+        void onRegistered(ArrayList<String> endpointIDs);
+
+    }
+
+
+    /**
+     *  Create a registrar
+     *
+     *  @param thread    The thread to send batches from
+     *  @param listener  Sends the registrations and receives their results
+     */
+    public RespokePresenceRegistrar(RespokeScheduler thread, Listener listener) {
+        this.thread = thread;
+        this.listener = listener;
+    }
+
+
+    /**
+     *  Register for presence updates for an endpoint in the next batch, unless it is already registered
+     *
+     *  @param endpointID  The ID of the endpoint
+     */
+    public void queue(String endpointID) {
+        if (null != endpointID) {
+            boolean shouldSpawnRegistrationTask = false;
+
+            synchronized (this) {
+                if (!registered.contains(endpointID)) {
+                    registrationQueue.add(endpointID);
+
+                    // If a batch has not already been scheduled, note that one will be shortly
+                    if (!registrationTaskWaiting) {
+                        shouldSpawnRegistrationTask = true;
+                        registrationTaskWaiting = true;
+                    }
+                }
+            }
+
+            if (shouldSpawnRegistrationTask) {
+                // Register on the next context switch, which allows subsequent calls to be batched into a single socket transaction
+                thread.post(registrationTask);
+            }
+        }
+    }
+
+
+    /**
+     *  Determine if an endpoint has been registered
+     *
+     *  @param endpointID  The ID of the endpoint
+     *
+     *  @return True if registered
+     */
+    public synchronized boolean isRegistered(String endpointID) {
+        return registered.contains(endpointID);
+    }
+
+
+    /**
+     *  Forget the registrations made so far, because they belonged to a connection that has been replaced. Endpoints
+     *  queued afterwards are registered again.
+     */
+    public synchronized void clearRegistrations() {
+        registered.clear();
+    }
+
+
+    /**
+     *  Forget the registrations and drop any endpoints waiting for the next batch
+     */
+    public synchronized void reset() {
+        registrationQueue.clear();
+        registered.clear();
+        registrationTaskWaiting = false;
+        thread.cancel(registrationTask);
+    }
+
+
+    //** Private methods
+
+
+    private void registerQueued() {
+        final ArrayList<String> endpointIDsToRegister;
+
+        synchronized (this) {
+            // Build a list of the endpoints that have not already been taken care of by a previous batch, with no duplicates
+            LinkedHashSet<String> endpointIDs = new LinkedHashSet<String>();
+
+            for (String eachID : registrationQueue) {
+                if (!registered.contains(eachID)) {
+                    endpointIDs.add(eachID);
+                }
+            }
+
+            registrationQueue.clear();
+
+            // Now that the batch has been determined, any new registration should schedule another one
+            registrationTaskWaiting = false;
+            endpointIDsToRegister = new ArrayList<String>(endpointIDs);
+        }
+
+        if (endpointIDsToRegister.size() > 0) {
+            listener.registerPresence(endpointIDsToRegister, new RespokeSignalingProtocol.RegisterPresenceListener() {
+                @Override
+                public void onSuccess(JSONArray initialPresenceData) {
+                    // Indicate that registration was successful for each endpoint ID in the list
+                    synchronized (RespokePresenceRegistrar.this) {
+                        registered.addAll(endpointIDsToRegister);
+                    }
+
+                    if (null != initialPresenceData) {
+                        for (int ii = 0; ii < initialPresenceData.length(); ii++) {
+                            try {
+                                JSONObject eachEndpointData = initialPresenceData.getJSONObject(ii);
+                                String dataEndpointID = eachEndpointData.getString("endpointId");
+                                JSONObject connectionData = eachEndpointData.getJSONObject("connectionStates");
+                                Iterator<?> keys = connectionData.keys();
+
+                                while (keys.hasNext()) {
+                                    String eachConnectionID = (String) keys.next();
+                                    JSONObject presenceDict = connectionData.getJSONObject(eachConnectionID);
+                                    Object newPresence = presenceDict.get("type");
+
+                                    if (null != newPresence) {
+                                        listener.onConnectionPresence(dataEndpointID, eachConnectionID, newPresence);
+                                    }
+                                }
+                            } catch (JSONException e) {
+                                // Silently skip this problem
+                            }
+                        }
+                    }
+
+                    listener.onRegistered(endpointIDsToRegister);
+                }
+
+                @Override
+                public void onError(String errorMessage) {
+                    RespokePlatform.sharedInstance().getLogger().debug(TAG, "Error registering presence: " + errorMessage);
+                }
+            });
+        }
+    }
+}
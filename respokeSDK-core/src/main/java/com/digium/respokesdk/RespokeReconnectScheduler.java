@@ -0,0 +1,203 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import java.util.Random;
+
+/**
+ *  Schedules automatic reconnect attempts for a client. Attempts are delayed using capped exponential backoff with
+ *  full jitter, so that a large number of clients disconnected at the same moment do not all reconnect in lockstep.
+ *  All attempts run on a single worker thread owned by the scheduler rather than on a new thread per attempt.
+ */
+public class RespokeReconnectScheduler {
+
+    public static final long DEFAULT_BASE_INTERVAL = 500;  ///< The initial backoff step, in milliseconds
+    public static final long DEFAULT_MAX_INTERVAL = 30000;  ///< The upper bound for any single backoff delay, in milliseconds
+
+    private final Runnable reconnectAction;  ///< The action to perform when an attempt fires
+    private final long baseInterval;
+    private final long maxInterval;
+    private final Random random;
+    private RespokeScheduler workerThread;  ///< The thread on which attempts are run, created on demand
+    private int attemptCount;  ///< The number of attempts scheduled since the last reset
+    private boolean attemptPending;  ///< Indicates if an attempt is currently waiting to fire
+    private final Runnable attemptTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (RespokeReconnectScheduler.this) {
+                if (!attemptPending) {
+                    // The attempt was cancelled after it had already been dequeued
+                    return;
+                }
+
+                attemptPending = false;
+            }
+
+            reconnectAction.run();
+        }
+    };
+
+
+    /**
+     *  Compute the delay before the specified reconnect attempt. The delay is chosen uniformly between zero and
+     *  base * 2^attempt, with the upper limit capped to the maximum interval.
+     *
+     *  @param attempt       The zero-based number of the attempt
+     *  @param baseInterval  The initial backoff step, in milliseconds
+     *  @param maxInterval   The maximum delay, in milliseconds
+     *  @param random        The source of randomness for the jitter
+     *
+     *  @return The delay in milliseconds
+     */
+    public static long computeDelay(int attempt, long baseInterval, long maxInterval, Random random) {
+        long ceiling = maxInterval;
+
+        // Avoid overflowing the shift for large attempt counts
+        if (attempt < 31) {
+            ceiling = Math.min(maxInterval, baseInterval << attempt);
+        }
+
+        if (ceiling <= 0) {
+            return 0;
+        }
+
+        return (long) (random.nextDouble() * (ceiling + 1));
+    }
+
+
+    /**
+     *  Create a new scheduler using the default backoff intervals
+     *
+     *  @param action  The action to perform each time an attempt fires
+     */
+    public RespokeReconnectScheduler(Runnable action) {
+        this(action, DEFAULT_BASE_INTERVAL, DEFAULT_MAX_INTERVAL);
+    }
+
+
+    /**
+     *  Create a new scheduler
+     *
+     *  @param action        The action to perform each time an attempt fires
+     *  @param baseInterval  The initial backoff step, in milliseconds
+     *  @param maxInterval   The upper bound for any single backoff delay, in milliseconds
+     */
+    public RespokeReconnectScheduler(Runnable action, long baseInterval, long maxInterval) {
+        reconnectAction = action;
+        this.baseInterval = baseInterval;
+        this.maxInterval = maxInterval;
+        random = new Random();
+    }
+
+
+    /**
+     *  Schedule the next reconnect attempt. If an attempt is already pending, this does nothing.
+     *
+     *  @return The delay before the attempt fires in milliseconds, or -1 if an attempt was already pending
+     */
+    public synchronized long schedule() {
+        if (attemptPending) {
+            return -1;
+        }
+
+        long delay = computeDelay(attemptCount, baseInterval, maxInterval, random);
+        attemptCount++;
+        attemptPending = true;
+        getWorkerThread().postDelayed(attemptTask, delay);
+
+        return delay;
+    }
+
+
+    /**
+     *  Skip the remaining wait of a pending attempt and run it immediately, such as when network connectivity has
+     *  been restored. If no attempt is pending, this does nothing.
+     *
+     *  @return True if a pending attempt was moved up
+     */
+    public synchronized boolean reconnectNow() {
+        if (!attemptPending) {
+            return false;
+        }
+
+        workerThread.cancel(attemptTask);
+        workerThread.post(attemptTask);
+
+        return true;
+    }
+
+
+    /**
+     *  Cancel any pending attempt without resetting the backoff
+     */
+    public synchronized void cancel() {
+        attemptPending = false;
+
+        if (null != workerThread) {
+            workerThread.cancel(attemptTask);
+        }
+    }
+
+
+    /**
+     *  Cancel any pending attempt and reset the backoff, such as after a successful connection
+     */
+    public synchronized void reset() {
+        cancel();
+        attemptCount = 0;
+    }
+
+
+    /**
+     *  Cancel any pending attempt and stop the worker thread. The thread will be recreated if another attempt is
+     *  scheduled later.
+     */
+    public synchronized void shutdown() {
+        reset();
+
+        if (null != workerThread) {
+            workerThread.shutdown();
+            workerThread = null;
+        }
+    }
+
+
+    /**
+     *  Indicates if a reconnect attempt is waiting to fire
+     *
+     *  @return True if an attempt is pending
+     */
+    public synchronized boolean isPending() {
+        return attemptPending;
+    }
+
+
+    /**
+     *  Get the number of attempts scheduled since the last reset
+     *
+     *  @return The attempt count
+     */
+    public synchronized int getAttemptCount() {
+        return attemptCount;
+    }
+
+
+    //** Private methods
+
+
+    private RespokeScheduler getWorkerThread() {
+        if (null == workerThread) {
+            workerThread = RespokePlatform.sharedInstance().createWorker("RespokeReconnectThread");
+        }
+
+        return workerThread;
+    }
+}
@@ -0,0 +1,509 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import java.util.ArrayList;
+
+/**
+ *  A lightweight, mutable model of a session description used to adjust offers and answers before they are applied.
+ *  The description is split into lines once, and media sections are located by index into that line list, so any
+ *  number of changes can be made before serializing it back with a single pass. No regular expressions are used.
+ *
+ *  Codec priority lists name codecs by their rtpmap encoding name, optionally followed by a clock rate, such as
+ *  "opus", "ISAC/16000" or "H264". Names are matched without regard to case.
+ */
+public class RespokeSDP {
+
+    public static final String MEDIA_AUDIO = "audio";
+    public static final String MEDIA_VIDEO = "video";
+    private static final String LINE_SEPARATOR = "\r\n";
+
+    private final ArrayList<String> lines;  ///< Every line of the description, without line separators
+    private final ArrayList<MediaSection> mediaSections;
+    private int totalLength;  ///< The sum of the line lengths, used to size the serialization buffer
+
+
+    /**
+     *  One m= section of the description
+     */
+    public static class MediaSection {
+        public final String kind;  ///< The media type, such as "audio", "video" or "application"
+        int startLine;  ///< The index of the m= line
+        int endLine;  ///< The index one past the last line of the section
+
+
+        MediaSection(String kind, int startLine) {
+            this.kind = kind;
+            this.startLine = startLine;
+        }
+    }
+
+
+    /**
+     *  Parse a session description
+     *
+     *  @param description  The SDP text, with lines separated by CRLF or LF
+     *
+     *  @return The parsed description
+     */
+    public static RespokeSDP parse(String description) {
+        return new RespokeSDP(description);
+    }
+
+
+    private RespokeSDP(String description) {
+        lines = new ArrayList<String>(64);
+        mediaSections = new ArrayList<MediaSection>(4);
+
+        int length = description.length();
+        int lineStart = 0;
+
+        while (lineStart < length) {
+            int lineEnd = description.indexOf('\n', lineStart);
+            int nextStart;
+
+            if (lineEnd < 0) {
+                lineEnd = length;
+                nextStart = length;
+            } else {
+                nextStart = lineEnd + 1;
+            }
+
+            if ((lineEnd > lineStart) && (description.charAt(lineEnd - 1) == '\r')) {
+                lineEnd--;
+            }
+
+            if (lineEnd > lineStart) {
+                addLine(description.substring(lineStart, lineEnd));
+            }
+
+            lineStart = nextStart;
+        }
+
+        indexMediaSections();
+    }
+
+
+    /**
+     *  Get the number of media sections in the description
+     *
+     *  @return The number of m= sections
+     */
+    public int getMediaSectionCount() {
+        return mediaSections.size();
+    }
+
+
+    /**
+     *  Get a media section
+     *
+     *  @param index  The zero-based position of the section in the description
+     *
+     *  @return The media section
+     */
+    public MediaSection getMediaSection(int index) {
+        return mediaSections.get(index);
+    }
+
+
+    /**
+     *  Get the payload types listed on the m= line of a media section, in order of preference
+     *
+     *  @param section  The media section
+     *
+     *  @return The payload types
+     */
+    public ArrayList<String> getPayloadTypes(MediaSection section) {
+        String mLine = lines.get(section.startLine);
+        ArrayList<String> payloadTypes = new ArrayList<String>();
+
+        // Format is: m=<media> <port> <proto> <fmt> ...
+        int tokenIndex = 0;
+        int tokenStart = 0;
+        int length = mLine.length();
+
+        while (tokenStart < length) {
+            int tokenEnd = mLine.indexOf(' ', tokenStart);
+            if (tokenEnd < 0) {
+                tokenEnd = length;
+            }
+
+            if ((tokenIndex >= 3) && (tokenEnd > tokenStart)) {
+                payloadTypes.add(mLine.substring(tokenStart, tokenEnd));
+            }
+
+            tokenIndex++;
+            tokenStart = tokenEnd + 1;
+        }
+
+        return payloadTypes;
+    }
+
+
+    /**
+     *  Find the encoding of a payload type from its rtpmap attribute
+     *
+     *  @param section      The media section containing the payload type
+     *  @param payloadType  The payload type number
+     *
+     *  @return The encoding, such as "opus/48000/2", or null if the payload type has no rtpmap
+     */
+    public String getEncoding(MediaSection section, String payloadType) {
+        int lineIndex = findAttribute(section, "a=rtpmap:", payloadType);
+
+        if (lineIndex >= 0) {
+            String line = lines.get(lineIndex);
+            return line.substring("a=rtpmap:".length() + payloadType.length() + 1);
+        }
+
+        return null;
+    }
+
+
+    /**
+     *  Reorder the payload types of every media section of a kind so that codecs earlier in the priority list are
+     *  preferred. Payload types that do not match any entry keep their relative order after the matching ones.
+     *
+     *  @param kind      The media type to change, such as MEDIA_AUDIO or MEDIA_VIDEO
+     *  @param priority  The codecs to prefer, most preferred first
+     */
+    public void preferCodecs(String kind, String[] priority) {
+        if ((null == priority) || (0 == priority.length)) {
+            return;
+        }
+
+        for (MediaSection eachSection : mediaSections) {
+            if (!eachSection.kind.equals(kind)) {
+                continue;
+            }
+
+            ArrayList<String> payloadTypes = getPayloadTypes(eachSection);
+            ArrayList<String> ordered = new ArrayList<String>(payloadTypes.size());
+
+            for (String eachCodec : priority) {
+                for (String eachPayloadType : payloadTypes) {
+                    if (!ordered.contains(eachPayloadType) && encodingMatches(getEncoding(eachSection, eachPayloadType), eachCodec)) {
+                        ordered.add(eachPayloadType);
+                    }
+                }
+            }
+
+            if (ordered.isEmpty()) {
+                continue;
+            }
+
+            for (String eachPayloadType : payloadTypes) {
+                if (!ordered.contains(eachPayloadType)) {
+                    ordered.add(eachPayloadType);
+                }
+            }
+
+            setPayloadTypes(eachSection, ordered);
+        }
+    }
+
+
+    /**
+     *  Set an application-specific bandwidth limit (b=AS) for the whole session, replacing any existing limit
+     *
+     *  @param kbps  The limit in kilobits per second
+     */
+    public void setSessionBandwidth(int kbps) {
+        int sessionEnd = mediaSections.isEmpty() ? lines.size() : mediaSections.get(0).startLine;
+        String bandwidthLine = "b=AS:" + kbps;
+
+        // Session-level lines are ordered v= o= s= i= u= e= p= c= b= t=, so the limit goes before the first t= line
+        int insertAt = sessionEnd;
+        for (int ii = 0; ii < sessionEnd; ii++) {
+            String line = lines.get(ii);
+
+            if (line.startsWith("b=AS:")) {
+                setLine(ii, bandwidthLine);
+                return;
+            } else if (line.startsWith("t=") && (insertAt == sessionEnd)) {
+                insertAt = ii;
+            }
+        }
+
+        insertLine(insertAt, bandwidthLine);
+    }
+
+
+    /**
+     *  Set an application-specific bandwidth limit (b=AS) on every media section of a kind, replacing any existing
+     *  limit
+     *
+     *  @param kind  The media type to change, such as MEDIA_AUDIO or MEDIA_VIDEO
+     *  @param kbps  The limit in kilobits per second
+     */
+    public void setMediaBandwidth(String kind, int kbps) {
+        String bandwidthLine = "b=AS:" + kbps;
+
+        for (int sectionIndex = 0; sectionIndex < mediaSections.size(); sectionIndex++) {
+            MediaSection section = mediaSections.get(sectionIndex);
+
+            if (!section.kind.equals(kind)) {
+                continue;
+            }
+
+            // Media-level lines are ordered m= i= c= b=, so the limit goes after any i= and c= lines
+            int insertAt = section.startLine + 1;
+            boolean replaced = false;
+
+            for (int ii = section.startLine + 1; ii < section.endLine; ii++) {
+                String line = lines.get(ii);
+
+                if (line.startsWith("b=AS:")) {
+                    setLine(ii, bandwidthLine);
+                    replaced = true;
+                    break;
+                } else if (line.startsWith("i=") || line.startsWith("c=")) {
+                    insertAt = ii + 1;
+                }
+            }
+
+            if (!replaced) {
+                insertLine(insertAt, bandwidthLine);
+            }
+        }
+    }
+
+
+    /**
+     *  Set a format parameter (a=fmtp) for every payload type of a codec, such as maxaveragebitrate for Opus. An
+     *  existing value for the parameter is replaced and other parameters are kept. If the payload type has no fmtp
+     *  line, one is added after its rtpmap line.
+     *
+     *  @param kind   The media type containing the codec, such as MEDIA_AUDIO
+     *  @param codec  The codec, named as in a priority list
+     *  @param name   The parameter name
+     *  @param value  The parameter value
+     */
+    public void setFormatParameter(String kind, String codec, String name, String value) {
+        for (int sectionIndex = 0; sectionIndex < mediaSections.size(); sectionIndex++) {
+            MediaSection section = mediaSections.get(sectionIndex);
+
+            if (!section.kind.equals(kind)) {
+                continue;
+            }
+
+            for (String eachPayloadType : getPayloadTypes(section)) {
+                if (!encodingMatches(getEncoding(section, eachPayloadType), codec)) {
+                    continue;
+                }
+
+                int fmtpIndex = findAttribute(section, "a=fmtp:", eachPayloadType);
+
+                if (fmtpIndex >= 0) {
+                    String line = lines.get(fmtpIndex);
+                    int paramsStart = "a=fmtp:".length() + eachPayloadType.length() + 1;
+                    setLine(fmtpIndex, line.substring(0, paramsStart) + replaceParameter(line.substring(paramsStart), name, value));
+                } else {
+                    int rtpmapIndex = findAttribute(section, "a=rtpmap:", eachPayloadType);
+                    insertLine(rtpmapIndex + 1, "a=fmtp:" + eachPayloadType + " " + name + "=" + value);
+                }
+            }
+        }
+    }
+
+
+    /**
+     *  Serialize the description back to SDP text
+     *
+     *  @return The SDP, with every line terminated by CRLF
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(totalLength + (lines.size() * LINE_SEPARATOR.length()));
+
+        for (String eachLine : lines) {
+            builder.append(eachLine).append(LINE_SEPARATOR);
+        }
+
+        return builder.toString();
+    }
+
+
+    //** Private methods
+
+
+    private void addLine(String line) {
+        lines.add(line);
+        totalLength += line.length();
+    }
+
+
+    /**
+     *  Insert a line, shifting the media sections that follow it
+     */
+    private void insertLine(int index, String line) {
+        lines.add(index, line);
+        totalLength += line.length();
+
+        for (MediaSection eachSection : mediaSections) {
+            if (eachSection.startLine >= index) {
+                eachSection.startLine++;
+            }
+
+            if (eachSection.endLine >= index) {
+                eachSection.endLine++;
+            }
+        }
+    }
+
+
+    private void setLine(int index, String line) {
+        totalLength += line.length() - lines.get(index).length();
+        lines.set(index, line);
+    }
+
+
+    private void indexMediaSections() {
+        mediaSections.clear();
+        MediaSection current = null;
+
+        for (int ii = 0; ii < lines.size(); ii++) {
+            String line = lines.get(ii);
+
+            if (line.startsWith("m=")) {
+                if (null != current) {
+                    current.endLine = ii;
+                }
+
+                int kindEnd = line.indexOf(' ');
+                current = new MediaSection(line.substring(2, (kindEnd > 0) ? kindEnd : line.length()), ii);
+                mediaSections.add(current);
+            }
+        }
+
+        if (null != current) {
+            current.endLine = lines.size();
+        }
+    }
+
+
+    private void setPayloadTypes(MediaSection section, ArrayList<String> payloadTypes) {
+        String mLine = lines.get(section.startLine);
+
+        // Keep the first three tokens: the media, port and protocol
+        int prefixEnd = 0;
+        for (int ii = 0; (ii < 3) && (prefixEnd >= 0); ii++) {
+            prefixEnd = mLine.indexOf(' ', prefixEnd + ((ii > 0) ? 1 : 0));
+        }
+
+        if (prefixEnd < 0) {
+            return;
+        }
+
+        StringBuilder builder = new StringBuilder(mLine.length());
+        builder.append(mLine, 0, prefixEnd);
+
+        for (String eachPayloadType : payloadTypes) {
+            builder.append(' ').append(eachPayloadType);
+        }
+
+        setLine(section.startLine, builder.toString());
+    }
+
+
+    /**
+     *  Find an attribute line of the form "<prefix><payloadType> ..." within a media section
+     */
+    private int findAttribute(MediaSection section, String prefix, String payloadType) {
+        for (int ii = section.startLine + 1; ii < section.endLine; ii++) {
+            String line = lines.get(ii);
+            int payloadEnd = prefix.length() + payloadType.length();
+
+            if (line.startsWith(prefix) && (line.length() > payloadEnd) && (line.charAt(payloadEnd) == ' ') && line.startsWith(payloadType, prefix.length())) {
+                return ii;
+            }
+        }
+
+        return -1;
+    }
+
+
+    /**
+     *  Set one parameter in a semicolon-separated fmtp parameter list, such as "minptime=10; useinbandfec=1"
+     */
+    private static String replaceParameter(String parameters, String name, String value) {
+        StringBuilder builder = new StringBuilder(parameters.length() + name.length() + value.length() + 2);
+        boolean found = false;
+        int start = 0;
+
+        while (start <= parameters.length()) {
+            int end = parameters.indexOf(';', start);
+            if (end < 0) {
+                end = parameters.length();
+            }
+
+            String parameter = parameters.substring(start, end).trim();
+
+            if (parameter.length() > 0) {
+                if (builder.length() > 0) {
+                    builder.append(';');
+                }
+
+                int equals = parameter.indexOf('=');
+                String parameterName = (equals >= 0) ? parameter.substring(0, equals).trim() : parameter;
+
+                if (parameterName.equalsIgnoreCase(name)) {
+                    builder.append(name).append('=').append(value);
+                    found = true;
+                } else {
+                    builder.append(parameter);
+                }
+            }
+
+            start = end + 1;
+        }
+
+        if (!found) {
+            if (builder.length() > 0) {
+                builder.append(';');
+            }
+
+            builder.append(name).append('=').append(value);
+        }
+
+        return builder.toString();
+    }
+
+
+    /**
+     *  Check if an rtpmap encoding such as "ISAC/16000" or "opus/48000/2" matches a codec from a priority list
+     */
+    private static boolean encodingMatches(String encoding, String codec) {
+        if (null == encoding) {
+            return false;
+        }
+
+        int nameEnd = encoding.indexOf('/');
+        if (nameEnd < 0) {
+            nameEnd = encoding.length();
+        }
+
+        int codecNameEnd = codec.indexOf('/');
+
+        if (codecNameEnd < 0) {
+            // Only the name was given, so any clock rate matches
+            return (nameEnd == codec.length()) && encoding.regionMatches(true, 0, codec, 0, nameEnd);
+        }
+
+        // Match the name and clock rate, ignoring any channel count
+        int clockEnd = encoding.indexOf('/', nameEnd + 1);
+        if (clockEnd < 0) {
+            clockEnd = encoding.length();
+        }
+
+        return (clockEnd == codec.length()) && encoding.regionMatches(true, 0, codec, 0, clockEnd);
+    }
+}
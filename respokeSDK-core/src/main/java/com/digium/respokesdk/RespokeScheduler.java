@@ -0,0 +1,56 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+/**
+ *  Runs tasks one at a time, in the order they become due, on a single thread. The platform provides one for the
+ *  thread application callbacks are delivered on and creates others as worker threads.
+ */
+public interface RespokeScheduler {
+
+    /**
+     *  Run a task as soon as possible
+     *
+     *  @param task  The task to run
+     */
+    void post(Runnable task);
+
+
+    /**
+     *  Run a task after a delay
+     *
+     *  @param task         The task to run
+     *  @param delayMillis  The delay, in milliseconds
+     */
+    void postDelayed(Runnable task, long delayMillis);
+
+
+    /**
+     *  Remove every pending run of a task. A run that has already started is not interrupted.
+     *
+     *  @param task  The task to remove
+     */
+    void cancel(Runnable task);
+
+
+    /**
+     *  Remove every pending task, leaving the scheduler ready to run new ones
+     */
+    void cancelAll();
+
+
+    /**
+     *  Remove every pending task and stop the thread. Tasks posted afterwards are ignored. This does nothing for the
+     *  main thread.
+     */
+    void shutdown();
+
+}
@@ -0,0 +1,434 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+/**
+ *  A bounded queue in front of a message transport. Messages are passed straight to the transport while it has less
+ *  than the high watermark buffered, and are otherwise copied into the queue until drain finds room for them.
+ *
+ *  The queue is writable until the queued bytes plus the transport's buffered amount reach the high watermark, and
+ *  becomes writable again once they fall to the low watermark, so that a producer watching for the change does not
+ *  flip between the two states on every message. A message that does not fit within the queue's capacity is handled
+ *  according to the full policy.
+ *
+ *  Every method may be called from any thread. Completions and writability changes are reported on the thread that
+ *  caused them, after the queue's lock has been released.
+ */
+public class RespokeSendQueue {
+
+    public static final int POLICY_FAIL = 0;  ///< Reject a message that does not fit
+    public static final int POLICY_DROP_OLDEST = 1;  ///< Discard the oldest queued messages to make room, reporting each as failed
+    public static final int POLICY_BLOCK = 2;  ///< Wait until there is room, sending queued messages as the transport drains. Never use this on the UI thread.
+
+    public static final long DEFAULT_LOW_WATERMARK = 256 * 1024;  ///< The default level at which the queue becomes writable again, in bytes
+    public static final long DEFAULT_HIGH_WATERMARK = 1024 * 1024;  ///< The default level at which the queue stops being writable, in bytes
+    public static final long DEFAULT_CAPACITY = 4 * 1024 * 1024;  ///< The default number of bytes the queue will hold
+    public static final long POLL_INTERVAL = 20;  ///< How often to drain a backed-up queue, in milliseconds, since data channels do not say when their buffers drain
+
+    public static final String ERROR_QUEUE_FULL = "The send queue is full";
+    public static final String ERROR_DROPPED = "The message was dropped to make room for newer messages";
+
+    private final Sink sink;
+    private final RespokeBufferPool pool;
+    private final ArrayDeque<Entry> entries;
+    private Listener listener;
+    private int policy;
+    private long lowWatermark;
+    private long highWatermark;
+    private long capacity;
+    private long queuedBytes;
+    private boolean writable;
+    private String closedReason;  ///< The error reported for new messages once the queue is closed, or null while it is open
+
+
+    /**
+     *  The transport messages are sent on
+     */
+    public interface Sink {
+
+        /**
+         *  Send a message. The buffer is only valid until this method returns.
+         *
+         *  @param data    The message, between its position and limit
+         *  @param binary  True for binary data, false for UTF-8 text
+         *
+         *  @return True if the message was accepted by the transport
+         */
+        boolean send(ByteBuffer data, boolean binary);
+
+
+        /**
+         *  Get the number of bytes the transport has accepted but not yet sent
+         *
+         *  @return The number of bytes
+         */
+        long getBufferedAmount();
+
+    }
+
+
+    /**
+     *  Receives the outcome of a single message
+     */
+    public interface Completion {
+
+        void onSuccess();
+
+
+        void onError(String errorMessage);
+
+    }
+
+
+    /**
+     *  Receives notifications when the queue changes between writable and not writable
+     */
+    public interface Listener {
+
+        /**
+         *  The queue has crossed one of its watermarks
+         *
+         *  @param writable  True if the queue has fallen to the low watermark, false if it has reached the high watermark
+         */
+        void onWritabilityChanged(boolean writable);
+
+    }
+
+
+    private static class Entry {
+        final ByteBuffer data;
+        final boolean binary;
+        final Completion completion;
+        String errorMessage;  ///< Set once the entry has been sent, or null if it was sent successfully
+
+
+        Entry(ByteBuffer data, boolean binary, Completion completion) {
+            this.data = data;
+            this.binary = binary;
+            this.completion = completion;
+        }
+    }
+
+
+    /**
+     *  Create a queue with the default watermarks and capacity that fails messages when it is full
+     *
+     *  @param sink  The transport to send messages on
+     *  @param pool  Provides the buffers messages are copied into while queued
+     */
+    public RespokeSendQueue(Sink sink, RespokeBufferPool pool) {
+        this.sink = sink;
+        this.pool = pool;
+        entries = new ArrayDeque<Entry>();
+        writable = true;
+        configure(POLICY_FAIL, DEFAULT_LOW_WATERMARK, DEFAULT_HIGH_WATERMARK, DEFAULT_CAPACITY);
+    }
+
+
+    /**
+     *  Change the limits of the queue. Messages already queued are kept even if they exceed the new capacity.
+     *
+     *  @param policy         What to do with a message that does not fit: POLICY_FAIL, POLICY_DROP_OLDEST or POLICY_BLOCK
+     *  @param lowWatermark   The level at which the queue becomes writable again, in bytes
+     *  @param highWatermark  The level at which the queue stops being writable and messages start to be queued, in bytes
+     *  @param capacity       The most bytes the queue will hold
+     */
+    public synchronized void configure(int policy, long lowWatermark, long highWatermark, long capacity) {
+        if ((policy < POLICY_FAIL) || (policy > POLICY_BLOCK) || (lowWatermark < 0) || (highWatermark < lowWatermark) || (capacity <= 0)) {
+            throw new IllegalArgumentException("Invalid send queue limits");
+        }
+
+        this.policy = policy;
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+        this.capacity = capacity;
+        notifyAll();
+    }
+
+
+    /**
+     *  Set a receiver for the Listener interface
+     *
+     *  @param listener  The new receiver, or null
+     */
+    public synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+
+    /**
+     *  Send a message, or queue it if the transport is backed up. The caller may reuse the buffer once this returns.
+     *
+     *  @param data        The message, between its position and limit
+     *  @param binary      True for binary data, false for UTF-8 text
+     *  @param completion  Receives the outcome, or null
+     *
+     *  @return True if the message was sent or queued, false if it was rejected
+     */
+    public boolean offer(ByteBuffer data, boolean binary, Completion completion) {
+        int length = data.remaining();
+        ArrayList<Entry> dropped = null;
+        ArrayList<Entry> sent = null;
+        String errorMessage = null;
+        boolean sentNow = false;
+        boolean sendSucceeded = false;
+        Listener changedListener;
+        boolean nowWritable;
+
+        synchronized (this) {
+            if (null != closedReason) {
+                errorMessage = closedReason;
+            } else if (entries.isEmpty() && (sink.getBufferedAmount() < highWatermark)) {
+                sentNow = true;
+                sendSucceeded = sink.send(data, binary);
+            } else if (length > capacity) {
+                errorMessage = ERROR_QUEUE_FULL;
+            } else {
+                while ((null == errorMessage) && ((queuedBytes + length) > capacity)) {
+                    if (POLICY_DROP_OLDEST == policy) {
+                        Entry oldest = entries.poll();
+                        queuedBytes -= oldest.data.remaining();
+
+                        if (null == dropped) {
+                            dropped = new ArrayList<Entry>();
+                        }
+
+                        dropped.add(oldest);
+                    } else if (POLICY_BLOCK == policy) {
+                        // Poll the transport while waiting rather than relying on drain, since the thread that calls
+                        // drain may be the one blocked here
+                        try {
+                            wait(POLL_INTERVAL);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            errorMessage = "Interrupted while waiting for room in the send queue";
+                        }
+
+                        if (null != closedReason) {
+                            errorMessage = closedReason;
+                        } else if (null == errorMessage) {
+                            if (null == sent) {
+                                sent = new ArrayList<Entry>();
+                            }
+
+                            sendQueued(sent);
+                        }
+                    } else {
+                        errorMessage = ERROR_QUEUE_FULL;
+                    }
+                }
+
+                if (null == errorMessage) {
+                    ByteBuffer copy = pool.acquire(length);
+                    copy.put(data.duplicate());
+                    copy.flip();
+                    entries.add(new Entry(copy, binary, completion));
+                    queuedBytes += length;
+
+                    if (entries.size() == 1) {
+                        // The transport may have drained while this thread waited for room
+                        if (null == sent) {
+                            sent = new ArrayList<Entry>();
+                        }
+
+                        sendQueued(sent);
+                    }
+                }
+            }
+
+            changedListener = updateWritability() ? listener : null;
+            nowWritable = writable;
+        }
+
+        if (null != dropped) {
+            for (Entry each : dropped) {
+                pool.release(each.data);
+                reportError(each.completion, ERROR_DROPPED);
+            }
+        }
+
+        if (null != sent) {
+            reportResults(sent);
+        }
+
+        if (sentNow) {
+            if (sendSucceeded) {
+                reportSuccess(completion);
+            } else {
+                reportError(completion, "Error sending message");
+            }
+        } else if (null != errorMessage) {
+            reportError(completion, errorMessage);
+        }
+
+        if (null != changedListener) {
+            changedListener.onWritabilityChanged(nowWritable);
+        }
+
+        return sentNow ? sendSucceeded : (null == errorMessage);
+    }
+
+
+    /**
+     *  Send as many queued messages as the transport has room for
+     *
+     *  @return True if drain should be called again later, because messages are still queued or the queue is waiting
+     *          to become writable again
+     */
+    public boolean drain() {
+        ArrayList<Entry> results = new ArrayList<Entry>();
+        Listener changedListener;
+        boolean nowWritable;
+        boolean pending;
+
+        synchronized (this) {
+            sendQueued(results);
+            changedListener = updateWritability() ? listener : null;
+            nowWritable = writable;
+            pending = !entries.isEmpty() || !writable;
+        }
+
+        reportResults(results);
+
+        if (null != changedListener) {
+            changedListener.onWritabilityChanged(nowWritable);
+        }
+
+        return pending;
+    }
+
+
+    /**
+     *  Determine if drain needs to be called, because messages are queued or the queue is waiting to become writable
+     *
+     *  @return True if drain should be called
+     */
+    public synchronized boolean needsDrain() {
+        return !entries.isEmpty() || !writable;
+    }
+
+
+    /**
+     *  Determine if messages can be sent without the queue growing past the high watermark
+     *
+     *  @return True if the queue is writable
+     */
+    public synchronized boolean isWritable() {
+        return writable;
+    }
+
+
+    /**
+     *  Get the number of bytes waiting in the queue, not counting those buffered by the transport
+     *
+     *  @return The number of bytes
+     */
+    public synchronized long getQueuedBytes() {
+        return queuedBytes;
+    }
+
+
+    /**
+     *  Fail every queued message and any later ones, and release threads waiting for room
+     *
+     *  @param reason  The error to report
+     */
+    public void close(String reason) {
+        ArrayList<Entry> failed;
+
+        synchronized (this) {
+            closedReason = reason;
+            failed = new ArrayList<Entry>(entries);
+            entries.clear();
+            queuedBytes = 0;
+            notifyAll();
+        }
+
+        for (Entry each : failed) {
+            pool.release(each.data);
+            reportError(each.completion, reason);
+        }
+    }
+
+
+    //** Private methods
+
+
+    /**
+     *  Send queued messages while the transport has room. Must be called with the lock held.
+     *
+     *  @param results  Collects the entries that were sent, to be reported once the lock is released
+     */
+    private void sendQueued(ArrayList<Entry> results) {
+        boolean sentAny = false;
+
+        while (!entries.isEmpty() && (sink.getBufferedAmount() < highWatermark)) {
+            Entry entry = entries.poll();
+            queuedBytes -= entry.data.remaining();
+
+            if (!sink.send(entry.data, entry.binary)) {
+                entry.errorMessage = "Error sending message";
+            }
+
+            pool.release(entry.data);
+            results.add(entry);
+            sentAny = true;
+        }
+
+        if (sentAny) {
+            notifyAll();
+        }
+    }
+
+
+    private boolean updateWritability() {
+        long level = queuedBytes + sink.getBufferedAmount();
+
+        if (writable && (level >= highWatermark)) {
+            writable = false;
+            return true;
+        } else if (!writable && (level <= lowWatermark)) {
+            writable = true;
+            return true;
+        }
+
+        return false;
+    }
+
+
+    private static void reportResults(ArrayList<Entry> results) {
+        for (Entry each : results) {
+            if (null == each.errorMessage) {
+                reportSuccess(each.completion);
+            } else {
+                reportError(each.completion, each.errorMessage);
+            }
+        }
+    }
+
+
+    private static void reportSuccess(Completion completion) {
+        if (null != completion) {
+            completion.onSuccess();
+        }
+    }
+
+
+    private static void reportError(Completion completion, String errorMessage) {
+        if (null != completion) {
+            completion.onError(errorMessage);
+        }
+    }
+}
@@ -0,0 +1,371 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ *  Records how requests sent over the signaling socket behave: how long each one waits in the worker queue before
+ *  it is emitted, how long the server takes to acknowledge it, and how often it times out or is rate limited. The
+ *  figures are kept per route (the URL path of the request, with IDs replaced by ID_SEGMENT) and can be read at any
+ *  time with getSnapshot, or delivered periodically to a listener.
+ *
+ *  One instance is owned by each client and carried across reconnects, so the figures cover the life of the client
+ *  rather than of a single socket.
+ */
+public class RespokeSignalingMetrics {
+
+    public static final long[] LATENCY_BUCKETS = {10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000};  ///< The upper bounds of the ack latency histogram buckets, in milliseconds. A final bucket counts anything slower.
+    public static final int MAX_ROUTES = 64;  ///< The most routes tracked individually; requests to any further routes are counted under OTHER_ROUTE
+    public static final String OTHER_ROUTE = "other";
+    public static final String ID_SEGMENT = "{id}";  ///< Stands in for the IDs in a route, such as "/v1/channels/{id}/publish/"
+
+    private final HashMap<String, RouteStats> routes;
+    private int queueDepth;  ///< The number of requests waiting in the worker queue
+    private int maxQueueDepth;  ///< The deepest the worker queue has been
+    private long lastInboundTime;  ///< When anything was last received from the server, or zero if nothing has been
+    private WeakReference<Listener> listenerReference;
+    private RespokeScheduler reportThread;  ///< The UI thread, on which reports are delivered
+    private long reportInterval;
+    private final Runnable reportTask = new Runnable() {
+        @Override
+        public void run() {
+            Listener listener = (null != listenerReference) ? listenerReference.get() : null;
+
+            if (null != listener) {
+                listener.onSignalingMetrics(getSnapshot(), RespokeSignalingMetrics.this);
+                reportThread.postDelayed(this, reportInterval);
+            }
+        }
+    };
+
+
+    /**
+     *  A listener interface to receive periodic snapshots of the signaling metrics
+     */
+    public interface Listener {
+
+        /**
+         *  Receive the current signaling metrics. This is called on the UI thread.
+         *
+         *  @param snapshot  A copy of the metrics at the time of the report
+         *  @param sender    The metrics instance that produced the report
+         */
+        void onSignalingMetrics(Snapshot snapshot, RespokeSignalingMetrics sender);
+
+    }
+
+
+    /**
+     *  A copy of the metrics for a single route
+     */
+    public static class RouteSnapshot {
+        public final String route;  ///< The URL path of the requests
+        public final long requestCount;  ///< The number of requests emitted, including rate-limited retries
+        public final long errorCount;  ///< The number of acknowledgements that reported an error
+        public final long timeoutCount;  ///< The number of requests that were not acknowledged in time
+        public final long rateLimitedCount;  ///< The number of requests rejected with a 429 status
+        public final long totalQueueWait;  ///< The total time requests spent waiting in the worker queue, in milliseconds
+        public final long maxQueueWait;  ///< The longest time a request spent waiting in the worker queue, in milliseconds
+        public final long ackCount;  ///< The number of requests acknowledged by the server
+        public final long totalAckLatency;  ///< The total time spent waiting for acknowledgements, in milliseconds
+        public final long maxAckLatency;  ///< The longest time spent waiting for an acknowledgement, in milliseconds
+        private final long[] ackLatencyBuckets;
+
+
+        RouteSnapshot(String route, RouteStats stats) {
+            this.route = route;
+            requestCount = stats.requestCount;
+            errorCount = stats.errorCount;
+            timeoutCount = stats.timeoutCount;
+            rateLimitedCount = stats.rateLimitedCount;
+            totalQueueWait = stats.totalQueueWait;
+            maxQueueWait = stats.maxQueueWait;
+            ackCount = stats.ackCount;
+            totalAckLatency = stats.totalAckLatency;
+            maxAckLatency = stats.maxAckLatency;
+            ackLatencyBuckets = stats.ackLatencyBuckets.clone();
+        }
+
+
+        /**
+         *  Get the number of acknowledgements in each latency bucket. The bucket at index i counts latencies no greater
+         *  than LATENCY_BUCKETS[i], and the final bucket counts anything slower.
+         *
+         *  @return A copy of the histogram counts
+         */
+        public long[] getAckLatencyBuckets() {
+            return ackLatencyBuckets.clone();
+        }
+
+
+        /**
+         *  Get the mean time requests waited in the worker queue
+         *
+         *  @return The average wait in milliseconds, or zero if no requests were emitted
+         */
+        public long getAverageQueueWait() {
+            return (requestCount > 0) ? (totalQueueWait / requestCount) : 0;
+        }
+
+
+        /**
+         *  Get the mean time spent waiting for acknowledgements
+         *
+         *  @return The average latency in milliseconds, or zero if no requests were acknowledged
+         */
+        public long getAverageAckLatency() {
+            return (ackCount > 0) ? (totalAckLatency / ackCount) : 0;
+        }
+
+
+        /**
+         *  Estimate a percentile of the ack latency from the histogram. The result is the upper bound of the bucket
+         *  containing the percentile, or the maximum observed latency if it falls in the final bucket.
+         *
+         *  @param percentile  The percentile to estimate, between 0 and 100
+         *
+         *  @return The estimated latency in milliseconds, or zero if no requests were acknowledged
+         */
+        public long getAckLatencyPercentile(double percentile) {
+            if (0 == ackCount) {
+                return 0;
+            }
+
+            long target = (long) Math.ceil(ackCount * (percentile / 100.0));
+            long seen = 0;
+
+            for (int ii = 0; ii < LATENCY_BUCKETS.length; ii++) {
+                seen += ackLatencyBuckets[ii];
+
+                if (seen >= target) {
+                    return LATENCY_BUCKETS[ii];
+                }
+            }
+
+            return maxAckLatency;
+        }
+    }
+
+
+    /**
+     *  A copy of all of the signaling metrics at a point in time
+     */
+    public static class Snapshot {
+        public final int queueDepth;  ///< The number of requests waiting in the worker queue
+        public final int maxQueueDepth;  ///< The deepest the worker queue has been
+        public final long millisSinceLastInbound;  ///< How long since anything was received from the server, or -1 if nothing has been. A value that keeps growing while connected suggests the socket has silently died.
+        public final Map<String, RouteSnapshot> routes;  ///< The metrics for each route, keyed by route as given by routeForURL
+
+
+        Snapshot(int queueDepth, int maxQueueDepth, long millisSinceLastInbound, Map<String, RouteSnapshot> routes) {
+            this.queueDepth = queueDepth;
+            this.maxQueueDepth = maxQueueDepth;
+            this.millisSinceLastInbound = millisSinceLastInbound;
+            this.routes = Collections.unmodifiableMap(routes);
+        }
+    }
+
+
+    /**
+     *  The running totals for a single route
+     */
+    private static class RouteStats {
+        long requestCount;
+        long errorCount;
+        long timeoutCount;
+        long rateLimitedCount;
+        long totalQueueWait;
+        long maxQueueWait;
+        long ackCount;
+        long totalAckLatency;
+        long maxAckLatency;
+        final long[] ackLatencyBuckets = new long[LATENCY_BUCKETS.length + 1];
+    }
+
+
+    public RespokeSignalingMetrics() {
+        routes = new HashMap<String, RouteStats>();
+    }
+
+
+    /**
+     *  Set a receiver for periodic metrics reports. Reports stop when the listener is garbage collected or replaced
+     *  with null.
+     *
+     *  @param listener        The receiver for reports, or null to stop reporting
+     *  @param reportInterval  The time between reports, in milliseconds
+     */
+    public void setListener(Listener listener, long reportInterval) {
+        if (null == reportThread) {
+            reportThread = RespokePlatform.sharedInstance().getMainThread();
+        }
+
+        reportThread.cancel(reportTask);
+        listenerReference = new WeakReference<Listener>(listener);
+        this.reportInterval = reportInterval;
+
+        if (null != listener) {
+            reportThread.postDelayed(reportTask, reportInterval);
+        }
+    }
+
+
+    /**
+     *  Take a copy of the current metrics
+     *
+     *  @return The snapshot
+     */
+    public synchronized Snapshot getSnapshot() {
+        HashMap<String, RouteSnapshot> routeSnapshots = new HashMap<String, RouteSnapshot>();
+
+        for (Map.Entry<String, RouteStats> eachEntry : routes.entrySet()) {
+            routeSnapshots.put(eachEntry.getKey(), new RouteSnapshot(eachEntry.getKey(), eachEntry.getValue()));
+        }
+
+        long sinceInbound = (0 == lastInboundTime) ? -1 : (RespokePlatform.sharedInstance().elapsedRealtime() - lastInboundTime);
+
+        return new Snapshot(queueDepth, maxQueueDepth, sinceInbound, routeSnapshots);
+    }
+
+
+    /**
+     *  Discard all of the recorded metrics
+     */
+    public synchronized void reset() {
+        routes.clear();
+        queueDepth = 0;
+        maxQueueDepth = 0;
+        lastInboundTime = 0;
+    }
+
+
+    /**
+     *  Convert a request URL into the route it is recorded under by removing any query string and replacing IDs with
+     *  ID_SEGMENT. The Respoke API alternates collection names and IDs after the version, as in
+     *  "/v1/connections/{id}/push-token/{id}", so every second segment after the collection name is an ID.
+     *
+     *  @param url  The URL of the request
+     *
+     *  @return The route
+     */
+    public static String routeForURL(String url) {
+        if (null == url) {
+            return OTHER_ROUTE;
+        }
+
+        int queryStart = url.indexOf('?');
+        String path = (queryStart >= 0) ? url.substring(0, queryStart) : url;
+        String[] segments = path.split("/", -1);
+        StringBuilder route = new StringBuilder(path.length());
+
+        // With the leading slash, segments[1] is the version and segments[2] the collection, so IDs are at 3, 5, ...
+        for (int ii = 0; ii < segments.length; ii++) {
+            if (ii > 0) {
+                route.append('/');
+            }
+
+            boolean isID = (ii >= 3) && (ii % 2 == 1) && (segments[ii].length() > 0);
+            route.append(isID ? ID_SEGMENT : segments[ii]);
+        }
+
+        return route.toString();
+    }
+
+
+    // The following methods are used internally by the signaling channel and should not be called directly by your client application
+
+
+    public synchronized void requestQueued() {
+        queueDepth++;
+        maxQueueDepth = Math.max(maxQueueDepth, queueDepth);
+    }
+
+
+    public synchronized void requestDequeued(String route, long queueWait) {
+        queueDepth = Math.max(0, queueDepth - 1);
+
+        RouteStats stats = statsForRoute(route);
+        stats.requestCount++;
+        stats.totalQueueWait += queueWait;
+        stats.maxQueueWait = Math.max(stats.maxQueueWait, queueWait);
+    }
+
+
+    public synchronized void requestAcknowledged(String route, long latency, boolean error, boolean rateLimited) {
+        lastInboundTime = RespokePlatform.sharedInstance().elapsedRealtime();
+
+        RouteStats stats = statsForRoute(route);
+        stats.ackCount++;
+        stats.totalAckLatency += latency;
+        stats.maxAckLatency = Math.max(stats.maxAckLatency, latency);
+        stats.ackLatencyBuckets[bucketForLatency(latency)]++;
+
+        if (rateLimited) {
+            stats.rateLimitedCount++;
+        } else if (error) {
+            stats.errorCount++;
+        }
+    }
+
+
+    public synchronized void requestTimedOut(String route) {
+        statsForRoute(route).timeoutCount++;
+    }
+
+
+    public synchronized void queueCleared(int dropped) {
+        // Other channels may share these metrics, so only the requests dropped from this queue are removed
+        queueDepth = Math.max(0, queueDepth - dropped);
+    }
+
+
+    public synchronized void inboundReceived() {
+        lastInboundTime = RespokePlatform.sharedInstance().elapsedRealtime();
+    }
+
+
+    //** Private methods
+
+
+    private RouteStats statsForRoute(String route) {
+        RouteStats stats = routes.get(route);
+
+        if (null == stats) {
+            if (routes.size() >= MAX_ROUTES) {
+                // A server that adds new routes, or IDs in unexpected places, could otherwise grow the table without bound
+                route = OTHER_ROUTE;
+                stats = routes.get(route);
+            }
+
+            if (null == stats) {
+                stats = new RouteStats();
+                routes.put(route, stats);
+            }
+        }
+
+        return stats;
+    }
+
+
+    private static int bucketForLatency(long latency) {
+        for (int ii = 0; ii < LATENCY_BUCKETS.length; ii++) {
+            if (latency <= LATENCY_BUCKETS[ii]) {
+                return ii;
+            }
+        }
+
+        return LATENCY_BUCKETS.length;
+    }
+}
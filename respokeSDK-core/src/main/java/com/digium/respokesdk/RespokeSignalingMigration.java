@@ -0,0 +1,177 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import java.util.ArrayList;
+
+/**
+ *  Tracks the signaling channels of a session while it moves to a new socket. A replacement channel is brought up
+ *  alongside the active one and takes over once it has connected. The channel it replaces then retires, but stays open
+ *  for a while, since peers in calls that began before the migration still signal this client through it.
+ *
+ *  Every method may be called from any thread.
+ *
+ *  @param <C>  The type of signaling channel
+ */
+public class RespokeSignalingMigration<C> {
+
+    public static final int SENDER_UNKNOWN = 0;  ///< A channel that has finished closing, or never belonged to the session
+    public static final int SENDER_ACTIVE = 1;  ///< The channel the session currently uses
+    public static final int SENDER_PENDING = 2;  ///< A replacement channel that has not taken over yet
+    public static final int SENDER_RETIRING = 3;  ///< A replaced channel that is still open for calls begun before the migration
+
+    private C active;
+    private C pending;
+    private final ArrayList<C> retiring = new ArrayList<C>();
+
+
+    /**
+     *  Start a new session on a channel, forgetting any earlier migration
+     *
+     *  @param channel  The channel, or null if the session has ended
+     */
+    public synchronized void reset(C channel) {
+        active = channel;
+        pending = null;
+        retiring.clear();
+    }
+
+
+    /**
+     *  Get the channel the session currently uses
+     *
+     *  @return The active channel, or null
+     */
+    public synchronized C getActive() {
+        return active;
+    }
+
+
+    /**
+     *  Get the replacement channel being brought up
+     *
+     *  @return The pending channel, or null if no migration is in progress
+     */
+    public synchronized C getPending() {
+        return pending;
+    }
+
+
+    /**
+     *  Start bringing up a replacement channel
+     *
+     *  @param replacement  The replacement channel
+     *
+     *  @return False if there is no active channel to replace, or a migration is already in progress
+     */
+    public synchronized boolean begin(C replacement) {
+        if ((null == active) || (null != pending)) {
+            return false;
+        }
+
+        pending = replacement;
+        return true;
+    }
+
+
+    /**
+     *  Make a connected replacement channel the active one. The channel it replaces retires.
+     *
+     *  @param replacement  The replacement channel
+     *
+     *  @return False if the migration was abandoned while the replacement was being brought up
+     */
+    public synchronized boolean complete(C replacement) {
+        if ((null == replacement) || (replacement != pending)) {
+            return false;
+        }
+
+        if (null != active) {
+            retiring.add(active);
+        }
+
+        active = replacement;
+        pending = null;
+        return true;
+    }
+
+
+    /**
+     *  Give up on a replacement channel that failed or closed before it took over
+     *
+     *  @param replacement  The replacement channel
+     *
+     *  @return False if the channel was not the pending replacement
+     */
+    public synchronized boolean abandon(C replacement) {
+        if ((null == replacement) || (replacement != pending)) {
+            return false;
+        }
+
+        pending = null;
+        return true;
+    }
+
+
+    /**
+     *  Handle the active channel closing. If a replacement was being brought up, it finishes connecting in its place.
+     *  Otherwise the session has ended, and the retiring channels are no longer needed.
+     *
+     *  @return The replacement channel, which is now the active one, or null if there was none
+     */
+    public synchronized C activeLost() {
+        C replacement = pending;
+        active = replacement;
+        pending = null;
+
+        if (null == replacement) {
+            retiring.clear();
+        }
+
+        return replacement;
+    }
+
+
+    /**
+     *  Forget a retiring channel once it has closed
+     *
+     *  @param channel  The channel
+     *
+     *  @return False if the channel was not retiring
+     */
+    public synchronized boolean retired(C channel) {
+        return retiring.remove(channel);
+    }
+
+
+    /**
+     *  Determine the role of the channel an event arrived on. Events about the session as a whole, such as messages
+     *  and presence, are also delivered to the active channel, so they should only be handled from it. Signals
+     *  addressed to this client's connection may also arrive on a retiring channel.
+     *
+     *  @param sender  The channel the event arrived on
+     *
+     *  @return SENDER_ACTIVE, SENDER_PENDING, SENDER_RETIRING or SENDER_UNKNOWN
+     */
+    public synchronized int classify(C sender) {
+        if (null == sender) {
+            return SENDER_UNKNOWN;
+        } else if (sender == active) {
+            return SENDER_ACTIVE;
+        } else if (sender == pending) {
+            return SENDER_PENDING;
+        } else if (retiring.contains(sender)) {
+            return SENDER_RETIRING;
+        }
+
+        return SENDER_UNKNOWN;
+    }
+}
@@ -0,0 +1,894 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.UnsupportedEncodingException;
+import java.lang.ref.WeakReference;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ *  Speaks the Respoke signaling protocol over a RespokeSignalingTransport. This sends REST requests over the socket,
+ *  one at a time and with rate-limited retries, and decodes the events the server sends into listener calls. It knows
+ *  nothing of calls or endpoints, so the SDK decides what each event means.
+ */
+public class RespokeSignalingProtocol {
+
+    private static final String TAG = "RespokeSignalingProtocol";
+    private static final String RESPOKE_SOCKETIO_PORT = "443";
+    private static final Integer REST_TASK_TIMEOUT = 30;
+    private static final String NO_PUSH_TOKEN = "notAvailable";
+    private static final String[] EVENT_NAMES = {"join", "leave", "message", "signal", "pubsub", "presence"};
+    public static final long BODY_SIZE_LIMIT = 20000;  ///< The largest request body the service accepts, in bytes
+    public static final String PROPERTY_LAST_VALID_PUSH_TOKEN = "pushToken";  ///< The store key of the last push token registered with the service
+    public static final String PROPERTY_LAST_VALID_PUSH_TOKEN_ID = "pushTokenServiceID";  ///< The store key of the service ID of that push token
+    public static final String ERROR_NOT_CONNECTED = "Can't complete request when not connected. Please reconnect!";  ///< The error reported for requests made while disconnected
+    public static final String ERROR_RATE_LIMITED = "API rate limit was exceeded";  ///< The error reported when rate-limited retries are exhausted
+
+    private final String appToken;
+    private final String sdkHeader;  ///< The value of the Respoke-SDK header sent with each request
+    private final RespokeSignalingTransport transport;
+    private final RespokeKeyValueStore store;  ///< Holds the push token to resume with
+    private final RespokeScheduler workerThread;  ///< Sends requests one at a time
+    private final RespokeLogger logger;
+    private final WeakReference<Listener> listenerReference;
+    private volatile boolean connected;
+    private volatile String connectionID;
+    private volatile RespokeSignalingMetrics metrics;  ///< Records queue wait and ack latency for each request
+    private final Object queueLock = new Object();
+    private int queuedRequests;  ///< The requests waiting in the worker queue. Guarded by queueLock.
+    private boolean workerStopped;  ///< Set once the worker thread has been shut down. Guarded by queueLock.
+
+
+    /**
+     *  A delegate protocol to notify the receiver of events decoded from the signaling socket
+     */
+    public interface Listener {
+
+        /**
+         *  Receive a notification that the socket has connected and the service has created a connection for it
+         *
+         *  @param endpointID    The endpointID for this connection, as reported by the server
+         *  @param connectionID  The connectionID for this connection
+         *  @param sender        The protocol that triggered the event
+         */
+        void onConnect(String endpointID, String connectionID, RespokeSignalingProtocol sender);
+
+
+        /**
+         *  Receive a notification that the socket has disconnected
+         *
+         *  @param sender  The protocol that triggered the event
+         */
+        void onDisconnect(RespokeSignalingProtocol sender);
+
+
+        /**
+         *  Receive a notification that an error has occurred
+         *
+         *  @param errorMessage  Error message
+         *  @param sender        The protocol that triggered the event
+         */
+        void onError(String errorMessage, RespokeSignalingProtocol sender);
+
+
+        /**
+         *  Receive a notification that an endpoint has joined a group
+         *
+         *  @param groupID       The ID of the group
+         *  @param endpointID    The ID of the endpoint to which the connection belongs
+         *  @param connectionID  The ID of the connection that has joined the group
+         *  @param sender        The protocol that triggered the event
+         */
+        void onJoinGroup(String groupID, String endpointID, String connectionID, RespokeSignalingProtocol sender);
+
+
+        /**
+         *  Receive a notification that an endpoint has left a group
+         *
+         *  @param groupID       The ID of the group
+         *  @param endpointID    The ID of the endpoint to which the connection belongs
+         *  @param connectionID  The ID of the connection that has left the group
+         *  @param sender        The protocol that triggered the event
+         */
+        void onLeaveGroup(String groupID, String endpointID, String connectionID, RespokeSignalingProtocol sender);
+
+
+        /**
+         *  Receive a message sent to this endpoint
+         *
+         *  @param message         The body of the message
+         *  @param timestamp       The timestamp of the message
+         *  @param fromEndpointID  The ID of the endpoint sending the message
+         *  @param toEndpointID    The ID of the original recipient of the message if being cc'd to self, otherwise null
+         *  @param sender          The protocol that triggered the event
+         */
+        void onMessage(String message, Date timestamp, String fromEndpointID, String toEndpointID, RespokeSignalingProtocol sender);
+
+
+        /**
+         *  Receive a message sent to a group
+         *
+         *  @param message     The body of the message
+         *  @param groupID     The ID of the group to which the message was sent
+         *  @param endpointID  The ID of the endpoint that sent the message
+         *  @param timestamp   The time at which the message was sent
+         *  @param sender      The protocol that triggered the event
+         */
+        void onGroupMessage(String message, String groupID, String endpointID, Date timestamp, RespokeSignalingProtocol sender);
+
+
+        /**
+         *  Receive a presence change
+         *
+         *  @param presence      The new presence value
+         *  @param connectionID  The connection ID whose presence changed
+         *  @param endpointID    The endpoint ID to which the connection belongs
+         *  @param sender        The protocol that triggered the event
+         */
+        void onPresence(Object presence, String connectionID, String endpointID, RespokeSignalingProtocol sender);
+
+
+        /**
+         *  Receive an offer, which either starts a new call or direct connection or renegotiates one in progress
+         *
+         *  @param sessionID         The session ID of the call
+         *  @param sdp               The SDP data of the offer
+         *  @param fromConnectionID  The connectionID that sent the offer
+         *  @param fromEndpointID    The endpointID that sent the offer
+         *  @param fromType          Type of the message source
+         *  @param timestamp         The timestamp when the offer was sent
+         *  @param directConnection  True if the offer is for a direct connection
+         *  @param sender            The protocol that triggered the event
+         */
+        void onOfferSignal(String sessionID, JSONObject sdp, String fromConnectionID, String fromEndpointID, String fromType, Date timestamp, boolean directConnection, RespokeSignalingProtocol sender);
+
+
+        /**
+         *  Receive the answer to a call this client offered
+         *
+         *  @param sessionID         The session ID of the call
+         *  @param sdp               The SDP data of the answer
+         *  @param fromConnectionID  The connectionID that answered
+         *  @param sender            The protocol that triggered the event
+         */
+        void onAnswerSignal(String sessionID, JSONObject sdp, String fromConnectionID, RespokeSignalingProtocol sender);
+
+
+        /**
+         *  Receive a notification that this connection won a call it answered
+         *
+         *  @param sessionID  The session ID of the call
+         *  @param sender     The protocol that triggered the event
+         */
+        void onConnectedSignal(String sessionID, RespokeSignalingProtocol sender);
+
+
+        /**
+         *  Receive ICE candidates for a call
+         *
+         *  @param sessionID   The session ID of the call
+         *  @param candidates  The candidates
+         *  @param sender      The protocol that triggered the event
+         */
+        void onIceCandidatesSignal(String sessionID, JSONArray candidates, RespokeSignalingProtocol sender);
+
+
+        /**
+         *  Receive a notification that a call has ended, either because the remote party hung up or because another
+         *  connection answered it
+         *
+         *  @param sessionID  The session ID of the call
+         *  @param sender     The protocol that triggered the event
+         */
+        void onHangupSignal(String sessionID, RespokeSignalingProtocol sender);
+
+
+        /**
+         *  Receive a request from the callee of a call to restart ICE, because it has lost its connection
+         *
+         *  @param sessionID  The session ID of the call
+         *  @param sender     The protocol that triggered the event
+         */
+        void onIceRestartSignal(String sessionID, RespokeSignalingProtocol sender);
+
+    }
+
+
+    /**
+     * A listener interface to receive a notification that the REST message transmission has completed
+     */
+    public interface RESTListener {
+
+        void onSuccess(Object response);
+
+        void onError(String errorMessage);
+
+    }
+
+
+    /**
+     * A listener interface to receive a notification that this client has been registered to receive presence updates for a specific endpoint
+     */
+    public interface RegisterPresenceListener {
+
+        void onSuccess(JSONArray initialPresenceData);
+
+        void onError(String errorMessage);
+
+    }
+
+
+    /**
+     *  Create a protocol instance and start the worker thread that sends its requests. The thread is stopped once the
+     *  socket disconnects, so each protocol instance may only be connected once.
+     *
+     *  @param appToken   The app token to authenticate with
+     *  @param sdkHeader  The value of the Respoke-SDK header to send with each request
+     *  @param transport  The socket to speak the protocol over
+     *  @param store      Holds the push token to resume with
+     *  @param listener   The listener to notify, which is held weakly
+     */
+    public RespokeSignalingProtocol(String appToken, String sdkHeader, RespokeSignalingTransport transport, RespokeKeyValueStore store, Listener listener) {
+        this.appToken = appToken;
+        this.sdkHeader = sdkHeader;
+        this.transport = transport;
+        this.store = store;
+        listenerReference = new WeakReference<Listener>(listener);
+        workerThread = RespokePlatform.sharedInstance().createWorker("RespokeWorkerThread");
+        logger = RespokePlatform.sharedInstance().getLogger();
+        metrics = new RespokeSignalingMetrics();
+    }
+
+
+    /**
+     *  Determine if the socket is connected
+     *
+     *  @return True if connected
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+
+    /**
+     *  Get the connection ID the service assigned to this socket
+     *
+     *  @return The connection ID, or null if not yet connected
+     */
+    public String getConnectionID() {
+        return connectionID;
+    }
+
+
+    /**
+     *  Get the app token this protocol authenticates with
+     *
+     *  @return The app token
+     */
+    public String getAppToken() {
+        return appToken;
+    }
+
+
+    /**
+     *  Get the metrics recorded for requests sent through this protocol
+     *
+     *  @return The metrics
+     */
+    public RespokeSignalingMetrics getMetrics() {
+        return metrics;
+    }
+
+
+    /**
+     *  Record metrics into an existing instance, so that they accumulate across reconnects
+     *
+     *  @param newMetrics  The metrics to record into
+     */
+    public void setMetrics(RespokeSignalingMetrics newMetrics) {
+        metrics = newMetrics;
+    }
+
+
+    /**
+     *  Connect the socket, then ask the service to create a connection for it. The listener is told through onConnect
+     *  or onError.
+     *
+     *  @param baseURL  The base URL of the Respoke service
+     */
+    public void connect(String baseURL) {
+        String encodedSDKHeader = "Respoke-Android";
+        try {
+            encodedSDKHeader = URLEncoder.encode(sdkHeader, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            logger.error(TAG, "Unable to encode the SDK header", e);
+        }
+
+        String connectURL = baseURL + ":" + RESPOKE_SOCKETIO_PORT +
+                "?__sails_io_sdk_version=0.10.0&app-token=" + appToken +
+                "&Respoke-SDK=" + encodedSDKHeader;
+
+        transport.connect(connectURL, EVENT_NAMES, new RespokeSignalingTransport.Listener() {
+            @Override
+            public void onConnect(RespokeSignalingTransport sender) {
+                connected = true;
+                createConnection();
+            }
+
+            @Override
+            public void onConnectFailed(String errorMessage, RespokeSignalingTransport sender) {
+                logger.debug(TAG, "Socket failed to connect: " + errorMessage);
+
+                Listener listener = listenerReference.get();
+                if (null != listener) {
+                    listener.onError("Unable to connect to Respoke. Please try again", RespokeSignalingProtocol.this);
+                }
+            }
+
+            @Override
+            public void onDisconnect(RespokeSignalingTransport sender) {
+                logger.debug(TAG, "Socket disconnected");
+
+                if (connected) {
+                    connected = false;
+                    stopWorker();
+
+                    Listener listener = listenerReference.get();
+                    if (null != listener) {
+                        listener.onDisconnect(RespokeSignalingProtocol.this);
+                    }
+                }
+            }
+
+            @Override
+            public void onError(String errorMessage, RespokeSignalingTransport sender) {
+                logger.debug(TAG, "Socket error: " + errorMessage);
+
+                Listener listener = listenerReference.get();
+                if (null != listener) {
+                    listener.onError(errorMessage, RespokeSignalingProtocol.this);
+                }
+            }
+
+            @Override
+            public void onEvent(String name, JSONArray arguments, RespokeSignalingTransport sender) {
+                metrics.inboundReceived();
+
+                for (int ii = 0; ii < arguments.length(); ii++) {
+                    try {
+                        routeEvent(name, arguments.getJSONObject(ii));
+                    } catch (JSONException e) {
+                        logger.debug(TAG, "Error parsing received event");
+                    }
+                }
+            }
+        });
+    }
+
+
+    /**
+     *  Drop any requests that have not been sent yet, stop the worker thread and close the socket
+     */
+    public void disconnect() {
+        stopWorker();
+        transport.disconnect();
+    }
+
+
+    /**
+     *  Ask the service to send presence updates for a list of endpoints
+     *
+     *  @param endpointList        The IDs of the endpoints
+     *  @param completionListener  Receives the current presence of each endpoint's connections
+     */
+    public void registerPresence(ArrayList<String> endpointList, final RegisterPresenceListener completionListener) {
+        if (connected) {
+            JSONObject data = new JSONObject();
+
+            try {
+                data.put("endpointList", new JSONArray(endpointList));
+
+                sendRESTMessage("post", "/v1/presenceobservers", data, new RESTListener() {
+                    @Override
+                    public void onSuccess(Object response) {
+                        JSONArray responseArray = null;
+
+                        if (response != null) {
+                            if (response instanceof JSONArray) {
+                                responseArray = (JSONArray) response;
+                            } else if (response instanceof String) {
+                                try {
+                                    responseArray = new JSONArray((String) response);
+                                } catch (JSONException e) {
+                                    // An exception will trigger the onError handler
+                                }
+                            }
+                        }
+
+                        if (null == responseArray) {
+                            completionListener.onError("Unexpected response from server");
+                        } else {
+                            completionListener.onSuccess(responseArray);
+                        }
+                    }
+
+                    @Override
+                    public void onError(String errorMessage) {
+                        completionListener.onError(errorMessage);
+                    }
+                });
+            } catch (JSONException e) {
+                completionListener.onError("Unable to JSON encode message");
+            }
+        } else {
+            completionListener.onError(ERROR_NOT_CONNECTED);
+        }
+    }
+
+
+    /**
+     *  Send a REST request over the socket
+     *
+     *  @param httpMethod          The HTTP method
+     *  @param url                 The path of the request
+     *  @param data                The body of the request, or null
+     *  @param completionListener  Receives the response body
+     */
+    public void sendRESTMessage(String httpMethod, String url, JSONObject data, final RESTListener completionListener) {
+        if (connected) {
+            JSONArray array = new JSONArray();
+
+            try
+            {
+                JSONObject message = new JSONObject();
+                JSONObject headers = new JSONObject();
+                headers.put("App-Token", appToken);
+                headers.put("Respoke-SDK", sdkHeader);
+                message.put("headers", headers);
+                message.put("url", url);
+
+                if (null != data) {
+                    message.put("data", data);
+                }
+
+                array.put(message);
+
+                if (array.toString().getBytes("UTF-8").length <= BODY_SIZE_LIMIT) {
+                    sendEvent(httpMethod, RespokeSignalingMetrics.routeForURL(url), array, 1, completionListener, 0);
+                } else {
+                    completionListener.onError("Request body is too big");
+                }
+            } catch (JSONException e) {
+                completionListener.onError("Unable to JSON encode message");
+            } catch (UnsupportedEncodingException e) {
+                completionListener.onError("Unable to encode message");
+            }
+        } else {
+            completionListener.onError(ERROR_NOT_CONNECTED);
+        }
+    }
+
+
+    /**
+     *  Send a signal to another endpoint
+     *
+     *  @param message             The signal
+     *  @param toEndpointID        The ID of the endpoint to send to
+     *  @param toConnection        The ID of the connection to send to, or null for all of the endpoint's connections
+     *  @param toType              The type of the recipient, or null for web
+     *  @param ccSelf              True to copy the signal to this endpoint's other connections
+     *  @param completionListener  Receives the outcome
+     */
+    public void sendSignal(JSONObject message, String toEndpointID, String toConnection, String toType, boolean ccSelf, final RESTListener completionListener) {
+        JSONObject data = new JSONObject();
+
+        try {
+            data.put("to", toEndpointID);
+
+            if ((toType != null) && !toType.isEmpty()) {
+                data.put("toType", toType);
+            } else {
+                data.put("toType", "web");
+            }
+
+            if ((toConnection != null) && !toConnection.isEmpty()) {
+                data.put("toConnection", toConnection);
+            }
+
+            data.put("ccSelf", ccSelf);
+            data.put("signal", message.toString());
+
+            sendRESTMessage("post", "/v1/signaling", data, completionListener);
+        } catch (JSONException e) {
+            completionListener.onError("Error encoding signal to json");
+        }
+    }
+
+
+    //** Private methods
+
+
+    private void createConnection() {
+        final String lastKnownPushTokenID = store.getString(PROPERTY_LAST_VALID_PUSH_TOKEN_ID, NO_PUSH_TOKEN);
+
+        JSONObject data = new JSONObject();
+
+        try {
+            JSONObject parameters = new JSONObject("{ 'iceFinalCandidates': true }");
+            data.put("capabilities", parameters);
+
+            if ((null != lastKnownPushTokenID) && (!lastKnownPushTokenID.equals(NO_PUSH_TOKEN))) {
+                data.put("pushTokenId", lastKnownPushTokenID);
+            }
+        } catch (JSONException e) {
+            logger.debug(TAG, "Error creating JSON for endpoint connection creation");
+        }
+
+        // Once the socket is connected, perform a post to get the connection and endpoint IDs for this client
+        sendRESTMessage("post", "/v1/connections", data, new RESTListener() {
+            @Override
+            public void onSuccess(Object response) {
+                Listener listener = listenerReference.get();
+                if (null != listener) {
+                    if (response instanceof JSONObject) {
+                        try {
+                            JSONObject responseJSON = (JSONObject) response;
+                            String endpointID = responseJSON.getString("endpointId");
+                            connectionID = responseJSON.getString("id");
+
+                            listener.onConnect(endpointID, connectionID, RespokeSignalingProtocol.this);
+                        } catch (JSONException e) {
+                            listener.onError("Unexpected response from server", RespokeSignalingProtocol.this);
+                        }
+                    } else {
+                        listener.onError("Unexpected response from server", RespokeSignalingProtocol.this);
+                    }
+                }
+            }
+
+            @Override
+            public void onError(String errorMessage) {
+                if ((null != lastKnownPushTokenID) && !lastKnownPushTokenID.equals(NO_PUSH_TOKEN)) {
+                    store.remove(PROPERTY_LAST_VALID_PUSH_TOKEN);
+                    store.remove(PROPERTY_LAST_VALID_PUSH_TOKEN_ID);
+                }
+
+                Listener listener = listenerReference.get();
+                if (null != listener) {
+                    listener.onError(errorMessage, RespokeSignalingProtocol.this);
+                }
+            }
+        });
+    }
+
+
+    /**
+     *  Drop the requests waiting in the worker queue and stop its thread. A protocol only connects once, so the thread
+     *  is not needed again.
+     */
+    private void stopWorker() {
+        synchronized (queueLock) {
+            workerStopped = true;
+            workerThread.shutdown();
+            metrics.queueCleared(queuedRequests);
+            queuedRequests = 0;
+        }
+    }
+
+
+    private void sendEvent(final String httpMethod, final String route, final JSONArray array, final Integer attempt, final RESTListener completionListener, long delayMillis) {
+        final RespokePlatform platform = RespokePlatform.sharedInstance();
+        final long dueTime = platform.elapsedRealtime() + delayMillis;
+
+        boolean stopped;
+
+        synchronized (queueLock) {
+            stopped = workerStopped;
+
+            if (!stopped) {
+                queuedRequests++;
+                metrics.requestQueued();
+            }
+        }
+
+        if (stopped) {
+            // A rate-limited retry may still be scheduled once the socket has gone
+            completionListener.onError(ERROR_NOT_CONNECTED);
+            return;
+        }
+
+        // Queue the request with the socket workerThread
+        workerThread.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                final long emitTime = platform.elapsedRealtime();
+
+                synchronized (queueLock) {
+                    // If the queue was cleared as this task started, it has already been counted as dropped
+                    if (queuedRequests > 0) {
+                        queuedRequests--;
+                        metrics.requestDequeued(route, emitTime - dueTime);
+                    }
+                }
+
+                if (connected) {
+                    final CountDownLatch asyncTaskSignal = new CountDownLatch(1);
+
+                    transport.emit(httpMethod, array, new RespokeSignalingTransport.Acknowledgement() {
+                        @Override
+                        public void acknowledge(JSONArray arguments) {
+                            long ackLatency = platform.elapsedRealtime() - emitTime;
+
+                            // There should only ever be one element in this array. Anything else is ignored for the time being.
+                            if ((arguments != null) && (arguments.length() > 0)) {
+                                try {
+                                    Object responseObject = arguments.get(0);
+                                    JSONObject jsonResponse = null;
+                                    Object responseBody = null;
+                                    String errorMessage = null;
+                                    boolean rateLimitErrorPresent = false;
+                                    Integer rateLimitDelay = 1000; // 1 second unless specified otherwise
+
+                                    if (responseObject instanceof JSONObject) {
+                                        jsonResponse = (JSONObject) responseObject;
+                                    } else {
+                                        errorMessage = "Unexpected response received";
+                                    }
+
+                                    // If the response contained json, parse it for error messages
+                                    if (null != jsonResponse) {
+                                        try {
+                                            int statusCode = jsonResponse.getInt("statusCode");
+                                            int[] validCodes = {200, 204, 205, 302, 401, 403, 404, 418, 429};
+                                            if (Arrays.binarySearch(validCodes, statusCode) < 0) {
+                                                errorMessage = "An unknown error occurred";
+                                            } else if (429 == statusCode) {
+                                                // The request was rejected due to a rate limit error
+                                                rateLimitErrorPresent = true;
+
+                                                // If there was a rate limit error, extract the limit info from the headers
+                                                try {
+                                                    JSONObject headers = jsonResponse.getJSONObject("headers");
+                                                    Integer limit = headers.getInt("RateLimit-Limit");
+                                                    rateLimitDelay = 1000 / limit;
+                                                } catch (JSONException e) {
+                                                    // If the limit info could not be found, use the default
+                                                }
+                                            }
+                                        } catch (JSONException e) {
+                                            // If there was no status code, then assume the operation was successful
+                                        }
+
+                                        responseBody = jsonResponse.get("body");
+
+                                        if (responseBody instanceof String) {
+                                            String responseString = (String) responseBody;
+
+                                            if (responseString.equals("null")) {
+                                                responseBody = null;
+                                            } else {
+                                                try {
+                                                    responseBody = new JSONObject(responseString);
+                                                } catch (JSONException e) {
+                                                    // It's not a jsonobject. Pass the data to the calling object as is
+                                                }
+                                            }
+                                        }
+
+                                        if (responseBody instanceof JSONObject) {
+                                            // The body of the response was decoded into JSON. Look for error messages
+                                            // If there was a server error, there will be a key named 'error' or 'status'
+                                            try {
+                                                errorMessage = ((JSONObject)responseBody).getString("error");
+                                                String details = ((JSONObject)responseBody).getString("details");
+                                                errorMessage = errorMessage + " (" + details + ")";
+                                            } catch (JSONException e) {
+                                                // If there was no 'error' key, then assume the operation was successful
+                                            }
+                                        }
+                                    }
+
+                                    metrics.requestAcknowledged(route, ackLatency, (null != errorMessage), rateLimitErrorPresent);
+
+                                    if (rateLimitErrorPresent) {
+                                        if (attempt < 3) {
+                                            logger.debug(TAG, "Performing rate-limited retry " + (attempt + 1));
+                                            sendEvent(httpMethod, route, array, attempt + 1, completionListener, rateLimitDelay);
+                                        } else {
+                                            completionListener.onError(ERROR_RATE_LIMITED);
+                                        }
+                                    } else {
+                                        if (null == errorMessage) {
+                                            completionListener.onSuccess(responseBody);
+                                        } else {
+                                            completionListener.onError(errorMessage);
+                                        }
+                                    }
+                                } catch (JSONException e) {
+                                    metrics.requestAcknowledged(route, ackLatency, true, false);
+                                    completionListener.onError("Unexpected response from server");
+                                }
+                            } else {
+                                metrics.requestAcknowledged(route, ackLatency, true, false);
+                                completionListener.onError("Unexpected response from server");
+                            }
+
+                            // Signal that processing is complete and the next task in the worker thread may proceed
+                            asyncTaskSignal.countDown();
+                        }
+                    });
+
+                    try {
+                        // Wait for the previous task to complete before moving to the next item in the worker thread queue. This is to avoid multiple socket requests from occurring simultaneously which causes instability in the socket.io library
+                        if (!asyncTaskSignal.await(REST_TASK_TIMEOUT, TimeUnit.SECONDS)) {
+                            metrics.requestTimedOut(route);
+                        }
+                    } catch (InterruptedException e) {
+                        logger.error(TAG, "Interrupted while waiting for an acknowledgement", e);
+                    }
+                } else {
+                    completionListener.onError(ERROR_NOT_CONNECTED);
+                }
+            }
+        }, delayMillis);
+    }
+
+
+    private void routeEvent(String name, JSONObject eachEvent) throws JSONException {
+        Listener listener = listenerReference.get();
+
+        if (name.equals("signal")) {
+            routeSignal(eachEvent);
+        } else if (name.equals("join") || name.equals("leave")) {
+            String endpoint = eachEvent.getString("endpointId");
+            String connection = eachEvent.getString("connectionId");
+            JSONObject header = eachEvent.getJSONObject("header");
+            String groupID = header.getString("channel");
+
+            if (null != listener) {
+                if (name.equals("join")) {
+                    listener.onJoinGroup(groupID, endpoint, connection, this);
+                } else {
+                    listener.onLeaveGroup(groupID, endpoint, connection, this);
+                }
+            }
+        } else if (name.equals("message")) {
+            String message = eachEvent.getString("body");
+            JSONObject header = eachEvent.getJSONObject("header");
+            String fromEndpointID = header.getString("from");
+            String toEndpointID = header.has("toOriginal") ? header.getString("toOriginal") : null;
+
+            if (null != listener) {
+                listener.onMessage(message, getTimestamp(header), fromEndpointID, toEndpointID, this);
+            }
+        } else if (name.equals("pubsub")) {
+            String message = eachEvent.getString("message");
+            JSONObject header = eachEvent.getJSONObject("header");
+            String endpointID = header.getString("from");
+            String groupID = header.getString("channel");
+
+            if (null != listener) {
+                listener.onGroupMessage(message, groupID, endpointID, getTimestamp(header), this);
+            }
+        } else if (name.equals("presence")) {
+            Object type = eachEvent.getString("type");
+            JSONObject header = eachEvent.getJSONObject("header");
+            String endpointID = header.getString("from");
+            String fromConnectionID = header.getString("fromConnection");
+
+            if (null != listener) {
+                listener.onPresence(type, fromConnectionID, endpointID, this);
+            }
+        }
+    }
+
+
+    private void routeSignal(JSONObject message) {
+        try {
+            JSONObject signal = (JSONObject) message.get("body");
+            JSONObject header = (JSONObject) message.get("header");
+            String from = header.getString("from");
+            String fromType;
+            try {
+                fromType = header.getString("fromType");
+            } catch (JSONException e) {
+                // Defaults to web
+                fromType = "web";
+            }
+            String fromConnection = header.getString("fromConnection");
+
+            if ((null != signal) && (null != from)) {
+                String signalType = null;
+                String sessionID = null;
+                String target = null;
+                String toConnection = null;
+                boolean isDirectConnection = false;
+
+                signalType = signal.getString("signalType");
+                sessionID = signal.getString("sessionId");
+
+                /* target is not mandated by protocol, but might be there because of transporter */
+                try {
+                    target = signal.getString("target");
+                } catch (JSONException e) {
+                    // do nothing
+                }
+
+                if (target != null) {
+                    isDirectConnection = target.equals("directConnection");
+                }
+
+                /* Also might not be there if specified */
+                try {
+                    toConnection = signal.getString("connectionId");
+                } catch (JSONException e) {
+                    // do nothing
+                }
+
+                logger.debug(TAG, "Received signal " + signalType);
+
+                Listener listener = listenerReference.get();
+                if (null != listener) {
+                    if (signalType.equals("bye")) {
+                        listener.onHangupSignal(sessionID, this);
+                    } else if (signalType.equals("answer")) {
+                        JSONObject sdp = (JSONObject) signal.get("sessionDescription");
+                        listener.onAnswerSignal(sessionID, sdp, fromConnection, this);
+                    } else if (signalType.equals("connected")) {
+                        if (null != toConnection) {
+                            if (toConnection.equals(connectionID)) {
+                                listener.onConnectedSignal(sessionID, this);
+                            } else {
+                                logger.debug(TAG, "Another device answered, hanging up.");
+                                listener.onHangupSignal(sessionID, this);
+                            }
+                        } else {
+                            logger.debug(TAG, "Unable to find out which endpoint won the call, hanging up");
+                            listener.onHangupSignal(sessionID, this);
+                        }
+                    } else if (signalType.equals("iceCandidates")) {
+                        JSONArray candidates = (JSONArray) signal.get("iceCandidates");
+                        listener.onIceCandidatesSignal(sessionID, candidates, this);
+                    } else if (signalType.equals("iceRestart")) {
+                        listener.onIceRestartSignal(sessionID, this);
+                    } else if (signalType.equals("offer")) {
+                        JSONObject sdp = (JSONObject) signal.get("sessionDescription");
+                        listener.onOfferSignal(sessionID, sdp, fromConnection, from, fromType, getTimestamp(header), isDirectConnection, this);
+                    }
+                }
+            } else {
+                logger.debug(TAG, "Error: signal missing header data");
+            }
+        } catch (JSONException e) {
+            logger.debug(TAG, "Unable to parse received signal");
+        }
+    }
+
+
+    private static Date getTimestamp(JSONObject header) throws JSONException {
+        if (!header.isNull("timestamp")) {
+            return new Date(header.getLong("timestamp"));
+        } else {
+            // Just use the current time if no date is specified in the header data
+            return new Date();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import org.json.JSONArray;
+
+/**
+ *  The socket that carries signaling to and from the Respoke service. RespokeSignalingProtocol speaks the Respoke
+ *  protocol over it, so a platform only has to provide the socket itself.
+ */
+public interface RespokeSignalingTransport {
+
+    /**
+     *  A delegate protocol to notify the receiver of events occurring on the socket
+     */
+    interface Listener {
+
+        /**
+         *  Receive a notification that the socket has connected
+         *
+         *  @param sender  The transport that triggered the event
+         */
+        void onConnect(RespokeSignalingTransport sender);
+
+
+        /**
+         *  Receive a notification that the socket could not connect
+         *
+         *  @param errorMessage  Error message
+         *  @param sender        The transport that triggered the event
+         */
+        void onConnectFailed(String errorMessage, RespokeSignalingTransport sender);
+
+
+        /**
+         *  Receive a notification that a connected socket has disconnected
+         *
+         *  @param sender  The transport that triggered the event
+         */
+        void onDisconnect(RespokeSignalingTransport sender);
+
+
+        /**
+         *  Receive a notification that an error has occurred on a connected socket
+         *
+         *  @param errorMessage  Error message
+         *  @param sender        The transport that triggered the event
+         */
+        void onError(String errorMessage, RespokeSignalingTransport sender);
+
+
+        /**
+         *  Receive an event sent by the server
+         *
+         *  @param name       The name of the event
+         *  @param arguments  The arguments of the event
+         *  @param sender     The transport that triggered the event
+         */
+        void onEvent(String name, JSONArray arguments, RespokeSignalingTransport sender);
+
+    }
+
+
+    /**
+     *  Receives the server's acknowledgement of an emitted event
+     */
+    interface Acknowledgement {
+
+        /**
+         *  Receive the acknowledgement
+         *
+         *  @param arguments  The arguments the server acknowledged with
+         */
+        void acknowledge(JSONArray arguments);
+
+    }
+
+
+    /**
+     *  Open the socket
+     *
+     *  @param url         The URL to connect to, including its query
+     *  @param eventNames  The names of the server events to deliver to the listener
+     *  @param listener    The listener to notify, which is held until the socket disconnects
+     */
+    void connect(String url, String[] eventNames, Listener listener);
+
+
+    /**
+     *  Send an event to the server
+     *
+     *  @param name             The name of the event
+     *  @param arguments        The arguments of the event
+     *  @param acknowledgement  Receives the server's acknowledgement
+     */
+    void emit(String name, JSONArray arguments, Acknowledgement acknowledgement);
+
+
+    /**
+     *  Close the socket. The listener is told through onDisconnect once it has closed.
+     */
+    void disconnect();
+
+}
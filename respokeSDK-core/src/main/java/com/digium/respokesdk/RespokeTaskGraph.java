@@ -0,0 +1,285 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ *  Runs a set of asynchronous steps as soon as the steps they depend on have finished, so that independent steps
+ *  overlap. Each step runs on the executor it was added with and reports its own completion, which lets a step wait
+ *  on a network response without holding a thread. The first failure stops the graph: no further steps are started
+ *  and the error is passed to the completion given to start.
+ *
+ *  Steps can only depend on steps that were added before them, so a graph can never contain a cycle.
+ */
+public class RespokeTaskGraph {
+
+    /**
+     *  Runs a step on the thread that finished its last dependency
+     */
+    public static final Executor IMMEDIATE = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private final LinkedHashMap<String, Node> nodes;
+    private Completion completion;
+    private int unfinishedCount;
+    private boolean started;
+    private boolean finished;
+
+
+    /**
+     *  The body of a step
+     */
+    public interface Step {
+
+        /**
+         *  Perform the step, and call exactly one of the completion methods when it is done. The completion may be
+         *  called from any thread.
+         *
+         *  @param completion  The completion to report the result to
+         */
+        void run(Completion completion);
+
+    }
+
+
+    /**
+     *  Receives the result of a step, or of the whole graph
+     */
+    public interface Completion {
+
+        /**
+         *  The work succeeded
+         */
+        void onSuccess();
+
+
+        /**
+         *  The work failed
+         *
+         *  @param errorMessage  A human-readable description of the failure
+         */
+        void onError(String errorMessage);
+
+    }
+
+
+    private static class Node {
+        final String name;
+        final Executor executor;
+        final Step step;
+        final List<Node> dependents = new ArrayList<Node>();
+        int remainingDependencies;
+        boolean done;
+
+        Node(String name, Executor executor, Step step) {
+            this.name = name;
+            this.executor = executor;
+            this.step = step;
+        }
+    }
+
+
+    public RespokeTaskGraph() {
+        nodes = new LinkedHashMap<String, Node>();
+    }
+
+
+    /**
+     *  Add a step to the graph. Steps must be added before the graph is started.
+     *
+     *  @param name          A unique name for the step
+     *  @param executor      Where to run the step, such as IMMEDIATE or a worker thread
+     *  @param step          The body of the step
+     *  @param dependencies  The names of previously added steps that must finish first
+     */
+    public synchronized void add(String name, Executor executor, Step step, String... dependencies) {
+        if (started) {
+            throw new IllegalStateException("Steps cannot be added once the graph has started");
+        }
+
+        if (nodes.containsKey(name)) {
+            throw new IllegalArgumentException("Duplicate step " + name);
+        }
+
+        Node node = new Node(name, executor, step);
+
+        for (String eachDependency : dependencies) {
+            Node dependency = nodes.get(eachDependency);
+
+            if (null == dependency) {
+                throw new IllegalArgumentException("Step " + name + " depends on unknown step " + eachDependency);
+            }
+
+            dependency.dependents.add(node);
+            node.remainingDependencies++;
+        }
+
+        nodes.put(name, node);
+    }
+
+
+    /**
+     *  Start every step that has no dependencies
+     *
+     *  @param graphCompletion  Receives the result once every step has succeeded, or as soon as one fails
+     */
+    public void start(Completion graphCompletion) {
+        ArrayList<Node> ready = new ArrayList<Node>();
+
+        synchronized (this) {
+            if (started) {
+                throw new IllegalStateException("The graph has already been started");
+            }
+
+            started = true;
+            completion = graphCompletion;
+            unfinishedCount = nodes.size();
+
+            for (Node each : nodes.values()) {
+                if (0 == each.remainingDependencies) {
+                    ready.add(each);
+                }
+            }
+        }
+
+        if (ready.isEmpty()) {
+            finish(null);
+        } else {
+            for (Node each : ready) {
+                runNode(each);
+            }
+        }
+    }
+
+
+    /**
+     *  Stop starting new steps. Steps that are already running are not interrupted, and the completion is not called.
+     */
+    public synchronized void cancel() {
+        finished = true;
+    }
+
+
+    /**
+     *  Indicates if the graph has completed, failed or been cancelled
+     *
+     *  @return True if no further steps will be started
+     */
+    public synchronized boolean isFinished() {
+        return finished;
+    }
+
+
+    //** Private methods
+
+
+    private void runNode(final Node node) {
+        node.executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (isFinished()) {
+                    return;
+                }
+
+                try {
+                    node.step.run(new Completion() {
+                        @Override
+                        public void onSuccess() {
+                            stepSucceeded(node);
+                        }
+
+                        @Override
+                        public void onError(String errorMessage) {
+                            stepFailed(node, errorMessage);
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    stepFailed(node, "Step " + node.name + " failed: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+
+    private void stepSucceeded(Node node) {
+        ArrayList<Node> ready = new ArrayList<Node>();
+        boolean allDone;
+
+        synchronized (this) {
+            if (finished || node.done) {
+                return;
+            }
+
+            node.done = true;
+            unfinishedCount--;
+            allDone = (0 == unfinishedCount);
+
+            for (Node each : node.dependents) {
+                each.remainingDependencies--;
+
+                if (0 == each.remainingDependencies) {
+                    ready.add(each);
+                }
+            }
+        }
+
+        if (allDone) {
+            finish(null);
+        } else {
+            for (Node each : ready) {
+                runNode(each);
+            }
+        }
+    }
+
+
+    private void stepFailed(Node node, String errorMessage) {
+        synchronized (this) {
+            if (node.done) {
+                return;
+            }
+
+            node.done = true;
+        }
+
+        finish(errorMessage);
+    }
+
+
+    private void finish(String errorMessage) {
+        Completion graphCompletion;
+
+        synchronized (this) {
+            if (finished) {
+                return;
+            }
+
+            finished = true;
+            graphCompletion = completion;
+        }
+
+        if (null != graphCompletion) {
+            if (null == errorMessage) {
+                graphCompletion.onSuccess();
+            } else {
+                graphCompletion.onError(errorMessage);
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import java.io.OutputStream;
+
+/**
+ *  A payload being sent or received over a direct connection in chunks. The state and byte counts may be read from
+ *  any thread while the transfer is in progress.
+ */
+public class RespokeTransfer {
+
+    public static final int STATE_OFFERED = 0;  ///< Waiting for the receiving side to accept the transfer
+    public static final int STATE_ACTIVE = 1;  ///< Data is being exchanged
+    public static final int STATE_COMPLETE = 2;  ///< Every byte has been delivered
+    public static final int STATE_FAILED = 3;  ///< The transfer was rejected, cancelled or could not be completed
+
+    private static final String[] STATE_NAMES = {"offered", "active", "complete", "failed"};
+
+    public final int id;  ///< Identifies the transfer among those sent in the same direction
+    public final String name;  ///< The name given by the sending side, such as a file name
+    public final long size;  ///< The total size of the payload, in bytes
+    public final boolean outbound;  ///< True if this side is sending the payload
+
+    private volatile int state;
+    private volatile long bytesTransferred;
+    private volatile String errorMessage;
+    volatile boolean cancelRequested;  ///< Set by any thread to have the transfer channel cancel the transfer
+
+    // Used by the transfer channel, on its own thread only
+    RespokeTransferChannel.Source source;  ///< Where an outbound payload is read from
+    OutputStream sink;  ///< Where an inbound payload is written to
+    long sendOffset;  ///< The offset of the next chunk to send
+    long lastAckOffset;  ///< The offset most recently acknowledged to the sender
+    long lastProgressOffset;  ///< The offset most recently reported as progress
+    boolean awaitingAccept;  ///< True while an offer is outstanding
+
+
+    RespokeTransfer(int id, String name, long size, boolean outbound) {
+        this.id = id;
+        this.name = name;
+        this.size = size;
+        this.outbound = outbound;
+        state = STATE_OFFERED;
+    }
+
+
+    /**
+     *  Get the current state of the transfer
+     *
+     *  @return One of the STATE constants
+     */
+    public int getState() {
+        return state;
+    }
+
+
+    /**
+     *  Get the number of bytes the receiving side has confirmed, or for an inbound transfer the number written so far
+     *
+     *  @return The number of bytes transferred
+     */
+    public long getBytesTransferred() {
+        return bytesTransferred;
+    }
+
+
+    /**
+     *  Get the fraction of the payload that has been transferred
+     *
+     *  @return A value between 0 and 1
+     */
+    public double getProgress() {
+        return (size > 0) ? ((double) bytesTransferred / size) : ((STATE_COMPLETE == state) ? 1.0 : 0.0);
+    }
+
+
+    /**
+     *  Get the reason the transfer failed
+     *
+     *  @return The error message, or null if the transfer has not failed
+     */
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+
+    /**
+     *  Determine if the transfer has finished, successfully or not
+     *
+     *  @return True if the transfer is complete or has failed
+     */
+    public boolean isFinished() {
+        return (STATE_COMPLETE == state) || (STATE_FAILED == state);
+    }
+
+
+    @Override
+    public String toString() {
+        return (outbound ? "Outbound" : "Inbound") + " transfer " + id + " (" + name + "): " + STATE_NAMES[state] + ", " + bytesTransferred + "/" + size + " bytes";
+    }
+
+
+    void setState(int newState) {
+        state = newState;
+    }
+
+
+    void setBytesTransferred(long count) {
+        bytesTransferred = count;
+    }
+
+
+    void fail(String message) {
+        errorMessage = message;
+        state = STATE_FAILED;
+    }
+}
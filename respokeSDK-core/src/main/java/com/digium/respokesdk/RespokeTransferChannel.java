@@ -0,0 +1,870 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *  Moves payloads of any size over a message transport by splitting them into chunks, and reassembles them on the
+ *  receiving side. The receiver acknowledges what it has written, and the sender keeps no more than WINDOW_SIZE bytes
+ *  unacknowledged and stops whenever the transport reports more than BUFFERED_HIGH_WATER bytes waiting to go out.
+ *
+ *  When the transport is replaced, the sender offers its unfinished transfers again and the receiver answers with
+ *  how much it already has, so a transfer picks up where it left off rather than starting over.
+ *
+ *  Apart from the send methods and cancel, which may be called from any thread, every method must be called on the
+ *  same thread. RespokeDirectConnection runs a channel on its own worker thread.
+ *
+ *  Each frame starts with a type byte and the transfer id:
+ *  <pre>
+ *  OFFER   type, id, size (8 bytes), UTF-8 name
+ *  ACCEPT  type, id, offset to send from (8 bytes)
+ *  CHUNK   type, id, offset (8 bytes), data
+ *  ACK     type, id, bytes written (8 bytes)
+ *  CANCEL  type, id, 1 if sent by the sending side or 0 if not, UTF-8 reason
+ *  </pre>
+ */
+public class RespokeTransferChannel {
+
+    public static final String LABEL = "respokeTransfer";  ///< The label of the data channel that carries transfers
+    public static final int CHUNK_SIZE = 16 * 1024;  ///< The most payload bytes sent in one frame, which every data channel implementation accepts
+    public static final int WINDOW_SIZE = 1024 * 1024;  ///< The most payload bytes sent ahead of the receiver's acknowledgement
+    public static final long BUFFERED_HIGH_WATER = 512 * 1024;  ///< Sending pauses while the transport has more than this many bytes queued
+
+    public static final int PUMP_IDLE = 0;  ///< There is nothing to send
+    public static final int PUMP_WAITING = 1;  ///< Waiting on the remote side. Pump again after the next frame is received.
+    public static final int PUMP_BLOCKED = 2;  ///< The transport is full. Pump again shortly.
+
+    private static final byte FRAME_OFFER = 1;
+    private static final byte FRAME_ACCEPT = 2;
+    private static final byte FRAME_CHUNK = 3;
+    private static final byte FRAME_ACK = 4;
+    private static final byte FRAME_CANCEL = 5;
+    private static final int HEADER_SIZE = 13;  ///< The type, id and offset at the start of most frames
+    private static final int FINISHED_HISTORY = 64;  ///< How many finished inbound transfers to remember, so that a repeated offer is not mistaken for a new one
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final Listener listener;
+    private final RespokeBufferPool framePool;
+    private final ConcurrentLinkedQueue<RespokeTransfer> newTransfers;
+    private final AtomicInteger nextId;
+    private final LinkedHashMap<Integer, RespokeTransfer> outgoing;
+    private final LinkedHashMap<Integer, RespokeTransfer> incoming;
+    private final LinkedHashMap<Integer, RespokeTransfer> finishedIncoming;
+    private final byte[] writeBuffer;  ///< Used to hand chunk data to an OutputStream
+    private Transport transport;
+    private volatile boolean cancelPending;
+
+
+    /**
+     *  Sends frames to the remote side
+     */
+    public interface Transport {
+
+        /**
+         *  Send a frame. The frame is only valid until this method returns.
+         *
+         *  @param frame  The frame, between its position and limit
+         *
+         *  @return True if the frame was queued for sending
+         */
+        boolean send(ByteBuffer frame);
+
+
+        /**
+         *  Get the number of bytes queued by the transport but not yet sent
+         *
+         *  @return The number of bytes
+         */
+        long getBufferedAmount();
+
+    }
+
+
+    /**
+     *  Receives notifications about transfers, on the channel's thread
+     */
+    public interface Listener {
+
+        /**
+         *  The remote side has offered a transfer
+         *
+         *  @param transfer  The inbound transfer
+         *
+         *  @return The stream to write the payload to, or null to reject the transfer. The stream is closed once the
+         *          transfer finishes.
+         */
+        OutputStream onIncomingTransfer(RespokeTransfer transfer);
+
+
+        /**
+         *  More of a transfer has been delivered. This is reported each time roughly another one percent of the
+         *  payload arrives, and not more often than once per chunk.
+         *
+         *  @param transfer  The transfer
+         */
+        void onTransferProgress(RespokeTransfer transfer);
+
+
+        /**
+         *  Every byte of a transfer has been delivered
+         *
+         *  @param transfer  The transfer
+         */
+        void onTransferComplete(RespokeTransfer transfer);
+
+
+        /**
+         *  A transfer was rejected, cancelled or could not be completed
+         *
+         *  @param transfer      The transfer
+         *  @param errorMessage  The reason
+         */
+        void onTransferFailed(RespokeTransfer transfer, String errorMessage);
+
+    }
+
+
+    /**
+     *  Where the sending side reads a payload from. Reads may go back as far as the last acknowledged offset.
+     */
+    interface Source {
+
+        /**
+         *  Read part of the payload
+         *
+         *  @param offset  The offset of the first byte to read
+         *  @param into    The buffer to read into, up to its limit
+         *
+         *  @return The number of bytes read, or -1 if the payload has ended
+         */
+        int read(long offset, ByteBuffer into) throws IOException;
+
+
+        /**
+         *  The receiving side has written everything before the specified offset, so it will not be read again
+         *
+         *  @param offset  The acknowledged offset
+         */
+        void acknowledged(long offset);
+
+
+        void close();
+
+    }
+
+
+    /**
+     *  Create a transfer channel with no transport. Call setTransport once one is available.
+     *
+     *  @param listener   Receives notifications about transfers
+     *  @param framePool  Provides the buffers frames are built in
+     */
+    public RespokeTransferChannel(Listener listener, RespokeBufferPool framePool) {
+        this.listener = listener;
+        this.framePool = framePool;
+        newTransfers = new ConcurrentLinkedQueue<RespokeTransfer>();
+        nextId = new AtomicInteger(new Random().nextInt() & 0x3fffffff);  // Avoid reusing the ids of an earlier channel the remote side may remember
+        outgoing = new LinkedHashMap<Integer, RespokeTransfer>();
+        incoming = new LinkedHashMap<Integer, RespokeTransfer>();
+        finishedIncoming = new LinkedHashMap<Integer, RespokeTransfer>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, RespokeTransfer> eldest) {
+                return size() > FINISHED_HISTORY;
+            }
+        };
+        writeBuffer = new byte[CHUNK_SIZE];
+    }
+
+
+    /**
+     *  Send the bytes between the position and the limit of a buffer. The buffer must not be modified until the
+     *  transfer finishes. This may be called from any thread; the transfer starts on the next pump.
+     *
+     *  @param name  A name for the payload
+     *  @param data  The payload
+     *
+     *  @return The new transfer
+     */
+    public RespokeTransfer send(String name, ByteBuffer data) {
+        ByteBuffer payload = data.duplicate();
+        RespokeTransfer transfer = new RespokeTransfer(nextId.incrementAndGet(), name, payload.remaining(), true);
+        transfer.source = new BufferSource(payload);
+        newTransfers.add(transfer);
+        return transfer;
+    }
+
+
+    /**
+     *  Send a file. This may be called from any thread; the transfer starts on the next pump.
+     *
+     *  @param file  The file to send. Its name is used as the name of the transfer.
+     *
+     *  @return The new transfer
+     */
+    public RespokeTransfer send(File file) {
+        RespokeTransfer transfer = new RespokeTransfer(nextId.incrementAndGet(), file.getName(), file.length(), true);
+
+        if (file.isFile() && file.canRead()) {
+            transfer.source = new FileSource(file);
+        } else {
+            transfer.fail("Unable to read " + file.getPath());
+        }
+
+        newTransfers.add(transfer);
+        return transfer;
+    }
+
+
+    /**
+     *  Send the contents of a stream. A stream cannot be rewound, so up to WINDOW_SIZE bytes are held in memory until
+     *  the receiver acknowledges them. This may be called from any thread; the transfer starts on the next pump.
+     *
+     *  @param name    A name for the payload
+     *  @param stream  The payload. It is closed once the transfer finishes.
+     *  @param size    The number of bytes that will be read from the stream
+     *
+     *  @return The new transfer
+     */
+    public RespokeTransfer send(String name, InputStream stream, long size) {
+        RespokeTransfer transfer = new RespokeTransfer(nextId.incrementAndGet(), name, size, true);
+        transfer.source = new StreamSource(stream, (int) Math.max(1, Math.min(size, WINDOW_SIZE)));
+        newTransfers.add(transfer);
+        return transfer;
+    }
+
+
+    /**
+     *  Stop a transfer in either direction and tell the remote side. This may be called from any thread; the transfer
+     *  is cancelled on the next pump.
+     *
+     *  @param transfer  The transfer to cancel
+     */
+    public void cancel(RespokeTransfer transfer) {
+        transfer.cancelRequested = true;
+        cancelPending = true;
+    }
+
+
+    /**
+     *  Set the transport that frames are sent on. When a transport replaces an earlier one, every unfinished outbound
+     *  transfer is offered again so that it can resume from what the receiver already has.
+     *
+     *  @param newTransport  The transport, or null if none is available
+     */
+    public void setTransport(Transport newTransport) {
+        transport = newTransport;
+
+        if (null != transport) {
+            for (RespokeTransfer each : outgoing.values()) {
+                each.awaitingAccept = true;
+                sendOffer(each);
+            }
+        }
+    }
+
+
+    /**
+     *  Determine if a transport is available
+     *
+     *  @return True if frames can be sent
+     */
+    public boolean hasTransport() {
+        return null != transport;
+    }
+
+
+    /**
+     *  Determine if any outbound transfers are unfinished
+     *
+     *  @return True if there is anything left to send
+     */
+    public boolean hasOutgoing() {
+        return !outgoing.isEmpty() || !newTransfers.isEmpty();
+    }
+
+
+    /**
+     *  Process a frame received from the remote side. Malformed frames are ignored.
+     *
+     *  @param frame  The frame, between its position and limit
+     */
+    public void receive(ByteBuffer frame) {
+        try {
+            byte type = frame.get();
+            int id = frame.getInt();
+
+            switch (type) {
+                case FRAME_OFFER: {
+                        long size = frame.getLong();
+                        offerReceived(id, size, decode(frame));
+                    }
+                    break;
+
+                case FRAME_ACCEPT:
+                    acceptReceived(id, frame.getLong());
+                    break;
+
+                case FRAME_CHUNK:
+                    chunkReceived(id, frame.getLong(), frame);
+                    break;
+
+                case FRAME_ACK: {
+                        RespokeTransfer transfer = outgoing.get(id);
+                        if (null != transfer) {
+                            acknowledge(transfer, frame.getLong());
+                        }
+                    }
+                    break;
+
+                case FRAME_CANCEL: {
+                        boolean fromSender = (0 != frame.get());
+                        RespokeTransfer transfer = fromSender ? incoming.remove(id) : outgoing.remove(id);
+                        if (null != transfer) {
+                            finish(transfer, decode(frame));
+                        }
+                    }
+                    break;
+            }
+        } catch (BufferUnderflowException e) {
+            // Ignore truncated frames
+        }
+    }
+
+
+    /**
+     *  Start new transfers, carry out cancellations and send as many chunks as flow control allows
+     *
+     *  @return PUMP_IDLE, PUMP_WAITING or PUMP_BLOCKED
+     */
+    public int pump() {
+        RespokeTransfer added;
+        while (null != (added = newTransfers.poll())) {
+            if (RespokeTransfer.STATE_FAILED == added.getState()) {
+                finish(added, added.getErrorMessage());
+            } else {
+                outgoing.put(added.id, added);
+                added.awaitingAccept = true;
+                sendOffer(added);
+            }
+        }
+
+        if (cancelPending) {
+            cancelPending = false;
+            processCancellations(outgoing);
+            processCancellations(incoming);
+        }
+
+        if (outgoing.isEmpty()) {
+            return PUMP_IDLE;
+        }
+
+        if (null == transport) {
+            return PUMP_WAITING;
+        }
+
+        // Send a chunk of each transfer in turn so that a large transfer does not hold up the others
+        boolean sent = true;
+        while (sent) {
+            sent = false;
+            Iterator<RespokeTransfer> iterator = outgoing.values().iterator();
+
+            while (iterator.hasNext()) {
+                RespokeTransfer transfer = iterator.next();
+
+                if (!canSend(transfer)) {
+                    continue;
+                }
+
+                if (transport.getBufferedAmount() > BUFFERED_HIGH_WATER) {
+                    return PUMP_BLOCKED;
+                }
+
+                try {
+                    if (!sendChunk(transfer)) {
+                        return PUMP_BLOCKED;
+                    }
+
+                    sent = true;
+                } catch (IOException e) {
+                    iterator.remove();
+                    sendCancel(transfer.id, true, "The sender was unable to read the payload");
+                    finish(transfer, "Unable to read the payload: " + e.getMessage());
+                }
+            }
+        }
+
+        return outgoing.isEmpty() ? PUMP_IDLE : PUMP_WAITING;
+    }
+
+
+    /**
+     *  Fail every unfinished transfer, for instance because the direct connection has closed
+     *
+     *  @param reason  The reason to report
+     */
+    public void close(String reason) {
+        RespokeTransfer added;
+        while (null != (added = newTransfers.poll())) {
+            finish(added, reason);
+        }
+
+        for (RespokeTransfer each : outgoing.values()) {
+            finish(each, reason);
+        }
+
+        for (RespokeTransfer each : incoming.values()) {
+            finish(each, reason);
+        }
+
+        outgoing.clear();
+        incoming.clear();
+        transport = null;
+    }
+
+
+    //** Private methods
+
+
+    private void offerReceived(int id, long size, String name) {
+        RespokeTransfer transfer = incoming.get(id);
+
+        if (null == transfer) {
+            transfer = finishedIncoming.get(id);
+
+            if (null != transfer) {
+                // The acknowledgement of the end of this transfer was lost, so repeat it
+                if (RespokeTransfer.STATE_COMPLETE == transfer.getState()) {
+                    sendAccept(id, transfer.size);
+                } else {
+                    sendCancel(id, false, transfer.getErrorMessage());
+                }
+
+                return;
+            }
+
+            transfer = new RespokeTransfer(id, name, size, false);
+            OutputStream sink = listener.onIncomingTransfer(transfer);
+
+            if ((null == sink) || (size < 0)) {
+                sendCancel(id, false, "The transfer was rejected");
+                return;
+            }
+
+            transfer.sink = sink;
+            transfer.setState(RespokeTransfer.STATE_ACTIVE);
+            incoming.put(id, transfer);
+
+            if (0 == size) {
+                completeIncoming(transfer);
+                return;
+            }
+        }
+
+        sendAccept(id, transfer.getBytesTransferred());
+    }
+
+
+    private void acceptReceived(int id, long offset) {
+        RespokeTransfer transfer = outgoing.get(id);
+
+        if (null != transfer) {
+            transfer.awaitingAccept = false;
+            transfer.setState(RespokeTransfer.STATE_ACTIVE);
+
+            // The receiver never has less than it acknowledged, and a stream cannot be rewound past that point
+            transfer.sendOffset = Math.max(Math.min(offset, transfer.size), transfer.getBytesTransferred());
+            acknowledge(transfer, offset);
+        }
+    }
+
+
+    private void chunkReceived(int id, long offset, ByteBuffer data) {
+        RespokeTransfer transfer = incoming.get(id);
+
+        // Ignore anything but the next expected chunk, such as chunks still in flight when the transport was replaced
+        if ((null == transfer) || (offset != transfer.getBytesTransferred())) {
+            return;
+        }
+
+        long received = offset + data.remaining();
+        if (received > transfer.size) {
+            incoming.remove(id);
+            sendCancel(id, false, "More data was sent than offered");
+            finish(transfer, "More data was received than offered");
+            return;
+        }
+
+        try {
+            while (data.hasRemaining()) {
+                int length = Math.min(data.remaining(), writeBuffer.length);
+                data.get(writeBuffer, 0, length);
+                transfer.sink.write(writeBuffer, 0, length);
+            }
+        } catch (IOException e) {
+            incoming.remove(id);
+            sendCancel(id, false, "The receiver was unable to write the payload");
+            finish(transfer, "Unable to write the payload: " + e.getMessage());
+            return;
+        }
+
+        transfer.setBytesTransferred(received);
+        reportProgress(transfer);
+
+        if (received == transfer.size) {
+            completeIncoming(transfer);
+        } else if ((received - transfer.lastAckOffset) >= (WINDOW_SIZE / 4)) {
+            sendAck(transfer);
+        }
+    }
+
+
+    private void completeIncoming(RespokeTransfer transfer) {
+        incoming.remove(transfer.id);
+
+        try {
+            transfer.sink.close();
+        } catch (IOException e) {
+            sendCancel(transfer.id, false, "The receiver was unable to write the payload");
+            finish(transfer, "Unable to write the payload: " + e.getMessage());
+            return;
+        }
+
+        sendAck(transfer);
+        finish(transfer, null);
+    }
+
+
+    private void acknowledge(RespokeTransfer transfer, long offset) {
+        if ((offset > transfer.getBytesTransferred()) && (offset <= transfer.size)) {
+            transfer.setBytesTransferred(offset);
+            transfer.source.acknowledged(offset);
+            reportProgress(transfer);
+        }
+
+        if ((offset == transfer.size) && (null != outgoing.remove(transfer.id))) {
+            finish(transfer, null);
+        }
+    }
+
+
+    private boolean canSend(RespokeTransfer transfer) {
+        if (transfer.awaitingAccept || (transfer.sendOffset >= transfer.size)) {
+            return false;
+        }
+
+        long chunkEnd = transfer.sendOffset + Math.min(CHUNK_SIZE, transfer.size - transfer.sendOffset);
+        return (chunkEnd - transfer.getBytesTransferred()) <= WINDOW_SIZE;
+    }
+
+
+    private boolean sendChunk(RespokeTransfer transfer) throws IOException {
+        int length = (int) Math.min(CHUNK_SIZE, transfer.size - transfer.sendOffset);
+        ByteBuffer frame = framePool.acquire(HEADER_SIZE + length);
+
+        try {
+            frame.put(FRAME_CHUNK).putInt(transfer.id).putLong(transfer.sendOffset);
+
+            while (frame.hasRemaining()) {
+                if (transfer.source.read(transfer.sendOffset + frame.position() - HEADER_SIZE, frame) < 0) {
+                    throw new IOException("The payload ended before its stated size");
+                }
+            }
+
+            frame.flip();
+
+            if (!transport.send(frame)) {
+                return false;
+            }
+        } finally {
+            framePool.release(frame);
+        }
+
+        transfer.sendOffset += length;
+        return true;
+    }
+
+
+    private void processCancellations(LinkedHashMap<Integer, RespokeTransfer> transfers) {
+        Iterator<RespokeTransfer> iterator = transfers.values().iterator();
+
+        while (iterator.hasNext()) {
+            RespokeTransfer transfer = iterator.next();
+
+            if (transfer.cancelRequested) {
+                iterator.remove();
+                sendCancel(transfer.id, transfer.outbound, "The transfer was cancelled by the remote side");
+                finish(transfer, "The transfer was cancelled");
+            }
+        }
+    }
+
+
+    /**
+     *  Release a transfer's resources and report how it ended
+     *
+     *  @param transfer      The transfer, which must already have been removed from the active transfers
+     *  @param errorMessage  The reason the transfer failed, or null if it completed
+     */
+    private void finish(RespokeTransfer transfer, String errorMessage) {
+        if (null != transfer.source) {
+            transfer.source.close();
+        }
+
+        if ((null != transfer.sink) && (null != errorMessage)) {
+            try {
+                transfer.sink.close();
+            } catch (IOException e) {
+                // Already failing
+            }
+        }
+
+        if (null == errorMessage) {
+            transfer.setState(RespokeTransfer.STATE_COMPLETE);
+            listener.onTransferComplete(transfer);
+        } else {
+            transfer.fail(errorMessage);
+            listener.onTransferFailed(transfer, errorMessage);
+        }
+
+        if (!transfer.outbound) {
+            finishedIncoming.put(transfer.id, transfer);
+        }
+    }
+
+
+    private void reportProgress(RespokeTransfer transfer) {
+        long transferred = transfer.getBytesTransferred();
+
+        if (((transferred - transfer.lastProgressOffset) >= Math.max(CHUNK_SIZE, transfer.size / 100)) || (transferred == transfer.size)) {
+            transfer.lastProgressOffset = transferred;
+            listener.onTransferProgress(transfer);
+        }
+    }
+
+
+    private void sendOffer(RespokeTransfer transfer) {
+        byte[] name = (null != transfer.name) ? transfer.name.getBytes(UTF8) : new byte[0];
+        ByteBuffer frame = framePool.acquire(HEADER_SIZE + name.length);
+        frame.put(FRAME_OFFER).putInt(transfer.id).putLong(transfer.size).put(name);
+        sendControl(frame);
+    }
+
+
+    private void sendAccept(int id, long offset) {
+        ByteBuffer frame = framePool.acquire(HEADER_SIZE);
+        frame.put(FRAME_ACCEPT).putInt(id).putLong(offset);
+        sendControl(frame);
+    }
+
+
+    private void sendAck(RespokeTransfer transfer) {
+        transfer.lastAckOffset = transfer.getBytesTransferred();
+
+        ByteBuffer frame = framePool.acquire(HEADER_SIZE);
+        frame.put(FRAME_ACK).putInt(transfer.id).putLong(transfer.lastAckOffset);
+        sendControl(frame);
+    }
+
+
+    private void sendCancel(int id, boolean fromSender, String reason) {
+        byte[] text = (null != reason) ? reason.getBytes(UTF8) : new byte[0];
+        ByteBuffer frame = framePool.acquire(6 + text.length);
+        frame.put(FRAME_CANCEL).putInt(id).put((byte) (fromSender ? 1 : 0)).put(text);
+        sendControl(frame);
+    }
+
+
+    /**
+     *  Send a control frame. If there is no transport or it refuses the frame, the frame is dropped; offering
+     *  unfinished transfers again when a transport is set recovers from a lost acceptance or acknowledgement.
+     */
+    private void sendControl(ByteBuffer frame) {
+        frame.flip();
+
+        if (null != transport) {
+            transport.send(frame);
+        }
+
+        framePool.release(frame);
+    }
+
+
+    private static String decode(ByteBuffer frame) {
+        byte[] bytes = new byte[frame.remaining()];
+        frame.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+
+    private static class BufferSource implements Source {
+        private final ByteBuffer data;
+        private final int base;
+
+
+        BufferSource(ByteBuffer data) {
+            this.data = data;
+            base = data.position();
+        }
+
+
+        public int read(long offset, ByteBuffer into) {
+            ByteBuffer view = data.duplicate();
+            view.position(base + (int) offset);
+
+            if (!view.hasRemaining()) {
+                return -1;
+            }
+
+            view.limit(Math.min(view.limit(), view.position() + into.remaining()));
+            int length = view.remaining();
+            into.put(view);
+            return length;
+        }
+
+
+        public void acknowledged(long offset) {
+            // Everything stays in the buffer
+        }
+
+
+        public void close() {
+            // Nothing to release
+        }
+    }
+
+
+    private static class FileSource implements Source {
+        private final File file;
+        private RandomAccessFile randomAccessFile;
+        private FileChannel channel;
+
+
+        FileSource(File file) {
+            this.file = file;
+        }
+
+
+        public int read(long offset, ByteBuffer into) throws IOException {
+            if (null == channel) {
+                randomAccessFile = new RandomAccessFile(file, "r");
+                channel = randomAccessFile.getChannel();
+            }
+
+            return channel.read(into, offset);
+        }
+
+
+        public void acknowledged(long offset) {
+            // The file can be read again from any offset
+        }
+
+
+        public void close() {
+            if (null != randomAccessFile) {
+                try {
+                    randomAccessFile.close();
+                } catch (IOException e) {
+                    // Only reading
+                }
+
+                randomAccessFile = null;
+                channel = null;
+            }
+        }
+    }
+
+
+    /**
+     *  Holds the unacknowledged part of a stream in a ring buffer so that it can be sent again after the transport is
+     *  replaced
+     */
+    private static class StreamSource implements Source {
+        private final InputStream stream;
+        private final int ringSize;
+        private byte[] ring;
+        private long streamOffset;  ///< How much of the stream has been read into the ring
+        private long acknowledgedOffset;
+
+
+        StreamSource(InputStream stream, int ringSize) {
+            this.stream = stream;
+            this.ringSize = ringSize;
+        }
+
+
+        public int read(long offset, ByteBuffer into) throws IOException {
+            if (null == ring) {
+                ring = new byte[ringSize];
+            }
+
+            if (offset < (streamOffset - ringSize)) {
+                throw new IOException("Unable to rewind the stream to offset " + offset);
+            }
+
+            long wantedEnd = offset + into.remaining();
+            long writableEnd = acknowledgedOffset + ringSize;  // Never overwrite what the receiver may still ask for
+
+            while (streamOffset < Math.min(wantedEnd, writableEnd)) {
+                int index = (int) (streamOffset % ringSize);
+                int space = (int) Math.min(ringSize - index, Math.min(wantedEnd, writableEnd) - streamOffset);
+                int count = stream.read(ring, index, space);
+
+                if (count < 0) {
+                    break;
+                }
+
+                streamOffset += count;
+            }
+
+            if (offset >= streamOffset) {
+                return -1;
+            }
+
+            int length = (int) Math.min(into.remaining(), streamOffset - offset);
+            int index = (int) (offset % ringSize);
+            int first = Math.min(length, ringSize - index);
+            into.put(ring, index, first);
+            into.put(ring, 0, length - first);
+            return length;
+        }
+
+
+        public void acknowledged(long offset) {
+            acknowledgedOffset = offset;
+        }
+
+
+        public void close() {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                // Only reading
+            }
+
+            ring = null;
+        }
+    }
+}
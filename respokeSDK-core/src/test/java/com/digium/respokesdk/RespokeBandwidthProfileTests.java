@@ -0,0 +1,75 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class RespokeBandwidthProfileTests {
+
+
+    @Test
+    public void testProfileIsApplied() {
+        RespokeSDP sdp = RespokeSDP.parse(RespokeSDPTests.SAMPLE_SDP);
+        RespokeBandwidthProfile.LOW.applyTo(sdp);
+        String result = sdp.toString();
+
+        assertTrue("Should add the session limit before the timing line", result.contains("s=-\r\nb=AS:300\r\nt=0 0\r\n"));
+        assertTrue("Should add the audio limit after the connection line", result.contains("m=audio 9 UDP/TLS/RTP/SAVPF 111 103 104 9 0 8 106 105 13 126\r\nc=IN IP4 0.0.0.0\r\nb=AS:32\r\n"));
+        assertTrue("Should add the video limit after the connection line", result.contains("m=video 9 UDP/TLS/RTP/SAVPF 100 101 107 116 117 96 97 99 98\r\nc=IN IP4 0.0.0.0\r\nb=AS:256\r\n"));
+        assertTrue("Should merge the Opus parameters with the existing ones", result.contains("a=fmtp:111 minptime=10;useinbandfec=1;maxaveragebitrate=16000;usedtx=1\r\n"));
+        assertEquals("Should keep every media section", 2, RespokeSDP.parse(result).getMediaSectionCount());
+    }
+
+
+    @Test
+    public void testProfileReplacesExistingLimits() {
+        RespokeSDP sdp = RespokeSDP.parse(RespokeSDPTests.SAMPLE_SDP);
+        RespokeBandwidthProfile.HIGH.applyTo(sdp);
+        RespokeBandwidthProfile.LOW.applyTo(sdp);
+        String result = sdp.toString();
+
+        assertFalse("Should replace the earlier session limit", result.contains("b=AS:2500"));
+        assertEquals("Should have one limit per section plus the session", 3, countOccurrences(result, "b=AS:"));
+        assertTrue("Should replace the earlier Opus bitrate", result.contains("maxaveragebitrate=16000"));
+        assertFalse("Should not keep the earlier Opus bitrate", result.contains("maxaveragebitrate=64000"));
+    }
+
+
+    @Test
+    public void testCustomProfile() {
+        String sdpWithoutFmtp = RespokeSDPTests.SAMPLE_SDP.replace("a=fmtp:111 minptime=10; useinbandfec=1\r\n", "");
+        RespokeSDP sdp = RespokeSDP.parse(sdpWithoutFmtp);
+        RespokeBandwidthProfile audioOnly = new RespokeBandwidthProfile(RespokeBandwidthProfile.UNLIMITED, 24, RespokeBandwidthProfile.UNLIMITED, RespokeBandwidthProfile.UNLIMITED, false, false);
+        audioOnly.applyTo(sdp);
+        String result = sdp.toString();
+
+        assertEquals("Should only limit the audio section", 1, countOccurrences(result, "b=AS:"));
+        assertTrue("Should add an fmtp line after the Opus rtpmap", result.contains("a=rtpmap:111 opus/48000/2\r\na=fmtp:111 usedtx=0;useinbandfec=0\r\n"));
+    }
+
+
+    private static int countOccurrences(String text, String search) {
+        int count = 0;
+        int index = text.indexOf(search);
+
+        while (index >= 0) {
+            count++;
+            index = text.indexOf(search, index + search.length());
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+
+public class RespokeBufferPoolTests {
+
+    private static final int MESSAGES = 100000;
+    private static final long HEAP_BYTES_PER_MESSAGE_BUDGET = 1;  ///< Once warm, borrowing and returning a buffer should allocate nothing
+    private static final long SEND_PATH_HEAP_BYTES_PER_MESSAGE_BUDGET = 128;  ///< Once warm, encoding and sending a message should allocate only a few small wrappers
+
+
+    @Test
+    public void testSizeClasses() {
+        RespokeBufferPool pool = new RespokeBufferPool(256, 4096, 2);
+
+        ByteBuffer small = pool.acquire(10);
+        assertTrue("Should hand out direct buffers", small.isDirect());
+        assertEquals("Should round up to the smallest class", 256, small.capacity());
+        assertEquals("Should limit the buffer to the requested size", 10, small.limit());
+        assertEquals("Should position the buffer at zero", 0, small.position());
+
+        ByteBuffer medium = pool.acquire(257);
+        assertEquals("Should round up to the next power of two", 512, medium.capacity());
+
+        ByteBuffer large = pool.acquire(5000);
+        assertEquals("Should allocate oversized requests exactly", 5000, large.capacity());
+
+        pool.release(large);
+        assertEquals("Should not keep oversized buffers", 1, pool.getDiscardCount());
+    }
+
+
+    @Test
+    public void testReuse() {
+        RespokeBufferPool pool = new RespokeBufferPool(256, 4096, 1);
+
+        ByteBuffer first = pool.acquire(300);
+        first.put((byte) 1);
+        pool.release(first);
+
+        ByteBuffer second = pool.acquire(400);
+        assertSame("Should reuse the released buffer", first, second);
+        assertEquals("Should reset the position", 0, second.position());
+        assertEquals("Should set the new limit", 400, second.limit());
+        assertEquals("Should count the reuse", 1, pool.getReuseCount());
+
+        ByteBuffer third = pool.acquire(300);
+        assertNotSame("Should allocate while the buffer is borrowed", second, third);
+
+        pool.release(second);
+        pool.release(third);
+        assertEquals("Should discard buffers beyond the slots for their class", 1, pool.getDiscardCount());
+        assertEquals("Should only have allocated twice", 2, pool.getAllocationCount());
+        assertEquals("Should count the allocated bytes", 1024, pool.getAllocatedBytes());
+    }
+
+
+    @Test
+    public void testIgnoresForeignBuffers() {
+        RespokeBufferPool pool = new RespokeBufferPool();
+
+        pool.release(ByteBuffer.allocate(1024));
+        pool.release(ByteBuffer.allocateDirect(1000));
+        pool.release(null);
+
+        assertEquals("Should not pool heap or odd-sized buffers", 2, pool.getDiscardCount());
+        assertEquals("Should allocate rather than hand out a foreign buffer", 1000, pool.acquire(1000).limit());
+        assertEquals("Should have allocated", 1, pool.getAllocationCount());
+    }
+
+
+    /**
+     *  The budget for the pool on its own. testSendPathAllocationBudget covers encoding and sending a message.
+     */
+    @Test
+    public void testAllocationBudget() {
+        RespokeBufferPool pool = new RespokeBufferPool();
+        int[] sizes = {40, 180, 700, 1500, 9000};
+
+        // Warm the pool so that every size class has an idle buffer
+        for (int size : sizes) {
+            pool.release(pool.acquire(size));
+        }
+
+        long directAllocations = pool.getAllocationCount();
+        long heapBefore = allocatedHeapBytes();
+
+        for (int ii = 0; ii < MESSAGES; ii++) {
+            ByteBuffer buffer = pool.acquire(sizes[ii % sizes.length]);
+            buffer.put(0, (byte) ii);
+            pool.release(buffer);
+        }
+
+        long heapPerMessage = (allocatedHeapBytes() - heapBefore) / MESSAGES;
+        System.out.println("Buffer pool: " + (pool.getAllocationCount() - directAllocations) + " direct allocations and " + heapPerMessage + " heap bytes per message over " + MESSAGES + " messages");
+
+        assertEquals("Should not allocate any direct buffers once warm", directAllocations, pool.getAllocationCount());
+
+        if (heapBefore >= 0) {
+            assertTrue("Should stay within the heap allocation budget", heapPerMessage < HEAP_BYTES_PER_MESSAGE_BUDGET);
+        }
+    }
+
+
+    @Test
+    public void testSendPathAllocationBudget() {
+        RespokeBufferPool pool = new RespokeBufferPool();
+        RespokeMessageCodec codec = new RespokeMessageCodec(pool);
+        codec.setCapabilities(true, false, false);
+        RespokeSendQueue queue = new RespokeSendQueue(new RespokeSendQueue.Sink() {
+            @Override
+            public boolean send(ByteBuffer data, boolean binary) {
+                return true;
+            }
+
+            @Override
+            public long getBufferedAmount() {
+                return 0;
+            }
+        }, pool);
+
+        // Build the messages up front, since the application, not the send path, allocates them
+        int[] sizes = {40, 180, 700, 1500, 9000};
+        String[] messages = new String[sizes.length];
+        for (int ii = 0; ii < sizes.length; ii++) {
+            char[] text = new char[sizes[ii]];
+            Arrays.fill(text, 'x');
+            messages[ii] = new String(text);
+        }
+
+        // Warm the pool and the encoder
+        for (String message : messages) {
+            codec.offerText(message, queue, null);
+        }
+
+        long directAllocations = pool.getAllocationCount();
+        long heapBefore = allocatedHeapBytes();
+
+        for (int ii = 0; ii < MESSAGES; ii++) {
+            codec.offerText(messages[ii % messages.length], queue, null);
+        }
+
+        long heapPerMessage = (allocatedHeapBytes() - heapBefore) / MESSAGES;
+        System.out.println("Send path: " + (pool.getAllocationCount() - directAllocations) + " direct allocations and " + heapPerMessage + " heap bytes per message over " + MESSAGES + " messages");
+
+        assertEquals("Should not allocate any direct buffers once warm", directAllocations, pool.getAllocationCount());
+
+        if (heapBefore >= 0) {
+            assertTrue("Should stay within the send path heap allocation budget", heapPerMessage < SEND_PATH_HEAP_BYTES_PER_MESSAGE_BUDGET);
+        }
+    }
+
+
+    /**
+     *  Get the number of heap bytes the current thread has allocated, if the JVM can report it
+     *
+     *  @return The number of bytes, or -1 if unavailable
+     */
+    private static long allocatedHeapBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+
+        return -1;
+    }
+}
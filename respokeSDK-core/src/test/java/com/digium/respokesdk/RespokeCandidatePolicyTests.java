@@ -0,0 +1,84 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+public class RespokeCandidatePolicyTests {
+
+    private static final String HOST_UDP = "candidate:2999745851 1 udp 2122260223 192.168.1.20 54400 typ host generation 0";
+    private static final String HOST_UDP_2 = "candidate:1425011311 1 udp 2122194687 10.10.0.4 54401 typ host generation 0";
+    private static final String HOST_TCP = "candidate:4233069003 1 tcp 1518280447 192.168.1.20 0 typ host tcptype active generation 0";
+    private static final String HOST_IPV6 = "candidate:3584375521 1 udp 2122129151 2001:db8::1 54402 typ host generation 0";
+    private static final String SRFLX = "candidate:1938184559 1 udp 1686052607 203.0.113.7 54400 typ srflx raddr 192.168.1.20 rport 54400 generation 0";
+    private static final String RELAY = "a=candidate:3855125815 1 udp 41885439 198.51.100.3 61234 typ relay raddr 203.0.113.7 rport 54400 generation 0";
+
+
+    @Test
+    public void testAllAcceptsEverything() {
+        RespokeCandidatePolicy.Filter filter = RespokeCandidatePolicy.ALL.newFilter();
+
+        for (String each : new String[]{ HOST_UDP, HOST_UDP_2, HOST_TCP, HOST_IPV6, SRFLX, RELAY }) {
+            assertTrue("Should accept " + each, filter.accept(each));
+        }
+    }
+
+
+    @Test
+    public void testRelayOnly() {
+        RespokeCandidatePolicy.Filter filter = RespokeCandidatePolicy.RELAY_ONLY.newFilter();
+
+        assertFalse("Should reject host candidates", filter.accept(HOST_UDP));
+        assertFalse("Should reject server reflexive candidates", filter.accept(SRFLX));
+        assertTrue("Should accept relay candidates, with or without the SDP prefix", filter.accept(RELAY));
+    }
+
+
+    @Test
+    public void testTransportAndAddressFamily() {
+        RespokeCandidatePolicy policy = new RespokeCandidatePolicy(false, false, false, RespokeCandidatePolicy.UNLIMITED);
+
+        assertTrue("Should accept IPv4 UDP", policy.accept(HOST_UDP));
+        assertFalse("Should reject TCP", policy.accept(HOST_TCP));
+        assertFalse("Should reject IPv6", policy.accept(HOST_IPV6));
+        assertTrue("Should accept anything it cannot parse", policy.accept("garbage"));
+    }
+
+
+    @Test
+    public void testHostLimitIsPerFilter() {
+        RespokeCandidatePolicy policy = new RespokeCandidatePolicy(false, true, true, 1);
+        RespokeCandidatePolicy.Filter local = policy.newFilter();
+        RespokeCandidatePolicy.Filter remote = policy.newFilter();
+
+        assertTrue("Should accept the first host candidate", local.accept(HOST_UDP));
+        assertFalse("Should reject further host candidates", local.accept(HOST_UDP_2));
+        assertTrue("Should not limit other types", local.accept(SRFLX));
+        assertTrue("Should count each direction separately", remote.accept(HOST_UDP_2));
+
+        local.reset();
+        assertTrue("Should count afresh after a reset", local.accept(HOST_UDP_2));
+    }
+
+
+    @Test
+    public void testGetType() {
+        assertEquals("Should find the host type", RespokeCandidatePolicy.TYPE_HOST, RespokeCandidatePolicy.getType(HOST_TCP));
+        assertEquals("Should find the relay type", RespokeCandidatePolicy.TYPE_RELAY, RespokeCandidatePolicy.getType(RELAY));
+        assertNull("Should not guess the type of a malformed candidate", RespokeCandidatePolicy.getType("candidate:1 1 udp"));
+    }
+}
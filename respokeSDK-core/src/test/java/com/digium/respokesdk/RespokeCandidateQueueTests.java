@@ -0,0 +1,198 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+public class RespokeCandidateQueueTests {
+
+    private static final int PRODUCER_COUNT = 8;
+    private static final int ITEMS_PER_PRODUCER = 20000;
+
+
+    @Test
+    public void testQueuesUntilDrained() {
+        final List<String> delivered = new ArrayList<String>();
+        RespokeCandidateQueue<String> queue = new RespokeCandidateQueue<String>(new RespokeCandidateQueue.Sink<String>() {
+            @Override
+            public void deliver(String item) {
+                delivered.add(item);
+            }
+        });
+
+        queue.offer("host");
+        queue.offer("srflx");
+        assertEquals("Should hold candidates while queuing", 0, delivered.size());
+        assertEquals("Should count the held candidates", 2, queue.size());
+
+        queue.drain();
+        assertEquals("Should deliver the held candidates in order", "[host, srflx]", delivered.toString());
+        assertEquals("Should switch to direct delivery", RespokeCandidateQueue.STATE_DIRECT, queue.getState());
+
+        queue.offer("relay");
+        assertEquals("Should deliver directly", "[host, srflx, relay]", delivered.toString());
+
+        queue.drain();
+        assertEquals("A second drain should do nothing", 3, delivered.size());
+
+        queue.restartQueuing();
+        queue.offer("host2");
+        assertEquals("Should hold candidates again after a restart", 3, delivered.size());
+        queue.drain();
+        assertEquals("Should deliver after the next drain", "[host, srflx, relay, host2]", delivered.toString());
+    }
+
+
+    @Test
+    public void testFailingSinkDoesNotWedgeTheQueue() {
+        final List<String> delivered = new ArrayList<String>();
+        RespokeCandidateQueue<String> queue = new RespokeCandidateQueue<String>(new RespokeCandidateQueue.Sink<String>() {
+            @Override
+            public void deliver(String item) {
+                if (item.equals("bad")) {
+                    throw new IllegalStateException("Unable to encode local candidate");
+                }
+
+                delivered.add(item);
+            }
+        });
+
+        queue.offer("bad");
+        queue.offer("good");
+
+        try {
+            queue.drain();
+            fail("Should pass the failure on");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        assertEquals("Should still deliver the other candidates", "[good]", delivered.toString());
+        assertEquals("Should not be left draining", RespokeCandidateQueue.STATE_DIRECT, queue.getState());
+    }
+
+
+    @Test
+    public void testEveryItemIsDeliveredOnceUnderContention() throws InterruptedException {
+        final AtomicIntegerArray deliveries = new AtomicIntegerArray(PRODUCER_COUNT * ITEMS_PER_PRODUCER);
+        final RespokeCandidateQueue<Integer> queue = new RespokeCandidateQueue<Integer>(new RespokeCandidateQueue.Sink<Integer>() {
+            @Override
+            public void deliver(Integer item) {
+                deliveries.incrementAndGet(item);
+            }
+        });
+
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final CountDownLatch doneLatch = new CountDownLatch(PRODUCER_COUNT);
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+
+        for (int ii = 0; ii < PRODUCER_COUNT; ii++) {
+            final int producer = ii;
+
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        startLatch.await();
+
+                        for (int jj = 0; jj < ITEMS_PER_PRODUCER; jj++) {
+                            queue.offer((producer * ITEMS_PER_PRODUCER) + jj);
+                        }
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    } finally {
+                        doneLatch.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        startLatch.countDown();
+
+        // Switch to direct delivery while the producers are busy
+        Thread.sleep(5);
+        queue.drain();
+
+        assertTrue("The producers should finish", doneLatch.await(30, TimeUnit.SECONDS));
+        assertTrue("No producer should fail", failures.isEmpty());
+        assertEquals("Should end in direct delivery", RespokeCandidateQueue.STATE_DIRECT, queue.getState());
+        assertEquals("Should leave nothing queued", 0, queue.size());
+
+        for (int ii = 0; ii < deliveries.length(); ii++) {
+            assertEquals("Item " + ii + " should be delivered exactly once", 1, deliveries.get(ii));
+        }
+    }
+
+
+    @Test
+    public void testConcurrentDrainsDeliverOnce() throws InterruptedException {
+        for (int round = 0; round < 200; round++) {
+            final AtomicIntegerArray deliveries = new AtomicIntegerArray(1000);
+            final RespokeCandidateQueue<Integer> queue = new RespokeCandidateQueue<Integer>(new RespokeCandidateQueue.Sink<Integer>() {
+                @Override
+                public void deliver(Integer item) {
+                    deliveries.incrementAndGet(item);
+                }
+            });
+
+            for (int ii = 0; ii < 500; ii++) {
+                queue.offer(ii);
+            }
+
+            final CountDownLatch startLatch = new CountDownLatch(1);
+            Thread[] threads = new Thread[4];
+
+            for (int ii = 0; ii < threads.length; ii++) {
+                final int offset = 500 + (ii * 125);
+
+                threads[ii] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            startLatch.await();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+
+                        queue.drain();
+
+                        for (int jj = 0; jj < 125; jj++) {
+                            queue.offer(offset + jj);
+                        }
+                    }
+                });
+                threads[ii].start();
+            }
+
+            startLatch.countDown();
+
+            for (Thread each : threads) {
+                each.join();
+            }
+
+            for (int ii = 0; ii < deliveries.length(); ii++) {
+                assertEquals("Item " + ii + " should be delivered exactly once", 1, deliveries.get(ii));
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+
+public class RespokeCaptureControllerTests {
+
+
+    @Test
+    public void testStepsDownAndBackUpWithHysteresis() {
+        RespokeCaptureController controller = new RespokeCaptureController(null, null);
+        assertEquals("Should start at the ceiling", RespokeCaptureController.LADDER[0], controller.getCurrentFormat());
+
+        assertNull("Should not react to a single bad sample", controller.update(sample(10, 100, 50)));
+        RespokeCaptureFormat format = controller.update(sample(10, 100, 50));
+        assertEquals("Should step down after consecutive bad samples", RespokeCaptureController.LADDER[1], format);
+
+        // Figures between the thresholds neither degrade nor recover
+        for (int ii = 0; ii < RespokeCaptureController.RECOVER_SAMPLES * 2; ii++) {
+            assertNull("Should hold inside the hysteresis band", controller.update(sample(3, 300, 70)));
+        }
+
+        for (int ii = 0; ii < RespokeCaptureController.RECOVER_SAMPLES - 1; ii++) {
+            assertNull("Should wait for enough good samples", controller.update(sample(0, 50, 30)));
+        }
+
+        assertEquals("Should step back up", RespokeCaptureController.LADDER[0], controller.update(sample(0, 50, 30)));
+        assertNull("Should not step above the ceiling", stepRepeatedly(controller, sample(0, 50, 30)));
+    }
+
+
+    @Test
+    public void testFloorAndCeiling() {
+        RespokeCaptureController controller = new RespokeCaptureController(new RespokeCaptureFormat(640, 360, 24), new RespokeCaptureFormat(960, 540, 30));
+        assertEquals("Should start at the largest step within the ceiling", new RespokeCaptureFormat(960, 540, 30), controller.getCurrentFormat());
+        assertEquals("Should stop at the smallest step above the floor", new RespokeCaptureFormat(640, 360, 24), controller.getFloor());
+
+        RespokeCaptureFormat last = null;
+
+        for (int ii = 0; ii < 20; ii++) {
+            RespokeCaptureFormat format = controller.update(sample(0, 900, 50));
+
+            if (null != format) {
+                last = format;
+            }
+        }
+
+        assertNotNull("Should have stepped down", last);
+        assertEquals("Should not step below the floor", controller.getFloor(), controller.getCurrentFormat());
+    }
+
+
+    @Test
+    public void testIgnoresCallsWithoutOutboundVideo() {
+        RespokeCaptureController controller = new RespokeCaptureController(null, null);
+        ArrayList<RespokeCallStats.TrackStats> tracks = new ArrayList<RespokeCallStats.TrackStats>();
+        tracks.add(new RespokeCallStats.TrackStats("1", null, "audio", true, 32, 50, 900, RespokeCallStats.UNKNOWN, RespokeCallStats.UNKNOWN, RespokeCallStats.UNKNOWN));
+
+        for (int ii = 0; ii < 10; ii++) {
+            assertNull("Should ignore audio streams", controller.update(new RespokeCallStats(ii, tracks)));
+        }
+    }
+
+
+    private static RespokeCallStats sample(double loss, long rtt, int cpu) {
+        ArrayList<RespokeCallStats.TrackStats> tracks = new ArrayList<RespokeCallStats.TrackStats>();
+        tracks.add(new RespokeCallStats.TrackStats("2", "ARDAMSv0", "video", true, 500, loss, rtt, RespokeCallStats.UNKNOWN, 30, cpu));
+
+        return new RespokeCallStats(0, tracks);
+    }
+
+
+    private static RespokeCaptureFormat stepRepeatedly(RespokeCaptureController controller, RespokeCallStats stats) {
+        RespokeCaptureFormat result = null;
+
+        for (int ii = 0; ii < RespokeCaptureController.RECOVER_SAMPLES * 3; ii++) {
+            RespokeCaptureFormat format = controller.update(stats);
+
+            if (null != format) {
+                result = format;
+            }
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+public class RespokeCompressorTests {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final RespokeBufferPool pool = new RespokeBufferPool();
+    private final RespokeCompressor sender = new RespokeCompressor(pool);
+    private final RespokeCompressor receiver = new RespokeCompressor(pool);
+
+
+    @Test
+    public void testRoundTrip() throws DataFormatException {
+        StringBuilder json = new StringBuilder("[");
+
+        for (int ii = 0; ii < 100; ii++) {
+            json.append("{\"id\":").append(ii).append(",\"name\":\"item ").append(ii).append("\",\"value\":true},");
+        }
+
+        String text = json.append("{}]").toString();
+        ByteBuffer data = ByteBuffer.wrap(text.getBytes(UTF8));
+
+        ByteBuffer frame = sender.compress(data, true);
+        assertEquals("Should leave the input unchanged", 0, data.position());
+        assertTrue("Should shrink repetitive JSON a lot", frame.remaining() < data.remaining() / 4);
+        assertEquals("Should flag compressed text", RespokeCompressor.FLAG_DEFLATED | RespokeCompressor.FLAG_TEXT, RespokeCompressor.getFlags(frame));
+
+        assertEquals("Should recover the text", text, UTF8.decode(receiver.unwrap(frame)).toString());
+        pool.release(frame);
+
+        // The same instances must keep working for later messages
+        String second = "{\"type\":\"update\",\"state\":\"" + text.substring(0, 300) + "\"}";
+        frame = sender.compress(ByteBuffer.wrap(second.getBytes(UTF8)), true);
+        assertEquals("Should recover a second message", second, UTF8.decode(receiver.unwrap(frame)).toString());
+    }
+
+
+    @Test
+    public void testDictionaryHelpsShortMessages() {
+        String text = "{\"type\":\"update\",\"id\":\"42\",\"timestamp\":1442431337,\"value\":null}";
+        ByteBuffer frame = sender.compress(ByteBuffer.wrap(text.getBytes(UTF8)), true);
+
+        assertTrue("Should shrink a short message using the preset dictionary", (null != frame) && (frame.remaining() < text.length()));
+    }
+
+
+    @Test
+    public void testIncompressibleData() throws DataFormatException {
+        byte[] noise = new byte[2000];
+        new Random(1).nextBytes(noise);
+
+        assertNull("Should not compress what does not shrink", sender.compress(ByteBuffer.wrap(noise), false));
+
+        ByteBuffer frame = sender.wrap(ByteBuffer.wrap(noise), false);
+        assertEquals("Should flag plain binary", 0, RespokeCompressor.getFlags(frame));
+        assertEquals("Should pass plain data through", ByteBuffer.wrap(noise), receiver.unwrap(frame));
+    }
+
+
+    @Test
+    public void testRejectsBadInput() {
+        ByteBuffer[] frames = new ByteBuffer[] {
+            ByteBuffer.allocate(0),
+            ByteBuffer.wrap(new byte[] { RespokeCompressor.FLAG_DEFLATED, 1, 2, 3, 4, 5, 6, 7, 8 }),
+        };
+
+        for (ByteBuffer each : frames) {
+            try {
+                receiver.unwrap(each);
+                fail("Should reject a bad message");
+            } catch (DataFormatException e) {
+                // Expected
+            }
+        }
+    }
+
+
+    @Test
+    public void testLimitsInflatedSize() {
+        ByteBuffer zeros = ByteBuffer.allocate(RespokeCompressor.MAX_INFLATED_SIZE + 1);
+        ByteBuffer frame = sender.compress(zeros, false);
+
+        try {
+            receiver.unwrap(frame);
+            fail("Should refuse to inflate past the limit");
+        } catch (DataFormatException e) {
+            // Expected
+        }
+    }
+}
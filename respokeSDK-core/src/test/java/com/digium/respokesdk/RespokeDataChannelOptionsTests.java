@@ -0,0 +1,61 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+public class RespokeDataChannelOptionsTests {
+
+    @Test
+    public void testPresets() {
+        assertTrue("Should be ordered", RespokeDataChannelOptions.RELIABLE.ordered);
+        assertTrue("Should be reliable", RespokeDataChannelOptions.RELIABLE.isReliable());
+
+        assertFalse("Should be unordered", RespokeDataChannelOptions.UNRELIABLE.ordered);
+        assertFalse("Should not be reliable", RespokeDataChannelOptions.UNRELIABLE.isReliable());
+        assertEquals("Should never retransmit", 0, RespokeDataChannelOptions.UNRELIABLE.maxRetransmits);
+    }
+
+
+    @Test
+    public void testLimits() {
+        RespokeDataChannelOptions byTime = new RespokeDataChannelOptions(false, RespokeDataChannelOptions.UNLIMITED, 150);
+        assertFalse("Should not be reliable", byTime.isReliable());
+        assertEquals("Should describe itself", "unordered, max 150ms lifetime", byTime.toString());
+
+        RespokeDataChannelOptions byCount = new RespokeDataChannelOptions(true, 3, RespokeDataChannelOptions.UNLIMITED);
+        assertEquals("Should describe itself", "ordered, max 3 retransmits", byCount.toString());
+    }
+
+
+    @Test
+    public void testRejectsInvalidLimits() {
+        try {
+            new RespokeDataChannelOptions(false, 2, 100);
+            fail("Should not allow both limits");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+
+        try {
+            new RespokeDataChannelOptions(true, -2, RespokeDataChannelOptions.UNLIMITED);
+            fail("Should not allow a negative limit");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,556 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+/**
+ *  Measures the main channel of a direct connection between two in-process peers. Each peer runs the same codec,
+ *  coalescer, send queue and RespokeDrainScheduler as RespokeDirectConnection, over a loopback transport that stands
+ *  in for the WebRTC data channel. No device or network is needed, so this runs with the other unit tests.
+ *
+ *  Unless a scenario says otherwise, the send queue uses its default policy of failing messages that do not fit, and
+ *  the sender waits for the queue to become writable again, as an application listening for writability would. Any
+ *  message that fails fails the scenario.
+ *
+ *  Every scenario reports messages and megabytes of payload per second, the median and 99th percentile time from
+ *  sendMessage to delivery, and how many bytes went over the transport per byte of payload. The following system
+ *  properties are read:
+ *
+ *  respoke.benchmark.scale      Multiplies the number of messages sent, to get steadier numbers locally. Defaults to 1.
+ *  respoke.benchmark.csv        A file to append the results to.
+ *  respoke.benchmark.baseline   A file of earlier results. A scenario fails if its message rate falls too far below it.
+ *  respoke.benchmark.tolerance  How far below the baseline a scenario may fall, as a fraction. Defaults to 0.3.
+ */
+public class RespokeDirectConnectionBenchmark {
+
+    private static final int[] SIZES = { 16, 256, 4096, 65536 };
+    private static final long BYTES_PER_SCENARIO = 4 * 1024 * 1024;  ///< How much payload each scenario sends, before scaling
+    private static final int MIN_MESSAGES = 500;
+    private static final int MAX_MESSAGES = 20000;
+    private static final long TIMEOUT = 120;  ///< How long a scenario may take, in seconds
+    private static final double DEFAULT_TOLERANCE = 0.3;
+    private static final String CSV_HEADER = "scenario,size,messagesPerSecond,megabytesPerSecond,p50Micros,p99Micros,wireRatio";
+
+    private static boolean printedHeader;
+
+
+    /**
+     *  A combination of negotiated capabilities and sender settings
+     */
+    private static class Scenario {
+        final String name;
+        final boolean rawText;
+        final boolean framedText;
+        final boolean deflate;
+        final boolean binary;
+        final long coalescingWindow;  ///< 0 to send every message straight away
+        final int compressionThreshold;  ///< 0 to never compress
+        final int policy;  ///< The send queue policy
+
+
+        Scenario(String name, boolean rawText, boolean framedText, boolean deflate, boolean binary, long coalescingWindow, int compressionThreshold) {
+            this(name, rawText, framedText, deflate, binary, coalescingWindow, compressionThreshold, RespokeSendQueue.POLICY_FAIL);
+        }
+
+
+        Scenario(String name, boolean rawText, boolean framedText, boolean deflate, boolean binary, long coalescingWindow, int compressionThreshold, int policy) {
+            this.policy = policy;
+            this.name = name;
+            this.rawText = rawText;
+            this.framedText = framedText;
+            this.deflate = deflate;
+            this.binary = binary;
+            this.coalescingWindow = coalescingWindow;
+            this.compressionThreshold = compressionThreshold;
+        }
+    }
+
+
+    /**
+     *  The figures for one scenario and message size
+     */
+    private static class Result {
+        String scenario;
+        int size;
+        double messagesPerSecond;
+        double megabytesPerSecond;
+        double p50Micros;
+        double p99Micros;
+        double wireRatio;
+
+
+        String toCsv() {
+            return String.format(Locale.US, "%s,%d,%.0f,%.2f,%.1f,%.1f,%.3f", scenario, size, messagesPerSecond, megabytesPerSecond, p50Micros, p99Micros, wireRatio);
+        }
+    }
+
+
+    /**
+     *  A message in flight over the loopback transport
+     */
+    private static class Delivery {
+        final byte[] data;
+        final boolean binary;
+
+
+        Delivery(byte[] data, boolean binary) {
+            this.data = data;
+            this.binary = binary;
+        }
+    }
+
+
+    /**
+     *  Stands in for a data channel. Sent messages are copied, as WebRTC copies them into its own buffers, and count
+     *  towards the buffered amount until the receiving thread has decoded them.
+     */
+    private static class LoopbackChannel implements RespokeSendQueue.Sink {
+        final BlockingQueue<Delivery> inFlight = new LinkedBlockingQueue<Delivery>();
+        final AtomicLong bufferedAmount = new AtomicLong();
+        final AtomicLong bytesSent = new AtomicLong();
+
+
+        @Override
+        public boolean send(ByteBuffer data, boolean binary) {
+            byte[] copy = new byte[data.remaining()];
+            data.duplicate().get(copy);
+            bufferedAmount.addAndGet(copy.length);
+            bytesSent.addAndGet(copy.length);
+            inFlight.add(new Delivery(copy, binary));
+            return true;
+        }
+
+
+        @Override
+        public long getBufferedAmount() {
+            return bufferedAmount.get();
+        }
+    }
+
+
+    /**
+     *  The sending side, wired up the way RespokeDirectConnection wires its main channel
+     */
+    private static class Sender {
+        final RespokeMessageCodec codec;
+        final RespokeSendQueue queue;
+        final RespokeMessageCoalescer coalescer;
+        final RespokeScheduler worker = new RespokeExecutorScheduler("RespokeDirectConnectionBenchmark", RespokePlatform.sharedInstance().getLogger());
+        final RespokeDrainScheduler drainScheduler;
+        final boolean coalescing;
+        final boolean waitForWritable;
+        final Object writableLock = new Object();
+        final AtomicInteger failures = new AtomicInteger();
+        final RespokeSendQueue.Completion completion = new RespokeSendQueue.Completion() {
+            @Override
+            public void onSuccess() {
+                // Delivery is checked by the receiver
+            }
+
+            @Override
+            public void onError(String errorMessage) {
+                failures.incrementAndGet();
+            }
+        };
+        final Runnable flushTask = new Runnable() {
+            @Override
+            public void run() {
+                coalescer.flush();
+            }
+        };
+
+
+        Sender(Scenario scenario, LoopbackChannel channel, RespokeBufferPool pool) {
+            codec = new RespokeMessageCodec(pool);
+            codec.setCapabilities(scenario.rawText, scenario.framedText, scenario.deflate);
+            codec.setCompressionThreshold(scenario.compressionThreshold);
+
+            queue = new RespokeSendQueue(channel, pool);
+            queue.configure(scenario.policy, RespokeSendQueue.DEFAULT_LOW_WATERMARK, RespokeSendQueue.DEFAULT_HIGH_WATERMARK, RespokeSendQueue.DEFAULT_CAPACITY);
+            waitForWritable = (RespokeSendQueue.POLICY_BLOCK != scenario.policy);
+
+            queue.setListener(new RespokeSendQueue.Listener() {
+                @Override
+                public void onWritabilityChanged(boolean writable) {
+                    synchronized (writableLock) {
+                        writableLock.notifyAll();
+                    }
+                }
+            });
+
+            drainScheduler = new RespokeDrainScheduler(new RespokeDrainScheduler.Drain() {
+                @Override
+                public boolean drain() {
+                    return queue.drain();
+                }
+            });
+
+            coalescing = scenario.framedText && (scenario.coalescingWindow > 0);
+            coalescer = new RespokeMessageCoalescer(new RespokeMessageCoalescer.Sink() {
+                @Override
+                public void send(String batch, RespokeSendQueue.Completion completion) {
+                    codec.offerText(batch, queue, completion);
+                    scheduleDrainIfNeeded();
+                }
+            });
+
+            if (coalescing) {
+                coalescer.configure(scenario.coalescingWindow, RespokeMessageCoalescer.DEFAULT_MAX_LENGTH);
+            }
+        }
+
+
+        void sendMessage(String message) throws InterruptedException {
+            awaitWritable();
+
+            if (coalescing) {
+                if (coalescer.add(message, completion)) {
+                    worker.postDelayed(flushTask, coalescer.getWindow());
+                }
+            } else {
+                codec.offerText(codec.envelope(message), queue, completion);
+                scheduleDrainIfNeeded();
+            }
+        }
+
+
+        void sendBinary(ByteBuffer data) throws InterruptedException {
+            awaitWritable();
+            codec.offerBinary(data, queue, completion);
+            scheduleDrainIfNeeded();
+        }
+
+
+        void scheduleDrainIfNeeded() {
+            if (queue.needsDrain()) {
+                drainScheduler.schedule(worker);
+            }
+        }
+
+
+        void awaitWritable() throws InterruptedException {
+            if (waitForWritable) {
+                synchronized (writableLock) {
+                    while (!queue.isWritable()) {
+                        // The listener may fire between the check and the wait, so never wait longer than a poll
+                        writableLock.wait(RespokeSendQueue.POLL_INTERVAL);
+                    }
+                }
+            }
+        }
+
+
+        void shutDown() {
+            worker.shutdown();
+        }
+    }
+
+
+    /**
+     *  The receiving side, which decodes messages on its own thread the way the WebRTC signaling thread does and
+     *  notes when each one arrives
+     */
+    private static class Receiver implements RespokeMessageCodec.Receiver, Runnable {
+        final LoopbackChannel channel;
+        final RespokeMessageCodec codec;
+        final long[] sendTimes;
+        final long[] latencies;
+        final int expectedSize;
+        final CountDownLatch finished = new CountDownLatch(1);
+        volatile String error;
+        int received;
+
+
+        Receiver(Scenario scenario, LoopbackChannel channel, RespokeBufferPool pool, long[] sendTimes, int expectedSize) {
+            this.channel = channel;
+            this.sendTimes = sendTimes;
+            this.expectedSize = expectedSize;
+            latencies = new long[sendTimes.length];
+            codec = new RespokeMessageCodec(pool);
+            codec.setCapabilities(scenario.rawText, scenario.framedText, scenario.deflate);
+        }
+
+
+        @Override
+        public void run() {
+            try {
+                while (received < sendTimes.length) {
+                    Delivery delivery = channel.inFlight.take();
+                    codec.receive(ByteBuffer.wrap(delivery.data), delivery.binary, this);
+                    channel.bufferedAmount.addAndGet(-delivery.data.length);
+                }
+            } catch (InterruptedException e) {
+                error = "Interrupted";
+            }
+
+            finished.countDown();
+        }
+
+
+        @Override
+        public void onMessage(String message) {
+            arrived(message.length());
+        }
+
+
+        @Override
+        public void onMessages(List<String> messages) {
+            for (String each : messages) {
+                arrived(each.length());
+            }
+        }
+
+
+        @Override
+        public void onBinaryMessage(ByteBuffer message) {
+            arrived(message.remaining());
+        }
+
+
+        private void arrived(int size) {
+            if ((size != expectedSize) && (null == error)) {
+                error = "Message " + received + " has " + size + " bytes instead of " + expectedSize;
+            }
+
+            latencies[received] = System.nanoTime() - sendTimes[received];
+            received++;
+        }
+    }
+
+
+    @Test
+    public void testTextFormats() throws Exception {
+        run(new Scenario("json", false, false, false, false, 0, 0));
+        run(new Scenario("raw", true, false, false, false, 0, 0));
+        run(new Scenario("framed", true, true, false, false, 0, 0));
+        run(new Scenario("rawBlocking", true, false, false, false, 0, 0, RespokeSendQueue.POLICY_BLOCK));
+    }
+
+
+    @Test
+    public void testCoalescing() throws Exception {
+        run(new Scenario("coalesced", true, true, false, false, RespokeMessageCoalescer.DEFAULT_WINDOW, 0));
+    }
+
+
+    @Test
+    public void testCompression() throws Exception {
+        run(new Scenario("deflate", true, true, true, false, 0, RespokeCompressor.DEFAULT_THRESHOLD));
+    }
+
+
+    @Test
+    public void testBinary() throws Exception {
+        run(new Scenario("binary", false, false, false, true, 0, 0));
+        run(new Scenario("binaryFlagged", false, false, true, true, 0, 0));
+    }
+
+
+    //** Private methods
+
+
+    private static void run(Scenario scenario) throws Exception {
+        HashMap<String, Double> baseline = loadBaseline();
+        double tolerance = Double.parseDouble(System.getProperty("respoke.benchmark.tolerance", String.valueOf(DEFAULT_TOLERANCE)));
+
+        for (int size : SIZES) {
+            int count = messageCount(size);
+
+            // Let the JIT compile the hot paths before anything is timed
+            measure(scenario, size, Math.max(count / 10, 100));
+            Result result = measure(scenario, size, count);
+            report(result);
+
+            Double expected = baseline.get(result.scenario + "," + result.size);
+
+            if ((null != expected) && (result.messagesPerSecond < expected * (1 - tolerance))) {
+                fail(String.format(Locale.US, "%s with %d byte messages managed %.0f messages per second, against a baseline of %.0f", scenario.name, size, result.messagesPerSecond, expected));
+            }
+        }
+    }
+
+
+    private static Result measure(Scenario scenario, int size, int count) throws Exception {
+        RespokeBufferPool pool = new RespokeBufferPool();
+        LoopbackChannel channel = new LoopbackChannel();
+        long[] sendTimes = new long[count];
+        Sender sender = new Sender(scenario, channel, pool);
+        Receiver receiver = new Receiver(scenario, channel, pool, sendTimes, size);
+        Thread receiveThread = new Thread(receiver, "RespokeDirectConnectionBenchmark");
+
+        String text = scenario.binary ? null : payload(size);
+        ByteBuffer data = scenario.binary ? ByteBuffer.wrap(payload(size).getBytes("UTF-8")) : null;
+
+        receiveThread.start();
+        long start = System.nanoTime();
+
+        try {
+            for (int ii = 0; ii < count; ii++) {
+                sendTimes[ii] = System.nanoTime();
+
+                if (scenario.binary) {
+                    sender.sendBinary(data);
+                } else {
+                    sender.sendMessage(text);
+                }
+            }
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT);
+
+            // A failed message never arrives, so check for failures while waiting rather than running into the timeout
+            while (!receiver.finished.await(100, TimeUnit.MILLISECONDS)) {
+                assertEquals(scenario.name + " with " + size + " byte messages should not fail", 0, sender.failures.get());
+                assertTrue(scenario.name + " with " + size + " byte messages did not finish", System.nanoTime() < deadline);
+            }
+        } finally {
+            sender.shutDown();
+            receiveThread.interrupt();
+        }
+
+        long elapsed = System.nanoTime() - start;
+
+        if (null != receiver.error) {
+            fail(scenario.name + ": " + receiver.error);
+        }
+
+        assertEquals("No message should fail", 0, sender.failures.get());
+        assertEquals("Should deliver every message", count, receiver.received);
+
+        long[] latencies = receiver.latencies;
+        Arrays.sort(latencies);
+
+        Result result = new Result();
+        result.scenario = scenario.name;
+        result.size = size;
+        result.messagesPerSecond = count / (elapsed / 1e9);
+        result.megabytesPerSecond = ((double) count * size / (1024 * 1024)) / (elapsed / 1e9);
+        result.p50Micros = latencies[count / 2] / 1e3;
+        result.p99Micros = latencies[Math.min(count - 1, (int) (count * 0.99))] / 1e3;
+        result.wireRatio = (double) channel.bytesSent.get() / ((double) count * size);
+        return result;
+    }
+
+
+    private static int messageCount(int size) {
+        double scale = Double.parseDouble(System.getProperty("respoke.benchmark.scale", "1"));
+        long count = (long) (BYTES_PER_SCENARIO * scale / size);
+        return (int) Math.max(MIN_MESSAGES * scale, Math.min(MAX_MESSAGES * scale, count));
+    }
+
+
+    /**
+     *  Build a message of the specified length that looks like the JSON state updates apps send, so compression sees
+     *  realistic input. The text is ASCII, so its length in characters and in bytes are the same.
+     *
+     *  @param size  The length
+     *
+     *  @return The message
+     */
+    private static String payload(int size) {
+        String[] words = { "position", "velocity", "state", "update", "value", "name", "true", "false", "12.5", "-3" };
+        StringBuilder builder = new StringBuilder(size + 16);
+        builder.append("{\"type\":\"update\",\"items\":[");
+
+        for (int ii = 0; builder.length() < size; ii++) {
+            builder.append("{\"").append(words[ii % words.length]).append("\":").append(ii).append("},");
+        }
+
+        builder.setLength(size);
+        return builder.toString();
+    }
+
+
+    private static synchronized void report(Result result) throws IOException {
+        if (!printedHeader) {
+            System.out.println(String.format(Locale.US, "%-14s %6s %12s %10s %10s %10s %9s", "scenario", "size", "messages/s", "MB/s", "p50 us", "p99 us", "wire/B"));
+        }
+
+        System.out.println(String.format(Locale.US, "%-14s %6d %12.0f %10.2f %10.1f %10.1f %9.3f", result.scenario, result.size, result.messagesPerSecond, result.megabytesPerSecond, result.p50Micros, result.p99Micros, result.wireRatio));
+
+        String csvPath = System.getProperty("respoke.benchmark.csv");
+
+        if (null != csvPath) {
+            File csv = new File(csvPath);
+            boolean header = !csv.exists() || (0 == csv.length());
+            PrintWriter writer = new PrintWriter(new FileWriter(csv, true));
+
+            try {
+                if (header) {
+                    writer.println(CSV_HEADER);
+                }
+
+                writer.println(result.toCsv());
+            } finally {
+                writer.close();
+            }
+        }
+
+        printedHeader = true;
+    }
+
+
+    /**
+     *  Read the message rates from a file written with respoke.benchmark.csv
+     *
+     *  @return The rates, keyed by scenario and size, or an empty map if no baseline was given
+     */
+    private static HashMap<String, Double> loadBaseline() throws IOException {
+        HashMap<String, Double> rates = new HashMap<String, Double>();
+        String path = System.getProperty("respoke.benchmark.baseline");
+
+        if (null == path) {
+            return rates;
+        }
+
+        BufferedReader reader = new BufferedReader(new FileReader(path));
+
+        try {
+            String line;
+
+            while (null != (line = reader.readLine())) {
+                String[] fields = line.split(",");
+
+                if ((fields.length >= 3) && !CSV_HEADER.equals(line)) {
+                    // A later run of the same scenario replaces an earlier one
+                    rates.put(fields[0] + "," + fields[1], Double.parseDouble(fields[2]));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        return rates;
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class RespokeDrainSchedulerTests {
+
+    private static final int MESSAGE_SIZE = 200;
+    private static final int MESSAGE_COUNT = 150;
+    private static final long SEND_INTERVAL = 2;  ///< Well under RespokeSendQueue.POLL_INTERVAL, in milliseconds
+
+    private RespokeExecutorScheduler worker;
+    private volatile boolean backedUp;  ///< While set, the transport reports a full buffer
+    private AtomicInteger sent;
+    private AtomicInteger failed;
+    private CountDownLatch finished;
+
+
+    @Before
+    public void setUp() {
+        worker = new RespokeExecutorScheduler("RespokeDrainSchedulerTests", RespokePlatform.sharedInstance().getLogger());
+        sent = new AtomicInteger();
+        failed = new AtomicInteger();
+        finished = new CountDownLatch(MESSAGE_COUNT);
+    }
+
+
+    @After
+    public void tearDown() {
+        worker.shutdown();
+    }
+
+
+    @Test
+    public void testDrainsWhileSendingFasterThanPollInterval() throws InterruptedException {
+        final RespokeSendQueue queue = new RespokeSendQueue(new RespokeSendQueue.Sink() {
+            @Override
+            public boolean send(ByteBuffer data, boolean binary) {
+                sent.incrementAndGet();
+                return true;
+            }
+
+            @Override
+            public long getBufferedAmount() {
+                return backedUp ? RespokeSendQueue.DEFAULT_HIGH_WATERMARK : 0;
+            }
+        }, new RespokeBufferPool());
+
+        // The default policy, with room for fewer messages than are sent, so the queue overflows unless it drains
+        // while the sender is still going
+        queue.configure(RespokeSendQueue.POLICY_FAIL, 1024, 2048, MESSAGE_SIZE * MESSAGE_COUNT / 4);
+
+        RespokeDrainScheduler drainScheduler = new RespokeDrainScheduler(new RespokeDrainScheduler.Drain() {
+            @Override
+            public boolean drain() {
+                return queue.drain();
+            }
+        });
+
+        RespokeSendQueue.Completion completion = new RespokeSendQueue.Completion() {
+            @Override
+            public void onSuccess() {
+                finished.countDown();
+            }
+
+            @Override
+            public void onError(String errorMessage) {
+                failed.incrementAndGet();
+                finished.countDown();
+            }
+        };
+
+        backedUp = true;
+        ByteBuffer message = ByteBuffer.allocate(MESSAGE_SIZE);
+
+        for (int ii = 0; ii < MESSAGE_COUNT; ii++) {
+            if (ii == 10) {
+                // The transport recovers early on, but only a drain can send what is already queued
+                backedUp = false;
+            }
+
+            queue.offer(message, true, completion);
+
+            if (queue.needsDrain()) {
+                drainScheduler.schedule(worker);
+            }
+
+            Thread.sleep(SEND_INTERVAL);
+        }
+
+        assertTrue("Every message should finish", finished.await(5, TimeUnit.SECONDS));
+        assertEquals("No message should fail for lack of room", 0, failed.get());
+        assertEquals("Every message should be sent", MESSAGE_COUNT, sent.get());
+        assertFalse("Should stop polling once drained", queue.needsDrain());
+    }
+
+
+    @Test
+    public void testCancel() throws InterruptedException {
+        final AtomicInteger drains = new AtomicInteger();
+        RespokeDrainScheduler drainScheduler = new RespokeDrainScheduler(new RespokeDrainScheduler.Drain() {
+            @Override
+            public boolean drain() {
+                drains.incrementAndGet();
+                return false;
+            }
+        });
+
+        drainScheduler.schedule(worker);
+        drainScheduler.schedule(worker);
+        assertTrue("Should have a drain pending", drainScheduler.isScheduled());
+
+        drainScheduler.cancel();
+        Thread.sleep(RespokeSendQueue.POLL_INTERVAL * 3);
+        assertEquals("Should not drain once cancelled", 0, drains.get());
+
+        drainScheduler.schedule(worker);
+        drainScheduler.schedule(worker);
+        Thread.sleep(RespokeSendQueue.POLL_INTERVAL * 3);
+        assertEquals("Should drain once however often it is asked to", 1, drains.get());
+        assertFalse("Should have nothing pending", drainScheduler.isScheduled());
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class RespokeExecutorSchedulerTests {
+
+    private static final long TIMEOUT = 5;  ///< How long to wait for a task, in seconds
+
+    private List<String> log;
+    private RespokeExecutorScheduler scheduler;
+
+
+    private Runnable record(final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                log.add(name);
+            }
+        };
+    }
+
+
+    @Before
+    public void setUp() {
+        log = Collections.synchronizedList(new ArrayList<String>());
+        scheduler = new RespokeExecutorScheduler("RespokeExecutorSchedulerTests", RespokePlatform.sharedInstance().getLogger());
+    }
+
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+
+    @Test
+    public void testRunsInOrder() throws InterruptedException {
+        scheduler.postDelayed(record("later"), 50);
+        scheduler.post(record("first"));
+        scheduler.post(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("A failing task should not stop the scheduler");
+            }
+        });
+        scheduler.post(record("second"));
+
+        waitForIdle(100);
+        assertEquals("Should run tasks in the order they become due", "[first, second, later]", log.toString());
+    }
+
+
+    @Test
+    public void testCancel() throws InterruptedException {
+        Runnable repeated = record("repeated");
+        scheduler.postDelayed(repeated, 20);
+        scheduler.postDelayed(repeated, 30);
+        scheduler.postDelayed(record("kept"), 40);
+        scheduler.cancel(repeated);
+
+        waitForIdle(60);
+        assertEquals("Should remove every run of a cancelled task", "[kept]", log.toString());
+
+        scheduler.postDelayed(record("cleared"), 20);
+        scheduler.cancelAll();
+        scheduler.post(record("after"));
+
+        waitForIdle(40);
+        assertEquals("Should keep running tasks posted after cancelAll", "[kept, after]", log.toString());
+
+        scheduler.shutdown();
+        scheduler.post(record("ignored"));
+        Thread.sleep(20);
+        assertEquals("Should ignore tasks posted after shutdown", "[kept, after]", log.toString());
+    }
+
+
+    @Test
+    public void testPlatformWithoutAndroid() throws InterruptedException {
+        assertTrue("Should fall back to the JVM platform", RespokePlatform.sharedInstance() instanceof RespokePlatform.JvmPlatform);
+
+        final CountDownLatch attempted = new CountDownLatch(1);
+        RespokeReconnectScheduler reconnect = new RespokeReconnectScheduler(new Runnable() {
+            @Override
+            public void run() {
+                attempted.countDown();
+            }
+        });
+
+        reconnect.schedule();
+        assertTrue("Should run reconnect attempts on a platform worker", attempted.await(TIMEOUT, TimeUnit.SECONDS));
+        reconnect.shutdown();
+    }
+
+
+    //** Private methods
+
+
+    private void waitForIdle(long delayMillis) throws InterruptedException {
+        final CountDownLatch idle = new CountDownLatch(1);
+        scheduler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                idle.countDown();
+            }
+        }, delayMillis);
+
+        assertTrue("Tasks should finish", idle.await(TIMEOUT, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+public class RespokeGroupHistoryTests {
+
+    private static final String MESSAGE = "{\"message\":\"hi\",\"header\":{\"from\":\"bob\",\"channel\":\"g\",\"timestamp\":1000}}";
+
+
+    @Test
+    public void testRequests() throws JSONException {
+        assertEquals("/v1/groups/g/history?limit=50", RespokeGroupHistory.historyURL("g", 50, null));
+        assertEquals("/v1/groups/g/history?limit=5&before=1000", RespokeGroupHistory.historyURL("g", 5, new Date(1000)));
+        assertEquals("/v1/endpoints/alice/conversations", RespokeGroupHistory.conversationsURL("alice"));
+
+        JSONObject body = RespokeGroupHistory.historiesBody(Arrays.asList("g", "h"), 3);
+        assertEquals("3", body.getString("limit"));
+        assertEquals(2, body.getJSONArray("groupIds").length());
+
+        body = RespokeGroupHistory.readStatusBody(Arrays.asList(new RespokeConversationReadStatus("g", new Date(1000))));
+        assertEquals("g", body.getJSONArray("groups").getJSONObject(0).getString("groupId"));
+
+        assertNull("Should accept valid arguments", RespokeGroupHistory.validateHistory("g", 1));
+        assertEquals("maxMessages must be at least 1", RespokeGroupHistory.validateHistory("g", 0));
+        assertEquals("groupId cannot be blank", RespokeGroupHistory.validateHistory("", 1));
+        assertEquals("At least 1 group must be specified", RespokeGroupHistory.validateHistories(new ArrayList<String>(), 1));
+    }
+
+
+    @Test
+    public void testParseResponses() throws JSONException {
+        ArrayList<RespokeGroupHistory.Message> history = RespokeGroupHistory.parseHistory(new JSONArray("[" + MESSAGE + "]"));
+        assertEquals(1, history.size());
+        assertEquals("hi", history.get(0).message);
+        assertEquals("g", history.get(0).groupID);
+        assertEquals("bob", history.get(0).endpointID);
+        assertEquals(1000, history.get(0).timestamp.getTime());
+
+        HashMap<String, List<RespokeGroupHistory.Message>> histories = RespokeGroupHistory.parseHistories(new JSONObject("{\"g\":[" + MESSAGE + "," + MESSAGE + "],\"h\":[]}"));
+        assertEquals(2, histories.get("g").size());
+        assertTrue("Should include groups with no history", histories.get("h").isEmpty());
+
+        ArrayList<RespokeGroupHistory.Conversation> conversations = RespokeGroupHistory.parseConversations(new JSONArray(
+                "[{\"groupId\":\"g\",\"sourceId\":\"bob\",\"unreadCount\":2,\"timestamp\":2000,\"latestMsg\":" + MESSAGE + "}]"));
+        assertEquals(1, conversations.size());
+        assertEquals("bob", conversations.get(0).sourceID);
+        assertEquals(2, conversations.get(0).unreadCount);
+        assertEquals(2000, conversations.get(0).timestamp.getTime());
+        assertEquals("hi", conversations.get(0).latestMessage.message);
+
+        try {
+            RespokeGroupHistory.parseHistory(new JSONArray("[{\"message\":\"no header\"}]"));
+            fail("Should reject a message without a header");
+        } catch (JSONException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class RespokeIceRestartTests {
+
+    private FakeScheduler thread;
+    private List<String> actions;
+    private RespokeIceRestart iceRestart;
+
+
+    /**
+     *  Holds delayed tasks until the test advances the clock
+     */
+    private static class FakeScheduler implements RespokeScheduler {
+        private final ArrayList<Runnable> tasks = new ArrayList<Runnable>();
+        private final ArrayList<Long> dueTimes = new ArrayList<Long>();
+        private long now;
+
+        @Override
+        public void post(Runnable task) {
+            postDelayed(task, 0);
+        }
+
+        @Override
+        public void postDelayed(Runnable task, long delayMillis) {
+            tasks.add(task);
+            dueTimes.add(now + delayMillis);
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            for (int ii = tasks.size() - 1; ii >= 0; ii--) {
+                if (tasks.get(ii) == task) {
+                    tasks.remove(ii);
+                    dueTimes.remove(ii);
+                }
+            }
+        }
+
+        @Override
+        public void cancelAll() {
+            tasks.clear();
+            dueTimes.clear();
+        }
+
+        @Override
+        public void shutdown() {
+            cancelAll();
+        }
+
+        void advance(long millis) {
+            now += millis;
+
+            for (int ii = 0; ii < tasks.size(); ) {
+                if (dueTimes.get(ii) <= now) {
+                    Runnable task = tasks.remove(ii);
+                    dueTimes.remove(ii);
+                    task.run();
+                    ii = 0;
+                } else {
+                    ii++;
+                }
+            }
+        }
+    }
+
+
+    @Before
+    public void setUp() {
+        thread = new FakeScheduler();
+        actions = new ArrayList<String>();
+        iceRestart = new RespokeIceRestart(thread, new RespokeIceRestart.Listener() {
+            @Override
+            public void onRestartStarted() {
+                actions.add("started");
+            }
+
+            @Override
+            public void sendRestartOffer() {
+                actions.add("offer");
+            }
+
+            @Override
+            public void requestRestart() {
+                actions.add("request");
+            }
+
+            @Override
+            public void onFailed() {
+                actions.add("failed");
+            }
+        });
+    }
+
+
+    @Test
+    public void testCallerRestartsOnFailure() {
+        iceRestart.setCaller(true);
+        iceRestart.failed();
+
+        assertTrue("Should restart as soon as ICE fails", iceRestart.isRestarting());
+        assertEquals("The caller should send the restart offer", "[started, offer]", actions.toString());
+
+        iceRestart.failed();
+        assertEquals("Should not restart twice at once", 2, actions.size());
+
+        iceRestart.connected();
+        assertFalse("Should finish once ICE reconnects", iceRestart.isRestarting());
+        thread.advance(RespokeIceRestart.TIMEOUT);
+        assertEquals("Should not time out once reconnected", 2, actions.size());
+    }
+
+
+    @Test
+    public void testGracePeriod() {
+        iceRestart.setCaller(true);
+        iceRestart.disconnected();
+        thread.advance(RespokeIceRestart.DEFAULT_GRACE_PERIOD - 1);
+        assertEquals("Should wait out the grace period", 0, actions.size());
+
+        iceRestart.connected();
+        thread.advance(RespokeIceRestart.DEFAULT_GRACE_PERIOD);
+        assertEquals("Should not restart a connection that recovered", 0, actions.size());
+
+        iceRestart.disconnected();
+        thread.advance(RespokeIceRestart.DEFAULT_GRACE_PERIOD);
+        assertEquals("Should restart once the grace period passes", "[started, offer]", actions.toString());
+
+        thread.advance(RespokeIceRestart.TIMEOUT);
+        assertEquals("Should give up if the restart does not reconnect", "[started, offer, failed]", actions.toString());
+    }
+
+
+    @Test
+    public void testCalleeRequestsRestart() {
+        iceRestart.failed();
+        assertEquals("The callee should ask the caller to restart", "[started, request]", actions.toString());
+
+        assertTrue("Should answer the caller's restart offer", iceRestart.offerReceived());
+        assertEquals("Should not start again for the offer", 2, actions.size());
+
+        iceRestart.restartRequested();
+        assertEquals("The callee should ignore restart requests", 2, actions.size());
+
+        iceRestart.connected();
+        assertFalse(iceRestart.isRestarting());
+    }
+
+
+    @Test
+    public void testCalleeAcceptsRestartOffer() {
+        assertTrue("Should answer a restart offer while still connected", iceRestart.offerReceived());
+        assertTrue(iceRestart.isRestarting());
+        assertEquals("Should not ask for a restart the caller has already started", "[started]", actions.toString());
+
+        RespokeIceRestart callerRestart = new RespokeIceRestart(thread, null);
+        callerRestart.setCaller(true);
+        assertFalse("The caller should ignore offers", callerRestart.offerReceived());
+    }
+
+
+    @Test
+    public void testCallerHonorsRequest() {
+        iceRestart.setCaller(true);
+        iceRestart.restartRequested();
+        assertEquals("The caller should restart when the callee asks", "[started, offer]", actions.toString());
+
+        iceRestart.restartRequested();
+        assertEquals("Should ignore requests while restarting", 2, actions.size());
+    }
+
+
+    @Test
+    public void testRestartAfterHangup() {
+        iceRestart.disconnected();
+        iceRestart.end();
+        thread.advance(RespokeIceRestart.DEFAULT_GRACE_PERIOD);
+
+        assertFalse("Should ignore a restart offer after hangup", iceRestart.offerReceived());
+        iceRestart.failed();
+        iceRestart.restartRequested();
+        assertEquals("Should do nothing once the call has ended", 0, actions.size());
+        assertFalse(iceRestart.isRestarting());
+    }
+
+
+    @Test
+    public void testRestartsDisabled() {
+        iceRestart.setGracePeriod(-1);
+        iceRestart.disconnected();
+        thread.advance(RespokeIceRestart.DEFAULT_GRACE_PERIOD);
+        assertEquals("Should not restart a disconnected connection", 0, actions.size());
+
+        iceRestart.failed();
+        assertEquals("Should give up as soon as ICE fails", "[failed]", actions.toString());
+    }
+}
@@ -0,0 +1,216 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+public class RespokeMessageCoalescerTests {
+
+    private List<String> batches;
+    private List<String> results;
+    private RespokeSendQueue.Completion pendingBatch;
+    private RespokeMessageCoalescer coalescer;
+
+
+    private class Result implements RespokeSendQueue.Completion {
+        private final String name;
+
+        Result(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void onSuccess() {
+            results.add(name + " sent");
+        }
+
+        @Override
+        public void onError(String errorMessage) {
+            results.add(name + ": " + errorMessage);
+        }
+    }
+
+
+    @Before
+    public void setUp() {
+        batches = Collections.synchronizedList(new ArrayList<String>());
+        results = Collections.synchronizedList(new ArrayList<String>());
+
+        coalescer = new RespokeMessageCoalescer(new RespokeMessageCoalescer.Sink() {
+            @Override
+            public void send(String batch, RespokeSendQueue.Completion completion) {
+                batches.add(batch);
+                pendingBatch = completion;
+            }
+        });
+        coalescer.configure(10, 20);
+    }
+
+
+    @Test
+    public void testCoalescesUntilFlushed() {
+        assertTrue("The first message should start the window", coalescer.add("hello", new Result("hello")));
+        assertFalse("Later messages should join the batch", coalescer.add("hi", new Result("hi")));
+        assertFalse("Later messages should join the batch", coalescer.add("", null));
+        assertEquals("Should hold the batch until the window passes", 0, batches.size());
+
+        coalescer.flush();
+        assertEquals("Should send one framed batch", Arrays.asList("5:hello2:hi0:"), batches);
+
+        pendingBatch.onSuccess();
+        assertEquals("Should report every message in the batch", "[hello sent, hi sent]", results.toString());
+
+        coalescer.flush();
+        assertEquals("Should not send an empty batch", 1, batches.size());
+    }
+
+
+    @Test
+    public void testSendsFullBatchWithoutWaiting() {
+        coalescer.add("0123456789", new Result("first"));
+        assertFalse("Should not need a timer for a batch that was sent when full", coalescer.add("0123456789", new Result("second")));
+        assertEquals("Should send as soon as the batch is full", Arrays.asList("10:012345678910:0123456789"), batches);
+
+        pendingBatch.onError("Error sending message");
+        assertEquals("Should report the failure to every message", "[first: Error sending message, second: Error sending message]", results.toString());
+
+        assertTrue("The next message should start a new window", coalescer.add("next", null));
+    }
+
+
+    @Test
+    public void testRoundTrip() {
+        List<String> messages = Arrays.asList("plain", "", "with:colons:1:", "12:digits", "\u00e9\u4e2d\ud83d\ude00");
+        StringBuilder batch = new StringBuilder();
+
+        for (String each : messages) {
+            batch.append(RespokeMessageCoalescer.frame(each));
+        }
+
+        assertEquals("Should unpack the messages in order", messages, RespokeMessageCoalescer.unpack(batch.toString()));
+        assertEquals("An empty batch holds no messages", 0, RespokeMessageCoalescer.unpack("").size());
+    }
+
+
+    @Test
+    public void testRejectsMalformedBatches() {
+        for (String each : new String[] { "hello", ":hello", "x:hello", "9:short", "99999999999:big", "-1:a" }) {
+            try {
+                RespokeMessageCoalescer.unpack(each);
+                fail("Should reject " + each);
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+
+
+    @Test
+    public void testClose() {
+        coalescer.add("waiting", new Result("waiting"));
+        coalescer.close("Closed");
+        coalescer.add("late", new Result("late"));
+        coalescer.flush();
+
+        assertEquals("Should fail waiting and new messages", "[waiting: Closed, late: Closed]", results.toString());
+        assertEquals("Should not send anything", 0, batches.size());
+    }
+
+
+    @Test
+    public void testBlockingQueueAtHighWatermark() throws InterruptedException {
+        final Charset utf8 = Charset.forName("UTF-8");
+        final List<String> sent = Collections.synchronizedList(new ArrayList<String>());
+        final long[] bufferedAmount = { 100 };
+
+        // The data channel is at its high watermark, and nothing but a blocked producer is left to drain the queue
+        final RespokeSendQueue queue = new RespokeSendQueue(new RespokeSendQueue.Sink() {
+            @Override
+            public boolean send(ByteBuffer data, boolean binary) {
+                sent.add(utf8.decode(data.duplicate()).toString());
+                return true;
+            }
+
+            @Override
+            public long getBufferedAmount() {
+                synchronized (bufferedAmount) {
+                    return bufferedAmount[0];
+                }
+            }
+        }, new RespokeBufferPool());
+        queue.configure(RespokeSendQueue.POLICY_BLOCK, 10, 100, 100);
+
+        final RespokeMessageCoalescer blockingCoalescer = new RespokeMessageCoalescer(new RespokeMessageCoalescer.Sink() {
+            @Override
+            public void send(String batch, RespokeSendQueue.Completion completion) {
+                queue.offer(ByteBuffer.wrap(batch.getBytes(utf8)), false, completion);
+            }
+        });
+        blockingCoalescer.configure(10, 60);
+
+        final CountDownLatch filled = new CountDownLatch(1);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                blockingCoalescer.add(repeat('a', 60), null);
+                blockingCoalescer.add(repeat('b', 60), null);
+                filled.countDown();
+            }
+        }).start();
+
+        assertFalse("Should block while the queue is full", filled.await(200, TimeUnit.MILLISECONDS));
+
+        final CountDownLatch flushed = new CountDownLatch(1);
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                blockingCoalescer.add("c", null);
+                blockingCoalescer.flush();
+                flushed.countDown();
+            }
+        }).start();
+
+        assertTrue("Should not wait for another thread's blocked batch", flushed.await(5, TimeUnit.SECONDS));
+
+        synchronized (bufferedAmount) {
+            bufferedAmount[0] = 0;
+        }
+
+        assertTrue("Should send once the data channel drains, without a call to drain", filled.await(5, TimeUnit.SECONDS));
+        assertEquals("Should keep the order", Arrays.asList("60:" + repeat('a', 60), "60:" + repeat('b', 60), "1:c"), sent);
+    }
+
+
+    //** Private methods
+
+
+    private static String repeat(char character, int count) {
+        char[] characters = new char[count];
+        Arrays.fill(characters, character);
+        return new String(characters);
+    }
+}
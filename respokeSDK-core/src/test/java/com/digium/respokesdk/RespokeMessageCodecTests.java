@@ -0,0 +1,166 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class RespokeMessageCodecTests {
+
+    private RespokeBufferPool pool;
+    private RespokeMessageCodec sender;
+    private RespokeMessageCodec receiver;
+    private List<String> received;
+    private List<byte[]> sent;
+    private List<Boolean> sentBinary;
+    private int delivered;  ///< How many of the sent messages have been passed to the receiving codec
+    private RespokeSendQueue queue;
+
+
+    private class Recorder implements RespokeMessageCodec.Receiver {
+        @Override
+        public void onMessage(String message) {
+            received.add(message);
+        }
+
+        @Override
+        public void onMessages(List<String> messages) {
+            received.addAll(messages);
+        }
+
+        @Override
+        public void onBinaryMessage(ByteBuffer message) {
+            byte[] data = new byte[message.remaining()];
+            message.get(data);
+            received.add("binary " + Arrays.toString(data));
+        }
+    }
+
+
+    @Before
+    public void setUp() {
+        pool = new RespokeBufferPool();
+        sender = new RespokeMessageCodec(pool);
+        receiver = new RespokeMessageCodec(pool);
+        received = new ArrayList<String>();
+        sent = new ArrayList<byte[]>();
+        sentBinary = new ArrayList<Boolean>();
+
+        queue = new RespokeSendQueue(new RespokeSendQueue.Sink() {
+            @Override
+            public boolean send(ByteBuffer data, boolean binary) {
+                byte[] copy = new byte[data.remaining()];
+                data.duplicate().get(copy);
+                sent.add(copy);
+                sentBinary.add(binary);
+                return true;
+            }
+
+            @Override
+            public long getBufferedAmount() {
+                return 0;
+            }
+        }, pool);
+    }
+
+
+    @Test
+    public void testTextFormats() {
+        String message = "say \"hi\"\n\u00e9\u4e2d";
+        boolean[][] capabilities = { { false, false }, { true, false }, { true, true } };
+
+        for (boolean[] each : capabilities) {
+            sender.setCapabilities(each[0], each[1], false);
+            receiver.setCapabilities(each[0], each[1], false);
+            sender.offerText(sender.envelope(message), queue, null);
+            deliverAll();
+        }
+
+        assertEquals("Every format should round trip", Arrays.asList(message, message, message), received);
+        assertEquals("Raw text should be sent as is", message, utf8(sent.get(1)));
+        assertEquals("Framed text should carry its length", message.length() + ":" + message, utf8(sent.get(2)));
+    }
+
+
+    @Test
+    public void testCompressesLargeText() {
+        sender.setCapabilities(true, true, true);
+        receiver.setCapabilities(true, true, true);
+        sender.setCompressionThreshold(64);
+
+        StringBuilder builder = new StringBuilder();
+
+        while (builder.length() < 1000) {
+            builder.append("{\"type\":\"update\",\"value\":").append(builder.length()).append("},");
+        }
+
+        String large = builder.toString();
+        sender.offerText(sender.envelope("small"), queue, null);
+        sender.offerText(sender.envelope(large), queue, null);
+        deliverAll();
+
+        assertEquals("Both messages should arrive intact", Arrays.asList("small", large), received);
+        assertEquals("Text below the threshold should not be compressed", Boolean.FALSE, sentBinary.get(0));
+        assertEquals("Compressed text should be sent as binary", Boolean.TRUE, sentBinary.get(1));
+        assertTrue("Compressed text should be smaller", sent.get(1).length < large.length());
+    }
+
+
+    @Test
+    public void testBinaryFlags() {
+        ByteBuffer data = ByteBuffer.wrap(new byte[] { 1, 2, 3 });
+
+        sender.offerBinary(data, queue, null);
+        sender.setCapabilities(false, false, true);
+        sender.offerBinary(data, queue, null);
+
+        assertEquals("Should leave the data untouched", 3, data.remaining());
+        assertEquals("Should only add a flags byte once deflate is negotiated", 3, sent.get(0).length);
+        assertEquals("Should only add a flags byte once deflate is negotiated", 4, sent.get(1).length);
+
+        receiver.receive(ByteBuffer.wrap(sent.get(0)), true, new Recorder());
+        receiver.setCapabilities(false, false, true);
+        receiver.receive(ByteBuffer.wrap(sent.get(1)), true, new Recorder());
+        receiver.receive(ByteBuffer.allocate(0), true, new Recorder());
+
+        assertEquals("Should deliver the same data either way and ignore an empty message", Arrays.asList("binary [1, 2, 3]", "binary [1, 2, 3]"), received);
+    }
+
+
+    //** Private methods
+
+
+    private void deliverAll() {
+        Recorder recorder = new Recorder();
+
+        for (; delivered < sent.size(); delivered++) {
+            receiver.receive(ByteBuffer.wrap(sent.get(delivered)), sentBinary.get(delivered), recorder);
+        }
+    }
+
+
+    private static String utf8(byte[] data) {
+        try {
+            return new String(data, "UTF-8");
+        } catch (java.io.UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import org.json.JSONArray;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class RespokePresenceRegistrarTests {
+
+    private static final long TIMEOUT = 5;  ///< How long to wait for a batch, in seconds
+
+    private RespokeExecutorScheduler thread;
+    private List<ArrayList<String>> batches;
+    private List<String> presences;
+    private volatile String initialPresence;  ///< The response the fake server gives each registration
+    private volatile CountDownLatch registered;
+    private RespokePresenceRegistrar registrar;
+
+
+    @Before
+    public void setUp() {
+        thread = new RespokeExecutorScheduler("RespokePresenceRegistrarTests", RespokePlatform.sharedInstance().getLogger());
+        batches = Collections.synchronizedList(new ArrayList<ArrayList<String>>());
+        presences = Collections.synchronizedList(new ArrayList<String>());
+        initialPresence = "[]";
+        registered = new CountDownLatch(1);
+
+        registrar = new RespokePresenceRegistrar(thread, new RespokePresenceRegistrar.Listener() {
+            @Override
+            public void registerPresence(ArrayList<String> endpointIDs, RespokeSignalingProtocol.RegisterPresenceListener completionListener) {
+                batches.add(endpointIDs);
+
+                try {
+                    completionListener.onSuccess(new JSONArray(initialPresence));
+                } catch (Exception e) {
+                    completionListener.onError(e.getMessage());
+                }
+            }
+
+            @Override
+            public void onConnectionPresence(String endpointID, String connectionID, Object presence) {
+                presences.add(endpointID + "/" + connectionID + "=" + presence);
+            }
+
+            @Override
+            public void onRegistered(ArrayList<String> endpointIDs) {
+                registered.countDown();
+            }
+        });
+    }
+
+
+    @After
+    public void tearDown() {
+        thread.shutdown();
+    }
+
+
+    @Test
+    public void testBatchesRegistrations() throws InterruptedException {
+        initialPresence = "[{\"endpointId\":\"bob\",\"connectionStates\":{\"c1\":{\"type\":\"available\"}}}]";
+
+        // Hold the thread so that every endpoint is queued before the batch runs
+        final CountDownLatch release = new CountDownLatch(1);
+        thread.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await(TIMEOUT, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        registrar.queue("alice");
+        registrar.queue("bob");
+        registrar.queue("alice");
+        registrar.queue(null);
+        release.countDown();
+
+        assertTrue("Should register", registered.await(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals("Should register every queued endpoint once, in a single request", "[[alice, bob]]", batches.toString());
+        assertEquals("Should report the initial presence of each connection", "[bob/c1=available]", presences.toString());
+        assertTrue("Should remember the registration", registrar.isRegistered("alice"));
+
+        registrar.queue("alice");
+        waitForIdle();
+        assertEquals("Should not register an endpoint twice", 1, batches.size());
+    }
+
+
+    @Test
+    public void testClearRegistrations() throws InterruptedException {
+        registrar.queue("alice");
+        assertTrue("Should register", registered.await(TIMEOUT, TimeUnit.SECONDS));
+
+        registrar.clearRegistrations();
+        assertFalse("Should forget the registration", registrar.isRegistered("alice"));
+
+        registered = new CountDownLatch(1);
+        registrar.queue("alice");
+        assertTrue("Should register again on the new connection", registered.await(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals(2, batches.size());
+
+        registrar.reset();
+        assertFalse("Should forget the registration", registrar.isRegistered("alice"));
+    }
+
+
+    //** Private methods
+
+
+    private void waitForIdle() throws InterruptedException {
+        final CountDownLatch idle = new CountDownLatch(1);
+        thread.post(new Runnable() {
+            @Override
+            public void run() {
+                idle.countDown();
+            }
+        });
+
+        assertTrue("Tasks should finish", idle.await(TIMEOUT, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import org.junit.Test;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ *  Compares the SDP engine against the regular expression based munging it replaced. The timings are printed
+ *  rather than asserted so that the benchmark does not fail on slow build machines.
+ */
+public class RespokeSDPBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 20000;
+    private static final int ITERATIONS = 100000;
+    private static volatile int sink;  ///< Consumes results so that the timed loops are not optimized away
+
+
+    @Test
+    public void benchmarkPreferISAC() {
+        String[] priority = {"ISAC/16000"};
+
+        // Both implementations must produce the same output for the comparison to be meaningful
+        RespokeSDP check = RespokeSDP.parse(RespokeSDPTests.SAMPLE_SDP);
+        check.preferCodecs(RespokeSDP.MEDIA_AUDIO, priority);
+        assertEquals("Should match the legacy output", legacyPreferISAC(RespokeSDPTests.SAMPLE_SDP), check.toString());
+
+        timeLegacy(WARMUP_ITERATIONS);
+        timeEngine(WARMUP_ITERATIONS, priority);
+        long legacyNanos = timeLegacy(ITERATIONS);
+        long engineNanos = timeEngine(ITERATIONS, priority);
+
+        System.out.println(String.format("SDP munging: legacy %.2f us/op, engine %.2f us/op",
+                legacyNanos / 1000.0 / ITERATIONS, engineNanos / 1000.0 / ITERATIONS));
+    }
+
+
+    private static long timeLegacy(int iterations) {
+        int length = 0;
+        long start = System.nanoTime();
+
+        for (int ii = 0; ii < iterations; ii++) {
+            length += legacyPreferISAC(RespokeSDPTests.SAMPLE_SDP).length();
+        }
+
+        long elapsed = System.nanoTime() - start;
+        sink = length;
+        return elapsed;
+    }
+
+
+    private static long timeEngine(int iterations, String[] priority) {
+        int length = 0;
+        long start = System.nanoTime();
+
+        for (int ii = 0; ii < iterations; ii++) {
+            RespokeSDP sdp = RespokeSDP.parse(RespokeSDPTests.SAMPLE_SDP);
+            sdp.preferCodecs(RespokeSDP.MEDIA_AUDIO, priority);
+            length += sdp.toString().length();
+        }
+
+        long elapsed = System.nanoTime() - start;
+        sink = length;
+        return elapsed;
+    }
+
+
+    /**
+     *  The munging previously done by RespokeCall.preferISAC, kept here as the baseline
+     */
+    private static String legacyPreferISAC(String sdpDescription) {
+        String[] lines = sdpDescription.split("\r\n");
+        int mLineIndex = -1;
+        String isac16kRtpMap = null;
+        Pattern isac16kPattern = Pattern.compile("^a=rtpmap:(\\d+) ISAC/16000[\r]?$");
+
+        for (int i = 0; (i < lines.length) && (mLineIndex == -1 || isac16kRtpMap == null); ++i) {
+            if (lines[i].startsWith("m=audio ")) {
+                mLineIndex = i;
+                continue;
+            }
+            Matcher isac16kMatcher = isac16kPattern.matcher(lines[i]);
+            if (isac16kMatcher.matches()) {
+                isac16kRtpMap = isac16kMatcher.group(1);
+            }
+        }
+
+        if ((mLineIndex == -1) || (isac16kRtpMap == null)) {
+            return sdpDescription;
+        }
+
+        String[] origMLineParts = lines[mLineIndex].split(" ");
+        StringBuilder newMLine = new StringBuilder();
+        int origPartIndex = 0;
+        newMLine.append(origMLineParts[origPartIndex++]).append(" ");
+        newMLine.append(origMLineParts[origPartIndex++]).append(" ");
+        newMLine.append(origMLineParts[origPartIndex++]).append(" ");
+        newMLine.append(isac16kRtpMap);
+        for (; origPartIndex < origMLineParts.length; ++origPartIndex) {
+            if (!origMLineParts[origPartIndex].equals(isac16kRtpMap)) {
+                newMLine.append(" ").append(origMLineParts[origPartIndex]);
+            }
+        }
+        lines[mLineIndex] = newMLine.toString();
+        StringBuilder newSdpDescription = new StringBuilder();
+        for (String line : lines) {
+            newSdpDescription.append(line).append("\r\n");
+        }
+        return newSdpDescription.toString();
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+
+public class RespokeSDPTests {
+
+    public static final String SAMPLE_SDP = "v=0\r\n" +
+            "o=- 4611731400430051336 2 IN IP4 127.0.0.1\r\n" +
+            "s=-\r\n" +
+            "t=0 0\r\n" +
+            "a=group:BUNDLE audio video\r\n" +
+            "a=msid-semantic: WMS ARDAMS\r\n" +
+            "m=audio 9 UDP/TLS/RTP/SAVPF 111 103 104 9 0 8 106 105 13 126\r\n" +
+            "c=IN IP4 0.0.0.0\r\n" +
+            "a=rtcp:9 IN IP4 0.0.0.0\r\n" +
+            "a=mid:audio\r\n" +
+            "a=sendrecv\r\n" +
+            "a=rtcp-mux\r\n" +
+            "a=rtpmap:111 opus/48000/2\r\n" +
+            "a=fmtp:111 minptime=10; useinbandfec=1\r\n" +
+            "a=rtpmap:103 ISAC/16000\r\n" +
+            "a=rtpmap:104 ISAC/32000\r\n" +
+            "a=rtpmap:9 G722/8000\r\n" +
+            "a=rtpmap:0 PCMU/8000\r\n" +
+            "a=rtpmap:8 PCMA/8000\r\n" +
+            "a=rtpmap:106 CN/32000\r\n" +
+            "a=rtpmap:105 CN/16000\r\n" +
+            "a=rtpmap:13 CN/8000\r\n" +
+            "a=rtpmap:126 telephone-event/8000\r\n" +
+            "m=video 9 UDP/TLS/RTP/SAVPF 100 101 107 116 117 96 97 99 98\r\n" +
+            "c=IN IP4 0.0.0.0\r\n" +
+            "a=rtcp:9 IN IP4 0.0.0.0\r\n" +
+            "a=mid:video\r\n" +
+            "a=sendrecv\r\n" +
+            "a=rtcp-mux\r\n" +
+            "a=rtpmap:100 VP8/90000\r\n" +
+            "a=rtpmap:101 VP9/90000\r\n" +
+            "a=rtpmap:107 H264/90000\r\n" +
+            "a=fmtp:107 level-asymmetry-allowed=1;packetization-mode=1;profile-level-id=42e01f\r\n" +
+            "a=rtpmap:116 red/90000\r\n" +
+            "a=rtpmap:117 ulpfec/90000\r\n" +
+            "a=rtpmap:96 rtx/90000\r\n" +
+            "a=fmtp:96 apt=100\r\n" +
+            "a=rtpmap:97 rtx/90000\r\n" +
+            "a=fmtp:97 apt=101\r\n" +
+            "a=rtpmap:99 rtx/90000\r\n" +
+            "a=fmtp:99 apt=107\r\n" +
+            "a=rtpmap:98 H264/90000\r\n";
+
+
+    @Test
+    public void testRoundTrip() {
+        RespokeSDP sdp = RespokeSDP.parse(SAMPLE_SDP);
+
+        assertEquals("Should find both media sections", 2, sdp.getMediaSectionCount());
+        assertEquals("Should identify the audio section", RespokeSDP.MEDIA_AUDIO, sdp.getMediaSection(0).kind);
+        assertEquals("Should identify the video section", RespokeSDP.MEDIA_VIDEO, sdp.getMediaSection(1).kind);
+        assertEquals("Should serialize an unmodified description unchanged", SAMPLE_SDP, sdp.toString());
+        assertEquals("Should accept bare line feeds", SAMPLE_SDP, RespokeSDP.parse(SAMPLE_SDP.replace("\r\n", "\n")).toString());
+    }
+
+
+    @Test
+    public void testEncodings() {
+        RespokeSDP sdp = RespokeSDP.parse(SAMPLE_SDP);
+
+        assertEquals("Should find the opus encoding", "opus/48000/2", sdp.getEncoding(sdp.getMediaSection(0), "111"));
+        assertNull("Should not confuse payload 10 with 103", sdp.getEncoding(sdp.getMediaSection(0), "10"));
+        assertNull("Should only search the given section", sdp.getEncoding(sdp.getMediaSection(1), "111"));
+    }
+
+
+    @Test
+    public void testPreferAudioCodecs() {
+        RespokeSDP sdp = RespokeSDP.parse(SAMPLE_SDP);
+        sdp.preferCodecs(RespokeSDP.MEDIA_AUDIO, new String[]{"ISAC/16000"});
+        assertEquals("Should move ISAC/16000 to the front", "103 111 104 9 0 8 106 105 13 126", payloads(sdp, 0));
+
+        sdp.preferCodecs(RespokeSDP.MEDIA_AUDIO, new String[]{"pcma", "PCMU", "opus"});
+        assertEquals("Should apply the priority list in order, ignoring case", "8 0 111 103 104 9 106 105 13 126", payloads(sdp, 0));
+        assertEquals("Should leave the video section alone", "100 101 107 116 117 96 97 99 98", payloads(sdp, 1));
+
+        sdp.preferCodecs(RespokeSDP.MEDIA_AUDIO, new String[]{"ISAC"});
+        assertEquals("Should match every clock rate when none is given", "103 104 8 0 111 9 106 105 13 126", payloads(sdp, 0));
+    }
+
+
+    @Test
+    public void testPreferVideoCodecs() {
+        RespokeSDP sdp = RespokeSDP.parse(SAMPLE_SDP);
+        sdp.preferCodecs(RespokeSDP.MEDIA_VIDEO, new String[]{"H264", "VP9"});
+
+        assertEquals("Should move every H264 payload ahead of VP9", "107 98 101 100 116 117 96 97 99", payloads(sdp, 1));
+        assertEquals("Should only change the m= line", SAMPLE_SDP.replace("100 101 107 116 117 96 97 99 98", "107 98 101 100 116 117 96 97 99"), sdp.toString());
+    }
+
+
+    @Test
+    public void testMissingCodec() {
+        RespokeSDP sdp = RespokeSDP.parse(SAMPLE_SDP);
+        sdp.preferCodecs(RespokeSDP.MEDIA_AUDIO, new String[]{"AMR-WB"});
+        sdp.preferCodecs(RespokeSDP.MEDIA_VIDEO, new String[0]);
+
+        assertEquals("Should leave the description alone when no codec matches", SAMPLE_SDP, sdp.toString());
+    }
+
+
+    private static String payloads(RespokeSDP sdp, int section) {
+        ArrayList<String> payloadTypes = sdp.getPayloadTypes(sdp.getMediaSection(section));
+        StringBuilder builder = new StringBuilder();
+
+        for (String eachPayloadType : payloadTypes) {
+            if (builder.length() > 0) {
+                builder.append(' ');
+            }
+
+            builder.append(eachPayloadType);
+        }
+
+        return builder.toString();
+    }
+}
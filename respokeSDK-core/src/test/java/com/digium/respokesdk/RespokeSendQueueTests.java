@@ -0,0 +1,227 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class RespokeSendQueueTests {
+
+    private FakeSink sink;
+    private RespokeSendQueue queue;
+    private List<Boolean> writabilityChanges;
+    private List<String> results;
+
+
+    /**
+     *  Stands in for a data channel whose buffered amount the test controls
+     */
+    private static class FakeSink implements RespokeSendQueue.Sink {
+        final List<Byte> sent = Collections.synchronizedList(new ArrayList<Byte>());
+        volatile long bufferedAmount;
+
+        @Override
+        public boolean send(ByteBuffer data, boolean binary) {
+            sent.add(data.get(data.position()));
+            return true;
+        }
+
+        @Override
+        public long getBufferedAmount() {
+            return bufferedAmount;
+        }
+    }
+
+
+    private class Result implements RespokeSendQueue.Completion {
+        private final String name;
+
+        Result(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void onSuccess() {
+            results.add(name + " sent");
+        }
+
+        @Override
+        public void onError(String errorMessage) {
+            results.add(name + ": " + errorMessage);
+        }
+    }
+
+
+    @Before
+    public void setUp() {
+        sink = new FakeSink();
+        queue = new RespokeSendQueue(sink, new RespokeBufferPool());
+        queue.configure(RespokeSendQueue.POLICY_FAIL, 100, 1000, 3000);
+        writabilityChanges = Collections.synchronizedList(new ArrayList<Boolean>());
+        results = Collections.synchronizedList(new ArrayList<String>());
+
+        queue.setListener(new RespokeSendQueue.Listener() {
+            @Override
+            public void onWritabilityChanged(boolean writable) {
+                writabilityChanges.add(writable);
+            }
+        });
+    }
+
+
+    @Test
+    public void testQueuesWhileBackedUp() {
+        assertTrue("Should send straight away", queue.offer(message(1, 500), true, new Result("first")));
+        assertEquals("Should have sent", "[1]", sink.sent.toString());
+
+        sink.bufferedAmount = 1000;
+        ByteBuffer second = message(2, 500);
+        assertTrue("Should queue", queue.offer(second, true, new Result("second")));
+        assertTrue("Should queue behind the first queued message", queue.offer(message(3, 500), true, new Result("third")));
+        assertEquals("Should hold both", 1000, queue.getQueuedBytes());
+
+        // The caller may reuse its buffer as soon as offer returns
+        second.put(0, (byte) 99);
+
+        sink.bufferedAmount = 0;
+        assertFalse("Should have nothing more to do once the transport has room", queue.drain());
+        assertEquals("Should send the queued messages in order, as they were offered", "[1, 2, 3]", sink.sent.toString());
+        assertEquals("Should report each message", "[first sent, second sent, third sent]", results.toString());
+        assertTrue("Should be writable again", queue.isWritable());
+    }
+
+
+    @Test
+    public void testWatermarks() {
+        sink.bufferedAmount = 900;
+        queue.offer(message(1, 50), true, null);
+        assertTrue("Should stay writable below the high watermark", queue.isWritable());
+
+        sink.bufferedAmount = 1000;
+        queue.offer(message(2, 50), true, null);
+        assertFalse("Should stop being writable at the high watermark", queue.isWritable());
+
+        sink.bufferedAmount = 500;
+        queue.drain();
+        assertFalse("Should stay not writable above the low watermark", queue.isWritable());
+
+        sink.bufferedAmount = 100;
+        queue.drain();
+        assertTrue("Should become writable at the low watermark", queue.isWritable());
+        assertEquals("Should report each change once", "[false, true]", writabilityChanges.toString());
+    }
+
+
+    @Test
+    public void testFailPolicy() {
+        sink.bufferedAmount = 1000;
+        assertTrue("Should queue", queue.offer(message(1, 2000), true, new Result("first")));
+        assertFalse("Should reject what does not fit", queue.offer(message(2, 2000), true, new Result("second")));
+        assertFalse("Should reject what could never fit", queue.offer(message(3, 5000), true, new Result("huge")));
+
+        assertEquals("Should explain", "[second: " + RespokeSendQueue.ERROR_QUEUE_FULL + ", huge: " + RespokeSendQueue.ERROR_QUEUE_FULL + "]", results.toString());
+        assertEquals("Should keep the first", 2000, queue.getQueuedBytes());
+    }
+
+
+    @Test
+    public void testDropOldestPolicy() {
+        queue.configure(RespokeSendQueue.POLICY_DROP_OLDEST, 100, 1000, 3000);
+        sink.bufferedAmount = 1000;
+
+        queue.offer(message(1, 1000), true, new Result("first"));
+        queue.offer(message(2, 1000), true, new Result("second"));
+        queue.offer(message(3, 1000), true, new Result("third"));
+        assertTrue("Should make room", queue.offer(message(4, 1500), true, new Result("fourth")));
+
+        assertEquals("Should drop the two oldest", "[first: " + RespokeSendQueue.ERROR_DROPPED + ", second: " + RespokeSendQueue.ERROR_DROPPED + "]", results.toString());
+
+        sink.bufferedAmount = 0;
+        queue.drain();
+        assertEquals("Should send the rest in order", "[3, 4]", sink.sent.toString());
+    }
+
+
+    @Test
+    public void testBlockPolicy() throws InterruptedException {
+        queue.configure(RespokeSendQueue.POLICY_BLOCK, 100, 1000, 3000);
+        sink.bufferedAmount = 1000;
+        queue.offer(message(1, 3000), true, null);
+
+        final CountDownLatch offered = new CountDownLatch(1);
+        final AtomicBoolean accepted = new AtomicBoolean();
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accepted.set(queue.offer(message(2, 1000), true, null));
+                offered.countDown();
+            }
+        }).start();
+
+        assertFalse("Should block while the queue is full", offered.await(200, TimeUnit.MILLISECONDS));
+
+        sink.bufferedAmount = 0;
+        queue.drain();
+
+        assertTrue("Should wake up once there is room", offered.await(5, TimeUnit.SECONDS));
+        assertTrue("Should accept the message", accepted.get());
+        assertEquals("Should keep the order", "[1, 2]", sink.sent.toString());
+    }
+
+
+    @Test
+    public void testClose() throws InterruptedException {
+        queue.configure(RespokeSendQueue.POLICY_BLOCK, 100, 1000, 1000);
+        sink.bufferedAmount = 1000;
+        queue.offer(message(1, 1000), true, new Result("queued"));
+
+        final CountDownLatch offered = new CountDownLatch(1);
+        final AtomicBoolean accepted = new AtomicBoolean(true);
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accepted.set(queue.offer(message(2, 1000), true, null));
+                offered.countDown();
+            }
+        }).start();
+
+        Thread.sleep(100);
+        queue.close("Closed");
+
+        assertTrue("Should release blocked producers", offered.await(5, TimeUnit.SECONDS));
+        assertFalse("Should reject the blocked message", accepted.get());
+        assertFalse("Should reject new messages", queue.offer(message(3, 10), true, new Result("late")));
+        assertEquals("Should fail queued and new messages", "[queued: Closed, late: Closed]", results.toString());
+        assertEquals("Should not send anything", 0, sink.sent.size());
+    }
+
+
+    private static ByteBuffer message(int tag, int length) {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.put(0, (byte) tag);
+        return buffer;
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+
+public class RespokeSignalingMigrationTests {
+
+    private final Object oldChannel = new Object();
+    private final Object newChannel = new Object();
+    private RespokeSignalingMigration<Object> migration;
+
+
+    @Before
+    public void setUp() {
+        migration = new RespokeSignalingMigration<Object>();
+        migration.reset(oldChannel);
+    }
+
+
+    @Test
+    public void testCompletedMigration() {
+        assertTrue("Should start a migration", migration.begin(newChannel));
+        assertFalse("Should not start a second migration", migration.begin(new Object()));
+        assertEquals(RespokeSignalingMigration.SENDER_ACTIVE, migration.classify(oldChannel));
+        assertEquals(RespokeSignalingMigration.SENDER_PENDING, migration.classify(newChannel));
+
+        assertTrue("Should switch to the replacement", migration.complete(newChannel));
+        assertSame(newChannel, migration.getActive());
+        assertNull(migration.getPending());
+        assertEquals(RespokeSignalingMigration.SENDER_ACTIVE, migration.classify(newChannel));
+        assertEquals("Should keep the old channel for calls begun before the migration", RespokeSignalingMigration.SENDER_RETIRING, migration.classify(oldChannel));
+
+        assertTrue("Should forget the old channel once it closes", migration.retired(oldChannel));
+        assertEquals(RespokeSignalingMigration.SENDER_UNKNOWN, migration.classify(oldChannel));
+        assertFalse(migration.retired(oldChannel));
+    }
+
+
+    @Test
+    public void testAbandonedMigration() {
+        assertTrue(migration.begin(newChannel));
+        assertFalse("Should only abandon the pending channel", migration.abandon(oldChannel));
+        assertTrue("Should abandon the replacement", migration.abandon(newChannel));
+
+        assertFalse("Should not switch to an abandoned replacement", migration.complete(newChannel));
+        assertSame("Should keep using the existing channel", oldChannel, migration.getActive());
+        assertEquals("Should ignore events from an abandoned replacement", RespokeSignalingMigration.SENDER_UNKNOWN, migration.classify(newChannel));
+        assertEquals(RespokeSignalingMigration.SENDER_ACTIVE, migration.classify(oldChannel));
+
+        assertTrue("Should be able to migrate again", migration.begin(new Object()));
+    }
+
+
+    @Test
+    public void testActiveLost() {
+        assertTrue(migration.begin(newChannel));
+        assertSame("The replacement should take over when the active channel closes", newChannel, migration.activeLost());
+        assertEquals(RespokeSignalingMigration.SENDER_ACTIVE, migration.classify(newChannel));
+        assertEquals(RespokeSignalingMigration.SENDER_UNKNOWN, migration.classify(oldChannel));
+
+        Object third = new Object();
+        assertTrue(migration.begin(third));
+        assertTrue(migration.complete(third));
+        assertEquals(RespokeSignalingMigration.SENDER_RETIRING, migration.classify(newChannel));
+
+        assertNull("There is no replacement to take over", migration.activeLost());
+        assertEquals("Retiring channels end with the session", RespokeSignalingMigration.SENDER_UNKNOWN, migration.classify(newChannel));
+        assertFalse("Should not migrate without an active channel", migration.begin(new Object()));
+    }
+
+
+    @Test
+    public void testSenderFiltering() {
+        assertEquals(RespokeSignalingMigration.SENDER_UNKNOWN, migration.classify(null));
+        assertEquals(RespokeSignalingMigration.SENDER_UNKNOWN, migration.classify(new Object()));
+
+        migration.begin(newChannel);
+        migration.complete(newChannel);
+        migration.reset(new Object());
+
+        assertEquals("A new session should forget the old channels", RespokeSignalingMigration.SENDER_UNKNOWN, migration.classify(newChannel));
+        assertEquals(RespokeSignalingMigration.SENDER_UNKNOWN, migration.classify(oldChannel));
+        assertFalse(migration.complete(null));
+        assertFalse(migration.abandon(null));
+    }
+}
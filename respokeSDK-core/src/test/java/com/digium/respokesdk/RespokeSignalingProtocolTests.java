@@ -0,0 +1,419 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+public class RespokeSignalingProtocolTests {
+
+    private static final long TIMEOUT = 5;  ///< How long to wait for a callback, in seconds
+    private static final String BASE_URL = "https://example.invalid";
+    private static final String APP_TOKEN = "token";
+    private static final String ENDPOINT_ID = "alice";
+    private static final String CONNECTION_ID = "connection";
+
+    private FakeTransport transport;
+    private RespokeMemoryStore store;
+    private RecordingListener listener;  ///< Held here because the protocol only holds it weakly
+    private RespokeSignalingProtocol protocol;
+
+
+    /**
+     *  A transport that records what is sent and acknowledges each emit with the next queued response
+     */
+    private static class FakeTransport implements RespokeSignalingTransport {
+        String url;
+        String[] eventNames;
+        Listener listener;
+        final List<JSONArray> emitted = Collections.synchronizedList(new ArrayList<JSONArray>());
+        final List<JSONObject> responses = Collections.synchronizedList(new ArrayList<JSONObject>());
+
+
+        @Override
+        public void connect(String url, String[] eventNames, Listener listener) {
+            this.url = url;
+            this.eventNames = eventNames;
+            this.listener = listener;
+        }
+
+
+        @Override
+        public void emit(String name, JSONArray arguments, Acknowledgement acknowledgement) {
+            emitted.add(arguments);
+            JSONArray ack = new JSONArray();
+            ack.put(responses.isEmpty() ? response(200, "null") : responses.remove(0));
+            acknowledgement.acknowledge(ack);
+        }
+
+
+        @Override
+        public void disconnect() {
+            listener.onDisconnect(this);
+        }
+
+
+        String emittedURL(int index) throws JSONException {
+            return emitted.get(index).getJSONObject(0).getString("url");
+        }
+
+
+        JSONObject emittedData(int index) throws JSONException {
+            return emitted.get(index).getJSONObject(0).getJSONObject("data");
+        }
+    }
+
+
+    /**
+     *  Records every listener call as a line of text
+     */
+    private static class RecordingListener implements RespokeSignalingProtocol.Listener {
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        volatile CountDownLatch latch = new CountDownLatch(1);
+
+
+        void record(String event) {
+            events.add(event);
+            latch.countDown();
+        }
+
+
+        @Override
+        public void onConnect(String endpointID, String connectionID, RespokeSignalingProtocol sender) {
+            record("connect " + endpointID + " " + connectionID);
+        }
+
+        @Override
+        public void onDisconnect(RespokeSignalingProtocol sender) {
+            record("disconnect");
+        }
+
+        @Override
+        public void onError(String errorMessage, RespokeSignalingProtocol sender) {
+            record("error " + errorMessage);
+        }
+
+        @Override
+        public void onJoinGroup(String groupID, String endpointID, String connectionID, RespokeSignalingProtocol sender) {
+            record("join " + groupID + " " + endpointID + " " + connectionID);
+        }
+
+        @Override
+        public void onLeaveGroup(String groupID, String endpointID, String connectionID, RespokeSignalingProtocol sender) {
+            record("leave " + groupID + " " + endpointID + " " + connectionID);
+        }
+
+        @Override
+        public void onMessage(String message, Date timestamp, String fromEndpointID, String toEndpointID, RespokeSignalingProtocol sender) {
+            record("message " + message + " " + timestamp.getTime() + " " + fromEndpointID + " " + toEndpointID);
+        }
+
+        @Override
+        public void onGroupMessage(String message, String groupID, String endpointID, Date timestamp, RespokeSignalingProtocol sender) {
+            record("pubsub " + message + " " + groupID + " " + endpointID + " " + timestamp.getTime());
+        }
+
+        @Override
+        public void onPresence(Object presence, String connectionID, String endpointID, RespokeSignalingProtocol sender) {
+            record("presence " + presence + " " + connectionID + " " + endpointID);
+        }
+
+        @Override
+        public void onOfferSignal(String sessionID, JSONObject sdp, String fromConnectionID, String fromEndpointID, String fromType, Date timestamp, boolean directConnection, RespokeSignalingProtocol sender) {
+            record("offer " + sessionID + " " + fromConnectionID + " " + fromEndpointID + " " + fromType + " " + directConnection);
+        }
+
+        @Override
+        public void onAnswerSignal(String sessionID, JSONObject sdp, String fromConnectionID, RespokeSignalingProtocol sender) {
+            record("answer " + sessionID + " " + fromConnectionID);
+        }
+
+        @Override
+        public void onConnectedSignal(String sessionID, RespokeSignalingProtocol sender) {
+            record("connected " + sessionID);
+        }
+
+        @Override
+        public void onIceCandidatesSignal(String sessionID, JSONArray candidates, RespokeSignalingProtocol sender) {
+            record("iceCandidates " + sessionID + " " + candidates.length());
+        }
+
+        @Override
+        public void onHangupSignal(String sessionID, RespokeSignalingProtocol sender) {
+            record("hangup " + sessionID);
+        }
+
+        @Override
+        public void onIceRestartSignal(String sessionID, RespokeSignalingProtocol sender) {
+            record("iceRestart " + sessionID);
+        }
+    }
+
+
+    /**
+     *  Waits for a single REST completion
+     */
+    private static class Completion implements RespokeSignalingProtocol.RESTListener {
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile Object response;
+        volatile String errorMessage;
+
+
+        @Override
+        public void onSuccess(Object response) {
+            this.response = response;
+            done.countDown();
+        }
+
+        @Override
+        public void onError(String errorMessage) {
+            this.errorMessage = errorMessage;
+            done.countDown();
+        }
+
+
+        void await() throws InterruptedException {
+            assertTrue("Request should complete", done.await(TIMEOUT, TimeUnit.SECONDS));
+        }
+    }
+
+
+    @Before
+    public void setUp() {
+        transport = new FakeTransport();
+        store = new RespokeMemoryStore();
+        listener = new RecordingListener();
+        protocol = new RespokeSignalingProtocol(APP_TOKEN, "Respoke-Test", transport, store, listener);
+    }
+
+
+    @After
+    public void tearDown() {
+        protocol.disconnect();
+    }
+
+
+    @Test
+    public void testConnect() throws Exception {
+        store.putString(RespokeSignalingProtocol.PROPERTY_LAST_VALID_PUSH_TOKEN_ID, "push");
+        connect();
+
+        assertTrue("Should connect to the socket.io port", transport.url.startsWith(BASE_URL + ":443?"));
+        assertTrue("Should authenticate with the app token", transport.url.contains("app-token=" + APP_TOKEN));
+        assertTrue("Should listen for signals", Arrays.asList(transport.eventNames).contains("signal"));
+        assertEquals("Should create a connection once the socket connects", "/v1/connections", transport.emittedURL(0));
+        assertEquals("Should resume with the last push token", "push", transport.emittedData(0).getString("pushTokenId"));
+        assertEquals("connect " + ENDPOINT_ID + " " + CONNECTION_ID, listener.events.get(0));
+        assertTrue("Should be connected", protocol.isConnected());
+        assertEquals(CONNECTION_ID, protocol.getConnectionID());
+
+        listener.latch = new CountDownLatch(1);
+        protocol.disconnect();
+        assertTrue("Should report the disconnect", listener.latch.await(TIMEOUT, TimeUnit.SECONDS));
+        assertFalse("Should not be connected", protocol.isConnected());
+
+        Completion completion = new Completion();
+        protocol.sendRESTMessage("get", "/v1/turn", null, completion);
+        completion.await();
+        assertEquals(RespokeSignalingProtocol.ERROR_NOT_CONNECTED, completion.errorMessage);
+    }
+
+
+    @Test
+    public void testDisconnectStopsWorker() throws Exception {
+        final List<String> shutdownWorkers = Collections.synchronizedList(new ArrayList<String>());
+        RespokePlatform.setSharedInstance(new RespokePlatform.JvmPlatform() {
+            @Override
+            public RespokeScheduler createWorker(final String name) {
+                return new RespokeExecutorScheduler(name, getLogger()) {
+                    @Override
+                    public synchronized void shutdown() {
+                        shutdownWorkers.add(name);
+                        super.shutdown();
+                    }
+                };
+            }
+        });
+
+        try {
+            protocol = new RespokeSignalingProtocol(APP_TOKEN, "Respoke-Test", transport, store, listener);
+            connect();
+            assertTrue("Should keep the worker while connected", shutdownWorkers.isEmpty());
+
+            protocol.disconnect();
+            assertTrue("Should stop the worker once disconnected", shutdownWorkers.contains("RespokeWorkerThread"));
+        } finally {
+            RespokePlatform.setSharedInstance(null);
+        }
+    }
+
+
+    @Test
+    public void testDisconnectKeepsSharedQueueDepth() throws Exception {
+        RespokeSignalingMetrics metrics = new RespokeSignalingMetrics();
+        protocol.setMetrics(metrics);
+        connect();
+
+        // Hold a retry in the queue for a second
+        JSONObject slowRetry = response(429, "null");
+        slowRetry.put("headers", new JSONObject("{\"RateLimit-Limit\":1}"));
+        transport.responses.add(slowRetry);
+        protocol.sendRESTMessage("get", "/v1/turn", null, new Completion());
+
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT);
+        while ((metrics.getSnapshot().queueDepth < 1) && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(5);
+        }
+
+        // A replacement channel recording into the same metrics has a request of its own waiting
+        metrics.requestQueued();
+        assertEquals(2, metrics.getSnapshot().queueDepth);
+
+        protocol.disconnect();
+        assertEquals("Should only clear this protocol's requests", 1, metrics.getSnapshot().queueDepth);
+        assertEquals(2, metrics.getSnapshot().maxQueueDepth);
+    }
+
+
+    @Test
+    public void testConnectionRejected() throws Exception {
+        store.putString(RespokeSignalingProtocol.PROPERTY_LAST_VALID_PUSH_TOKEN, "token");
+        store.putString(RespokeSignalingProtocol.PROPERTY_LAST_VALID_PUSH_TOKEN_ID, "push");
+        transport.responses.add(response(401, "{\"error\":\"Unauthorized\",\"details\":\"bad token\"}"));
+
+        protocol.connect(BASE_URL);
+        transport.listener.onConnect(transport);
+
+        assertTrue("Should report the error", listener.latch.await(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals("error Unauthorized (bad token)", listener.events.get(0));
+        assertNull("Should forget a push token the service rejected", store.getString(RespokeSignalingProtocol.PROPERTY_LAST_VALID_PUSH_TOKEN_ID, null));
+        assertNull("Should forget a push token the service rejected", store.getString(RespokeSignalingProtocol.PROPERTY_LAST_VALID_PUSH_TOKEN, null));
+    }
+
+
+    @Test
+    public void testRateLimitedRetries() throws Exception {
+        connect();
+
+        transport.responses.add(rateLimited());
+        transport.responses.add(rateLimited());
+        transport.responses.add(response(200, "{\"ok\":true}"));
+        Completion completion = new Completion();
+        protocol.sendRESTMessage("get", "/v1/turn", null, completion);
+        completion.await();
+
+        assertNull("Should succeed on the third attempt", completion.errorMessage);
+        assertTrue("Should pass on the decoded body", ((JSONObject) completion.response).getBoolean("ok"));
+        assertEquals("Should send the request three times", 4, transport.emitted.size());
+
+        transport.responses.add(rateLimited());
+        transport.responses.add(rateLimited());
+        transport.responses.add(rateLimited());
+        completion = new Completion();
+        protocol.sendRESTMessage("get", "/v1/turn", null, completion);
+        completion.await();
+
+        assertEquals("Should give up after three attempts", RespokeSignalingProtocol.ERROR_RATE_LIMITED, completion.errorMessage);
+        assertEquals(7, transport.emitted.size());
+
+        RespokeSignalingMetrics.RouteSnapshot route = protocol.getMetrics().getSnapshot().routes.get("/v1/turn");
+        assertEquals("Should record each attempt", 6, route.requestCount);
+        assertEquals("Should record each rate-limited attempt", 5, route.rateLimitedCount);
+    }
+
+
+    @Test
+    public void testRoutesEvents() throws Exception {
+        connect();
+        listener.events.clear();
+        listener.latch = new CountDownLatch(10);
+
+        transport.listener.onEvent("join", array(new JSONObject("{\"endpointId\":\"bob\",\"connectionId\":\"c2\",\"header\":{\"channel\":\"g\"}}")), transport);
+        transport.listener.onEvent("pubsub", array(new JSONObject("{\"message\":\"hi\",\"header\":{\"from\":\"bob\",\"channel\":\"g\",\"timestamp\":1000}}")), transport);
+        transport.listener.onEvent("message", array(new JSONObject("{\"body\":\"hey\",\"header\":{\"from\":\"bob\",\"toOriginal\":\"carol\",\"timestamp\":2000}}")), transport);
+        transport.listener.onEvent("presence", array(new JSONObject("{\"type\":\"busy\",\"header\":{\"from\":\"bob\",\"fromConnection\":\"c2\"}}")), transport);
+        transport.listener.onEvent("signal", array(signal("offer", "s1", "\"target\":\"directConnection\",\"sessionDescription\":{}"),
+                signal("answer", "s1", "\"sessionDescription\":{}"),
+                signal("connected", "s1", "\"connectionId\":\"" + CONNECTION_ID + "\""),
+                signal("connected", "s2", "\"connectionId\":\"elsewhere\""),
+                signal("iceCandidates", "s1", "\"iceCandidates\":[{},{}]"),
+                signal("iceRestart", "s1", "\"connectionId\":\"c2\"")), transport);
+
+        assertTrue("Should route every event", listener.latch.await(TIMEOUT, TimeUnit.SECONDS));
+        assertEquals("[join g bob c2, pubsub hi g bob 1000, message hey 2000 bob carol, presence busy c2 bob, "
+                + "offer s1 c2 bob web true, answer s1 c2, connected s1, hangup s2, iceCandidates s1 2, iceRestart s1]", listener.events.toString());
+    }
+
+
+    //** Private methods
+
+
+    private void connect() throws Exception {
+        transport.responses.add(response(200, "{\"endpointId\":\"" + ENDPOINT_ID + "\",\"id\":\"" + CONNECTION_ID + "\"}"));
+        protocol.connect(BASE_URL);
+        transport.listener.onConnect(transport);
+        assertTrue("Should connect", listener.latch.await(TIMEOUT, TimeUnit.SECONDS));
+    }
+
+
+    private static JSONObject response(int statusCode, String body) {
+        try {
+            JSONObject response = new JSONObject();
+            response.put("statusCode", statusCode);
+            response.put("body", body);
+            return response;
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    private static JSONObject rateLimited() throws JSONException {
+        JSONObject response = response(429, "null");
+        response.put("headers", new JSONObject("{\"RateLimit-Limit\":100}"));
+        return response;
+    }
+
+
+    private static JSONObject signal(String signalType, String sessionID, String fields) throws JSONException {
+        return new JSONObject("{\"header\":{\"from\":\"bob\",\"fromConnection\":\"c2\"},\"body\":{\"signalType\":\"" + signalType
+                + "\",\"sessionId\":\"" + sessionID + "\"," + fields + "}}");
+    }
+
+
+    private static JSONArray array(JSONObject... events) {
+        JSONArray array = new JSONArray();
+
+        for (JSONObject eachEvent : events) {
+            array.put(eachEvent);
+        }
+
+        return array;
+    }
+}
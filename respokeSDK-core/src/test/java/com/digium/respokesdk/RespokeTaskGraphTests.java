@@ -0,0 +1,263 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+public class RespokeTaskGraphTests {
+
+    private static final long TURN_RESPONSE_DELAY = 300;  ///< How long the fake signaling transport takes to answer the TURN request
+    private static final long MEDIA_STARTUP_TIME = 250;  ///< How long the fake camera and microphone take to open
+    private static final long PEER_CONNECTION_TIME = 20;
+
+    private ScheduledExecutorService fakeTransport;
+    private ExecutorService mediaThread;
+    private List<String> completedSteps;
+
+
+    /**
+     *  Stands in for the signaling channel, answering each request on its own thread after a fixed delay
+     */
+    private class FakeTurnRequest implements RespokeTaskGraph.Step {
+        @Override
+        public void run(final RespokeTaskGraph.Completion completion) {
+            fakeTransport.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    completedSteps.add("turn");
+                    completion.onSuccess();
+                }
+            }, TURN_RESPONSE_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+
+    private class BusyStep implements RespokeTaskGraph.Step {
+        private final String name;
+        private final long duration;
+
+        BusyStep(String name, long duration) {
+            this.name = name;
+            this.duration = duration;
+        }
+
+        @Override
+        public void run(RespokeTaskGraph.Completion completion) {
+            try {
+                Thread.sleep(duration);
+            } catch (InterruptedException e) {
+                completion.onError("Interrupted");
+                return;
+            }
+
+            completedSteps.add(name);
+            completion.onSuccess();
+        }
+    }
+
+
+    private static class Result implements RespokeTaskGraph.Completion {
+        final CountDownLatch latch = new CountDownLatch(1);
+        volatile String errorMessage;
+
+        @Override
+        public void onSuccess() {
+            latch.countDown();
+        }
+
+        @Override
+        public void onError(String errorMessage) {
+            this.errorMessage = errorMessage;
+            latch.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue("The graph should finish", latch.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+
+    @Before
+    public void setUp() {
+        fakeTransport = Executors.newSingleThreadScheduledExecutor();
+        mediaThread = Executors.newSingleThreadExecutor();
+        completedSteps = Collections.synchronizedList(new ArrayList<String>());
+    }
+
+
+    @After
+    public void tearDown() {
+        fakeTransport.shutdownNow();
+        mediaThread.shutdownNow();
+    }
+
+
+    @Test
+    public void testSequentialSetup() throws InterruptedException {
+        RespokeTaskGraph graph = new RespokeTaskGraph();
+        graph.add("turn", RespokeTaskGraph.IMMEDIATE, new FakeTurnRequest());
+        graph.add("media", RespokeTaskGraph.IMMEDIATE, new BusyStep("media", MEDIA_STARTUP_TIME), "turn");
+        graph.add("peerConnection", RespokeTaskGraph.IMMEDIATE, new BusyStep("peerConnection", PEER_CONNECTION_TIME), "turn", "media");
+        graph.add("negotiation", RespokeTaskGraph.IMMEDIATE, new BusyStep("negotiation", 0), "peerConnection");
+
+        Result result = new Result();
+        graph.start(result);
+        result.await();
+
+        assertNull("Setup should succeed", result.errorMessage);
+        assertEquals("Should run the steps in order", "[turn, media, peerConnection, negotiation]", completedSteps.toString());
+    }
+
+
+    @Test
+    public void testConcurrentSetupOverlaps() throws InterruptedException {
+        final CountDownLatch mediaStarted = new CountDownLatch(1);
+        final CountDownLatch turnFinished = new CountDownLatch(1);
+        RespokeTaskGraph graph = new RespokeTaskGraph();
+
+        graph.add("turn", RespokeTaskGraph.IMMEDIATE, new RespokeTaskGraph.Step() {
+            @Override
+            public void run(final RespokeTaskGraph.Completion completion) {
+                fakeTransport.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Answer only once media startup has begun, which can only happen if the two overlap
+                        try {
+                            if (!mediaStarted.await(5, TimeUnit.SECONDS)) {
+                                completion.onError("Media startup did not begin while the TURN request was outstanding");
+                                return;
+                            }
+                        } catch (InterruptedException e) {
+                            completion.onError("Interrupted");
+                            return;
+                        }
+
+                        completedSteps.add("turn");
+                        turnFinished.countDown();
+                        completion.onSuccess();
+                    }
+                });
+            }
+        });
+
+        graph.add("media", mediaThread, new RespokeTaskGraph.Step() {
+            @Override
+            public void run(RespokeTaskGraph.Completion completion) {
+                mediaStarted.countDown();
+
+                // Finish after the TURN response, so that the peer connection has to wait for this branch as well
+                try {
+                    turnFinished.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    completion.onError("Interrupted");
+                    return;
+                }
+
+                completedSteps.add("media");
+                completion.onSuccess();
+            }
+        });
+
+        graph.add("peerConnection", RespokeTaskGraph.IMMEDIATE, new BusyStep("peerConnection", 0), "turn", "media");
+        graph.add("negotiation", RespokeTaskGraph.IMMEDIATE, new BusyStep("negotiation", 0), "peerConnection");
+
+        Result result = new Result();
+        graph.start(result);
+        result.await();
+
+        assertNull("Media startup should begin before the TURN request finishes", result.errorMessage);
+        assertEquals("Should create the peer connection only after both branches", "[turn, media, peerConnection, negotiation]", completedSteps.toString());
+    }
+
+
+    @Test
+    public void testFailureStopsTheGraph() throws InterruptedException {
+        RespokeTaskGraph graph = new RespokeTaskGraph();
+        graph.add("turn", RespokeTaskGraph.IMMEDIATE, new RespokeTaskGraph.Step() {
+            @Override
+            public void run(RespokeTaskGraph.Completion completion) {
+                completion.onError("No ICE servers were found");
+            }
+        });
+        graph.add("negotiation", RespokeTaskGraph.IMMEDIATE, new RespokeTaskGraph.Step() {
+            @Override
+            public void run(RespokeTaskGraph.Completion completion) {
+                fail("Should not run a step whose dependency failed");
+            }
+        }, "turn");
+
+        Result result = new Result();
+        graph.start(result);
+        result.await();
+
+        assertEquals("Should report the failure", "No ICE servers were found", result.errorMessage);
+        assertTrue("Should be finished", graph.isFinished());
+    }
+
+
+    @Test
+    public void testExceptionsBecomeErrors() throws InterruptedException {
+        RespokeTaskGraph graph = new RespokeTaskGraph();
+        graph.add("media", RespokeTaskGraph.IMMEDIATE, new RespokeTaskGraph.Step() {
+            @Override
+            public void run(RespokeTaskGraph.Completion completion) {
+                throw new RuntimeException("Failed to open capturer");
+            }
+        });
+
+        Result result = new Result();
+        graph.start(result);
+        result.await();
+
+        assertEquals("Should report the exception", "Step media failed: Failed to open capturer", result.errorMessage);
+    }
+
+
+    @Test
+    public void testEmptyGraphSucceeds() throws InterruptedException {
+        Result result = new Result();
+        new RespokeTaskGraph().start(result);
+        result.await();
+
+        assertNull("Should succeed", result.errorMessage);
+    }
+
+
+    @Test
+    public void testDependenciesMustExist() {
+        RespokeTaskGraph graph = new RespokeTaskGraph();
+
+        try {
+            graph.add("negotiation", RespokeTaskGraph.IMMEDIATE, new BusyStep("negotiation", 0), "peerConnection");
+            fail("Should reject an unknown dependency");
+        } catch (IllegalArgumentException e) {
+            assertFalse("Should not have started", graph.isFinished());
+        }
+    }
+}
@@ -0,0 +1,313 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+
+public class RespokeTransferChannelTests {
+
+    private static final int FRAMES_PER_TURN = 4;  ///< How many frames the fake network delivers each turn, so that the sender outpaces it
+    private static final int MAX_TURNS = 100000;
+
+    private Peer alice;
+    private Peer bob;
+
+
+    /**
+     *  One end of a loopback connection. Frames sent by the other end wait in the inbox until delivered, and count
+     *  towards the other end's buffered amount.
+     */
+    private static class Peer implements RespokeTransferChannel.Listener {
+        final RespokeTransferChannel channel = new RespokeTransferChannel(this, new RespokeBufferPool());
+        final LinkedList<ByteBuffer> inbox = new LinkedList<ByteBuffer>();
+        final List<Long> progress = new ArrayList<Long>();
+        final List<RespokeTransfer> completed = new ArrayList<RespokeTransfer>();
+        final List<String> failures = new ArrayList<String>();
+        ByteArrayOutputStream received;
+        boolean reject;
+        long inboxBytes;
+        long maxInboxBytes;
+        long bytesWritten;
+
+
+        void deliver(ByteBuffer frame) {
+            ByteBuffer copy = ByteBuffer.allocate(frame.remaining());
+            copy.put(frame);
+            copy.flip();
+            inbox.add(copy);
+            inboxBytes += copy.remaining();
+            maxInboxBytes = Math.max(maxInboxBytes, inboxBytes);
+        }
+
+
+        boolean receiveOne() {
+            ByteBuffer frame = inbox.poll();
+
+            if (null == frame) {
+                return false;
+            }
+
+            inboxBytes -= frame.remaining();
+            channel.receive(frame);
+            return true;
+        }
+
+
+        void dropInbox() {
+            inbox.clear();
+            inboxBytes = 0;
+        }
+
+
+        public OutputStream onIncomingTransfer(RespokeTransfer transfer) {
+            if (reject) {
+                return null;
+            }
+
+            received = new ByteArrayOutputStream() {
+                @Override
+                public synchronized void write(byte[] bytes, int offset, int length) {
+                    bytesWritten += length;
+                    super.write(bytes, offset, length);
+                }
+            };
+            return received;
+        }
+
+
+        public void onTransferProgress(RespokeTransfer transfer) {
+            progress.add(transfer.getBytesTransferred());
+        }
+
+
+        public void onTransferComplete(RespokeTransfer transfer) {
+            completed.add(transfer);
+        }
+
+
+        public void onTransferFailed(RespokeTransfer transfer, String errorMessage) {
+            failures.add(errorMessage);
+        }
+    }
+
+
+    @Before
+    public void setUp() {
+        alice = new Peer();
+        bob = new Peer();
+        connect();
+    }
+
+
+    @Test
+    public void testBufferTransfer() {
+        byte[] payload = randomBytes(3 * 1024 * 1024 + 123);
+        RespokeTransfer transfer = alice.channel.send("payload.bin", ByteBuffer.wrap(payload));
+
+        run(-1);
+
+        assertEquals("The sender should complete", RespokeTransfer.STATE_COMPLETE, transfer.getState());
+        assertEquals("The receiver should complete", 1, bob.completed.size());
+        assertEquals("The receiver should see the sender's name", "payload.bin", bob.completed.get(0).name);
+        assertTrue("The receiver should reassemble the payload", Arrays.equals(payload, bob.received.toByteArray()));
+        assertEquals("Should report complete progress", 1.0, transfer.getProgress(), 0.0);
+        assertProgressIsOrderly(alice.progress, payload.length);
+        assertProgressIsOrderly(bob.progress, payload.length);
+        assertTrue("Should stop sending while the transport is full", bob.maxInboxBytes <= RespokeTransferChannel.BUFFERED_HIGH_WATER + RespokeTransferChannel.CHUNK_SIZE + 13);
+    }
+
+
+    @Test
+    public void testResumeAfterTransportReplaced() {
+        byte[] payload = randomBytes(5 * 1024 * 1024 / 2);
+        RespokeTransfer transfer = alice.channel.send("stream", new ByteArrayInputStream(payload), payload.length);
+
+        run(1024 * 1024);
+        assertTrue("Should be part way through", (bob.bytesWritten > 0) && (bob.bytesWritten < payload.length));
+
+        // Lose everything in flight and carry on over a new pair of transports
+        alice.channel.setTransport(null);
+        assertTrue("Should still have the transfer to send", alice.channel.hasOutgoing());
+        alice.dropInbox();
+        bob.dropInbox();
+        connect();
+        run(-1);
+
+        assertEquals("The sender should complete", RespokeTransfer.STATE_COMPLETE, transfer.getState());
+        assertFalse("Should have nothing left to send", alice.channel.hasOutgoing());
+        assertTrue("The receiver should reassemble the payload", Arrays.equals(payload, bob.received.toByteArray()));
+        assertEquals("The receiver should not write anything twice", payload.length, bob.bytesWritten);
+        assertEquals("Should not report failures", 0, alice.failures.size() + bob.failures.size());
+    }
+
+
+    @Test
+    public void testFileTransfer() throws Exception {
+        byte[] payload = randomBytes(100000);
+        File file = File.createTempFile("respoke", ".bin");
+        file.deleteOnExit();
+        FileOutputStream stream = new FileOutputStream(file);
+        stream.write(payload);
+        stream.close();
+
+        RespokeTransfer transfer = alice.channel.send(file);
+        run(-1);
+
+        assertEquals("The sender should complete", RespokeTransfer.STATE_COMPLETE, transfer.getState());
+        assertEquals("Should name the transfer after the file", file.getName(), bob.completed.get(0).name);
+        assertTrue("The receiver should reassemble the file", Arrays.equals(payload, bob.received.toByteArray()));
+
+        RespokeTransfer missing = alice.channel.send(new File(file.getPath() + ".missing"));
+        run(-1);
+        assertEquals("Should fail to send a missing file", RespokeTransfer.STATE_FAILED, missing.getState());
+    }
+
+
+    @Test
+    public void testRejectedTransfer() {
+        bob.reject = true;
+        RespokeTransfer transfer = alice.channel.send("unwanted", ByteBuffer.wrap(randomBytes(1000)));
+
+        run(-1);
+
+        assertEquals("The sender should fail", RespokeTransfer.STATE_FAILED, transfer.getState());
+        assertEquals("Should give the reason", "The transfer was rejected", transfer.getErrorMessage());
+    }
+
+
+    @Test
+    public void testCancelledTransfer() {
+        RespokeTransfer transfer = alice.channel.send("cancelled", ByteBuffer.wrap(randomBytes(4 * 1024 * 1024)));
+
+        run(512 * 1024);
+        alice.channel.cancel(transfer);
+        run(-1);
+
+        assertEquals("The sender should fail", RespokeTransfer.STATE_FAILED, transfer.getState());
+        assertEquals("The receiver should be told", 1, bob.failures.size());
+        assertEquals("The receiver should not complete", 0, bob.completed.size());
+    }
+
+
+    @Test
+    public void testStreamShorterThanStated() {
+        RespokeTransfer transfer = alice.channel.send("short", new ByteArrayInputStream(randomBytes(50000)), 100000);
+
+        run(-1);
+
+        assertEquals("The sender should fail", RespokeTransfer.STATE_FAILED, transfer.getState());
+        assertEquals("The receiver should be told", 1, bob.failures.size());
+    }
+
+
+    @Test
+    public void testEmptyTransfer() {
+        RespokeTransfer transfer = alice.channel.send("empty", ByteBuffer.allocate(0));
+
+        run(-1);
+
+        assertEquals("The sender should complete", RespokeTransfer.STATE_COMPLETE, transfer.getState());
+        assertEquals("The receiver should complete", 1, bob.completed.size());
+        assertEquals("The receiver should have nothing", 0, bob.received.size());
+    }
+
+
+    /**
+     *  Give each peer a new transport that delivers to the other
+     */
+    private void connect() {
+        alice.channel.setTransport(transportTo(bob));
+        bob.channel.setTransport(transportTo(alice));
+    }
+
+
+    private static RespokeTransferChannel.Transport transportTo(final Peer peer) {
+        return new RespokeTransferChannel.Transport() {
+            @Override
+            public boolean send(ByteBuffer frame) {
+                peer.deliver(frame);
+                return true;
+            }
+
+            @Override
+            public long getBufferedAmount() {
+                return peer.inboxBytes;
+            }
+        };
+    }
+
+
+    /**
+     *  Pump both peers and deliver frames a few at a time until nothing is left to do
+     *
+     *  @param stopAfter  Stop early once the receiver has written this many bytes, or -1 to run until idle
+     */
+    private void run(long stopAfter) {
+        for (int turn = 0; turn < MAX_TURNS; turn++) {
+            int alicePump = alice.channel.pump();
+            int bobPump = bob.channel.pump();
+            boolean delivered = false;
+
+            for (int ii = 0; ii < FRAMES_PER_TURN; ii++) {
+                delivered |= bob.receiveOne();
+                delivered |= alice.receiveOne();
+            }
+
+            if ((stopAfter >= 0) && (bob.bytesWritten >= stopAfter)) {
+                return;
+            }
+
+            if (!delivered && (RespokeTransferChannel.PUMP_BLOCKED != alicePump) && (RespokeTransferChannel.PUMP_BLOCKED != bobPump)) {
+                return;
+            }
+        }
+
+        throw new AssertionError("The transfer did not settle");
+    }
+
+
+    private static void assertProgressIsOrderly(List<Long> progress, long size) {
+        assertNotNull("Should report progress", progress);
+        assertTrue("Should report progress in steps of about one percent", (progress.size() > 1) && (progress.size() <= 101));
+
+        for (int ii = 1; ii < progress.size(); ii++) {
+            assertTrue("Progress should only increase", progress.get(ii) > progress.get(ii - 1));
+        }
+
+        assertEquals("Should finish with the full size", size, (long) progress.get(progress.size() - 1));
+    }
+
+
+    private static byte[] randomBytes(int count) {
+        byte[] bytes = new byte[count];
+        new Random(count).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,6 @@
+# ProGuard rules applied to applications that use the SDK
+
+# RespokePlatform finds the Android platform by name, so it must survive shrinking and obfuscation
+-keep class com.digium.respokesdk.RespokeAndroidPlatform {
+    public <init>();
+}
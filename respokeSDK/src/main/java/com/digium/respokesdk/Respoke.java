@@ -61,9 +61,13 @@ public class Respoke {
      * @param completionListener The TaskCompletionListener to notify
      */
     public static void postTaskSuccess(final TaskCompletionListener completionListener) {
+        final long postTime = RespokeMetrics.startTiming();
+
         new Handler(Looper.getMainLooper()).post(new Runnable() {
             @Override
             public void run() {
+                RespokeMetrics.recordSince(RespokeMetrics.CALLBACK_DISPATCH_LATENCY, postTime);
+
                 if (null != completionListener) {
                     completionListener.onSuccess();
                 }
@@ -79,9 +83,13 @@ public class Respoke {
      * @param errorMessage       The error message to post
      */
     public static void postTaskError(final TaskCompletionListener completionListener, final String errorMessage) {
+        final long postTime = RespokeMetrics.startTiming();
+
         new Handler(Looper.getMainLooper()).post(new Runnable() {
             @Override
             public void run() {
+                RespokeMetrics.recordSince(RespokeMetrics.CALLBACK_DISPATCH_LATENCY, postTime);
+
                 if (null != completionListener) {
                     completionListener.onError(errorMessage);
                 }
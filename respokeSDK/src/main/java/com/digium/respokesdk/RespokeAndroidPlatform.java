@@ -0,0 +1,97 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ *  Runs the SDK's platform-independent logic on Android's UI thread, HandlerThreads, SystemClock and Log. RespokePlatform
+ *  installs this automatically when the Android library is present.
+ */
+public class RespokeAndroidPlatform extends RespokePlatform {
+
+    private final RespokeScheduler mainThread;
+    private final RespokeLogger logger = new RespokeLogger() {
+        @Override
+        public void debug(String tag, String message) {
+            Log.d(tag, message);
+        }
+
+        @Override
+        public void error(String tag, String message, Throwable error) {
+            Log.e(tag, message, error);
+        }
+    };
+
+
+    public RespokeAndroidPlatform() {
+        // Created here rather than on demand, so that RespokePlatform falls back to the JVM platform if the Android
+        // classes are only stubs
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+        mainThread = new RespokeScheduler() {
+            @Override
+            public void post(Runnable task) {
+                mainHandler.post(task);
+            }
+
+            @Override
+            public void postDelayed(Runnable task, long delayMillis) {
+                mainHandler.postDelayed(task, delayMillis);
+            }
+
+            @Override
+            public void cancel(Runnable task) {
+                mainHandler.removeCallbacks(task);
+            }
+
+            @Override
+            public void cancelAll() {
+                // Other parts of the SDK and the application share the UI thread, so there is nothing that is safe to remove
+            }
+
+            @Override
+            public void shutdown() {
+                // The UI thread belongs to the application
+            }
+        };
+    }
+
+
+    @Override
+    public RespokeScheduler getMainThread() {
+        return mainThread;
+    }
+
+
+    @Override
+    public RespokeScheduler createWorker(String name) {
+        RespokeWorkerThread worker = new RespokeWorkerThread(name);
+        worker.start();
+        worker.prepareHandler();
+        return worker;
+    }
+
+
+    @Override
+    public RespokeLogger getLogger() {
+        return logger;
+    }
+
+
+    @Override
+    public long elapsedRealtime() {
+        return SystemClock.elapsedRealtime();
+    }
+}
@@ -30,6 +30,7 @@ import org.webrtc.PeerConnectionFactory;
 import org.webrtc.SdpObserver;
 import org.webrtc.SessionDescription;
 import org.webrtc.VideoCapturer;
+import org.webrtc.VideoCapturerAndroid;
 import org.webrtc.VideoRenderer;
 import org.webrtc.VideoRendererGui;
 import org.webrtc.VideoSource;
@@ -38,9 +39,8 @@ import org.webrtc.VideoTrack;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.concurrent.Semaphore;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 
 
 /**
@@ -49,17 +49,48 @@ import java.util.regex.Pattern;
 public class RespokeCall {
 
     private final static String TAG = "RespokeCall";
+    private static final String STEP_TURN_CREDENTIALS = "turnCredentials";
+    private static final String STEP_LOCAL_MEDIA = "localMedia";
+    private static final String STEP_PEER_CONNECTION = "peerConnection";
+    private static final String STEP_NEGOTIATION = "negotiation";
+    private static final String ERROR_NO_LONGER_ACTIVE = "Call is no longer active";
+    private static RespokeWorkerThread setupThread;  ///< Opens cameras and audio devices while the TURN credentials are being fetched
+    private final Object setupLock = new Object();  ///< Held while the setup steps create media and the peer connection, and while disconnect releases them
+    private final Executor setupExecutor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            getSetupThread().postTask(command);
+        }
+    };
+    public static final long CAPTURE_ADAPTATION_INTERVAL = 1000;  ///< The statistics sampling interval used when capture adaptation starts sampling itself
+    public static final long DEFAULT_ICE_RESTART_GRACE_PERIOD = RespokeIceRestart.DEFAULT_GRACE_PERIOD;  ///< How long ICE may stay disconnected before it is restarted, in milliseconds
+    public static final long ICE_RESTART_TIMEOUT = RespokeIceRestart.TIMEOUT;  ///< How long an ICE restart may take to reconnect before the call is hung up, in milliseconds
     private WeakReference<Listener> listenerReference;
     private RespokeSignalingChannel signalingChannel;
     private ArrayList<PeerConnection.IceServer> iceServers;
     private static PeerConnectionFactory peerConnectionFactory;
     private PeerConnection peerConnection;
     private VideoSource videoSource;
-    private ArrayList<IceCandidate> queuedRemoteCandidates;
-    private ArrayList<IceCandidate> queuedLocalCandidates;
-    private ArrayList<IceCandidate> collectedLocalCandidates;
-    private Semaphore queuedRemoteCandidatesSemaphore;
-    private Semaphore localCandidatesSemaphore;
+    private final RespokeCandidateQueue<IceCandidate> remoteCandidates = new RespokeCandidateQueue<IceCandidate>(new RespokeCandidateQueue.Sink<IceCandidate>() {
+        @Override
+        public void deliver(IceCandidate candidate) {
+            PeerConnection connection = peerConnection;
+            if (null != connection) {
+                connection.addIceCandidate(candidate);
+            }
+        }
+    });  ///< Remote candidates, held until the remote description has been applied
+    private final RespokeCandidateQueue<IceCandidate> localCandidates = new RespokeCandidateQueue<IceCandidate>(new RespokeCandidateQueue.Sink<IceCandidate>() {
+        @Override
+        public void deliver(IceCandidate candidate) {
+            sendLocalCandidate(candidate);
+        }
+    });  ///< Local candidates, held until the local description has been signaled
+    private static RespokeCandidatePolicy defaultCandidatePolicy = RespokeCandidatePolicy.ALL;
+    private RespokeCandidatePolicy candidatePolicy = defaultCandidatePolicy;  ///< Decides which candidates this call uses
+    private RespokeCandidatePolicy.Filter localCandidateFilter = candidatePolicy.newFilter();
+    private RespokeCandidatePolicy.Filter remoteCandidateFilter = candidatePolicy.newFilter();
+    private final ConcurrentLinkedQueue<IceCandidate> collectedLocalCandidates = new ConcurrentLinkedQueue<IceCandidate>();  ///< Every local candidate gathered, for the finalCandidates signal
     private org.webrtc.VideoRenderer.Callbacks localRender;
     private org.webrtc.VideoRenderer.Callbacks remoteRender;
     private boolean caller;
@@ -83,6 +114,48 @@ public class RespokeCall {
     private boolean directConnectionOnly;
     private RespokeDirectConnection directConnection;
     private boolean isHangingUp;
+    private static String[] defaultAudioCodecPriority = {"ISAC/16000"};
+    private static String[] defaultVideoCodecPriority = {};
+    private String[] audioCodecPriority = defaultAudioCodecPriority;  ///< The audio codecs to prefer, most preferred first
+    private String[] videoCodecPriority = defaultVideoCodecPriority;  ///< The video codecs to prefer, most preferred first
+    private RespokeBandwidthProfile bandwidthProfile;  ///< The bandwidth limits for this call, or null to leave them to the media stack
+    private final RespokeCallSetupTimeline setupTimeline = new RespokeCallSetupTimeline();  ///< When each phase of setting up this call was reached
+    private boolean remoteStreamAdded;  ///< Indicates if the remote media stream has been added to the peer connection
+    private RespokeStatsSampler statsSampler;  ///< Polls the call quality statistics, or null if sampling was never started
+    private VideoCapturer videoCapturer;
+    private RespokeCaptureController captureController;  ///< Adapts the capture format to the call quality, or null if adaptation is disabled
+    private RespokeCaptureProfile captureProfile = RespokeCaptureProfile.FRONT_CAMERA;  ///< The camera and format to use for local video
+    private boolean iceRestartRemotePending;  ///< Indicates if the remote description of an ICE restart is being applied
+    private final RespokeIceRestart iceRestart = new RespokeIceRestart(RespokePlatform.sharedInstance().getMainThread(), new RespokeIceRestart.Listener() {
+        @Override
+        public void onRestartStarted() {
+            Log.d(TAG, "Restarting ICE");
+
+            // Hold candidates until the new descriptions have been exchanged, as they belong to the new ICE credentials
+            localCandidates.restartQueuing();
+            remoteCandidates.restartQueuing();
+            collectedLocalCandidates.clear();
+            localCandidateFilter.reset();
+            remoteCandidateFilter.reset();
+        }
+
+        @Override
+        public void sendRestartOffer() {
+            if (null != peerConnection) {
+                createOffer();
+            }
+        }
+
+        @Override
+        public void requestRestart() {
+            sendIceRestartRequest();
+        }
+
+        @Override
+        public void onFailed() {
+            iceConnectionFailed();
+        }
+    });
 
 
     /**
@@ -128,6 +201,22 @@ public class RespokeCall {
     }
 
 
+    /**
+     *  An optional interface that a call Listener may also implement to receive the call-setup timeline
+     */
+    public interface SetupTimelineListener {
+
+
+        /**
+         *  Receive a notification that the call has finished setting up, along with when each phase was reached
+         *
+         *  @param timeline  The call-setup timeline
+         *  @param sender    The RespokeCall that finished setting up
+         */
+        public void onCallSetupComplete(RespokeCallSetupTimeline timeline, RespokeCall sender);
+    }
+
+
     /**
      *  Determines if the specified SDP data contains definitions for a video stream
      *
@@ -229,13 +318,8 @@ public class RespokeCall {
     private void commonConstructor(RespokeSignalingChannel channel) {
         signalingChannel = channel;
         iceServers = new ArrayList<PeerConnection.IceServer>();
-        queuedLocalCandidates = new ArrayList<IceCandidate>();
-        queuedRemoteCandidates = new ArrayList<IceCandidate>();
-        collectedLocalCandidates = new ArrayList<IceCandidate>();
         sessionID = Respoke.makeGUID();
         timestamp = new Date();
-        queuedRemoteCandidatesSemaphore = new Semaphore(1); // remote candidates queue mutex
-        localCandidatesSemaphore = new Semaphore(1); // local candidates queue mutex
 
         if (null != signalingChannel) {
             RespokeSignalingChannel.Listener signalingChannelListener = signalingChannel.GetListener();
@@ -258,6 +342,244 @@ public class RespokeCall {
     }
 
 
+    /**
+     *  Set the codec preferences used by calls created after this point. Codecs are named by their rtpmap encoding
+     *  name, optionally followed by a clock rate, such as "opus", "ISAC/16000", "PCMU", "VP8", "VP9" or "H264". By
+     *  default ISAC/16000 is preferred for audio and the video order is left alone.
+     *
+     *  @param audioPriority  The audio codecs to prefer, most preferred first
+     *  @param videoPriority  The video codecs to prefer, most preferred first
+     */
+    public static void setDefaultCodecPriority(String[] audioPriority, String[] videoPriority) {
+        defaultAudioCodecPriority = (null != audioPriority) ? audioPriority.clone() : new String[0];
+        defaultVideoCodecPriority = (null != videoPriority) ? videoPriority.clone() : new String[0];
+    }
+
+
+    /**
+     *  Set the codec preferences for this call. They are applied to every local and remote session description
+     *  processed after this point.
+     *
+     *  @param audioPriority  The audio codecs to prefer, most preferred first
+     *  @param videoPriority  The video codecs to prefer, most preferred first
+     */
+    public void setCodecPriority(String[] audioPriority, String[] videoPriority) {
+        audioCodecPriority = (null != audioPriority) ? audioPriority.clone() : new String[0];
+        videoCodecPriority = (null != videoPriority) ? videoPriority.clone() : new String[0];
+    }
+
+
+    /**
+     *  Set the bandwidth limits for this call. They are applied to every local and remote session description
+     *  processed after this point, so they should be set before the call is started or answered.
+     *
+     *  @param profile  The bandwidth profile, or null to remove any limits
+     */
+    public void setBandwidthProfile(RespokeBandwidthProfile profile) {
+        bandwidthProfile = profile;
+    }
+
+
+    /**
+     *  Choose the camera and capture format for the local video of this call. This must be called before the call
+     *  is started or answered.
+     *
+     *  @param profile  The capture profile, or null to use the front camera at its default format
+     */
+    public void setCaptureProfile(RespokeCaptureProfile profile) {
+        captureProfile = (null != profile) ? profile : RespokeCaptureProfile.FRONT_CAMERA;
+    }
+
+
+    /**
+     *  Get the camera and capture format used for the local video of this call
+     *
+     *  @return The capture profile
+     */
+    public RespokeCaptureProfile getCaptureProfile() {
+        return captureProfile;
+    }
+
+
+    /**
+     *  Set how long the ICE connection may stay disconnected, for instance while the device moves from Wi-Fi to a
+     *  cellular network, before the call renegotiates it with fresh candidates. If ICE fails outright it is restarted
+     *  immediately. Only the caller sends the offer that restarts ICE; on the callee's side, the call asks the caller to
+     *  restart. The call is only hung up if the restart does not reconnect within ICE_RESTART_TIMEOUT.
+     *
+     *  @param gracePeriod  The grace period in milliseconds, or a negative value to hang up as soon as ICE fails
+     */
+    public void setIceRestartGracePeriod(long gracePeriod) {
+        iceRestart.setGracePeriod(gracePeriod);
+    }
+
+
+    /**
+     *  Get how long the ICE connection may stay disconnected before it is restarted
+     *
+     *  @return The grace period in milliseconds, or a negative value if ICE restarts are disabled
+     */
+    public long getIceRestartGracePeriod() {
+        return iceRestart.getGracePeriod();
+    }
+
+
+    /**
+     *  Set the ICE candidate policy used by calls created after this point. This is the way to apply a policy to
+     *  outgoing calls, which start gathering candidates as soon as they are created.
+     *
+     *  @param policy  The candidate policy, such as RespokeCandidatePolicy.RELAY_ONLY, or null to use every candidate
+     */
+    public static void setDefaultCandidatePolicy(RespokeCandidatePolicy policy) {
+        defaultCandidatePolicy = (null != policy) ? policy : RespokeCandidatePolicy.ALL;
+    }
+
+
+    /**
+     *  Choose which ICE candidates this call uses. The policy is applied to local candidates before they are sent to
+     *  the remote endpoint and to remote candidates before they are checked, so it must be set before the call is
+     *  started or answered. A relay-only policy also tells the media stack to gather only relay candidates.
+     *
+     *  @param policy  The candidate policy, such as RespokeCandidatePolicy.RELAY_ONLY, or null to use every candidate
+     */
+    public void setCandidatePolicy(RespokeCandidatePolicy policy) {
+        candidatePolicy = (null != policy) ? policy : RespokeCandidatePolicy.ALL;
+        localCandidateFilter = candidatePolicy.newFilter();
+        remoteCandidateFilter = candidatePolicy.newFilter();
+    }
+
+
+    /**
+     *  Get the policy deciding which ICE candidates this call uses
+     *
+     *  @return The candidate policy
+     */
+    public RespokeCandidatePolicy getCandidatePolicy() {
+        return candidatePolicy;
+    }
+
+
+    /**
+     *  Get the bandwidth limits for this call
+     *
+     *  @return The bandwidth profile, or null if no limits are applied
+     */
+    public RespokeBandwidthProfile getBandwidthProfile() {
+        return bandwidthProfile;
+    }
+
+
+    /**
+     *  Get the record of when each phase of setting up this call was reached. The timeline is filled in as setup
+     *  progresses, so phases that have not been reached yet report -1.
+     *
+     *  @return The call-setup timeline
+     */
+    public RespokeCallSetupTimeline getSetupTimeline() {
+        return setupTimeline;
+    }
+
+
+    /**
+     *  Begin sampling the quality statistics of this call. Sampling continues until the call ends or
+     *  stopStatsSampling is called.
+     *
+     *  @param interval  The time between samples, in milliseconds
+     *  @param listener  A listener to receive each sample on the UI thread, or null to only record the history
+     */
+    public void startStatsSampling(long interval, RespokeStatsSampler.Listener listener) {
+        if (null == statsSampler) {
+            statsSampler = new RespokeStatsSampler(this, RespokeStatsSampler.DEFAULT_HISTORY_SIZE);
+        }
+
+        statsSampler.setListener(listener);
+        statsSampler.start(interval);
+    }
+
+
+    /**
+     *  Stop sampling the quality statistics of this call. The samples taken so far remain available from
+     *  getStatsSampler.
+     */
+    public void stopStatsSampling() {
+        if (null != statsSampler) {
+            statsSampler.stop();
+        }
+    }
+
+
+    /**
+     *  Get the sampler holding the quality statistics history of this call, which remains available after the call
+     *  has ended
+     *
+     *  @return The sampler, or null if sampling was never started
+     */
+    public RespokeStatsSampler getStatsSampler() {
+        return statsSampler;
+    }
+
+
+    /**
+     *  Let the SDK lower the camera resolution and frame rate while the uplink is lossy, slow or the encoder is
+     *  overloading the CPU, and raise them again once it recovers. This must be called before the call is started or
+     *  answered so the ceiling is also applied when the camera is opened. Adaptation is driven by the statistics
+     *  sampler; if sampling has not been started it is started at CAPTURE_ADAPTATION_INTERVAL.
+     *
+     *  @param floor    The smallest format to step down to, or null for no limit
+     *  @param ceiling  The largest format to capture at, or null for no limit
+     */
+    public void enableCaptureAdaptation(RespokeCaptureFormat floor, RespokeCaptureFormat ceiling) {
+        captureController = new RespokeCaptureController(floor, ceiling);
+
+        if ((null == statsSampler) || !statsSampler.isRunning()) {
+            RespokeStatsSampler.Listener listener = null;
+
+            if (null != statsSampler) {
+                listener = statsSampler.getListener();
+            }
+
+            startStatsSampling(CAPTURE_ADAPTATION_INTERVAL, listener);
+        }
+    }
+
+
+    /**
+     *  Stop adapting the capture format. The camera stays at whatever format it was last set to.
+     */
+    public void disableCaptureAdaptation() {
+        captureController = null;
+    }
+
+
+    /**
+     *  Get the controller adapting the capture format of this call
+     *
+     *  @return The controller, or null if adaptation is disabled
+     */
+    public RespokeCaptureController getCaptureController() {
+        return captureController;
+    }
+
+
+    /**
+     *  Process a new statistics sample. This is used internally to the SDK and should not be called directly by your client application.
+     *
+     *  @param stats  The latest sample
+     */
+    public void statsSampled(RespokeCallStats stats) {
+        RespokeCaptureController controller = captureController;
+
+        if ((null != controller) && (videoCapturer instanceof VideoCapturerAndroid) && isActive()) {
+            RespokeCaptureFormat format = controller.update(stats);
+
+            if (null != format) {
+                Log.d(TAG, "Adapting capture format to " + format);
+                ((VideoCapturerAndroid) videoCapturer).onOutputFormatRequest(format.width, format.height, format.frameRate);
+            }
+        }
+    }
+
+
     /**
      *  Get the session ID of this call
      *
@@ -277,7 +599,10 @@ public class RespokeCall {
      */
     public void startCall(final Context context, GLSurfaceView glView, boolean isAudioOnly) {
         caller = true;
+        iceRestart.setCaller(true);
         audioOnly = isAudioOnly;
+        setupTimeline.mark(RespokeCallSetupTimeline.PHASE_SETUP_STARTED);
+        RespokeMetrics.CALLS_STARTED.increment();
 
         if (directConnectionOnly) {
             if (null == directConnection) {
@@ -288,18 +613,11 @@ public class RespokeCall {
         } else {
             attachVideoRenderer(glView);
 
-            getTurnServerCredentials(new Respoke.TaskCompletionListener() {
+            setUpPeerConnection(context, true, new RespokeTaskGraph.Step() {
                 @Override
-                public void onSuccess() {
-                    Log.d(TAG, "Got TURN credentials");
-                    initializePeerConnection(context);
-                    addLocalStreams(context);
+                public void run(RespokeTaskGraph.Completion completion) {
                     createOffer();
-                }
-
-                @Override
-                public void onError(String errorMessage) {
-                    postErrorToListener(errorMessage);
+                    completion.onSuccess();
                 }
             });
         }
@@ -337,20 +655,45 @@ public class RespokeCall {
      *  @param newListener  A listener to receive notifications of call-related events
      */
     public void answer(final Context context, Listener newListener) {
+        answer(context, newListener, bandwidthProfile);
+    }
+
+
+    /**
+     *  Answer the call with limits on the bandwidth it may use. This must be called on the callee's side to indicate
+     *  that the endpoint does wish to accept the call.
+     *
+     *  @param context      An application context with which to access shared resources
+     *  @param newListener  A listener to receive notifications of call-related events
+     *  @param profile      The bandwidth limits for the call, or null for no limits
+     */
+    public void answer(final Context context, Listener newListener, RespokeBandwidthProfile profile) {
+        answer(context, newListener, profile, captureProfile);
+    }
+
+
+    /**
+     *  Answer the call with limits on the bandwidth it may use and a choice of camera and capture format. This must
+     *  be called on the callee's side to indicate that the endpoint does wish to accept the call.
+     *
+     *  @param context           An application context with which to access shared resources
+     *  @param newListener       A listener to receive notifications of call-related events
+     *  @param bandwidthProfile  The bandwidth limits for the call, or null for no limits
+     *  @param captureProfile    The camera and capture format for local video, or null for the front camera
+     */
+    public void answer(final Context context, Listener newListener, RespokeBandwidthProfile bandwidthProfile, RespokeCaptureProfile captureProfile) {
         if (!caller) {
+            this.bandwidthProfile = bandwidthProfile;
+            setCaptureProfile(captureProfile);
             listenerReference = new WeakReference<Listener>(newListener);
+            setupTimeline.mark(RespokeCallSetupTimeline.PHASE_SETUP_STARTED);
+            RespokeMetrics.CALLS_STARTED.increment();
 
-            getTurnServerCredentials(new Respoke.TaskCompletionListener() {
+            setUpPeerConnection(context, true, new RespokeTaskGraph.Step() {
                 @Override
-                public void onSuccess() {
-                    initializePeerConnection(context);
-                    addLocalStreams(context);
+                public void run(RespokeTaskGraph.Completion completion) {
                     processRemoteSDP();
-                }
-
-                @Override
-                public void onError(String errorMessage) {
-                    postErrorToListener(errorMessage);
+                    completion.onSuccess();
                 }
             });
         }
@@ -532,7 +875,12 @@ public class RespokeCall {
      *  @param remoteConnection Remote connection that answered the call
      */
     public void answerReceived(JSONObject remoteSDP, String remoteConnection) {
-        if (isActive()) {
+        if (isActive() && iceRestart.isRestarting()) {
+            // The call is already connected to this endpoint, so only the new description needs to be applied
+            incomingSDP = remoteSDP;
+            iceRestartRemotePending = true;
+            processRemoteSDP();
+        } else if (isActive()) {
             incomingSDP = remoteSDP;
             toConnection = remoteConnection;
 
@@ -578,6 +926,44 @@ public class RespokeCall {
     }
 
 
+    /**
+     *  Process an offer received for a call that is already in progress, which the remote endpoint sends to restart
+     *  ICE. This is used internally to the SDK and should not be called directly by your client application.
+     *
+     *  @param remoteSDP  Remote SDP data
+     */
+    public void offerReceived(final JSONObject remoteSDP) {
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            public void run() {
+                // A repeat of the offer that started the call is not a restart
+                boolean repeatedOffer = (null != incomingSDP) && incomingSDP.optString("sdp").equals(remoteSDP.optString("sdp"));
+
+                if (isActive() && (null != peerConnection) && !repeatedOffer && iceRestart.offerReceived()) {
+                    Log.d(TAG, "Remote endpoint is restarting ICE");
+                    incomingSDP = remoteSDP;
+                    iceRestartRemotePending = true;
+                    processRemoteSDP();
+                }
+            }
+        });
+    }
+
+
+    /**
+     *  Process a request from the callee to restart ICE, because it has lost its connection. This is used internally to
+     *  the SDK and should not be called directly by your client application.
+     */
+    public void iceRestartRequested() {
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            public void run() {
+                if (isActive() && (null != peerConnection)) {
+                    iceRestart.restartRequested();
+                }
+            }
+        });
+    }
+
+
     /**
      *  Process a connected messsage received from the remote endpoint. This is used internally to the SDK and should not be called directly by your client application.
      */
@@ -610,25 +996,13 @@ public class RespokeCall {
                     String mid = eachCandidate.getString("sdpMid");
                     int sdpLineIndex = eachCandidate.getInt("sdpMLineIndex");
                     String sdp = eachCandidate.getString("candidate");
+                    setupTimeline.mark(RespokeCallSetupTimeline.PHASE_FIRST_REMOTE_CANDIDATE);
 
-                    IceCandidate rtcCandidate = new IceCandidate(mid, sdpLineIndex, sdp);
-
-                    try {
-                        // Start critical block
-                        queuedRemoteCandidatesSemaphore.acquire();
-
-                        if (null != queuedRemoteCandidates) {
-                            queuedRemoteCandidates.add(rtcCandidate);
-                        } else {
-                            peerConnection.addIceCandidate(rtcCandidate);
-                        }
-
-                        // End critical block
-                        queuedRemoteCandidatesSemaphore.release();
-                    } catch (InterruptedException e) {
-                        Log.d(TAG, "Error with remote candidates semaphore");
+                    if (remoteCandidateFilter.accept(sdp)) {
+                        remoteCandidates.offer(new IceCandidate(mid, sdpLineIndex, sdp));
+                    } else {
+                        Log.d(TAG, "Ignoring remote candidate excluded by the candidate policy");
                     }
-
                 } catch (JSONException e) {
                     Log.d(TAG, "Error processing remote ice candidate data");
                 }
@@ -667,41 +1041,73 @@ public class RespokeCall {
     }
 
 
+    /**
+     *  Move an active call to a new signaling channel after the client has migrated its socket. This is used internally to the SDK and should not be called directly by your client application.
+     *
+     *  @param channel  The signaling channel to use from now on
+     */
+    public void setSignalingChannel(RespokeSignalingChannel channel) {
+        if (isActive()) {
+            signalingChannel = channel;
+        }
+    }
+
+
     //** Private methods
 
 
     private void disconnect() {
-        localStream = null;
-        localRender = null;
-        remoteRender = null;
+        // A setup step running on the setup thread finishes before anything is released
+        synchronized (setupLock) {
+            localRender = null;
+            remoteRender = null;
+
+            // Stop polling before the peer connection is disposed
+            stopStatsSampling();
+            iceRestart.end();
+            remoteCandidates.clear();
+            localCandidates.clear();
+
+            if (peerConnection != null) {
+                peerConnection.dispose();
+                peerConnection = null;
+            }
+
+            releaseLocalMedia();
+
+            if (null != directConnection) {
+                directConnection.setListener(null);
+                directConnection = null;
+            }
+
+            if (null != signalingChannel) {
+                RespokeSignalingChannel.Listener signalingChannelListener = signalingChannel.GetListener();
+                if (null != signalingChannelListener) {
+                    signalingChannelListener.callTerminated(this);
+                }
+            }
 
-        if (peerConnection != null) {
-            peerConnection.dispose();
-            peerConnection = null;
+            listenerReference = null;
+            endpoint = null;
+            toEndpointId = null;
+            toType = null;
+            signalingChannel = null;
         }
+    }
+
+
+    /**
+     *  Release the local media stream and the camera. Must be called with setupLock held.
+     */
+    private void releaseLocalMedia() {
+        localStream = null;
 
         if (videoSource != null) {
             videoSource.dispose();
             videoSource = null;
         }
 
-        if (null != directConnection) {
-            directConnection.setListener(null);
-            directConnection = null;
-        }
-
-        if (null != signalingChannel) {
-            RespokeSignalingChannel.Listener signalingChannelListener = signalingChannel.GetListener();
-            if (null != signalingChannelListener) {
-                signalingChannelListener.callTerminated(this);
-            }
-        }
-
-        listenerReference = null;
-        endpoint = null;
-        toEndpointId = null;
-        toType = null;
-        signalingChannel = null;
+        videoCapturer = null;
     }
 
 
@@ -710,8 +1116,12 @@ public class RespokeCall {
             String type = incomingSDP.getString("type");
             String sdpString = incomingSDP.getString("sdp");
 
-            SessionDescription sdp = new SessionDescription(SessionDescription.Type.fromCanonicalForm(type), preferISAC(sdpString));
+            SessionDescription sdp = new SessionDescription(SessionDescription.Type.fromCanonicalForm(type), mungeSDP(sdpString));
             peerConnection.setRemoteDescription(this.sdpObserver, sdp);
+
+            if (null != directConnection) {
+                directConnection.remoteCapabilitiesReceived(incomingSDP.optJSONArray(RespokeDirectConnection.CAPABILITIES_KEY));
+            }
         } catch (JSONException e) {
             postErrorToListener("Error processing remote SDP.");
         }
@@ -721,10 +1131,12 @@ public class RespokeCall {
     private void getTurnServerCredentials(final Respoke.TaskCompletionListener completionListener) {
         if (isActive()) {
             // get TURN server credentials
+            setupTimeline.mark(RespokeCallSetupTimeline.PHASE_TURN_FETCH_STARTED);
             signalingChannel.sendRESTMessage("get", "/v1/turn", null, new RespokeSignalingChannel.RESTListener() {
                 @Override
                 public void onSuccess(Object response) {
                     if (isActive()) {
+                        setupTimeline.mark(RespokeCallSetupTimeline.PHASE_TURN_FETCH_COMPLETED);
                         JSONObject jsonResponse = (JSONObject) response;
                         String username = "";
                         String password = "";
@@ -766,8 +1178,130 @@ public class RespokeCall {
     }
 
 
-    private void initializePeerConnection(Context context) {
+    /**
+     *  Run the steps that set up the peer connection. Fetching the TURN credentials waits on the network, while
+     *  creating the factory and opening the camera and microphone keep the CPU busy, so the two run side by side and
+     *  the peer connection is created once both are done.
+     *
+     *  @param context         An application context with which to access shared resources
+     *  @param withLocalMedia  Specify true to capture and send local audio and video
+     *  @param negotiation     The step that starts the offer/answer exchange once the peer connection exists
+     */
+    private void setUpPeerConnection(final Context context, final boolean withLocalMedia, RespokeTaskGraph.Step negotiation) {
+        if ((null == remoteRender) && (null == localRender)) {
+            // If the client application did not provide UI elements on which to render video, force this to be an audio call
+            audioOnly = true;
+        }
+
+        RespokeTaskGraph graph = new RespokeTaskGraph();
+
+        graph.add(STEP_TURN_CREDENTIALS, RespokeTaskGraph.IMMEDIATE, new RespokeTaskGraph.Step() {
+            @Override
+            public void run(final RespokeTaskGraph.Completion completion) {
+                getTurnServerCredentials(new Respoke.TaskCompletionListener() {
+                    @Override
+                    public void onSuccess() {
+                        Log.d(TAG, "Got TURN credentials");
+                        completion.onSuccess();
+                    }
+
+                    @Override
+                    public void onError(String errorMessage) {
+                        completion.onError(errorMessage);
+                    }
+                });
+            }
+        });
+
+        graph.add(STEP_LOCAL_MEDIA, setupExecutor, new RespokeTaskGraph.Step() {
+            @Override
+            public void run(RespokeTaskGraph.Completion completion) {
+                boolean active;
+
+                synchronized (setupLock) {
+                    active = isActive();
+
+                    if (active) {
+                        initializePeerConnectionFactory(context);
+
+                        if (withLocalMedia) {
+                            createLocalStream(context);
+
+                            // Opening the camera can take a while, so check again before handing the stream on
+                            active = isActive();
+
+                            if (!active) {
+                                releaseLocalMedia();
+                            }
+                        }
+                    }
+                }
+
+                if (active) {
+                    completion.onSuccess();
+                } else {
+                    completion.onError(ERROR_NO_LONGER_ACTIVE);
+                }
+            }
+        });
+
+        graph.add(STEP_PEER_CONNECTION, RespokeTaskGraph.IMMEDIATE, new RespokeTaskGraph.Step() {
+            @Override
+            public void run(RespokeTaskGraph.Completion completion) {
+                boolean active;
+
+                // This runs on the setup thread if the local media was the last dependency to finish
+                synchronized (setupLock) {
+                    active = isActive();
+
+                    if (active) {
+                        initializePeerConnection();
+
+                        if (withLocalMedia) {
+                            addLocalStreams();
+                        }
+                    }
+                }
+
+                if (active) {
+                    completion.onSuccess();
+                } else {
+                    completion.onError(ERROR_NO_LONGER_ACTIVE);
+                }
+            }
+        }, STEP_TURN_CREDENTIALS, STEP_LOCAL_MEDIA);
+
+        graph.add(STEP_NEGOTIATION, RespokeTaskGraph.IMMEDIATE, negotiation, STEP_PEER_CONNECTION);
+
+        graph.start(new RespokeTaskGraph.Completion() {
+            @Override
+            public void onSuccess() {
+                // The negotiation continues in the SDP observer
+            }
+
+            @Override
+            public void onError(String errorMessage) {
+                // A call that was hung up during setup has nothing left to report
+                if (isActive()) {
+                    postErrorToListener(errorMessage);
+                }
+            }
+        });
+    }
+
+
+    private static synchronized RespokeWorkerThread getSetupThread() {
+        if (null == setupThread) {
+            setupThread = new RespokeWorkerThread("RespokeCallSetup");
+            setupThread.start();
+            setupThread.prepareHandler();
+        }
+
+        return setupThread;
+    }
+
 
+    private static synchronized void initializePeerConnectionFactory(Context context) {
         if (peerConnectionFactory == null) {
             // peerConnectionFactory should only be alloc'd and setup once per program lifecycle.
 
@@ -779,23 +1313,30 @@ public class RespokeCall {
 
             peerConnectionFactory = new PeerConnectionFactory();
         }
+    }
 
-        if ((null == remoteRender) && (null == localRender)) {
-            // If the client application did not provide UI elements on which to render video, force this to be an audio call
-            audioOnly = true;
-        }
 
+    private void initializePeerConnection() {
         MediaConstraints sdpMediaConstraints = new MediaConstraints();
         sdpMediaConstraints.mandatory.add(new MediaConstraints.KeyValuePair("OfferToReceiveAudio", directConnectionOnly ? "false" : "true"));
         sdpMediaConstraints.mandatory.add(new MediaConstraints.KeyValuePair("OfferToReceiveVideo", (directConnectionOnly || audioOnly) ? "false" : "true"));
         sdpMediaConstraints.optional.add(new MediaConstraints.KeyValuePair("internalSctpDataChannels", "true"));
         sdpMediaConstraints.optional.add(new MediaConstraints.KeyValuePair("DtlsSrtpKeyAgreement", "true"));
 
-        peerConnection = peerConnectionFactory.createPeerConnection(iceServers, sdpMediaConstraints, pcObserver);
+        PeerConnection.RTCConfiguration configuration = new PeerConnection.RTCConfiguration(iceServers);
+
+        if (candidatePolicy.relayOnly) {
+            // Keep the media stack from gathering or checking anything but relay candidates. The candidate filters
+            // still apply the transport, address and host limit rules, and catch relay-only remote candidates.
+            configuration.iceTransportsType = PeerConnection.IceTransportsType.RELAY;
+        }
+
+        peerConnection = peerConnectionFactory.createPeerConnection(configuration, sdpMediaConstraints, pcObserver);
+        setupTimeline.mark(RespokeCallSetupTimeline.PHASE_PEER_CONNECTION_INITIALIZED);
     }
 
 
-    private void addLocalStreams(Context context) {
+    private void createLocalStream(Context context) {
         AudioManager audioManager = ((AudioManager) context.getSystemService(Context.AUDIO_SERVICE));
         // TODO(fischman): figure out how to do this Right(tm) and remove the suppression.
         @SuppressWarnings("deprecation")
@@ -806,41 +1347,54 @@ public class RespokeCall {
         localStream = peerConnectionFactory.createLocalMediaStream("ARDAMS");
 
         if (!audioOnly) {
-            VideoCapturer capturer = getVideoCapturer();
-            MediaConstraints videoConstraints = new MediaConstraints();
-            videoSource = peerConnectionFactory.createVideoSource(capturer, videoConstraints);
-            VideoTrack videoTrack = peerConnectionFactory.createVideoTrack("ARDAMSv0", videoSource);
-            videoTrack.addRenderer(new VideoRenderer(localRender));
-            localStream.addTrack(videoTrack);
+            videoCapturer = getVideoCapturer();
+
+            if (null != videoCapturer) {
+                // An explicit capture format takes precedence over the adaptation ceiling for the initial format
+                RespokeCaptureFormat format = captureProfile.format;
+                if ((null == format) && (null != captureController)) {
+                    format = captureController.getCeiling();
+                }
+
+                MediaConstraints videoConstraints = new MediaConstraints();
+
+                if (null != format) {
+                    videoConstraints.mandatory.add(new MediaConstraints.KeyValuePair("maxWidth", Integer.toString(format.width)));
+                    videoConstraints.mandatory.add(new MediaConstraints.KeyValuePair("maxHeight", Integer.toString(format.height)));
+                    videoConstraints.mandatory.add(new MediaConstraints.KeyValuePair("maxFrameRate", Integer.toString(format.frameRate)));
+                }
+
+                videoSource = peerConnectionFactory.createVideoSource(videoCapturer, videoConstraints);
+                VideoTrack videoTrack = peerConnectionFactory.createVideoTrack("ARDAMSv0", videoSource);
+                videoTrack.addRenderer(new VideoRenderer(localRender));
+                localStream.addTrack(videoTrack);
+            } else {
+                Log.d(TAG, "No camera could be opened, so only audio will be sent");
+            }
         }
 
         localStream.addTrack(peerConnectionFactory.createAudioTrack("ARDAMSa0", peerConnectionFactory.createAudioSource(new MediaConstraints())));
+    }
+
 
+    private void addLocalStreams() {
         peerConnection.addStream(localStream);
+        setupTimeline.mark(RespokeCallSetupTimeline.PHASE_LOCAL_STREAM_READY);
     }
 
 
-    // Cycle through likely device names for the camera and return the first
-    // capturer that works, or crash if none do.
+    // Open the camera chosen by the capture profile, falling back to the other cameras on
+    // the device if it cannot be opened. Returns null if no camera can be opened.
     private VideoCapturer getVideoCapturer() {
-        String[] cameraFacing = { "front", "back" };
-        int[] cameraIndex = { 0, 1 };
-        int[] cameraOrientation = { 0, 90, 180, 270 };
-        for (String facing : cameraFacing) {
-            for (int index : cameraIndex) {
-                for (int orientation : cameraOrientation) {
-                    String name = "Camera " + index + ", Facing " + facing +
-                            ", Orientation " + orientation;
-                    VideoCapturer capturer = VideoCapturer.create(name);
-                    if (capturer != null) {
-                        //logAndToast("Using camera: " + name);
-                        Log.d(TAG, "Using camera: " + name);
-                        return capturer;
-                    }
-                }
+        for (RespokeCamera camera : RespokeCamera.getCamerasInOrder(captureProfile.facing)) {
+            VideoCapturer capturer = VideoCapturer.create(camera.deviceName);
+            if (capturer != null) {
+                Log.d(TAG, "Using camera: " + camera.deviceName);
+                return capturer;
             }
         }
-        throw new RuntimeException("Failed to open capturer");
+
+        return null;
     }
 
 
@@ -851,10 +1405,110 @@ public class RespokeCall {
         sdpMediaConstraints.mandatory.add(new MediaConstraints.KeyValuePair(
                 "OfferToReceiveVideo", (directConnectionOnly || audioOnly) ? "false" : "true"));
 
+        if (iceRestart.isRestarting()) {
+            // New ICE credentials make both ends gather fresh candidates on their current networks
+            sdpMediaConstraints.optional.add(new MediaConstraints.KeyValuePair("IceRestart", "true"));
+        }
+
         peerConnection.createOffer(sdpObserver, sdpMediaConstraints);
     }
 
 
+    private void createAnswer() {
+        MediaConstraints sdpMediaConstraints = new MediaConstraints();
+        sdpMediaConstraints.mandatory.add(new MediaConstraints.KeyValuePair(
+                "OfferToReceiveAudio", "true"));
+        sdpMediaConstraints.mandatory.add(new MediaConstraints.KeyValuePair(
+                "OfferToReceiveVideo", audioOnly ? "false" : "true"));
+
+        peerConnection.createAnswer(sdpObserver, sdpMediaConstraints);
+    }
+
+
+    /**
+     *  Ask the caller to restart ICE, since only the caller sends the offer that restarts it. A caller that does not
+     *  understand the request, such as a web browser, restarts once it sees the failure itself.
+     */
+    private void sendIceRestartRequest() {
+        try {
+            JSONObject data = new JSONObject("{'signalType':'iceRestart','version':'1.0'}");
+            data.put("target", directConnectionOnly ? "directConnection" : "call");
+            data.put("sessionId", sessionID);
+            data.put("signalId", Respoke.makeGUID());
+
+            if (null != signalingChannel) {
+                signalingChannel.sendSignal(data, toEndpointId, toConnection, toType, false, new Respoke.TaskCompletionListener() {
+                    @Override
+                    public void onSuccess() {
+                        // The caller answers with a new offer
+                    }
+
+                    @Override
+                    public void onError(String errorMessage) {
+                        // The signaling socket may be migrating too, so wait for the caller or the restart timeout
+                        Log.d(TAG, "Error requesting an ICE restart: " + errorMessage);
+                    }
+                });
+            }
+        } catch (JSONException e) {
+            Log.d(TAG, "Error encoding ICE restart request");
+        }
+    }
+
+
+    /**
+     *  Give up on the ICE connection and end the call
+     */
+    private void iceConnectionFailed() {
+        RespokeMetrics.ICE_FAILURES.increment();
+        RespokeMetrics.CALLS_FAILED.increment();
+
+        if (null != listenerReference) {
+            // Disconnect will clear the listenerReference, so grab a reference to the
+            // listener while it's still alive since the listener will be notified in a
+            // different (UI) thread
+            final Listener listener = listenerReference.get();
+
+            if (null != listener) {
+                new Handler(Looper.getMainLooper()).post(new Runnable() {
+                    public void run() {
+                        if (isActive()) {
+                            listener.onError("ICE Connection failed!", RespokeCall.this);
+                            listener.onHangup(RespokeCall.this);
+                        }
+                    }
+                });
+            }
+        }
+
+        disconnect();
+    }
+
+
+    /**
+     *  React to a change in the ICE connection state. Must be called on the UI thread.
+     *
+     *  @param newState  The new state
+     */
+    private void iceConnectionStateChanged(PeerConnection.IceConnectionState newState) {
+        if ((newState == PeerConnection.IceConnectionState.CONNECTED) || (newState == PeerConnection.IceConnectionState.COMPLETED)) {
+            if (iceRestart.isRestarting()) {
+                Log.d(TAG, "ICE restart succeeded");
+            }
+
+            iceRestart.connected();
+
+            if (setupTimeline.mark(RespokeCallSetupTimeline.PHASE_ICE_CONNECTED)) {
+                checkSetupComplete();
+            }
+        } else if (newState == PeerConnection.IceConnectionState.DISCONNECTED) {
+            iceRestart.disconnected();
+        } else if (newState == PeerConnection.IceConnectionState.FAILED) {
+            iceRestart.failed();
+        }
+    }
+
+
     private void updateVideoViewLayout() {
         //TODO
     }
@@ -889,22 +1543,19 @@ public class RespokeCall {
     }
 
     public void directConnectionDidAccept(final Context context) {
-        getTurnServerCredentials(new Respoke.TaskCompletionListener() {
-            @Override
-            public void onSuccess() {
-                initializePeerConnection(context);
+        setupTimeline.mark(RespokeCallSetupTimeline.PHASE_SETUP_STARTED);
 
+        setUpPeerConnection(context, false, new RespokeTaskGraph.Step() {
+            @Override
+            public void run(RespokeTaskGraph.Completion completion) {
                 if (caller) {
                     directConnection.createDataChannel();
                     createOffer();
                 } else {
                     processRemoteSDP();
                 }
-            }
 
-            @Override
-            public void onError(String errorMessage) {
-                postErrorToListener(errorMessage);
+                completion.onSuccess();
             }
         });
     }
@@ -944,35 +1595,17 @@ public class RespokeCall {
         }
 
         @Override public void onIceConnectionChange(
-                PeerConnection.IceConnectionState newState) {
+                final PeerConnection.IceConnectionState newState) {
             if (isActive()) {
-                if (newState == PeerConnection.IceConnectionState.CONNECTED) {
-                    Log.d(TAG, "ICE Connection connected");
-                } else if (newState == PeerConnection.IceConnectionState.FAILED) {
-                    Log.d(TAG, "ICE Connection FAILED");
-
-                    if (null != listenerReference) {
-                        // Disconnect will clear the listenerReference, so grab a reference to the
-                        // listener while it's still alive since the listener will be notified in a
-                        // different (UI) thread
-                        final Listener listener = listenerReference.get();
+                Log.d(TAG, "ICE Connection state: " + newState.toString());
 
-                        if (null != listener) {
-                            new Handler(Looper.getMainLooper()).post(new Runnable() {
-                                public void run() {
-                                    if (isActive()) {
-                                        listener.onError("ICE Connection failed!", RespokeCall.this);
-                                        listener.onHangup(RespokeCall.this);
-                                    }
-                                }
-                            });
+                new Handler(Looper.getMainLooper()).post(new Runnable() {
+                    public void run() {
+                        if (isActive()) {
+                            iceConnectionStateChanged(newState);
                         }
                     }
-
-                    disconnect();
-                } else {
-                    Log.d(TAG, "ICE Connection state: " + newState.toString());
-                }
+                });
             }
         }
 
@@ -995,6 +1628,9 @@ public class RespokeCall {
                                 stream.videoTracks.get(0).addRenderer(
                                         new VideoRenderer(remoteRender));
                             }
+
+                            remoteStreamAdded = true;
+                            checkSetupComplete();
                         } else {
                             postErrorToListener("An invalid stream was added");
                         }
@@ -1030,27 +1666,17 @@ public class RespokeCall {
     }
 
     private void handleLocalCandidate(IceCandidate candidate) {
-        try {
-            // Start critical block
-            localCandidatesSemaphore.acquire();
-
-            // Collect candidates that are generated in addition to sending them immediately.
-            // This allows us to send a 'finalCandidates' signal when the iceGatheringState has
-            // changed to COMPLETED. 'finalCandidates' are used by the backend to smooth inter-op
-            // between clients that generate trickle ice, and clients that do not support trickle ice.
-            collectedLocalCandidates.add(candidate);
-
-            if (null != queuedLocalCandidates) {
-                queuedLocalCandidates.add(candidate);
-            } else {
-                sendLocalCandidate(candidate);
-            }
-
-            // End critical block
-            localCandidatesSemaphore.release();
-        } catch (InterruptedException e) {
-            Log.d(TAG, "Error with local candidates semaphore");
+        if (!localCandidateFilter.accept(candidate.sdp)) {
+            Log.d(TAG, "Not signaling local candidate excluded by the candidate policy");
+            return;
         }
+
+        // Collect candidates that are generated in addition to sending them immediately.
+        // This allows us to send a 'finalCandidates' signal when the iceGatheringState has
+        // changed to COMPLETED. 'finalCandidates' are used by the backend to smooth inter-op
+        // between clients that generate trickle ice, and clients that do not support trickle ice.
+        collectedLocalCandidates.add(candidate);
+        localCandidates.offer(candidate);
     }
 
 
@@ -1061,7 +1687,8 @@ public class RespokeCall {
         @Override public void onCreateSuccess(final SessionDescription origSdp) {
             //abortUnless(localSdp == null, "multiple SDP create?!?");
             final SessionDescription sdp = new SessionDescription(
-                    origSdp.type, preferISAC(origSdp.description));
+                    origSdp.type, mungeSDP(origSdp.description));
+            setupTimeline.mark(RespokeCallSetupTimeline.PHASE_LOCAL_DESCRIPTION_CREATED);
 
             new Handler(Looper.getMainLooper()).post(new Runnable() {
                 public void run() {
@@ -1081,12 +1708,18 @@ public class RespokeCall {
                             sdpJSON.put("sdp", sdp.description);
                             sdpJSON.put("type", type);
 
+                            if (directConnectionOnly && (null != directConnection)) {
+                                // Browsers ignore unknown keys when building an RTCSessionDescription from this object
+                                sdpJSON.put(RespokeDirectConnection.CAPABILITIES_KEY, directConnection.getLocalCapabilities());
+                            }
+
                             data.put("sessionDescription", sdpJSON);
 
                             if (null != signalingChannel) {
                                 signalingChannel.sendSignal(data, toEndpointId, toConnection, toType, false, new Respoke.TaskCompletionListener() {
                                     @Override
                                     public void onSuccess() {
+                                        setupTimeline.mark(RespokeCallSetupTimeline.PHASE_SIGNAL_ACKNOWLEDGED);
                                         drainLocalCandidates();
                                     }
 
@@ -1110,22 +1743,32 @@ public class RespokeCall {
                 public void run() {
                     if (isActive()) {
                         Log.d(TAG, "onSuccess(Set SDP)");
-                        if (caller) {
+                        if (iceRestart.isRestarting()) {
+                            if (iceRestartRemotePending) {
+                                // The new remote description has been applied
+                                iceRestartRemotePending = false;
+
+                                if (caller) {
+                                    drainRemoteCandidates();
+                                } else {
+                                    createAnswer();
+                                }
+                            } else if (!caller) {
+                                // Our answer to the restart offer has been set
+                                drainRemoteCandidates();
+                            }
+                        } else if (caller) {
                             if (peerConnection.getRemoteDescription() != null) {
                                 // We've set our local offer and received & set the remote
                                 // answer, so drain candidates.
+                                setupTimeline.mark(RespokeCallSetupTimeline.PHASE_REMOTE_DESCRIPTION_APPLIED);
                                 drainRemoteCandidates();
                             }
                         } else {
                             if (peerConnection.getLocalDescription() == null) {
                                 // We just set the remote offer, time to create our answer.
-                                MediaConstraints sdpMediaConstraints = new MediaConstraints();
-                                sdpMediaConstraints.mandatory.add(new MediaConstraints.KeyValuePair(
-                                        "OfferToReceiveAudio", "true"));
-                                sdpMediaConstraints.mandatory.add(new MediaConstraints.KeyValuePair(
-                                        "OfferToReceiveVideo", audioOnly ? "false" : "true"));
-
-                                peerConnection.createAnswer(SDPObserver.this, sdpMediaConstraints);
+                                setupTimeline.mark(RespokeCallSetupTimeline.PHASE_REMOTE_DESCRIPTION_APPLIED);
+                                createAnswer();
                             } else {
                                 drainRemoteCandidates();
                             }
@@ -1144,37 +1787,11 @@ public class RespokeCall {
         }
 
         private void drainRemoteCandidates() {
-            try {
-                // Start critical block
-                queuedRemoteCandidatesSemaphore.acquire();
-
-                for (IceCandidate candidate : queuedRemoteCandidates) {
-                    peerConnection.addIceCandidate(candidate);
-                }
-                queuedRemoteCandidates = null;
-
-                // End critical block
-                queuedRemoteCandidatesSemaphore.release();
-            } catch (InterruptedException e) {
-                Log.d(TAG, "Error with remote candidates semaphore");
-            }
+            remoteCandidates.drain();
         }
 
         private void drainLocalCandidates() {
-            try {
-                // Start critical block
-                localCandidatesSemaphore.acquire();
-
-                for (IceCandidate candidate : queuedLocalCandidates) {
-                    sendLocalCandidate(candidate);
-                }
-                queuedLocalCandidates = null;
-
-                // End critical block
-                localCandidatesSemaphore.release();
-            } catch (InterruptedException e) {
-                Log.d(TAG, "Error with local candidates semaphore");
-            }
+            localCandidates.drain();
         }
     }
 
@@ -1195,18 +1812,8 @@ public class RespokeCall {
     private JSONArray getLocalCandidateJSONArray() {
         JSONArray result = new JSONArray();
 
-        try {
-            // Begin critical block
-            localCandidatesSemaphore.acquire();
-
-            for (IceCandidate candidate: collectedLocalCandidates) {
-                result.put(getCandidateDict(candidate));
-            }
-
-            // End critical block
-            localCandidatesSemaphore.release();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+        for (IceCandidate candidate: collectedLocalCandidates) {
+            result.put(getCandidateDict(candidate));
         }
 
         return result;
@@ -1271,57 +1878,49 @@ public class RespokeCall {
     }
 
 
-    // Mangle SDP to prefer ISAC/16000 over any other audio codec.
-    private static String preferISAC(String sdpDescription) {
-        String[] lines = sdpDescription.split("\r\n");
-        int mLineIndex = -1;
-        String isac16kRtpMap = null;
-        Pattern isac16kPattern =
-                Pattern.compile("^a=rtpmap:(\\d+) ISAC/16000[\r]?$");
-        for (int i = 0;
-             (i < lines.length) && (mLineIndex == -1 || isac16kRtpMap == null);
-             ++i) {
-            if (lines[i].startsWith("m=audio ")) {
-                mLineIndex = i;
-                continue;
-            }
-            Matcher isac16kMatcher = isac16kPattern.matcher(lines[i]);
-            if (isac16kMatcher.matches()) {
-                isac16kRtpMap = isac16kMatcher.group(1);
-                //continue;
-            }
+    /**
+     *  Apply the codec preferences and bandwidth limits of this call to a local or remote session description
+     */
+    private String mungeSDP(String sdpDescription) {
+        RespokeSDP sdp = RespokeSDP.parse(sdpDescription);
+        sdp.preferCodecs(RespokeSDP.MEDIA_AUDIO, audioCodecPriority);
+        sdp.preferCodecs(RespokeSDP.MEDIA_VIDEO, videoCodecPriority);
+
+        if (null != bandwidthProfile) {
+            bandwidthProfile.applyTo(sdp);
         }
-        if (mLineIndex == -1) {
-            //Log.d(TAG, "No m=audio line, so can't prefer iSAC");
-            return sdpDescription;
-        }
-        if (isac16kRtpMap == null) {
-            //Log.d(TAG, "No ISAC/16000 line, so can't prefer iSAC");
-            return sdpDescription;
-        }
-        String[] origMLineParts = lines[mLineIndex].split(" ");
-        StringBuilder newMLine = new StringBuilder();
-        int origPartIndex = 0;
-        // Format is: m=<media> <port> <proto> <fmt> ...
-        newMLine.append(origMLineParts[origPartIndex++]).append(" ");
-        newMLine.append(origMLineParts[origPartIndex++]).append(" ");
-        newMLine.append(origMLineParts[origPartIndex++]).append(" ");
-        newMLine.append(isac16kRtpMap);
-        for (; origPartIndex < origMLineParts.length; ++origPartIndex) {
-            if (!origMLineParts[origPartIndex].equals(isac16kRtpMap)) {
-                newMLine.append(" ").append(origMLineParts[origPartIndex]);
+
+        return sdp.toString();
+    }
+
+
+    /**
+     *  Finish the call-setup timeline once media can flow. Calls that carry only a direct connection have no remote
+     *  stream, so they are finished as soon as ICE connects. Must be called on the UI thread.
+     */
+    private void checkSetupComplete() {
+        if (setupTimeline.hasReached(RespokeCallSetupTimeline.PHASE_ICE_CONNECTED) && (remoteStreamAdded || directConnectionOnly)) {
+            if (remoteStreamAdded) {
+                setupTimeline.mark(RespokeCallSetupTimeline.PHASE_FIRST_MEDIA);
+            }
+
+            if (setupTimeline.complete()) {
+                Log.d(TAG, setupTimeline.toString());
+
+                if (null != listenerReference) {
+                    Listener listener = listenerReference.get();
+                    if (listener instanceof SetupTimelineListener) {
+                        ((SetupTimelineListener) listener).onCallSetupComplete(setupTimeline, this);
+                    }
+                }
             }
         }
-        lines[mLineIndex] = newMLine.toString();
-        StringBuilder newSdpDescription = new StringBuilder();
-        for (String line : lines) {
-            newSdpDescription.append(line).append("\r\n");
-        }
-        return newSdpDescription.toString();
     }
 
 
     private void postErrorToListener(final String errorMessage) {
+        RespokeMetrics.CALLS_FAILED.increment();
+
         // All listener methods should be called from the UI thread
         new Handler(Looper.getMainLooper()).post(new Runnable() {
             public void run() {
@@ -0,0 +1,107 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import android.hardware.Camera;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ *  A camera on the device. The cameras are discovered once per process by asking the camera service for their
+ *  facing and orientation, which is much cheaper than trying to open every possible device name in turn.
+ */
+public class RespokeCamera {
+
+    private static final String TAG = "RespokeCamera";
+    public static final int FACING_ANY = -1;  ///< Indicates that any camera may be used
+    public static final int FACING_BACK = Camera.CameraInfo.CAMERA_FACING_BACK;
+    public static final int FACING_FRONT = Camera.CameraInfo.CAMERA_FACING_FRONT;
+
+    private static List<RespokeCamera> cameras;  ///< The cameras found by discovery, or null if discovery has not run
+
+    public final int index;  ///< The index of the camera in the camera service
+    public final int facing;  ///< Either FACING_FRONT or FACING_BACK
+    public final int orientation;  ///< The angle the camera image must be rotated clockwise to be upright, in degrees
+    public final String deviceName;  ///< The name WebRTC uses to open the camera
+
+
+    private RespokeCamera(int index, int facing, int orientation) {
+        this.index = index;
+        this.facing = facing;
+        this.orientation = orientation;
+        deviceName = "Camera " + index + ", Facing " + ((FACING_FRONT == facing) ? "front" : "back") + ", Orientation " + orientation;
+    }
+
+
+    /**
+     *  Get the cameras on the device, discovering them the first time this is called
+     *
+     *  @return The cameras, in the order the camera service reports them
+     */
+    public static synchronized List<RespokeCamera> getCameras() {
+        if (null == cameras) {
+            ArrayList<RespokeCamera> discovered = new ArrayList<RespokeCamera>();
+            int count = Camera.getNumberOfCameras();
+            Camera.CameraInfo info = new Camera.CameraInfo();
+
+            for (int ii = 0; ii < count; ii++) {
+                try {
+                    Camera.getCameraInfo(ii, info);
+                    discovered.add(new RespokeCamera(ii, info.facing, info.orientation));
+                } catch (RuntimeException e) {
+                    // The camera service can refuse to describe a camera that has failed; leave it out
+                    Log.d(TAG, "Unable to get information for camera " + ii);
+                }
+            }
+
+            cameras = Collections.unmodifiableList(discovered);
+        }
+
+        return cameras;
+    }
+
+
+    /**
+     *  Get the cameras in the order they should be tried for a given facing: those with the requested facing first,
+     *  then the rest
+     *
+     *  @param facing  FACING_FRONT, FACING_BACK or FACING_ANY
+     *
+     *  @return The cameras in order of preference
+     */
+    public static List<RespokeCamera> getCamerasInOrder(int facing) {
+        List<RespokeCamera> all = getCameras();
+        ArrayList<RespokeCamera> ordered = new ArrayList<RespokeCamera>(all.size());
+
+        for (RespokeCamera each : all) {
+            if ((FACING_ANY == facing) || (each.facing == facing)) {
+                ordered.add(each);
+            }
+        }
+
+        for (RespokeCamera each : all) {
+            if (!ordered.contains(each)) {
+                ordered.add(each);
+            }
+        }
+
+        return ordered;
+    }
+
+
+    @Override
+    public String toString() {
+        return deviceName;
+    }
+}
@@ -0,0 +1,37 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+/**
+ *  Chooses the camera and the capture format used for the local video of a call. If the requested camera cannot be
+ *  opened, the other cameras on the device are tried. The format is passed to the camera as an upper limit, so the
+ *  camera picks its closest supported format that does not exceed it.
+ */
+public class RespokeCaptureProfile {
+
+    public static final RespokeCaptureProfile FRONT_CAMERA = new RespokeCaptureProfile(RespokeCamera.FACING_FRONT, null);  ///< The front camera at its default format
+    public static final RespokeCaptureProfile BACK_CAMERA = new RespokeCaptureProfile(RespokeCamera.FACING_BACK, null);  ///< The back camera at its default format
+
+    public final int facing;  ///< RespokeCamera.FACING_FRONT, FACING_BACK or FACING_ANY
+    public final RespokeCaptureFormat format;  ///< The largest format to capture at, or null for the camera default
+
+
+    /**
+     *  Create a capture profile
+     *
+     *  @param facing  The camera to prefer: RespokeCamera.FACING_FRONT, FACING_BACK or FACING_ANY
+     *  @param format  The largest format to capture at, or null for the camera default
+     */
+    public RespokeCaptureProfile(int facing, RespokeCaptureFormat format) {
+        this.facing = facing;
+        this.format = format;
+    }
+}
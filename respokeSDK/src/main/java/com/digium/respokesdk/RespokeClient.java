@@ -11,8 +11,6 @@
 package com.digium.respokesdk;
 
 import android.content.Context;
-import android.content.SharedPreferences;
-import android.net.Uri;
 import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
@@ -29,7 +27,6 @@ import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -43,32 +40,34 @@ import static android.R.attr.id;
  *  track of, like groups and endpoints. The client also keeps track of default settings for calls and direct
  *  connections as well as automatically reconnecting to the service when network activity is lost.
  */
-public class RespokeClient implements RespokeSignalingChannel.Listener {
+public class RespokeClient implements RespokeSignalingChannel.Listener, RespokeConnectivityMonitor.Listener {
 
     private static final String TAG = "RespokeClient";
-    private static final int RECONNECT_INTERVAL = 500;  ///< The exponential step interval between automatic reconnect attempts, in milliseconds
+    private static final long MIGRATION_DRAIN_DELAY = 5000;  ///< How long a replaced socket is kept open to finish in-flight requests, and how often to check whether calls still need it, in milliseconds
 
-    public static final String PROPERTY_LAST_VALID_PUSH_TOKEN = "pushToken";
-    public static final String PROPERTY_LAST_VALID_PUSH_TOKEN_ID = "pushTokenServiceID";
+    public static final String PROPERTY_LAST_VALID_PUSH_TOKEN = RespokeSignalingProtocol.PROPERTY_LAST_VALID_PUSH_TOKEN;
+    public static final String PROPERTY_LAST_VALID_PUSH_TOKEN_ID = RespokeSignalingProtocol.PROPERTY_LAST_VALID_PUSH_TOKEN_ID;
 
     private WeakReference<Listener> listenerReference;
     private WeakReference<ResolvePresenceListener> resolveListenerReference;
     private String localEndpointID;  ///< The local endpoint ID
     private String localConnectionID; ///< The local connection ID
     private RespokeSignalingChannel signalingChannel;  ///< The signaling channel to use
+    private final RespokeSignalingMigration<RespokeSignalingChannel> migration = new RespokeSignalingMigration<RespokeSignalingChannel>();  ///< The replacement channel being brought up after a network change, and the replaced channels still open
+    private RespokeConnectivityMonitor connectivityMonitor;  ///< Watches for default network changes, if enabled
+    private RespokeSignalingMetrics signalingMetrics;  ///< Request timing for every signaling channel this client has used
+    private RespokeOutboundQueue outboundQueue;  ///< Holds outbound messages on disk until they are acknowledged, if enabled
     private ArrayList<RespokeCall> calls;  ///< An array of the active calls
     private HashMap<String, RespokeGroup> groups;  ///< An array of the groups this client is a member of
     private ArrayList<RespokeEndpoint> knownEndpoints;  ///< An array of the known endpoints
     private Object presence;  ///< The current presence of this client
     private String applicationID;  ///< The application ID to use when connecting in development mode
     private boolean reconnect;  ///< Indicates if the client should automatically reconnect if the web socket disconnects
-    private int reconnectCount;  ///< A count of how many times reconnection has been attempted
+    private RespokeReconnectScheduler reconnectScheduler;  ///< Schedules automatic reconnect attempts with jittered backoff
     private boolean connectionInProgress;  ///< Indicates if the client is in the middle of attempting to connect
     private Context appContext;  ///< The application context
     private String pushServiceID; ///< The push service ID
-    private ArrayList<String> presenceRegistrationQueue; ///< An array of endpoints that need to be registered for presence updates
-    private HashMap<String, Boolean> presenceRegistered; ///< A Hash of all the endpoint IDs that have already been registered for presence updates
-    private boolean registrationTaskWaiting; ///< A flag to indicate that a task is scheduled to begin presence registration
+    private RespokePresenceRegistrar presenceRegistrar; ///< Registers for presence updates for known endpoints in batches
 
     public String baseURL = APITransaction.RESPOKE_BASE_URL;  ///< The base url of the Respoke service to use
 
@@ -248,8 +247,45 @@ public class RespokeClient implements RespokeSignalingChannel.Listener {
         calls = new ArrayList<RespokeCall>();
         groups = new HashMap<String, RespokeGroup>();
         knownEndpoints = new ArrayList<RespokeEndpoint>();
-        presenceRegistrationQueue = new ArrayList<String>();
-        presenceRegistered = new HashMap<String, Boolean>();
+        presenceRegistrar = new RespokePresenceRegistrar(RespokePlatform.sharedInstance().getMainThread(), new RespokePresenceRegistrar.Listener() {
+            @Override
+            public void registerPresence(ArrayList<String> endpointIDs, RespokeSignalingProtocol.RegisterPresenceListener completionListener) {
+                if (isConnected()) {
+                    signalingChannel.registerPresence(endpointIDs, completionListener);
+                }
+            }
+
+            @Override
+            public void onConnectionPresence(String endpointID, String connectionID, Object presence) {
+                RespokeEndpoint endpoint = getEndpoint(endpointID, true);
+
+                if (null != endpoint) {
+                    RespokeConnection connection = endpoint.getConnection(connectionID, false);
+
+                    if (null != connection) {
+                        connection.presence = presence;
+                    }
+                }
+            }
+
+            @Override
+            public void onRegistered(ArrayList<String> endpointIDs) {
+                for (String eachID : endpointIDs) {
+                    RespokeEndpoint endpoint = getEndpoint(eachID, true);
+
+                    if (null != endpoint) {
+                        endpoint.resolvePresence();
+                    }
+                }
+            }
+        });
+        signalingMetrics = new RespokeSignalingMetrics();
+        reconnectScheduler = new RespokeReconnectScheduler(new Runnable() {
+            @Override
+            public void run() {
+                actuallyReconnect();
+            }
+        });
     }
 
     /**
@@ -354,6 +390,8 @@ public class RespokeClient implements RespokeSignalingChannel.Listener {
                         presence = initialPresence;
 
                         signalingChannel = new RespokeSignalingChannel(appToken, RespokeClient.this, baseURL, appContext);
+                        migration.reset(signalingChannel);
+                        signalingChannel.setMetrics(signalingMetrics);
                         signalingChannel.authenticate();
                     } else {
                         connectionInProgress = false;
@@ -375,19 +413,115 @@ public class RespokeClient implements RespokeSignalingChannel.Listener {
      */
     public void disconnect() {
         reconnect = false;
+        reconnectScheduler.shutdown();
+
+        RespokeSignalingChannel pendingChannel = migration.getPending();
+
+        if (migration.abandon(pendingChannel)) {
+            pendingChannel.disconnect();
+        }
 
         if (null != signalingChannel) {
             signalingChannel.disconnect();
         }
     }
 
+    /**
+     *  If the client is waiting to automatically reconnect, skip the remainder of the backoff delay and attempt to
+     *  reconnect immediately. This is useful when the application learns that network connectivity has been restored.
+     */
+    public void reconnectNow() {
+        if (reconnect && !isConnected()) {
+            reconnectScheduler.reconnectNow();
+        }
+    }
+
+    /**
+     *  Enable or disable monitoring of the device's default network. When enabled, a network change while connected
+     *  causes a new socket to be brought up on the new network and switched over to before the old one is torn down,
+     *  and a network becoming available while disconnected causes a pending automatic reconnect to happen immediately.
+     *  This requires the ACCESS_NETWORK_STATE permission.
+     *
+     *  @param enabled  True to start monitoring, false to stop
+     *  @param context  An application context with which to access system resources
+     */
+    public void setConnectivityMonitoringEnabled(boolean enabled, Context context) {
+        if (enabled) {
+            if (null == connectivityMonitor) {
+                connectivityMonitor = new RespokeConnectivityMonitor(context, this);
+                connectivityMonitor.start();
+            }
+        } else if (null != connectivityMonitor) {
+            connectivityMonitor.stop();
+            connectivityMonitor = null;
+        }
+    }
+
+    /**
+     *  Get the connectivity monitor used by this client. Tests may use it to simulate network changes.
+     *
+     *  @return The connectivity monitor, or null if monitoring is not enabled
+     */
+    public RespokeConnectivityMonitor getConnectivityMonitor() {
+        return connectivityMonitor;
+    }
+
+    /**
+     *  Enable or disable the durable outbound queue. When enabled, messages sent to endpoints and groups are written
+     *  to disk and kept until the service acknowledges them. Messages sent while disconnected are queued instead of
+     *  failing, and are replayed in order once the client reconnects, even if the application was restarted in the
+     *  meantime. Messages are stored separately for each endpoint ID, and messages to a group are held until the group
+     *  has been joined again after reconnecting. Disabling the queue leaves any pending messages on disk for the next
+     *  time it is enabled.
+     *
+     *  @param enabled  True to queue outbound messages, false to send them only while connected
+     *  @param context  An application context with which to access the file system
+     */
+    public void setOutboundQueueEnabled(boolean enabled, Context context) {
+        if (enabled) {
+            if (null == outboundQueue) {
+                outboundQueue = new RespokeOutboundQueue(context);
+
+                if (null != localEndpointID) {
+                    outboundQueue.setIdentity(applicationID, localEndpointID);
+                }
+
+                if (isConnected()) {
+                    outboundQueue.connectionAvailable(signalingChannel, getJoinedGroupIDs());
+                }
+            }
+        } else if (null != outboundQueue) {
+            outboundQueue.close();
+            outboundQueue = null;
+        }
+    }
+
+    /**
+     *  Get the durable outbound queue used by this client
+     *
+     *  @return The outbound queue, or null if it is not enabled
+     */
+    public RespokeOutboundQueue getOutboundQueue() {
+        return outboundQueue;
+    }
+
+    /**
+     *  Get the timing and error metrics for requests this client has sent over its signaling socket. The metrics
+     *  accumulate across reconnects.
+     *
+     *  @return The signaling metrics
+     */
+    public RespokeSignalingMetrics getSignalingMetrics() {
+        return signalingMetrics;
+    }
+
     /**
      *  Check whether this client is connected to the backend infrastructure.
      *
      *  @return True if connected
      */
     public boolean isConnected() {
-        return ((signalingChannel != null) && (signalingChannel.connected));
+        return ((signalingChannel != null) && (signalingChannel.isConnected()));
     }
 
     /**
@@ -414,6 +548,10 @@ public class RespokeClient implements RespokeSignalingChannel.Listener {
                                 RespokeGroup newGroup = new RespokeGroup(eachGroupID, signalingChannel, RespokeClient.this);
                                 groups.put(eachGroupID, newGroup);
                                 newGroupList.add(newGroup);
+
+                                if (null != outboundQueue) {
+                                    outboundQueue.groupJoined(eachGroupID);
+                                }
                             }
 
                             new Handler(Looper.getMainLooper()).post(new Runnable() {
@@ -489,7 +627,7 @@ public class RespokeClient implements RespokeSignalingChannel.Listener {
     public RespokeCall joinConference(RespokeCall.Listener callListener, Context context, String conferenceID) {
         RespokeCall call = null;
 
-        if ((null != signalingChannel) && (signalingChannel.connected)) {
+        if ((null != signalingChannel) && (signalingChannel.isConnected())) {
             call = new RespokeCall(signalingChannel, conferenceID, "conference");
             call.setListener(callListener);
 
@@ -526,7 +664,7 @@ public class RespokeClient implements RespokeSignalingChannel.Listener {
             }
 
             if (null != endpoint) {
-                queuePresenceRegistration(endpoint.getEndpointID());
+                presenceRegistrar.queue(endpoint.getEndpointID());
             }
         }
 
@@ -579,26 +717,20 @@ public class RespokeClient implements RespokeSignalingChannel.Listener {
     public void getGroupHistories(final List<String> groupIds, final Integer maxMessages,
                                   final GroupHistoriesCompletionListener completionListener) {
         if (!isConnected()) {
-            getGroupHistoriesError(completionListener, "Can't complete request when not connected, " +
-                    "Please reconnect!");
+            getGroupHistoriesError(completionListener, RespokeGroupHistory.ERROR_NOT_CONNECTED);
             return;
         }
 
-        if ((maxMessages == null) || (maxMessages < 1)) {
-            getGroupHistoriesError(completionListener, "maxMessages must be at least 1");
-            return;
-        }
+        String validationError = RespokeGroupHistory.validateHistories(groupIds, maxMessages);
 
-        if ((groupIds == null) || (groupIds.size() == 0)) {
-            getGroupHistoriesError(completionListener, "At least 1 group must be specified");
+        if (null != validationError) {
+            getGroupHistoriesError(completionListener, validationError);
             return;
         }
 
-        JSONObject body = new JSONObject();
+        JSONObject body;
         try {
-            body.put("limit", maxMessages.toString());
-            JSONArray groupIdParams = new JSONArray(groupIds);
-            body.put("groupIds", groupIdParams);
+            body = RespokeGroupHistory.historiesBody(groupIds, maxMessages);
         } catch(JSONException e) {
             getGroupHistoriesError(completionListener, "Error forming JSON body to send.");
             return;
@@ -606,39 +738,26 @@ public class RespokeClient implements RespokeSignalingChannel.Listener {
 
         // This has been modifed to use the newer group-history-search route over the
         // deprecated group-histories route.
-        String urlEndpoint = "/v1/group-history-search";
-        signalingChannel.sendRESTMessage("post", urlEndpoint, body,
+        signalingChannel.sendRESTMessage("post", RespokeGroupHistory.HISTORY_SEARCH_URL, body,
                 new RespokeSignalingChannel.RESTListener() {
             @Override
             public void onSuccess(Object response) {
                 if (!(response instanceof JSONObject)) {
-                    getGroupHistoriesError(completionListener, "Invalid response from server");
+                    getGroupHistoriesError(completionListener, RespokeGroupHistory.ERROR_INVALID_RESPONSE);
                     return;
                 }
 
-                final JSONObject json = (JSONObject) response;
                 final HashMap<String, List<RespokeGroupMessage>> results = new HashMap<>();
 
-                for (Iterator<String> keys = json.keys(); keys.hasNext();) {
-                    final String key = keys.next();
-
-                    try {
-                        final JSONArray jsonMessages = json.getJSONArray(key);
-
-                        final ArrayList<RespokeGroupMessage> messageList =
-                                new ArrayList<>(jsonMessages.length());
-
-                        for (int i = 0; i < jsonMessages.length(); i++) {
-                            final JSONObject jsonMessage = jsonMessages.getJSONObject(i);
-                            final RespokeGroupMessage message = buildGroupMessage(jsonMessage);
-                            messageList.add(message);
-                        }
+                try {
+                    Map<String, List<RespokeGroupHistory.Message>> histories = RespokeGroupHistory.parseHistories((JSONObject) response);
 
-                        results.put(key, messageList);
-                    } catch (JSONException e) {
-                        getGroupHistoriesError(completionListener, "Error parsing JSON response");
-                        return;
+                    for (Map.Entry<String, List<RespokeGroupHistory.Message>> eachHistory : histories.entrySet()) {
+                        results.put(eachHistory.getKey(), buildGroupMessages(eachHistory.getValue()));
                     }
+                } catch (JSONException e) {
+                    getGroupHistoriesError(completionListener, RespokeGroupHistory.ERROR_PARSING_RESPONSE);
+                    return;
                 }
 
                 new Handler(Looper.getMainLooper()).post(new Runnable() {
@@ -669,42 +788,28 @@ public class RespokeClient implements RespokeSignalingChannel.Listener {
      */
     public void getConversations(final EndpointConversationsCompletionListener completionListener) {
         if (!isConnected()) {
-            getEndpointConversationsError(completionListener, "Can't complete request when not connected, " +
-                "Please reconnect!");
+            getEndpointConversationsError(completionListener, RespokeGroupHistory.ERROR_NOT_CONNECTED);
             return;
         }
 
-        String urlEndpoint = "/v1/endpoints/" + localEndpointID + "/conversations";
-        signalingChannel.sendRESTMessage("get", urlEndpoint, null,
+        signalingChannel.sendRESTMessage("get", RespokeGroupHistory.conversationsURL(localEndpointID), null,
             new RespokeSignalingChannel.RESTListener() {
                 @Override
                 public void onSuccess(Object response) {
                     if (!(response instanceof JSONArray)) {
-                        getEndpointConversationsError(completionListener, "Invalid response from server");
+                        getEndpointConversationsError(completionListener, RespokeGroupHistory.ERROR_INVALID_RESPONSE);
                         return;
                     }
 
-                    final JSONArray json = (JSONArray) response;
                     final List<EndpointConversationInfo> results = new ArrayList<EndpointConversationInfo>();
 
                     try {
-                        for (int i = 0; i < json.length(); i++) {
-                            final JSONObject jsonConversationInfo = json.getJSONObject(i);
-
-                            final EndpointConversationInfo info = new EndpointConversationInfo();
-
-                            final JSONObject jsonMessage = jsonConversationInfo.getJSONObject("latestMsg");
-
-                            info.latestMessage = buildGroupMessage(jsonMessage);
-                            info.groupId = jsonConversationInfo.getString("groupId");
-                            info.sourceId = jsonConversationInfo.getString("sourceId");
-                            info.unreadCount = jsonConversationInfo.getInt("unreadCount");
-                            info.timestamp = new Date(jsonConversationInfo.getLong("timestamp"));
-
-                            results.add(info);
+                        for (RespokeGroupHistory.Conversation eachConversation : RespokeGroupHistory.parseConversations((JSONArray) response)) {
+                            results.add(new EndpointConversationInfo(eachConversation.groupID, eachConversation.timestamp,
+                                    buildGroupMessage(eachConversation.latestMessage), eachConversation.sourceID, eachConversation.unreadCount));
                         }
                     } catch (JSONException e) {
-                        getEndpointConversationsError(completionListener, "Error parsing JSON response");
+                        getEndpointConversationsError(completionListener, RespokeGroupHistory.ERROR_PARSING_RESPONSE);
                         return;
                     }
 
@@ -734,8 +839,7 @@ public class RespokeClient implements RespokeSignalingChannel.Listener {
      */
     public void setConversationsRead(final List<RespokeConversationReadStatus> updates, final Respoke.TaskCompletionListener completionListener) {
         if (!isConnected()) {
-            Respoke.postTaskError(completionListener, "Can't complete request when not connected, " +
-                "Please reconnect!");
+            Respoke.postTaskError(completionListener, RespokeGroupHistory.ERROR_NOT_CONNECTED);
             return;
         }
 
@@ -744,28 +848,15 @@ public class RespokeClient implements RespokeSignalingChannel.Listener {
             return;
         }
 
-        JSONObject body = new JSONObject();
-        JSONArray groupsJsonArray = new JSONArray();
-
+        JSONObject body;
         try {
-            // Add each status object to the array.
-            for (RespokeConversationReadStatus status : updates) {
-                JSONObject jsonStatus = new JSONObject();
-                jsonStatus.put("groupId", status.groupId);
-                jsonStatus.put("timestamp", status.timestamp.toString());
-
-                groupsJsonArray.put(jsonStatus);
-            }
-
-            // Set the array to the 'groups' property.
-            body.put("groups", groupsJsonArray);
+            body = RespokeGroupHistory.readStatusBody(updates);
         } catch(JSONException e) {
             Respoke.postTaskError(completionListener, "Error forming JSON body to send.");
             return;
         }
 
-        String urlEndpoint = "/v1/endpoints/" + localEndpointID + "/conversations";
-        signalingChannel.sendRESTMessage("put", urlEndpoint, body,
+        signalingChannel.sendRESTMessage("put", RespokeGroupHistory.conversationsURL(localEndpointID), body,
             new RespokeSignalingChannel.RESTListener() {
                 @Override
                 public void onSuccess(Object response) {
@@ -829,49 +920,33 @@ public class RespokeClient implements RespokeSignalingChannel.Listener {
     public void getGroupHistory(final String groupId, final Integer maxMessages, final Date before,
                                 final GroupHistoryCompletionListener completionListener) {
         if (!isConnected()) {
-            getGroupHistoryError(completionListener, "Can't complete request when not connected, " +
-                    "Please reconnect!");
+            getGroupHistoryError(completionListener, RespokeGroupHistory.ERROR_NOT_CONNECTED);
             return;
         }
 
-        if ((maxMessages == null) || (maxMessages < 1)) {
-            getGroupHistoryError(completionListener, "maxMessages must be at least 1");
-            return;
-        }
+        String validationError = RespokeGroupHistory.validateHistory(groupId, maxMessages);
 
-        if ((groupId == null) || groupId.length() == 0) {
-            getGroupHistoryError(completionListener, "groupId cannot be blank");
+        if (null != validationError) {
+            getGroupHistoryError(completionListener, validationError);
             return;
         }
 
-        Uri.Builder builder = new Uri.Builder();
-        builder.appendQueryParameter("limit", maxMessages.toString());
-
-        if (before != null) {
-            builder.appendQueryParameter("before", Long.toString(before.getTime()));
-        }
-
-        String urlEndpoint = String.format("/v1/groups/%s/history%s", groupId, builder.build().toString());
+        String urlEndpoint = RespokeGroupHistory.historyURL(groupId, maxMessages, before);
         signalingChannel.sendRESTMessage("get", urlEndpoint, null,
                 new RespokeSignalingChannel.RESTListener() {
                     @Override
                     public void onSuccess(Object response) {
                         if (!(response instanceof JSONArray)) {
-                            getGroupHistoryError(completionListener, "Invalid response from server");
+                            getGroupHistoryError(completionListener, RespokeGroupHistory.ERROR_INVALID_RESPONSE);
                             return;
                         }
 
-                        final JSONArray json = (JSONArray) response;
-                        final ArrayList<RespokeGroupMessage> results = new ArrayList<>(json.length());
+                        final List<RespokeGroupMessage> results;
 
                         try {
-                            for (int i = 0; i < json.length(); i++) {
-                                final JSONObject jsonMessage = json.getJSONObject(i);
-                                final RespokeGroupMessage message = buildGroupMessage(jsonMessage);
-                                results.add(message);
-                            }
+                            results = buildGroupMessages(RespokeGroupHistory.parseHistory((JSONArray) response));
                         } catch (JSONException e) {
-                            getGroupHistoryError(completionListener, "Error parsing JSON response");
+                            getGroupHistoryError(completionListener, RespokeGroupHistory.ERROR_PARSING_RESPONSE);
                             return;
                         }
 
@@ -968,21 +1043,18 @@ public class RespokeClient implements RespokeSignalingChannel.Listener {
             data.put("token", token);
             data.put("service", "google");
 
-            SharedPreferences prefs = appContext.getSharedPreferences(appContext.getPackageName(), Context.MODE_PRIVATE);
-
-            if (null != prefs) {
-                String lastKnownPushToken = prefs.getString(PROPERTY_LAST_VALID_PUSH_TOKEN, "notAvailable");
-                String lastKnownPushTokenID = prefs.getString(PROPERTY_LAST_VALID_PUSH_TOKEN_ID, "notAvailable");
-
-                if ((null == lastKnownPushTokenID) || (lastKnownPushTokenID.equals("notAvailable"))) {
-                    httpURI = String.format("/v1/connections/%s/push-token", localConnectionID);
-                    httpMethod = "post";
-                    createOrUpdatePushServiceToken(token, httpURI, httpMethod, data, prefs);
-                } else if (!lastKnownPushToken.equals("notAvailable") && !lastKnownPushToken.equals(token)) {
-                    httpURI = String.format("/v1/connections/%s/push-token/%s", localConnectionID, lastKnownPushTokenID);
-                    httpMethod = "put";
-                    createOrUpdatePushServiceToken(token, httpURI, httpMethod, data, prefs);
-                }
+            RespokeKeyValueStore prefs = new RespokeSharedPreferencesStore(appContext);
+            String lastKnownPushToken = prefs.getString(PROPERTY_LAST_VALID_PUSH_TOKEN, "notAvailable");
+            String lastKnownPushTokenID = prefs.getString(PROPERTY_LAST_VALID_PUSH_TOKEN_ID, "notAvailable");
+
+            if ((null == lastKnownPushTokenID) || (lastKnownPushTokenID.equals("notAvailable"))) {
+                httpURI = String.format("/v1/connections/%s/push-token", localConnectionID);
+                httpMethod = "post";
+                createOrUpdatePushServiceToken(token, httpURI, httpMethod, data, prefs);
+            } else if (!lastKnownPushToken.equals("notAvailable") && !lastKnownPushToken.equals(token)) {
+                httpURI = String.format("/v1/connections/%s/push-token/%s", localConnectionID, lastKnownPushTokenID);
+                httpMethod = "put";
+                createOrUpdatePushServiceToken(token, httpURI, httpMethod, data, prefs);
             }
         } catch(JSONException e) {
             Log.d("", "Invalid JSON format for token");
@@ -997,36 +1069,28 @@ public class RespokeClient implements RespokeSignalingChannel.Listener {
      */
     public void unregisterFromPushServices(final Respoke.TaskCompletionListener completionListener) {
         if (isConnected()) {
-            SharedPreferences prefs = appContext.getSharedPreferences(appContext.getPackageName(), Context.MODE_PRIVATE);
+            final RespokeKeyValueStore prefs = new RespokeSharedPreferencesStore(appContext);
+            String lastKnownPushTokenID = prefs.getString(PROPERTY_LAST_VALID_PUSH_TOKEN_ID, "notAvailable");
 
-            if (null != prefs) {
-                String lastKnownPushTokenID = prefs.getString(PROPERTY_LAST_VALID_PUSH_TOKEN_ID, "notAvailable");
-
-                if ((null != lastKnownPushTokenID) && !lastKnownPushTokenID.equals("notAvailable")) {
-                    // A push token has previously been registered successfully
-                    String httpURI = String.format("/v1/connections/%s/push-token/%s", localConnectionID, lastKnownPushTokenID);
-                    signalingChannel.sendRESTMessage("delete", httpURI, null, new RespokeSignalingChannel.RESTListener() {
-                        @Override
-                        public void onSuccess(Object response) {
-                            // Remove the push token ID from shared memory so that push may be registered again in the future
-                            SharedPreferences prefs = appContext.getSharedPreferences(appContext.getPackageName(), Context.MODE_PRIVATE);
-                            SharedPreferences.Editor editor = prefs.edit();
-                            editor.remove(PROPERTY_LAST_VALID_PUSH_TOKEN_ID);
-                            editor.apply();
+            if ((null != lastKnownPushTokenID) && !lastKnownPushTokenID.equals("notAvailable")) {
+                // A push token has previously been registered successfully
+                String httpURI = String.format("/v1/connections/%s/push-token/%s", localConnectionID, lastKnownPushTokenID);
+                signalingChannel.sendRESTMessage("delete", httpURI, null, new RespokeSignalingChannel.RESTListener() {
+                    @Override
+                    public void onSuccess(Object response) {
+                        // Remove the push token ID from shared memory so that push may be registered again in the future
+                        prefs.remove(PROPERTY_LAST_VALID_PUSH_TOKEN_ID);
 
-                            Respoke.postTaskSuccess(completionListener);
-                        }
+                        Respoke.postTaskSuccess(completionListener);
+                    }
 
-                        @Override
-                        public void onError(String errorMessage) {
-                            Respoke.postTaskError(completionListener, "Error unregistering push service token: " + errorMessage);
-                        }
-                    });
-                } else {
-                    Respoke.postTaskSuccess(completionListener);
-                }
+                    @Override
+                    public void onError(String errorMessage) {
+                        Respoke.postTaskError(completionListener, "Error unregistering push service token: " + errorMessage);
+                    }
+                });
             } else {
-                Respoke.postTaskError(completionListener, "Unable to access shared preferences to look for push token");
+                Respoke.postTaskSuccess(completionListener);
             }
         } else {
             Respoke.postTaskError(completionListener, "Can't complete request when not connected. Please reconnect!");
@@ -1035,7 +1099,7 @@ public class RespokeClient implements RespokeSignalingChannel.Listener {
 
     //** Private methods
 
-    private void createOrUpdatePushServiceToken(final String token, String httpURI, String httpMethod, JSONObject data, final SharedPreferences prefs) {
+    private void createOrUpdatePushServiceToken(final String token, String httpURI, String httpMethod, JSONObject data, final RespokeKeyValueStore prefs) {
         signalingChannel.sendRESTMessage(httpMethod, httpURI, data, new RespokeSignalingChannel.RESTListener() {
             @Override
             public void onSuccess(Object response) {
@@ -1044,10 +1108,8 @@ public class RespokeClient implements RespokeSignalingChannel.Listener {
                         JSONObject responseJSON = (JSONObject) response;
                         pushServiceID = responseJSON.getString("id");
 
-                        SharedPreferences.Editor editor = prefs.edit();
-                        editor.putString(PROPERTY_LAST_VALID_PUSH_TOKEN, token);
-                        editor.putString(PROPERTY_LAST_VALID_PUSH_TOKEN_ID, pushServiceID);
-                        editor.apply();
+                        prefs.putString(PROPERTY_LAST_VALID_PUSH_TOKEN, token);
+                        prefs.putString(PROPERTY_LAST_VALID_PUSH_TOKEN_ID, pushServiceID);
                     } catch (JSONException e) {
                         Log.d(TAG, "Unexpected response from server while registering push service token");
                     }
@@ -1134,21 +1196,15 @@ public class RespokeClient implements RespokeSignalingChannel.Listener {
     }
 
     /**
-     *  Attempt to reconnect the client after a small delay
+     *  Attempt to reconnect the client after a jittered backoff delay
      */
     private void performReconnect() {
         if (null != applicationID) {
-            reconnectCount++;
+            long delay = reconnectScheduler.schedule();
 
-            new java.util.Timer().schedule(
-                new java.util.TimerTask() {
-                    @Override
-                    public void run() {
-                        actuallyReconnect();
-                    }
-                },
-                RECONNECT_INTERVAL * (reconnectCount - 1)
-            );
+            if (delay >= 0) {
+                Log.d(TAG, "Reconnect attempt " + reconnectScheduler.getAttemptCount() + " in " + delay + "ms");
+            }
         }
     }
 
@@ -1156,12 +1212,13 @@ public class RespokeClient implements RespokeSignalingChannel.Listener {
      *  Attempt to reconnect the client if it is not already trying in another thread
      */
     private void actuallyReconnect() {
-        if (((null == signalingChannel) || !signalingChannel.connected) && reconnect) {
+        if (((null == signalingChannel) || !signalingChannel.isConnected()) && reconnect) {
             if (connectionInProgress) {
                 // The client app must have initiated a connection manually during the timeout period. Try again later
                 performReconnect();
             } else {
                 Log.d(TAG, "Trying to reconnect...");
+                RespokeMetrics.RECONNECTS.increment();
                 connect(localEndpointID, applicationID, reconnect, presence, appContext, new ConnectCompletionListener() {
                     @Override
                     public void onError(final String errorMessage) {
@@ -1185,123 +1242,193 @@ public class RespokeClient implements RespokeSignalingChannel.Listener {
     }
 
     /**
-     *  Register for presence updates for the specified endpoint ID. Registration will not occur immediately, 
-     *  it will be queued and performed asynchronously. Queuing allows for large numbers of presence 
-     *  registration requests to occur in batches, minimizing the number of network transactions (and overall 
-     *  time required).
+     *  Bring up a replacement signaling channel for the current session. The existing channel keeps working until the
+     *  replacement has connected and rejoined this client's groups.
+     */
+    private void migrateSignalingChannel() {
+        if ((null == migration.getPending()) && (null != signalingChannel) && signalingChannel.isConnected()) {
+            Log.d(TAG, "Network changed, migrating the signaling channel");
+            RespokeSignalingChannel newChannel = new RespokeSignalingChannel(signalingChannel.getAppToken(), this, baseURL, appContext);
+
+            if (migration.begin(newChannel)) {
+                newChannel.setMetrics(signalingMetrics);
+                newChannel.authenticate();
+            }
+        }
+    }
+
+    /**
+     *  Rejoin the groups this client belongs to on a replacement signaling channel, then switch over to it
      *
-     *  @param endpointID  The ID of the endpoint for which to register for presence updates
+     *  @param newChannel       The replacement signaling channel, which has just connected
+     *  @param newConnectionID  The connection ID assigned to the replacement channel
      */
-    private void queuePresenceRegistration(String endpointID) {
-        if (null != endpointID) {
-            Boolean shouldSpawnRegistrationTask = false;
-
-            synchronized (this) {
-                Boolean alreadyRegistered = presenceRegistered.get(endpointID);
-                if ((null == alreadyRegistered) || !alreadyRegistered) {
-                    presenceRegistrationQueue.add(endpointID);
-
-                    // If a Runnable to register presence has not already been scheduled, note that one will be shortly
-                    if (!registrationTaskWaiting) {
-                        shouldSpawnRegistrationTask = true;
-                        registrationTaskWaiting = true;
+    private void completeMigration(final RespokeSignalingChannel newChannel, final String newConnectionID) {
+        ArrayList<String> joinedGroupIDs = getJoinedGroupIDs();
+
+        if (joinedGroupIDs.size() > 0) {
+            try {
+                JSONObject data = new JSONObject();
+                data.put("groups", new JSONArray(joinedGroupIDs));
+
+                newChannel.sendRESTMessage("post", "/v1/groups", data, new RespokeSignalingChannel.RESTListener() {
+                    @Override
+                    public void onSuccess(Object response) {
+                        switchToSignalingChannel(newChannel, newConnectionID);
                     }
-                }
-            }
 
-            if (shouldSpawnRegistrationTask) {
-                // Schedule a Runnable to register presence on the next context switch, which should allow multiple subsequent calls to queuePresenceRegistration to get batched into a single socket transaction for efficiency
-                new Handler(Looper.getMainLooper()).post(new Runnable() {
                     @Override
-                    public void run() {
-                        final HashMap<String, Boolean> endpointIDMap = new HashMap<String, Boolean>();
-
-                        synchronized (this) {
-                            // Build a list of the endpointIDs that have been scheduled for registration, and have not already been taken care of by a previous loop of this task
-                            while (presenceRegistrationQueue.size() > 0) {
-                                String nextEndpointID = presenceRegistrationQueue.remove(0);
-                                Boolean alreadyRegistered = presenceRegistered.get(nextEndpointID);
-                                if ((null == alreadyRegistered) || !alreadyRegistered) {
-                                    endpointIDMap.put(nextEndpointID, true);
-                                }
-                            }
+                    public void onError(String errorMessage) {
+                        Log.d(TAG, "Error rejoining groups while migrating: " + errorMessage);
+                        switchToSignalingChannel(newChannel, newConnectionID);
+                    }
+                });
+            } catch (JSONException e) {
+                switchToSignalingChannel(newChannel, newConnectionID);
+            }
+        } else {
+            switchToSignalingChannel(newChannel, newConnectionID);
+        }
+    }
 
-                            // Now that the batch of endpoint IDs to register has been determined, indicate to the client that any new registration calls should schedule a new Runnable
-                            registrationTaskWaiting = false;
-                        }
+    /**
+     *  Get the IDs of the groups this client has joined on the current connection
+     *
+     *  @return The joined group IDs
+     */
+    private ArrayList<String> getJoinedGroupIDs() {
+        ArrayList<String> joinedGroupIDs = new ArrayList<String>();
+        for (RespokeGroup eachGroup : groups.values()) {
+            if (eachGroup.isJoined()) {
+                joinedGroupIDs.add(eachGroup.getGroupID());
+            }
+        }
 
-                        // Build an array from the map keySet to ensure there are no duplicates in the list
-                        final ArrayList<String> endpointIDsToRegister = new ArrayList<String>(endpointIDMap.keySet());
+        return joinedGroupIDs;
+    }
 
-                        if ((endpointIDsToRegister.size() > 0) && isConnected()) {
-                            signalingChannel.registerPresence(endpointIDsToRegister, new RespokeSignalingChannel.RegisterPresenceListener() {
-                                @Override
-                                public void onSuccess(JSONArray initialPresenceData) {
-                                    // Indicate that registration was successful for each endpoint ID in the list
-                                    synchronized (RespokeClient.this) {
-                                        for (String eachID : endpointIDsToRegister) {
-                                            presenceRegistered.put(eachID, true);
-                                        }
-                                    }
+    /**
+     *  Make a connected replacement signaling channel the active one, and tear down the old channel once its in-flight
+     *  requests have had a chance to finish. Peers in calls that began before the migration still address this
+     *  client's old connection, so the old channel is kept open until those calls have ended.
+     *
+     *  @param newChannel       The replacement signaling channel
+     *  @param newConnectionID  The connection ID assigned to the replacement channel
+     */
+    private void switchToSignalingChannel(RespokeSignalingChannel newChannel, String newConnectionID) {
+        final RespokeSignalingChannel oldChannel = signalingChannel;
 
-                                    if (null != initialPresenceData) {
-                                        for (int ii = 0; ii < initialPresenceData.length(); ii++) {
-                                            try {
-                                                JSONObject eachEndpointData = (JSONObject) initialPresenceData.get(ii);
-                                                String dataEndpointID = eachEndpointData.getString("endpointId");
-                                                RespokeEndpoint endpoint = getEndpoint(dataEndpointID, true);
-
-                                                if (null != endpoint) {
-                                                    JSONObject connectionData = eachEndpointData.getJSONObject("connectionStates");
-                                                    Iterator<?> keys = connectionData.keys();
-
-                                                    while (keys.hasNext()) {
-                                                        String eachConnectionID = (String) keys.next();
-                                                        JSONObject presenceDict = connectionData.getJSONObject(eachConnectionID);
-                                                        Object newPresence = presenceDict.get("type");
-                                                        RespokeConnection connection = endpoint.getConnection(eachConnectionID, false);
-
-                                                        if ((null != connection) && (null != newPresence)) {
-                                                            connection.presence = newPresence;
-                                                        }
-                                                    }
-                                                }
-                                            } catch (JSONException e) {
-                                                // Silently skip this problem
-                                            }
-                                        }
-                                    }
+        if (!migration.complete(newChannel)) {
+            // The migration was abandoned while groups were being rejoined
+            return;
+        }
 
-                                    for (String eachID : endpointIDsToRegister) {
-                                        RespokeEndpoint endpoint = getEndpoint(eachID, true);
-                                        
-                                        if (null != endpoint) {
-                                            endpoint.resolvePresence();
-                                        }
-                                    }
-                                }
+        final ArrayList<RespokeCall> inFlightCalls = new ArrayList<RespokeCall>(calls);
+        signalingChannel = newChannel;
+        localConnectionID = newConnectionID;
 
-                                @Override
-                                public void onError(final String errorMessage) {
-                                    Log.d(TAG, "Error registering presence: " + errorMessage);
-                                }
-                            });
-                        }
+        for (RespokeGroup eachGroup : groups.values()) {
+            eachGroup.setSignalingChannel(newChannel);
+        }
+
+        for (RespokeCall eachCall : calls) {
+            eachCall.setSignalingChannel(newChannel);
+        }
+
+        if (null != outboundQueue) {
+            // The groups were rejoined on the new channel before switching to it
+            outboundQueue.connectionAvailable(newChannel, getJoinedGroupIDs());
+        }
+
+        // Presence registrations belong to the old connection, so register again for every known endpoint
+        presenceRegistrar.clearRegistrations();
+
+        for (RespokeEndpoint eachEndpoint : new ArrayList<RespokeEndpoint>(knownEndpoints)) {
+            eachEndpoint.setSignalingChannel(newChannel);
+            presenceRegistrar.queue(eachEndpoint.getEndpointID());
+        }
+
+        setPresence(presence, new Respoke.TaskCompletionListener() {
+            @Override
+            public void onSuccess() {
+                // do nothing
+            }
+
+            @Override
+            public void onError(String errorMessage) {
+                // do nothing
+            }
+        });
+
+        Log.d(TAG, "Switched to migrated signaling channel " + newConnectionID);
+
+        if (null != oldChannel) {
+            final Handler handler = new Handler(Looper.getMainLooper());
+            handler.postDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    boolean retiring = (RespokeSignalingMigration.SENDER_RETIRING == migration.classify(oldChannel));
+
+                    if (retiring && oldChannel.isConnected() && hasActiveCall(inFlightCalls)) {
+                        handler.postDelayed(this, MIGRATION_DRAIN_DELAY);
+                    } else {
+                        oldChannel.disconnect();
                     }
-                });
+                }
+            }, MIGRATION_DRAIN_DELAY);
+        }
+    }
+
+    /**
+     *  Determine if any of a set of calls is still being set up or in progress
+     *
+     *  @param callList  The calls
+     *
+     *  @return True if at least one of the calls is active
+     */
+    private static boolean hasActiveCall(ArrayList<RespokeCall> callList) {
+        for (RespokeCall eachCall : callList) {
+            if (eachCall.isActive()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // RespokeConnectivityMonitorListener methods
+    public void onNetworkChanged(boolean connected, String networkIdentity, RespokeConnectivityMonitor sender) {
+        if (connected) {
+            if (isConnected()) {
+                // The existing socket is probably bound to the network that just went away
+                migrateSignalingChannel();
+            } else {
+                reconnectNow();
             }
         }
     }
 
     // RespokeSignalingChannelListener methods
     public void onConnect(RespokeSignalingChannel sender, String endpointID, String connectionID) {
+        if (RespokeSignalingMigration.SENDER_PENDING == migration.classify(sender)) {
+            completeMigration(sender, connectionID);
+            return;
+        }
+
         connectionInProgress = false;
-        reconnectCount = 0;
+        reconnectScheduler.reset();
+        RespokeMetrics.CONNECTS.increment();
         localEndpointID = endpointID;
         localConnectionID = connectionID;
 
         Respoke.sharedInstance().clientConnected(this);
 
+        if (null != outboundQueue) {
+            // Group messages are held until the application joins those groups again on this connection
+            outboundQueue.setIdentity(applicationID, endpointID);
+            outboundQueue.connectionAvailable(sender, getJoinedGroupIDs());
+        }
+
         // Try to set the presence to the initial or last set state
         setPresence(presence, new Respoke.TaskCompletionListener() {
             @Override
@@ -1327,15 +1454,34 @@ public class RespokeClient implements RespokeSignalingChannel.Listener {
     }
 
     public void onDisconnect(RespokeSignalingChannel sender) {
+        switch (migration.classify(sender)) {
+            case RespokeSignalingMigration.SENDER_PENDING:
+                migration.abandon(sender);
+                return;
+
+            case RespokeSignalingMigration.SENDER_RETIRING:
+                // A channel that was replaced by a migration has finished closing
+                migration.retired(sender);
+                return;
+
+            case RespokeSignalingMigration.SENDER_UNKNOWN:
+                return;
+        }
+
+        // If the old socket died while a replacement was being brought up, let the replacement finish connecting in its place
+        final RespokeSignalingChannel replacementChannel = migration.activeLost();
+
         // Can only reconnect in development mode, not brokered mode
-        final boolean willReconnect = reconnect && (applicationID != null);
+        final boolean willReconnect = (null != replacementChannel) || (reconnect && (applicationID != null));
+
+        if (null != outboundQueue) {
+            outboundQueue.connectionLost();
+        }
 
         calls.clear();
         groups.clear();
         knownEndpoints.clear();
-        presenceRegistrationQueue.clear();
-        presenceRegistered.clear();
-        registrationTaskWaiting = false;
+        presenceRegistrar.reset();
 
         new Handler(Looper.getMainLooper()).post(new Runnable() {
             @Override
@@ -1347,14 +1493,23 @@ public class RespokeClient implements RespokeSignalingChannel.Listener {
             }
         });
 
-        signalingChannel = null;
+        if (null != replacementChannel) {
+            connectionInProgress = true;
+            signalingChannel = replacementChannel;
+        } else {
+            signalingChannel = null;
 
-        if (willReconnect) {
-            performReconnect();
+            if (willReconnect) {
+                performReconnect();
+            }
         }
     }
 
     public void onIncomingCall(JSONObject sdp, String sessionID, String connectionID, String endpointID, String fromType, Date timestamp, RespokeSignalingChannel sender) {
+        if (!acceptsSignals(sender)) {
+            return;
+        }
+
         RespokeEndpoint endpoint = null;
 
         if (fromType.equals("web")) {
@@ -1381,6 +1536,10 @@ public class RespokeClient implements RespokeSignalingChannel.Listener {
     }
 
     public void onIncomingDirectConnection(JSONObject sdp, String sessionID, String connectionID, String endpointID, Date timestamp, RespokeSignalingChannel sender) {
+        if (!acceptsSignals(sender)) {
+            return;
+        }
+
         RespokeEndpoint endpoint = getEndpoint(endpointID, false);
 
         if (null != endpoint) {
@@ -1391,6 +1550,15 @@ public class RespokeClient implements RespokeSignalingChannel.Listener {
     }
 
     public void onError(final String errorMessage, RespokeSignalingChannel sender) {
+        if (migration.abandon(sender)) {
+            // The replacement socket could not be brought up, so keep using the existing one
+            Log.d(TAG, "Error migrating the signaling channel: " + errorMessage);
+            sender.disconnect();
+            return;
+        } else if (sender != signalingChannel) {
+            return;
+        }
+
         new Handler(Looper.getMainLooper()).post(new Runnable() {
             @Override
             public void run() {
@@ -1401,7 +1569,7 @@ public class RespokeClient implements RespokeSignalingChannel.Listener {
             }
         });
 
-        if ((null != signalingChannel) && (!signalingChannel.connected)) {
+        if ((null != signalingChannel) && (!signalingChannel.isConnected())) {
             connectionInProgress = false;
 
             if (reconnect) {
@@ -1411,6 +1579,11 @@ public class RespokeClient implements RespokeSignalingChannel.Listener {
     }
 
     public void onJoinGroup(String groupID, String endpointID, String connectionID, RespokeSignalingChannel sender) {
+        if (sender != signalingChannel) {
+            // Ignore events from a channel that is being migrated to or away from, the active channel receives them too
+            return;
+        }
+
         // only pass on notifications about people other than ourselves
         if ((null != endpointID) && (!endpointID.equals(localEndpointID))) {
             RespokeGroup group = groups.get(groupID);
@@ -1427,6 +1600,10 @@ public class RespokeClient implements RespokeSignalingChannel.Listener {
     }
 
     public void onLeaveGroup(String groupID, String endpointID, String connectionID, RespokeSignalingChannel sender) {
+        if (sender != signalingChannel) {
+            return;
+        }
+
         // only pass on notifications about people other than ourselves
         if ((null != endpointID) && (!endpointID.equals(localEndpointID))) {
             RespokeGroup group = groups.get(groupID);
@@ -1471,6 +1648,11 @@ public class RespokeClient implements RespokeSignalingChannel.Listener {
     }
 
     public void onMessage(final String message, final Date timestamp, String fromEndpointID, String toEndpointID, RespokeSignalingChannel sender) {
+        if (sender != signalingChannel) {
+            return;
+        }
+
+        RespokeMetrics.MESSAGES_RECEIVED.increment();
 
         if (localEndpointID.equals(fromEndpointID) && (null != toEndpointID)) {
             // The local endpoint sent this message to the remote endpoint from another device (ccSelf)
@@ -1495,6 +1677,12 @@ public class RespokeClient implements RespokeSignalingChannel.Listener {
     }
 
     public void onGroupMessage(final String message, String groupID, String endpointID, RespokeSignalingChannel sender, final Date timestamp) {
+        if (sender != signalingChannel) {
+            return;
+        }
+
+        RespokeMetrics.MESSAGES_RECEIVED.increment();
+
         final RespokeGroup group = groups.get(groupID);
 
         if (null != group) {
@@ -1519,6 +1707,10 @@ public class RespokeClient implements RespokeSignalingChannel.Listener {
     }
 
     public void onPresence(Object presence, String connectionID, String endpointID, RespokeSignalingChannel sender) {
+        if (sender != signalingChannel) {
+            return;
+        }
+
         RespokeConnection connection = getConnection(connectionID, endpointID, false);
 
         if (null != connection) {
@@ -1529,6 +1721,20 @@ public class RespokeClient implements RespokeSignalingChannel.Listener {
         }
     }
 
+    /**
+     *  Determine if signals addressed to this client's connection should be handled from a channel. Peers that learned
+     *  the connection of a channel replaced by a migration keep signaling it until it closes. Calls always reply on the
+     *  active channel, which tells those peers the new connection.
+     *
+     *  @param sender  The channel the signal arrived on
+     *
+     *  @return True if the channel is the active one or is retiring
+     */
+    private boolean acceptsSignals(RespokeSignalingChannel sender) {
+        int role = migration.classify(sender);
+        return (RespokeSignalingMigration.SENDER_ACTIVE == role) || (RespokeSignalingMigration.SENDER_RETIRING == role);
+    }
+
     public void callCreated(RespokeCall call) {
         calls.add(call);
     }
@@ -1565,41 +1771,36 @@ public class RespokeClient implements RespokeSignalingChannel.Listener {
     }
 
     /**
-     * Build a group message from a JSON object. The format of the JSON object would be the
-     * format that comes over the wire from Respoke when receiving a pubsub message. This same
-     * format is used when retrieving message history.
+     * Build a group message from one parsed from the wire, finding or creating its group and endpoint.
      *
-     * @param source The source JSON object to build the RespokeGroupMessage from
+     * @param source The parsed message
      * @return The built RespokeGroupMessage
-     * @throws JSONException
      */
-    private RespokeGroupMessage buildGroupMessage(JSONObject source) throws JSONException {
-        if (source == null) {
-            throw new IllegalArgumentException("source cannot be null");
-        }
-
-        final JSONObject header = source.getJSONObject("header");
-        final String endpointID = header.getString("from");
-        final RespokeEndpoint endpoint = getEndpoint(endpointID, false);
-        final String groupID = header.getString("channel");
-        RespokeGroup group = getGroup(groupID);
+    private RespokeGroupMessage buildGroupMessage(RespokeGroupHistory.Message source) {
+        final RespokeEndpoint endpoint = getEndpoint(source.endpointID, false);
+        RespokeGroup group = getGroup(source.groupID);
 
         if (group == null) {
-            group = new RespokeGroup(groupID, signalingChannel, this, false);
-            groups.put(groupID, group);
+            group = new RespokeGroup(source.groupID, signalingChannel, this, false);
+            groups.put(source.groupID, group);
         }
 
-        final String message = source.getString("message");
+        return new RespokeGroupMessage(source.message, group, endpoint, source.timestamp);
+    }
 
-        final Date timestamp;
+    /**
+     * Build group messages from a list parsed from the wire, keeping their order.
+     *
+     * @param sources The parsed messages
+     * @return The built RespokeGroupMessages
+     */
+    private ArrayList<RespokeGroupMessage> buildGroupMessages(List<RespokeGroupHistory.Message> sources) {
+        final ArrayList<RespokeGroupMessage> results = new ArrayList<>(sources.size());
 
-        if (!header.isNull("timestamp")) {
-            timestamp = new Date(header.getLong("timestamp"));
-        } else {
-            // Just use the current time if no date is specified in the header data
-            timestamp = new Date();
+        for (RespokeGroupHistory.Message eachSource : sources) {
+            results.add(buildGroupMessage(eachSource));
         }
 
-        return new RespokeGroupMessage(message, group, endpoint, timestamp);
+        return results;
     }
 }
@@ -0,0 +1,186 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.lang.ref.WeakReference;
+
+/**
+ *  Watches the device's default network and notifies a listener when it changes, such as during a handover from
+ *  Wi-Fi to cellular. This allows the signaling connection to be re-established as soon as the network changes
+ *  rather than waiting for the old socket to time out.
+ */
+public class RespokeConnectivityMonitor {
+
+    private static final String TAG = "RespokeConnectivity";
+
+    private WeakReference<Listener> listenerReference;
+    private Context appContext;
+    private BroadcastReceiver receiver;
+    private boolean networkConnected;  ///< Indicates if the default network is currently connected
+    private String networkIdentity;  ///< Identifies the current default network, or null if there is none
+
+
+    /**
+     *  A listener interface to notify the receiver of changes to the default network
+     */
+    public interface Listener {
+
+        /**
+         *  Receive a notification that the default network has changed. This is called on the UI thread.
+         *
+         *  @param connected        True if there is a connected default network
+         *  @param networkIdentity  An opaque string identifying the new default network, or null if there is none
+         *  @param sender           The monitor that detected the change
+         */
+        void onNetworkChanged(boolean connected, String networkIdentity, RespokeConnectivityMonitor sender);
+
+    }
+
+
+    /**
+     *  The constructor for this class
+     *
+     *  @param context   An application context with which to access system resources
+     *  @param listener  The receiver for network change notifications
+     */
+    public RespokeConnectivityMonitor(Context context, Listener listener) {
+        appContext = context.getApplicationContext();
+        listenerReference = new WeakReference<Listener>(listener);
+    }
+
+
+    /**
+     *  Begin watching for network changes. The current state is captured without notifying the listener.
+     */
+    public void start() {
+        if (null == receiver) {
+            NetworkInfo info = getActiveNetworkInfo();
+            networkConnected = (null != info) && info.isConnected();
+            networkIdentity = networkConnected ? identityForNetwork(info) : null;
+
+            receiver = new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    NetworkInfo info = getActiveNetworkInfo();
+                    boolean connected = (null != info) && info.isConnected();
+                    updateNetworkState(connected, connected ? identityForNetwork(info) : null);
+                }
+            };
+
+            appContext.registerReceiver(receiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+        }
+    }
+
+
+    /**
+     *  Stop watching for network changes
+     */
+    public void stop() {
+        if (null != receiver) {
+            try {
+                appContext.unregisterReceiver(receiver);
+            } catch (IllegalArgumentException e) {
+                // The receiver was already unregistered
+            }
+
+            receiver = null;
+        }
+    }
+
+
+    /**
+     *  Indicates if the default network was connected when it was last checked
+     *
+     *  @return True if connected
+     */
+    public boolean isNetworkConnected() {
+        return networkConnected;
+    }
+
+
+    /**
+     *  Get the identity of the current default network
+     *
+     *  @return An opaque string identifying the network, or null if there is none
+     */
+    public String getNetworkIdentity() {
+        return networkIdentity;
+    }
+
+
+    /**
+     *  Simulate a change of the default network, as if it had been reported by the system. This is intended for
+     *  testing network handover behavior and should not be called by your client application in production.
+     *
+     *  @param connected        True if the simulated network is connected
+     *  @param networkIdentity  An identifier for the simulated network, such as "wifi:home" or "mobile:lte"
+     */
+    public void simulateNetworkChange(final boolean connected, final String networkIdentity) {
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                updateNetworkState(connected, connected ? networkIdentity : null);
+            }
+        });
+    }
+
+
+    //** Private methods
+
+
+    private void updateNetworkState(boolean connected, String identity) {
+        boolean changed = (connected != networkConnected);
+
+        if (!changed && connected) {
+            changed = (null == identity) ? (null != networkIdentity) : !identity.equals(networkIdentity);
+        }
+
+        networkConnected = connected;
+        networkIdentity = identity;
+
+        if (changed) {
+            Log.d(TAG, "Default network changed: " + (connected ? identity : "none"));
+
+            Listener listener = listenerReference.get();
+            if (null != listener) {
+                listener.onNetworkChanged(connected, identity, this);
+            }
+        }
+    }
+
+
+    private NetworkInfo getActiveNetworkInfo() {
+        ConnectivityManager manager = (ConnectivityManager) appContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+
+        if (null != manager) {
+            return manager.getActiveNetworkInfo();
+        } else {
+            return null;
+        }
+    }
+
+
+    private static String identityForNetwork(NetworkInfo info) {
+        // The extra info is the SSID for Wi-Fi and the APN for mobile networks, which distinguishes two networks of the
+        // same type. The mobile subtype is deliberately ignored since moving between radio technologies keeps the same address.
+        return info.getTypeName() + ":" + info.getExtraInfo();
+    }
+}
@@ -0,0 +1,353 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import org.webrtc.DataChannel;
+
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+
+/**
+ *  A named data channel opened alongside the main channel of a direct connection, with its own ordering and
+ *  retransmission settings. Text is sent as plain UTF-8 rather than wrapped in JSON as on the main channel.
+ */
+public class RespokeDataChannel implements DataChannel.Observer {
+
+    private final RespokeDirectConnection directConnection;
+    private final DataChannel dataChannel;
+    private final RespokeDataChannelOptions options;
+    private final RespokeSendQueue sendQueue;
+    private final CharsetDecoder decoder;  ///< Only used on the WebRTC signaling thread
+    private WeakReference<Listener> listenerReference;
+
+
+    /**
+     *  A listener interface to notify the receiver of events occurring with the data channel
+     */
+    public interface Listener {
+
+        /**
+         *  Called when the data channel is ready to send messages
+         *
+         *  @param sender  The data channel for which the event occurred
+         */
+        public void onOpen(RespokeDataChannel sender);
+
+        /**
+         *  Called when the data channel is closed
+         *
+         *  @param sender  The data channel for which the event occurred
+         */
+        public void onClose(RespokeDataChannel sender);
+
+        /**
+         *  Called when a text message is received
+         *
+         *  @param message  The message received
+         *  @param sender   The data channel for which the event occurred
+         */
+        public void onMessage(String message, RespokeDataChannel sender);
+
+        /**
+         *  Called when a binary message is received. As with RespokeDirectConnection.BinaryListener, this is called on
+         *  the WebRTC signaling thread with a read-only buffer that is only valid until this method returns.
+         *
+         *  @param message  The message received, positioned at its first byte
+         *  @param sender   The data channel for which the event occurred
+         */
+        public void onBinaryMessage(ByteBuffer message, RespokeDataChannel sender);
+
+        /**
+         *  Called when the data channel's send queue crosses its high or low watermark
+         *
+         *  @param writable  True if messages can be sent again without queuing, false if the channel is backed up
+         *  @param sender    The data channel for which the event occurred
+         */
+        public void onWritabilityChanged(boolean writable, RespokeDataChannel sender);
+
+    }
+
+
+    /**
+     *  Wrap a data channel. This is used internally to the SDK and should not be called directly by your client application.
+     *
+     *  @param directConnection  The direct connection the channel belongs to
+     *  @param dataChannel       The WebRTC data channel
+     *  @param options           The options the channel was opened with, or null if it was opened by the remote client
+     */
+    public RespokeDataChannel(RespokeDirectConnection directConnection, final DataChannel dataChannel, RespokeDataChannelOptions options) {
+        this.directConnection = directConnection;
+        this.dataChannel = dataChannel;
+        this.options = options;
+        decoder = Charset.forName("UTF-8").newDecoder();
+
+        sendQueue = new RespokeSendQueue(new RespokeSendQueue.Sink() {
+            @Override
+            public boolean send(ByteBuffer data, boolean binary) {
+                int length = data.remaining();
+
+                if (dataChannel.send(new DataChannel.Buffer(data, binary))) {
+                    RespokeMetrics.DIRECT_BYTES_SENT.add(length);
+                    return true;
+                }
+
+                return false;
+            }
+
+            @Override
+            public long getBufferedAmount() {
+                return dataChannel.bufferedAmount();
+            }
+        }, RespokeDirectConnection.getSendBufferPool());
+
+        sendQueue.setListener(new RespokeSendQueue.Listener() {
+            @Override
+            public void onWritabilityChanged(final boolean writable) {
+                new Handler(Looper.getMainLooper()).post(new Runnable() {
+                    public void run() {
+                        Listener listener = getListener();
+                        if (null != listener) {
+                            listener.onWritabilityChanged(writable, RespokeDataChannel.this);
+                        }
+                    }
+                });
+            }
+        });
+
+        dataChannel.registerObserver(this);
+    }
+
+
+    /**
+     *  Set a receiver for the Listener interface
+     *
+     *  @param listener  The new receiver for events from the Listener interface for this instance
+     */
+    public void setListener(Listener listener) {
+        if (null != listener) {
+            listenerReference = new WeakReference<Listener>(listener);
+        } else {
+            listenerReference = null;
+        }
+    }
+
+
+    /**
+     *  Get the name the channel was opened with
+     *
+     *  @return The label
+     */
+    public String getLabel() {
+        return dataChannel.label();
+    }
+
+
+    /**
+     *  Get the options the channel was opened with
+     *
+     *  @return The options, or null if the channel was opened by the remote client
+     */
+    public RespokeDataChannelOptions getOptions() {
+        return options;
+    }
+
+
+    /**
+     *  Get the direct connection the channel belongs to
+     *
+     *  @return The direct connection
+     */
+    public RespokeDirectConnection getDirectConnection() {
+        return directConnection;
+    }
+
+
+    /**
+     *  Indicate whether the channel is ready to send messages
+     *
+     *  @return True if the channel is open
+     */
+    public boolean isOpen() {
+        return DataChannel.State.OPEN == dataChannel.state();
+    }
+
+
+    /**
+     *  Change how messages are queued while the channel is backed up. See RespokeDirectConnection.configureSendQueue.
+     *
+     *  @param policy         What to do with a message that does not fit in the send queue
+     *  @param lowWatermark   The number of waiting bytes at which the channel becomes writable again
+     *  @param highWatermark  The number of waiting bytes at which the channel stops being writable
+     *  @param capacity       The most bytes the send queue will hold
+     */
+    public void configureSendQueue(int policy, long lowWatermark, long highWatermark, long capacity) {
+        sendQueue.configure(policy, lowWatermark, highWatermark, capacity);
+    }
+
+
+    /**
+     *  Determine if messages can be sent without adding to a backlog
+     *
+     *  @return True if the channel is writable
+     */
+    public boolean isWritable() {
+        return sendQueue.isWritable();
+    }
+
+
+    /**
+     *  Send a text message to the remote client
+     *
+     *  @param message             The message to send
+     *  @param completionListener  A listener to receive a notification on the success of the asynchronous operation
+     */
+    public void sendMessage(String message, Respoke.TaskCompletionListener completionListener) {
+        if (null == message) {
+            Respoke.postTaskError(completionListener, "Message must not be null");
+        } else if (isOpen()) {
+            ByteBuffer data = directConnection.encodeMessage(message);
+
+            try {
+                sendQueue.offer(data, false, RespokeDirectConnection.completionFor(completionListener));
+            } finally {
+                RespokeDirectConnection.getSendBufferPool().release(data);
+            }
+
+            scheduleDrainIfNeeded();
+        } else {
+            Respoke.postTaskError(completionListener, "DataChannel not in an open state");
+        }
+    }
+
+
+    /**
+     *  Send a binary message to the remote client. The position of the buffer is left unchanged so that it can be
+     *  reused once this method returns.
+     *
+     *  @param data                The message to send
+     *  @param completionListener  A listener to receive a notification on the success of the asynchronous operation
+     */
+    public void sendBinary(ByteBuffer data, Respoke.TaskCompletionListener completionListener) {
+        if (null == data) {
+            Respoke.postTaskError(completionListener, "Binary data must not be null");
+        } else if (isOpen()) {
+            sendQueue.offer(data.duplicate(), true, RespokeDirectConnection.completionFor(completionListener));
+            scheduleDrainIfNeeded();
+        } else {
+            Respoke.postTaskError(completionListener, "DataChannel not in an open state");
+        }
+    }
+
+
+    /**
+     *  Close the channel. The main channel and any other named channels are unaffected.
+     */
+    public void close() {
+        dataChannel.close();
+    }
+
+
+    /**
+     *  Send any queued messages the channel has room for. This is used internally to the SDK and should not be called directly by your client application.
+     *
+     *  @return True if messages are still queued or the channel is waiting to become writable again
+     */
+    public boolean drain() {
+        return sendQueue.drain();
+    }
+
+
+    // org.webrtc.DataChannel.Observer methods
+
+
+    public void onStateChange() {
+        switch (dataChannel.state()) {
+            case OPEN:
+                new Handler(Looper.getMainLooper()).post(new Runnable() {
+                    public void run() {
+                        Listener listener = getListener();
+                        if (null != listener) {
+                            listener.onOpen(RespokeDataChannel.this);
+                        }
+                    }
+                });
+                break;
+
+            case CLOSED:
+                dataChannel.unregisterObserver();
+                sendQueue.close("DataChannel not in an open state");
+                directConnection.dataChannelDidClose(this);
+
+                new Handler(Looper.getMainLooper()).post(new Runnable() {
+                    public void run() {
+                        Listener listener = getListener();
+                        if (null != listener) {
+                            listener.onClose(RespokeDataChannel.this);
+                        }
+                    }
+                });
+                break;
+
+            default:
+                break;
+        }
+    }
+
+
+    public void onMessage(DataChannel.Buffer buffer) {
+        RespokeMetrics.DIRECT_BYTES_RECEIVED.add(buffer.data.remaining());
+        Listener listener = getListener();
+
+        if (null == listener) {
+            return;
+        }
+
+        if (buffer.binary) {
+            listener.onBinaryMessage(buffer.data.asReadOnlyBuffer(), this);
+        } else {
+            try {
+                final String message = decoder.decode(buffer.data).toString();
+
+                new Handler(Looper.getMainLooper()).post(new Runnable() {
+                    public void run() {
+                        Listener listener = getListener();
+                        if (null != listener) {
+                            listener.onMessage(message, RespokeDataChannel.this);
+                        }
+                    }
+                });
+            } catch (CharacterCodingException e) {
+                // If the message can not be decoded, ignore it
+            }
+        }
+    }
+
+
+    //** Private methods
+
+
+    private Listener getListener() {
+        return (null != listenerReference) ? listenerReference.get() : null;
+    }
+
+
+    private void scheduleDrainIfNeeded() {
+        if (sendQueue.needsDrain()) {
+            directConnection.scheduleDrain();
+        }
+    }
+}
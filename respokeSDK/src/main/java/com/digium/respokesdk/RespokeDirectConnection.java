@@ -14,27 +14,145 @@ import android.content.Context;
 import android.os.Handler;
 import android.os.Looper;
 
-import org.json.JSONException;
-import org.json.JSONObject;
+import org.json.JSONArray;
 import org.webrtc.DataChannel;
 import org.webrtc.PeerConnection;
 
-import java.io.UnsupportedEncodingException;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
-import java.nio.charset.CharacterCodingException;
-import java.nio.charset.Charset;
-import java.nio.charset.CharsetDecoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 
 /**
  * A direct connection via RTCDataChannel, including state and path negotation.
  */
 public class RespokeDirectConnection implements org.webrtc.DataChannel.Observer {
 
+    public static final String CAPABILITY_RAW_TEXT = "rawText";  ///< Text messages on the main channel are sent as plain UTF-8 rather than wrapped in a JSON object
+    public static final String CAPABILITY_FRAMED_TEXT = "framedText";  ///< Text messages on the main channel are batches framed by RespokeMessageCoalescer
+    public static final String CAPABILITY_DEFLATE = "deflate";  ///< Binary messages on the main channel start with a RespokeCompressor flags byte, and may be compressed. Only advertised while compression is enabled.
+    static final String CAPABILITIES_KEY = "directConnectionCapabilities";  ///< The key in the offer and answer session descriptions listing what each client supports
+
     private WeakReference<Listener> listenerReference;
     private WeakReference<RespokeCall> callReference;
-    private DataChannel dataChannel;
+    private volatile DataChannel dataChannel;
+    private static final RespokeBufferPool sendBufferPool = new RespokeBufferPool();  ///< Buffers for outgoing text messages and transfer frames, shared by every direct connection
+    private final RespokeMessageCodec codec = new RespokeMessageCodec(sendBufferPool);  ///< Encodes and decodes main channel messages in the format both clients support
+    private volatile boolean coalescing;  ///< Set while sendMessage holds messages back to send them in batches
+    private boolean advertisedDeflate;  ///< Set if this client offered deflate in its session description. Guarded by capabilitiesLock.
+    private JSONArray remoteCapabilities;  ///< The capabilities in the remote client's session description, once it has arrived. Guarded by capabilitiesLock.
+    private final Object capabilitiesLock = new Object();
+    private static volatile int defaultCompressionThreshold;  ///< The compression threshold new direct connections start with
+    private final RespokeMessageCoalescer coalescer;
+    private final RespokeMessageCodec.Receiver receiver = new RespokeMessageCodec.Receiver() {
+        @Override
+        public void onMessage(final String message) {
+            new Handler(Looper.getMainLooper()).post(new Runnable() {
+                public void run() {
+                    if (null != listenerReference) {
+                        Listener listener = listenerReference.get();
+                        if (null != listener) {
+                            listener.onMessage(message, RespokeDirectConnection.this);
+                        }
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void onMessages(final List<String> messages) {
+            new Handler(Looper.getMainLooper()).post(new Runnable() {
+                public void run() {
+                    if (null != listenerReference) {
+                        Listener listener = listenerReference.get();
+                        if (listener instanceof BatchListener) {
+                            ((BatchListener) listener).onMessages(messages, RespokeDirectConnection.this);
+                        } else if (null != listener) {
+                            for (String each : messages) {
+                                listener.onMessage(each, RespokeDirectConnection.this);
+                            }
+                        }
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void onBinaryMessage(ByteBuffer message) {
+            if (null != listenerReference) {
+                Listener listener = listenerReference.get();
+                if (listener instanceof BinaryListener) {
+                    ((BinaryListener) listener).onBinaryMessage(message.asReadOnlyBuffer(), RespokeDirectConnection.this);
+                }
+            }
+        }
+    };
+    private static final String MAIN_LABEL = "respokeDataChannel";  ///< The label of the data channel that sendMessage uses
+    private static final long TRANSFER_REOPEN_TIMEOUT = 10000;  ///< How long a replacement transfer data channel has to open before unfinished transfers fail, in milliseconds
+
+    private WeakReference<TransferListener> transferListenerReference;
+    private RespokeTransferChannel transferChannel;  ///< Created on first use. Guarded by this.
+    private RespokeWorkerThread workerThread;  ///< Runs every transfer channel method and drains the send queue. Created on first use. Guarded by this.
+    private DataChannel transferDataChannel;  ///< The data channel transfer frames are sent on. Only used on the worker thread.
+    private boolean closed;  ///< Set once the direct connection has closed. Guarded by this.
+    private final RespokeSendQueue sendQueue;  ///< Holds outgoing messages while the data channel is backed up
+    private final HashMap<String, RespokeDataChannel> namedChannels = new HashMap<String, RespokeDataChannel>();  ///< Channels opened with openChannel or by the remote client, by label. Guarded by itself.
+    private final RespokeDrainScheduler drainScheduler = new RespokeDrainScheduler(new RespokeDrainScheduler.Drain() {
+        @Override
+        public boolean drain() {
+            boolean pending = sendQueue.drain();
+
+            for (RespokeDataChannel each : getChannels()) {
+                pending |= each.drain();
+            }
+
+            return pending;
+        }
+    });
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            if (sendQueue.isWritable()) {
+                coalescer.flush();
+                return;
+            }
+
+            // Let the batch wait while the data channel is backed up, since a full queue would block or fail it here
+            // on the thread that drains the queue. A batch that fills up is sent by the thread that fills it.
+            synchronized (RespokeDirectConnection.this) {
+                RespokeWorkerThread thread = getWorkerThread();
+
+                if (null != thread) {
+                    thread.postTaskDelayed(this, RespokeSendQueue.POLL_INTERVAL);
+                }
+            }
+        }
+    };
+    private final Runnable transferReopenTimeoutTask = new Runnable() {
+        @Override
+        public void run() {
+            if (!transferChannel.hasTransport()) {
+                transferChannel.close("The transfer data channel closed and could not be reopened");
+            }
+        }
+    };
+    private final Runnable pumpTask = new Runnable() {
+        @Override
+        public void run() {
+            if (RespokeTransferChannel.PUMP_BLOCKED == transferChannel.pump()) {
+                // The data channel does not say when its buffer drains, so check again shortly
+                synchronized (RespokeDirectConnection.this) {
+                    if (null != workerThread) {
+                        workerThread.postTaskDelayed(this, RespokeSendQueue.POLL_INTERVAL);
+                    }
+                }
+            }
+        }
+    };
 
 
     /**
@@ -74,6 +192,125 @@ public class RespokeDirectConnection implements org.webrtc.DataChannel.Observer
     }
 
 
+    /**
+     *  An optional interface for receiving binary messages. Implement it on the same object that is passed to
+     *  setListener. Binary messages are discarded if the listener does not implement this interface.
+     */
+    public interface BinaryListener {
+
+        /**
+         *  Called when a binary message is received over the direct connection. To avoid copying the message, this
+         *  is called on the WebRTC signaling thread rather than the UI thread, and the buffer refers directly to the
+         *  memory WebRTC received the message into. The buffer is read-only and is only valid until this method
+         *  returns, so copy out anything that is needed later and do not block.
+         *
+         *  @param message  The message received, positioned at its first byte
+         *  @param sender   The direct connection for which the event occurred
+         */
+        public void onBinaryMessage(ByteBuffer message, RespokeDirectConnection sender);
+
+    }
+
+
+    /**
+     *  An optional interface for pacing a fast producer. Implement it on the same object that is passed to
+     *  setListener.
+     */
+    public interface WritabilityListener {
+
+        /**
+         *  Called on the UI thread when the messages waiting to be sent reach the send queue's high watermark, and
+         *  again when they fall back to its low watermark. Stop producing while the connection is not writable.
+         *
+         *  @param writable  True if messages can be sent again without queuing, false if the connection is backed up
+         *  @param sender    The direct connection for which the event occurred
+         */
+        public void onWritabilityChanged(boolean writable, RespokeDirectConnection sender);
+
+    }
+
+
+    /**
+     *  An optional interface for receiving text messages a batch at a time. Implement it on the same object that is
+     *  passed to setListener, and onMessage is no longer called for text messages on the main channel.
+     */
+    public interface BatchListener {
+
+        /**
+         *  Called on the UI thread with text messages that arrived together, which happens when the remote client
+         *  coalesces the messages it sends. See setCoalescing.
+         *
+         *  @param messages  The messages received, in the order they were sent
+         *  @param sender    The direct connection for which the event occurred
+         */
+        public void onMessages(List<String> messages, RespokeDirectConnection sender);
+
+    }
+
+
+    /**
+     *  An optional interface for learning about named data channels opened by the remote client. Implement it on the
+     *  same object that is passed to setListener.
+     */
+    public interface ChannelListener {
+
+        /**
+         *  Called when the remote client opens a named data channel. This is called on the WebRTC signaling thread
+         *  rather than the UI thread, so that a listener can be set on the channel before its first message arrives.
+         *
+         *  @param channel  The new channel
+         *  @param sender   The direct connection for which the event occurred
+         */
+        public void onChannelOpened(RespokeDataChannel channel, RespokeDirectConnection sender);
+
+    }
+
+
+    /**
+     *  A listener interface to notify the receiver of events occurring with payloads sent by sendTransfer
+     */
+    public interface TransferListener {
+
+        /**
+         *  The remote client has offered a transfer. This is called on the connection's worker thread, not the UI
+         *  thread, since the stream to write the payload to is needed before any data can be accepted.
+         *
+         *  @param transfer  The inbound transfer, with the name and size given by the sender
+         *  @param sender    The direct connection for which the event occurred
+         *
+         *  @return The stream to write the payload to, or null to reject the transfer. The stream is closed when the
+         *          transfer finishes.
+         */
+        public OutputStream onIncomingTransfer(RespokeTransfer transfer, RespokeDirectConnection sender);
+
+        /**
+         *  Called as more of a transfer is delivered, roughly every one percent of the payload
+         *
+         *  @param transfer  The transfer
+         *  @param sender    The direct connection for which the event occurred
+         */
+        public void onTransferProgress(RespokeTransfer transfer, RespokeDirectConnection sender);
+
+        /**
+         *  Called when every byte of a transfer has been delivered
+         *
+         *  @param transfer  The transfer
+         *  @param sender    The direct connection for which the event occurred
+         */
+        public void onTransferComplete(RespokeTransfer transfer, RespokeDirectConnection sender);
+
+        /**
+         *  Called when a transfer is rejected, cancelled or cannot be completed
+         *
+         *  @param transfer      The transfer
+         *  @param errorMessage  The reason the transfer failed
+         *  @param sender        The direct connection for which the event occurred
+         */
+        public void onTransferFailed(RespokeTransfer transfer, String errorMessage, RespokeDirectConnection sender);
+
+    }
+
+
     /**
      *  The constructor for this class
      *
@@ -81,6 +318,52 @@ public class RespokeDirectConnection implements org.webrtc.DataChannel.Observer
      */
     public RespokeDirectConnection(RespokeCall call) {
         callReference = new WeakReference<RespokeCall>(call);
+        codec.setCompressionThreshold(defaultCompressionThreshold);
+
+        sendQueue = new RespokeSendQueue(new RespokeSendQueue.Sink() {
+            @Override
+            public boolean send(ByteBuffer data, boolean binary) {
+                int length = data.remaining();
+                DataChannel channel = dataChannel;
+
+                if ((null != channel) && channel.send(new DataChannel.Buffer(data, binary))) {
+                    RespokeMetrics.DIRECT_BYTES_SENT.add(length);
+                    return true;
+                }
+
+                return false;
+            }
+
+            @Override
+            public long getBufferedAmount() {
+                DataChannel channel = dataChannel;
+                return (null != channel) ? channel.bufferedAmount() : 0;
+            }
+        }, sendBufferPool);
+
+        coalescer = new RespokeMessageCoalescer(new RespokeMessageCoalescer.Sink() {
+            @Override
+            public void send(String batch, RespokeSendQueue.Completion completion) {
+                codec.offerText(batch, sendQueue, mainThreadCompletion(completion));
+                scheduleDrainIfNeeded();
+            }
+        });
+
+        sendQueue.setListener(new RespokeSendQueue.Listener() {
+            @Override
+            public void onWritabilityChanged(final boolean writable) {
+                new Handler(Looper.getMainLooper()).post(new Runnable() {
+                    public void run() {
+                        if (null != listenerReference) {
+                            Listener listener = listenerReference.get();
+                            if (listener instanceof WritabilityListener) {
+                                ((WritabilityListener) listener).onWritabilityChanged(writable, RespokeDirectConnection.this);
+                            }
+                        }
+                    }
+                });
+            }
+        });
     }
 
 
@@ -98,6 +381,20 @@ public class RespokeDirectConnection implements org.webrtc.DataChannel.Observer
     }
 
 
+    /**
+     *  Set a receiver for the TransferListener interface
+     *
+     *  @param listener  The new receiver for transfer events from this instance
+     */
+    public void setTransferListener(TransferListener listener) {
+        if (null != listener) {
+            transferListenerReference = new WeakReference<TransferListener>(listener);
+        } else {
+            transferListenerReference = null;
+        }
+    }
+
+
     /**
      *  Accept the direct connection and start the process of obtaining media. 
      *
@@ -137,6 +434,40 @@ public class RespokeDirectConnection implements org.webrtc.DataChannel.Observer
     }
 
 
+    /**
+     *  Determine if text messages on the main channel are sent without a JSON envelope. This is negotiated when the
+     *  connection is set up, and stays false when the remote client does not support it, such as a web browser that
+     *  expects every message to be a JSON object.
+     *
+     *  @return True if raw text is in use
+     */
+    public boolean usesRawText() {
+        return codec.usesRawText();
+    }
+
+
+    /**
+     *  Determine if deflate was negotiated, in which case binary messages on the main channel carry a flags byte and
+     *  text may be sent compressed. This is only the case when both clients enabled compression. See setCompression.
+     *
+     *  @return True if deflate is in use
+     */
+    public boolean usesDeflate() {
+        return codec.usesDeflate();
+    }
+
+
+    /**
+     *  Get the pool of direct buffers used to send text messages, for instance to monitor how often its buffers are
+     *  reused. The pool is shared by every direct connection.
+     *
+     *  @return  The buffer pool
+     */
+    public static RespokeBufferPool getSendBufferPool() {
+        return sendBufferPool;
+    }
+
+
     /**
      *  Send a message to the remote client through the direct connection.
      *
@@ -144,23 +475,16 @@ public class RespokeDirectConnection implements org.webrtc.DataChannel.Observer
      *  @param completionListener  A listener to receive a notification on the success of the asynchronous operation
      */
     public void sendMessage(String message, final Respoke.TaskCompletionListener completionListener) {
-        if (isActive()) {
-            JSONObject jsonMessage = new JSONObject();
-            try {
-                jsonMessage.put("message", message);
-                byte[] rawMessage = jsonMessage.toString().getBytes(Charset.forName("UTF-8"));
-                ByteBuffer directData = ByteBuffer.allocateDirect(rawMessage.length);
-                directData.put(rawMessage);
-                directData.flip();
-                DataChannel.Buffer data = new DataChannel.Buffer(directData, false);
-
-                if (dataChannel.send(data)) {
-                    Respoke.postTaskSuccess(completionListener);
-                } else {
-                    Respoke.postTaskError(completionListener, "Error sending message");
+        if (null == message) {
+            Respoke.postTaskError(completionListener, "Message must not be null");
+        } else if (isActive()) {
+            if (codec.usesFramedText() && coalescing) {
+                if (coalescer.add(message, directCompletionFor(completionListener))) {
+                    scheduleFlush();
                 }
-            } catch (JSONException e) {
-                Respoke.postTaskError(completionListener, "Unable to encode message to JSON");
+            } else {
+                codec.offerText(codec.envelope(message), sendQueue, completionFor(completionListener));
+                scheduleDrainIfNeeded();
             }
         } else {
             Respoke.postTaskError(completionListener, "DataChannel not in an open state");
@@ -169,136 +493,910 @@ public class RespokeDirectConnection implements org.webrtc.DataChannel.Observer
 
 
     /**
-     *  Establish a new direct connection instance with the peer connection for the call. This is used internally to the SDK and should not be called directly by your client application.
+     *  Send a binary message to the remote client through the direct connection. The bytes between the position and
+     *  the limit of the buffer are sent without being encoded, and are only copied if the send queue has to hold them.
+     *  The position of the buffer is left unchanged so that it can be reused once this method returns.
+     *
+     *  @param data                The message to send
+     *  @param completionListener  A listener to receive a notification on the success of the asynchronous operation
      */
-    public void createDataChannel() {
-        if (null != callReference) {
-            RespokeCall call = callReference.get();
-            if (null != call) {
-                PeerConnection peerConnection = call.getPeerConnection();
-                dataChannel = peerConnection.createDataChannel("respokeDataChannel", new DataChannel.Init());
-                dataChannel.registerObserver(this);
-            }
+    public void sendBinary(ByteBuffer data, final Respoke.TaskCompletionListener completionListener) {
+        if (null == data) {
+            Respoke.postTaskError(completionListener, "Binary data must not be null");
+        } else if (isActive()) {
+            codec.offerBinary(data, sendQueue, completionFor(completionListener));
+            scheduleDrainIfNeeded();
+        } else {
+            Respoke.postTaskError(completionListener, "DataChannel not in an open state");
         }
     }
 
 
     /**
-     *  Notify the direct connection instance that the peer connection has opened the specified data channel
+     *  Change how messages are queued while the data channel is backed up. By default, messages are queued once 1MB
+     *  is waiting to be sent and fail once the queue holds 4MB.
      *
-     *  @param newDataChannel    The DataChannel that has opened
+     *  @param policy         What to do with a message that does not fit: RespokeSendQueue.POLICY_FAIL,
+     *                        POLICY_DROP_OLDEST, or POLICY_BLOCK, which must not be used on the UI thread
+     *  @param lowWatermark   The number of waiting bytes at which the connection becomes writable again
+     *  @param highWatermark  The number of waiting bytes at which the connection stops being writable
+     *  @param capacity       The most bytes the send queue will hold, in addition to those buffered by the data channel
      */
-    public void peerConnectionDidOpenDataChannel(DataChannel newDataChannel) {
-        if (null != dataChannel) {
-            // Replacing the previous connection, so disable observer messages from the old instance
-            dataChannel.unregisterObserver();
+    public void configureSendQueue(int policy, long lowWatermark, long highWatermark, long capacity) {
+        sendQueue.configure(policy, lowWatermark, highWatermark, capacity);
+    }
+
+
+    /**
+     *  Hold back messages passed to sendMessage for a short time, so that those sent in quick succession go out
+     *  together as a single data channel message. This cuts the per-message overhead of protocols that send many
+     *  small updates, at the cost of up to one window of added latency. Each message's completion listener is still
+     *  called, once its batch has been sent.
+     *
+     *  Coalescing only takes effect when the remote client supports it, which a web browser does not. Messages are
+     *  delivered in order either way, and the remote client receives them as separate messages or, if its listener
+     *  implements BatchListener, a batch at a time.
+     *
+     *  @param window     How long a message may wait for others to join its batch, in milliseconds, or 0 to send every
+     *                    message straight away
+     *  @param maxLength  The length, in characters, at which a batch is sent without waiting for the window to pass
+     */
+    public void setCoalescing(long window, int maxLength) {
+        if (window > 0) {
+            coalescer.configure(window, maxLength);
+            coalescing = true;
         } else {
-            new Handler(Looper.getMainLooper()).post(new Runnable() {
-                public void run() {
-                    if (null != listenerReference) {
-                        Listener listener = listenerReference.get();
-                        if (null != listener) {
-                            listener.onStart(RespokeDirectConnection.this);
-                        }
-                    }
-                }
-            });
+            coalescing = false;
+            coalescer.flush();
         }
+    }
 
-        dataChannel = newDataChannel;
-        newDataChannel.registerObserver(this);
+
+    /**
+     *  Compress text messages sent with sendMessage. Compression is only negotiated if both clients enable it before
+     *  the direct connection is set up, which a web browser never does, so on the answering side call this before
+     *  accept. Direct connections opened with RespokeEndpoint.startDirectConnection negotiate straight away, so use
+     *  setDefaultCompression for those. A message is only sent compressed if that makes it smaller.
+     *
+     *  While compression is negotiated, binary messages carry an extra byte and are copied when sent. Without it,
+     *  binary messages are sent exactly as given.
+     *
+     *  @param threshold  The size, in bytes of UTF-8, from which messages are compressed, or 0 to send every message
+     *                    uncompressed. RespokeCompressor.DEFAULT_THRESHOLD is a reasonable choice.
+     */
+    public void setCompression(int threshold) {
+        codec.setCompressionThreshold(threshold);
     }
 
 
-    // org.webrtc.DataChannel.Observer methods
+    /**
+     *  Set the compression threshold that direct connections created from now on start with. See setCompression.
+     *
+     *  @param threshold  The size, in bytes of UTF-8, from which messages are compressed, or 0 to not compress
+     */
+    public static void setDefaultCompression(int threshold) {
+        defaultCompressionThreshold = Math.max(threshold, 0);
+    }
 
 
-    public void onStateChange() {
-        switch (dataChannel.state()) {
-            case CONNECTING:
-                break;
+    /**
+     *  Determine if messages can be sent without adding to a backlog. See WritabilityListener.
+     *
+     *  @return True if the connection is writable
+     */
+    public boolean isWritable() {
+        return sendQueue.isWritable();
+    }
 
-            case OPEN: {
-                    if (null != callReference) {
-                        RespokeCall call = callReference.get();
-                        if (null != call) {
-                            call.directConnectionDidOpen(this);
-                        }
-                    }
 
-                new Handler(Looper.getMainLooper()).post(new Runnable() {
-                    public void run() {
-                        if (null != listenerReference) {
-                            Listener listener = listenerReference.get();
-                            if (null != listener) {
-                                listener.onOpen(RespokeDirectConnection.this);
-                            }
-                        }
-                    }
-                });
-                }
-                break;
+    /**
+     *  Open an additional data channel to the remote client, alongside the one used by sendMessage. Each channel has
+     *  its own send queue and delivery options, so that, for instance, frequent state updates can go out unordered and
+     *  unreliably without being held up behind a large reliable message. The remote client is told about the channel
+     *  over the existing peer connection, so no renegotiation is needed.
+     *
+     *  @param label    A name for the channel, unique within this direct connection. Opening a label that is already
+     *                  open returns the existing channel. If both clients open the same label at once, the caller's
+     *                  channel is kept: the callee's is closed and the caller's is passed to its ChannelListener.
+     *  @param options  The channel's delivery options, or null for RespokeDataChannelOptions.RELIABLE
+     *
+     *  @return The channel, or null if the direct connection has no peer connection
+     */
+    public RespokeDataChannel openChannel(String label, RespokeDataChannelOptions options) {
+        if ((null == label) || MAIN_LABEL.equals(label) || RespokeTransferChannel.LABEL.equals(label)) {
+            throw new IllegalArgumentException("Invalid data channel label");
+        }
 
-            case CLOSING:
-                break;
+        RespokeCall call = getCall();
+        PeerConnection peerConnection = (null != call) ? call.getPeerConnection() : null;
 
-            case CLOSED: {
-                    if (null != callReference) {
-                        RespokeCall call = callReference.get();
-                        if (null != call) {
-                            call.directConnectionDidClose(this);
-                        }
-                    }
+        if (null == peerConnection) {
+            return null;
+        }
 
-                    new Handler(Looper.getMainLooper()).post(new Runnable() {
-                        public void run() {
-                            if (null != listenerReference) {
-                                Listener listener = listenerReference.get();
-                                if (null != listener) {
-                                    listener.onClose(RespokeDirectConnection.this);
-                                }
-                            }
-                        }
-                    });
-                }
-                break;
+        if (null == options) {
+            options = RespokeDataChannelOptions.RELIABLE;
         }
-    }
 
+        synchronized (namedChannels) {
+            RespokeDataChannel channel = namedChannels.get(label);
 
-    public void onMessage(org.webrtc.DataChannel.Buffer buffer) {
-        if (buffer.binary) {
-            // TODO
+            if (null == channel) {
+                DataChannel.Init init = new DataChannel.Init();
+                init.ordered = options.ordered;
+                init.maxRetransmits = options.maxRetransmits;
+                init.maxRetransmitTimeMs = options.maxPacketLifeTime;
+
+                channel = new RespokeDataChannel(this, peerConnection.createDataChannel(label, init), options);
+                namedChannels.put(label, channel);
+            }
+
+            return channel;
+        }
+    }
+
+
+    /**
+     *  Get a named data channel that is open in either direction
+     *
+     *  @param label  The channel's label
+     *
+     *  @return The channel, or null if there is none with that label
+     */
+    public RespokeDataChannel getChannel(String label) {
+        synchronized (namedChannels) {
+            return namedChannels.get(label);
+        }
+    }
+
+
+    /**
+     *  Send a payload of any size to the remote client. The payload is split into chunks on a separate data channel,
+     *  paced by how much the channel has buffered, and resumes where it left off if that channel is replaced. If the
+     *  channel closes while transfers are being sent, a new one is opened, and the transfers fail if it cannot be opened
+     *  within ten seconds. Progress and the outcome are reported to the TransferListener.
+     *
+     *  @param name  A name for the payload, passed to the remote client
+     *  @param data  The bytes between the position and the limit are sent. The buffer must not be modified until the
+     *               transfer finishes.
+     *
+     *  @return The transfer
+     */
+    public RespokeTransfer sendTransfer(String name, ByteBuffer data) {
+        RespokeTransferChannel channel = getTransferChannel();
+        return (null != channel) ? startTransfer(channel.send(name, data)) : failedTransfer(name, data.remaining());
+    }
+
+
+    /**
+     *  Send a file to the remote client. See sendTransfer(String, ByteBuffer) for details.
+     *
+     *  @param file  The file to send. Its name is passed to the remote client.
+     *
+     *  @return The transfer
+     */
+    public RespokeTransfer sendTransfer(File file) {
+        RespokeTransferChannel channel = getTransferChannel();
+        return (null != channel) ? startTransfer(channel.send(file)) : failedTransfer(file.getName(), file.length());
+    }
+
+
+    /**
+     *  Send the contents of a stream to the remote client. See sendTransfer(String, ByteBuffer) for details.
+     *
+     *  @param name    A name for the payload, passed to the remote client
+     *  @param stream  The payload, which is read on the connection's worker thread and closed when the transfer finishes
+     *  @param size    The number of bytes to read from the stream
+     *
+     *  @return The transfer
+     */
+    public RespokeTransfer sendTransfer(String name, InputStream stream, long size) {
+        RespokeTransferChannel channel = getTransferChannel();
+        return (null != channel) ? startTransfer(channel.send(name, stream, size)) : failedTransfer(name, size);
+    }
+
+
+    /**
+     *  Stop a transfer in either direction. The TransferListener is told that it failed.
+     *
+     *  @param transfer  The transfer to cancel
+     */
+    public void cancelTransfer(RespokeTransfer transfer) {
+        RespokeTransferChannel channel = getTransferChannel();
+
+        if (null != channel) {
+            channel.cancel(transfer);
+            schedulePump();
+        }
+    }
+
+
+    /**
+     *  Establish a new direct connection instance with the peer connection for the call. This is used internally to the SDK and should not be called directly by your client application.
+     */
+    public void createDataChannel() {
+        if (null != callReference) {
+            RespokeCall call = callReference.get();
+            if (null != call) {
+                PeerConnection peerConnection = call.getPeerConnection();
+                dataChannel = peerConnection.createDataChannel(MAIN_LABEL, new DataChannel.Init());
+                dataChannel.registerObserver(this);
+            }
+        }
+    }
+
+
+    /**
+     *  Notify the direct connection instance that the peer connection has opened the specified data channel
+     *
+     *  @param newDataChannel    The DataChannel that has opened
+     */
+    public void peerConnectionDidOpenDataChannel(DataChannel newDataChannel) {
+        if (RespokeTransferChannel.LABEL.equals(newDataChannel.label())) {
+            if (null != getTransferChannel()) {
+                attachTransferDataChannel(newDataChannel);
+            }
+
+            return;
+        }
+
+        if (!MAIN_LABEL.equals(newDataChannel.label())) {
+            remoteDidOpenChannel(newDataChannel);
+            return;
+        }
+
+        if (null != dataChannel) {
+            // Replacing the previous connection, so disable observer messages from the old instance
+            dataChannel.unregisterObserver();
         } else {
-            Charset charset = Charset.forName("UTF-8");
-            CharsetDecoder decoder = charset.newDecoder();
-            try {
-                String message = decoder.decode( buffer.data ).toString();
-
-                try {
-                    JSONObject jsonMessage = new JSONObject(message);
-                    final String messageText = jsonMessage.getString("message");
-
-                    if (null != messageText) {
-                        new Handler(Looper.getMainLooper()).post(new Runnable() {
-                            public void run() {
-                                if (null != listenerReference) {
-                                    Listener listener = listenerReference.get();
-                                    if (null != listener) {
-                                        listener.onMessage(messageText, RespokeDirectConnection.this);
-                                    }
+            new Handler(Looper.getMainLooper()).post(new Runnable() {
+                public void run() {
+                    if (null != listenerReference) {
+                        Listener listener = listenerReference.get();
+                        if (null != listener) {
+                            listener.onStart(RespokeDirectConnection.this);
+                        }
+                    }
+                }
+            });
+        }
+
+        dataChannel = newDataChannel;
+        newDataChannel.registerObserver(this);
+    }
+
+
+    /**
+     *  Get the capabilities this client advertises in its session descriptions. This is used internally to the SDK and should not be called directly by your client application.
+     *
+     *  @return The capabilities
+     */
+    public JSONArray getLocalCapabilities() {
+        JSONArray capabilities = new JSONArray();
+        capabilities.put(CAPABILITY_RAW_TEXT);
+        capabilities.put(CAPABILITY_FRAMED_TEXT);
+
+        synchronized (capabilitiesLock) {
+            // Deflate changes the format of every binary message, so only offer it when there is something to compress
+            advertisedDeflate = (codec.getCompressionThreshold() > 0);
+
+            if (advertisedDeflate) {
+                capabilities.put(CAPABILITY_DEFLATE);
+            }
+
+            // The answering client learns the remote capabilities first, so agree on deflate again now that it is offered
+            if (null != remoteCapabilities) {
+                applyCapabilities();
+            }
+        }
+
+        return capabilities;
+    }
+
+
+    /**
+     *  Notify the direct connection of the capabilities in the remote client's session description. This is used internally to the SDK and should not be called directly by your client application.
+     *
+     *  @param capabilities  The remote client's capabilities, or null if it did not list any
+     */
+    public void remoteCapabilitiesReceived(JSONArray capabilities) {
+        synchronized (capabilitiesLock) {
+            // A client that does not list capabilities, such as a web browser, supports none of them
+            remoteCapabilities = (null != capabilities) ? capabilities : new JSONArray();
+            applyCapabilities();
+        }
+    }
+
+
+    /**
+     *  Notify the direct connection that one of its named data channels has closed. This is used internally to the SDK and should not be called directly by your client application.
+     *
+     *  @param channel  The channel that closed
+     */
+    void dataChannelDidClose(RespokeDataChannel channel) {
+        synchronized (namedChannels) {
+            if (namedChannels.get(channel.getLabel()) == channel) {
+                namedChannels.remove(channel.getLabel());
+            }
+        }
+    }
+
+
+    // org.webrtc.DataChannel.Observer methods
+
+
+    public void onStateChange() {
+        switch (dataChannel.state()) {
+            case CONNECTING:
+                break;
+
+            case OPEN: {
+                    if (null != callReference) {
+                        RespokeCall call = callReference.get();
+                        if (null != call) {
+                            call.directConnectionDidOpen(this);
+                        }
+                    }
+
+                new Handler(Looper.getMainLooper()).post(new Runnable() {
+                    public void run() {
+                        if (null != listenerReference) {
+                            Listener listener = listenerReference.get();
+                            if (null != listener) {
+                                listener.onOpen(RespokeDirectConnection.this);
+                            }
+                        }
+                    }
+                });
+                }
+                break;
+
+            case CLOSING:
+                break;
+
+            case CLOSED: {
+                    closeChannels();
+                    shutDownWorker();
+
+                    if (null != callReference) {
+                        RespokeCall call = callReference.get();
+                        if (null != call) {
+                            call.directConnectionDidClose(this);
+                        }
+                    }
+
+                    new Handler(Looper.getMainLooper()).post(new Runnable() {
+                        public void run() {
+                            if (null != listenerReference) {
+                                Listener listener = listenerReference.get();
+                                if (null != listener) {
+                                    listener.onClose(RespokeDirectConnection.this);
                                 }
                             }
-                        });
+                        }
+                    });
+                }
+                break;
+        }
+    }
+
+
+    public void onMessage(org.webrtc.DataChannel.Buffer buffer) {
+        RespokeMetrics.DIRECT_BYTES_RECEIVED.add(buffer.data.remaining());
+
+        codec.receive(buffer.data, buffer.binary, receiver);
+    }
+
+
+    //** Private methods
+
+
+    /**
+     *  Agree on the message format from the capabilities of both clients. Deflate is only used if this client offered
+     *  it, so both clients agree on it whichever order the session descriptions are exchanged in.
+     */
+    private void applyCapabilities() {
+        JSONArray capabilities = remoteCapabilities;
+        boolean remoteRawText = false;
+        boolean remoteFramedText = false;
+        boolean remoteDeflate = false;
+
+        for (int ii = 0; ii < capabilities.length(); ii++) {
+            String capability = capabilities.optString(ii);
+
+            if (CAPABILITY_RAW_TEXT.equals(capability)) {
+                remoteRawText = true;
+            } else if (CAPABILITY_FRAMED_TEXT.equals(capability)) {
+                remoteFramedText = true;
+            } else if (CAPABILITY_DEFLATE.equals(capability)) {
+                remoteDeflate = true;
+            }
+        }
+
+        codec.setCapabilities(remoteRawText, remoteFramedText, remoteDeflate && advertisedDeflate);
+    }
+
+
+    /**
+     *  Get the transfer channel, creating it and its worker thread on first use
+     *
+     *  @return The transfer channel, or null if the direct connection has closed
+     */
+    private synchronized RespokeTransferChannel getTransferChannel() {
+        if (null == getWorkerThread()) {
+            return null;
+        }
+
+        if (null == transferChannel) {
+            transferChannel = new RespokeTransferChannel(new TransferEvents(), sendBufferPool);
+        }
+
+        return transferChannel;
+    }
+
+
+    /**
+     *  Get the worker thread, starting it on first use
+     *
+     *  @return The worker thread, or null if the direct connection has closed
+     */
+    private synchronized RespokeWorkerThread getWorkerThread() {
+        if (closed) {
+            return null;
+        }
+
+        if (null == workerThread) {
+            workerThread = new RespokeWorkerThread("RespokeDirectConnection");
+            workerThread.start();
+            workerThread.prepareHandler();
+        }
+
+        return workerThread;
+    }
+
+
+    private void scheduleFlush() {
+        synchronized (this) {
+            RespokeWorkerThread thread = getWorkerThread();
+
+            if (null != thread) {
+                thread.postTaskDelayed(flushTask, coalescer.getWindow());
+                return;
+            }
+        }
+
+        // Closed, so there is no point waiting for more messages
+        coalescer.flush();
+    }
+
+
+    private void scheduleDrainIfNeeded() {
+        if (sendQueue.needsDrain()) {
+            scheduleDrain();
+        }
+    }
+
+
+    /**
+     *  Drain the send queues after RespokeSendQueue.POLL_INTERVAL, unless a drain is already pending
+     */
+    synchronized void scheduleDrain() {
+        RespokeWorkerThread thread = getWorkerThread();
+
+        if (null != thread) {
+            drainScheduler.schedule(thread);
+        }
+    }
+
+
+    private ArrayList<RespokeDataChannel> getChannels() {
+        synchronized (namedChannels) {
+            return new ArrayList<RespokeDataChannel>(namedChannels.values());
+        }
+    }
+
+
+    private void remoteDidOpenChannel(final DataChannel newDataChannel) {
+        RespokeCall call = getCall();
+        boolean caller = (null != call) && call.isCaller();
+        RespokeDataChannel channel;
+        RespokeDataChannel replaced;
+
+        synchronized (namedChannels) {
+            replaced = namedChannels.get(newDataChannel.label());
+
+            if ((null != replaced) && (null == replaced.getOptions())) {
+                // The remote client opened the label again after closing it, so there is no local channel to keep
+                replaced = null;
+            }
+
+            if ((null != replaced) && caller) {
+                // Both clients opened the same label at once. Both sides keep the caller's channel, so the callee
+                // closes this one once it has seen the caller's.
+                final RespokeDataChannel survivor = replaced;
+                newDataChannel.registerObserver(new DataChannel.Observer() {
+                    @Override
+                    public void onStateChange() {
+                        if (DataChannel.State.CLOSED == newDataChannel.state()) {
+                            newDataChannel.unregisterObserver();
+                        }
+                    }
+
+                    @Override
+                    public void onMessage(DataChannel.Buffer buffer) {
+                        // Sent by the remote client before it switched over to the caller's channel
+                        survivor.onMessage(buffer);
+                    }
+                });
+
+                return;
+            }
+
+            channel = new RespokeDataChannel(this, newDataChannel, null);
+            namedChannels.put(newDataChannel.label(), channel);
+        }
+
+        if (null != replaced) {
+            // The callee's own channel is given up for the caller's. Closing it fails anything still queued on it.
+            replaced.close();
+        }
+
+        if (null != listenerReference) {
+            Listener listener = listenerReference.get();
+            if (listener instanceof ChannelListener) {
+                ((ChannelListener) listener).onChannelOpened(channel, this);
+            }
+        }
+    }
+
+
+    /**
+     *  Close every named data channel once the main one has closed. Their send queues fail anything still waiting.
+     */
+    private void closeChannels() {
+        for (RespokeDataChannel each : getChannels()) {
+            each.close();
+        }
+    }
+
+
+    private RespokeTransfer startTransfer(final RespokeTransfer transfer) {
+        postToWorkerThread(new Runnable() {
+            @Override
+            public void run() {
+                // The first transfer in either direction opens the data channel. The remote client opens it if it sends first.
+                if (null == transferDataChannel) {
+                    RespokeCall call = getCall();
+                    PeerConnection peerConnection = (null != call) ? call.getPeerConnection() : null;
+
+                    if (null != peerConnection) {
+                        attachTransferDataChannel(peerConnection.createDataChannel(RespokeTransferChannel.LABEL, new DataChannel.Init()));
+                    }
+                }
+            }
+        });
+
+        schedulePump();
+        return transfer;
+    }
+
+
+    private RespokeTransfer failedTransfer(String name, long size) {
+        final RespokeTransfer transfer = new RespokeTransfer(0, name, size, true);
+        transfer.fail("DataChannel not in an open state");
+        postTransferFailed(transfer, transfer.getErrorMessage());
+        return transfer;
+    }
+
+
+    private synchronized void schedulePump() {
+        if (null != workerThread) {
+            workerThread.cancelTask(pumpTask);
+            workerThread.postTask(pumpTask);
+        }
+    }
+
+
+    /**
+     *  Start receiving transfer frames from a data channel, and send on it once it is open. Every transfer data
+     *  channel is listened to until it closes, so nothing is lost if both clients open one at the same time.
+     *
+     *  @param newDataChannel  The data channel
+     */
+    private void attachTransferDataChannel(final DataChannel newDataChannel) {
+        newDataChannel.registerObserver(new DataChannel.Observer() {
+            @Override
+            public void onStateChange() {
+                final DataChannel.State state = newDataChannel.state();
+
+                if ((DataChannel.State.OPEN == state) || (DataChannel.State.CLOSED == state)) {
+                    postToWorkerThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            transferDataChannelChanged(newDataChannel, state);
+                        }
+                    });
+                }
+            }
+
+            @Override
+            public void onMessage(DataChannel.Buffer buffer) {
+                RespokeMetrics.DIRECT_BYTES_RECEIVED.add(buffer.data.remaining());
+
+                // The buffer is only valid during this callback, so copy the frame for the worker thread
+                final ByteBuffer frame = sendBufferPool.acquire(buffer.data.remaining());
+                frame.put(buffer.data);
+                frame.flip();
+
+                postToWorkerThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        transferChannel.receive(frame);
+                        sendBufferPool.release(frame);
+                        pumpTask.run();
+                    }
+                });
+            }
+        });
+
+        // A data channel opened by the remote client may already be open
+        if (DataChannel.State.OPEN == newDataChannel.state()) {
+            postToWorkerThread(new Runnable() {
+                @Override
+                public void run() {
+                    transferDataChannelChanged(newDataChannel, DataChannel.State.OPEN);
+                }
+            });
+        }
+    }
+
+
+    private void transferDataChannelChanged(final DataChannel changedDataChannel, DataChannel.State state) {
+        if (DataChannel.State.OPEN == state) {
+            if ((changedDataChannel != transferDataChannel) || !transferChannel.hasTransport()) {
+                transferDataChannel = changedDataChannel;
+                transferChannel.setTransport(new RespokeTransferChannel.Transport() {
+                    @Override
+                    public boolean send(ByteBuffer frame) {
+                        int length = frame.remaining();
+                        boolean sent = changedDataChannel.send(new DataChannel.Buffer(frame, true));
+
+                        if (sent) {
+                            RespokeMetrics.DIRECT_BYTES_SENT.add(length);
+                        }
+
+                        return sent;
+                    }
+
+                    @Override
+                    public long getBufferedAmount() {
+                        return changedDataChannel.bufferedAmount();
+                    }
+                });
+                pumpTask.run();
+            }
+        } else {
+            changedDataChannel.unregisterObserver();
+
+            if (changedDataChannel == transferDataChannel) {
+                transferDataChannel = null;
+                transferChannel.setTransport(null);
+
+                if (transferChannel.hasOutgoing()) {
+                    reopenTransferDataChannel();
+                }
+            }
+        }
+    }
+
+
+    /**
+     *  Open a replacement for a transfer data channel that closed while transfers were still being sent. They resume
+     *  from what the receiver already has once it opens, and fail if it does not open in time.
+     */
+    private void reopenTransferDataChannel() {
+        RespokeCall call = getCall();
+        PeerConnection peerConnection = (null != call) ? call.getPeerConnection() : null;
+        DataChannel newDataChannel = (null != peerConnection) ? peerConnection.createDataChannel(RespokeTransferChannel.LABEL, new DataChannel.Init()) : null;
+
+        if (null != newDataChannel) {
+            attachTransferDataChannel(newDataChannel);
+        }
+
+        synchronized (this) {
+            if (null != workerThread) {
+                workerThread.cancelTask(transferReopenTimeoutTask);
+                workerThread.postTaskDelayed(transferReopenTimeoutTask, TRANSFER_REOPEN_TIMEOUT);
+            }
+        }
+    }
+
+
+    private synchronized void postToWorkerThread(Runnable task) {
+        if (null != workerThread) {
+            workerThread.postTask(task);
+        }
+    }
+
+
+    /**
+     *  Fail any queued messages and unfinished transfers, and stop the worker thread, once the direct connection has
+     *  closed
+     */
+    private void shutDownWorker() {
+        synchronized (this) {
+            closed = true;
+            sendQueue.close("The direct connection closed");
+
+            if (null != workerThread) {
+                final RespokeWorkerThread thread = workerThread;
+                final RespokeTransferChannel channel = transferChannel;
+                workerThread = null;
+
+                drainScheduler.cancel();
+                thread.cancelAllTasks();
+                thread.postTask(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (null != channel) {
+                            channel.close("The direct connection closed");
+                        }
+
+                        thread.quit();
+                    }
+                });
+            }
+        }
+
+        // Flushing into the closed queue fails any waiting messages on the UI thread, like those already queued. This
+        // is done without holding the lock, since sending a batch takes it to schedule a drain.
+        coalescer.flush();
+        coalescer.close("The direct connection closed");
+    }
+
+
+    static RespokeSendQueue.Completion completionFor(final Respoke.TaskCompletionListener completionListener) {
+        if (null == completionListener) {
+            return null;
+        }
+
+        return new RespokeSendQueue.Completion() {
+            @Override
+            public void onSuccess() {
+                Respoke.postTaskSuccess(completionListener);
+            }
+
+            @Override
+            public void onError(String errorMessage) {
+                Respoke.postTaskError(completionListener, errorMessage);
+            }
+        };
+    }
+
+
+    /**
+     *  Adapt a completion listener for a message in a batch. The batch's completion is already reported on the UI
+     *  thread, so each message's listener is called directly rather than with a post of its own.
+     *
+     *  @param completionListener  The listener, or null
+     *
+     *  @return The completion, or null
+     */
+    private static RespokeSendQueue.Completion directCompletionFor(final Respoke.TaskCompletionListener completionListener) {
+        if (null == completionListener) {
+            return null;
+        }
+
+        return new RespokeSendQueue.Completion() {
+            @Override
+            public void onSuccess() {
+                completionListener.onSuccess();
+            }
+
+            @Override
+            public void onError(String errorMessage) {
+                completionListener.onError(errorMessage);
+            }
+        };
+    }
+
+
+    private static RespokeSendQueue.Completion mainThreadCompletion(final RespokeSendQueue.Completion completion) {
+        return new RespokeSendQueue.Completion() {
+            @Override
+            public void onSuccess() {
+                new Handler(Looper.getMainLooper()).post(new Runnable() {
+                    public void run() {
+                        completion.onSuccess();
+                    }
+                });
+            }
+
+            @Override
+            public void onError(final String errorMessage) {
+                new Handler(Looper.getMainLooper()).post(new Runnable() {
+                    public void run() {
+                        completion.onError(errorMessage);
+                    }
+                });
+            }
+        };
+    }
+
+
+    private void postTransferFailed(final RespokeTransfer transfer, final String errorMessage) {
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            public void run() {
+                if (null != transferListenerReference) {
+                    TransferListener listener = transferListenerReference.get();
+                    if (null != listener) {
+                        listener.onTransferFailed(transfer, errorMessage, RespokeDirectConnection.this);
                     }
-                } catch (JSONException e) {
-                    // If it is not valid json, ignore the message
                 }
-            } catch (CharacterCodingException e) {
-                // If the message can not be decoded, ignore it
             }
+        });
+    }
+
+
+    /**
+     *  Passes transfer channel events to the TransferListener
+     */
+    private class TransferEvents implements RespokeTransferChannel.Listener {
+
+        public OutputStream onIncomingTransfer(RespokeTransfer transfer) {
+            if (null != transferListenerReference) {
+                TransferListener listener = transferListenerReference.get();
+                if (null != listener) {
+                    return listener.onIncomingTransfer(transfer, RespokeDirectConnection.this);
+                }
+            }
+
+            return null;
+        }
+
+
+        public void onTransferProgress(final RespokeTransfer transfer) {
+            new Handler(Looper.getMainLooper()).post(new Runnable() {
+                public void run() {
+                    if (null != transferListenerReference) {
+                        TransferListener listener = transferListenerReference.get();
+                        if (null != listener) {
+                            listener.onTransferProgress(transfer, RespokeDirectConnection.this);
+                        }
+                    }
+                }
+            });
+        }
+
+
+        public void onTransferComplete(final RespokeTransfer transfer) {
+            new Handler(Looper.getMainLooper()).post(new Runnable() {
+                public void run() {
+                    if (null != transferListenerReference) {
+                        TransferListener listener = transferListenerReference.get();
+                        if (null != listener) {
+                            listener.onTransferComplete(transfer, RespokeDirectConnection.this);
+                        }
+                    }
+                }
+            });
+        }
+
+
+        public void onTransferFailed(RespokeTransfer transfer, String errorMessage) {
+            postTransferFailed(transfer, errorMessage);
         }
     }
 
 
+    /**
+     *  Encode a message as UTF-8 into a buffer from the pool
+     *
+     *  @param message  The message to encode
+     *
+     *  @return A pooled buffer holding the encoded message, which the caller must release
+     */
+    ByteBuffer encodeMessage(String message) {
+        return codec.encode(message);
+    }
 }
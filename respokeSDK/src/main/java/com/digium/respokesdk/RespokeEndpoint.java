@@ -104,7 +104,10 @@ public class RespokeEndpoint {
      *  @param completionListener  A listener to receive a notification on the success of the asynchronous operation
      */
     public void sendMessage(String message, boolean push, boolean ccSelf, final Respoke.TaskCompletionListener completionListener) {
-        if ((null != signalingChannel) && (signalingChannel.connected)) {
+        RespokeClient client = (null != clientReference) ? clientReference.get() : null;
+        RespokeOutboundQueue outboundQueue = (null != client) ? client.getOutboundQueue() : null;
+
+        if ((null != outboundQueue) || ((null != signalingChannel) && (signalingChannel.isConnected()))) {
             try {
                 JSONObject data = new JSONObject();
                 data.put("to", endpointID);
@@ -112,17 +115,23 @@ public class RespokeEndpoint {
                 data.put("push", push);
                 data.put("ccSelf", ccSelf);
 
-                signalingChannel.sendRESTMessage("post", "/v1/messages", data, new RespokeSignalingChannel.RESTListener() {
-                    @Override
-                    public void onSuccess(Object response) {
-                        Respoke.postTaskSuccess(completionListener);
-                    }
+                if (null != outboundQueue) {
+                    // The queue sends the message right away if connected, and otherwise holds it until the client reconnects
+                    outboundQueue.enqueue("post", "/v1/messages", data, completionListener);
+                } else {
+                    signalingChannel.sendRESTMessage("post", "/v1/messages", data, new RespokeSignalingChannel.RESTListener() {
+                        @Override
+                        public void onSuccess(Object response) {
+                            RespokeMetrics.MESSAGES_SENT.increment();
+                            Respoke.postTaskSuccess(completionListener);
+                        }
 
-                    @Override
-                    public void onError(final String errorMessage) {
-                        Respoke.postTaskError(completionListener, errorMessage);
-                    }
-                });
+                        @Override
+                        public void onError(final String errorMessage) {
+                            Respoke.postTaskError(completionListener, errorMessage);
+                        }
+                    });
+                }
             } catch (JSONException e) {
                 Respoke.postTaskError(completionListener, "Error encoding message");
             }
@@ -143,11 +152,47 @@ public class RespokeEndpoint {
      *  @return A new RespokeCall instance
      */
     public RespokeCall startCall(RespokeCall.Listener callListener, Context context, GLSurfaceView glView, boolean audioOnly) {
+        return startCall(callListener, context, glView, audioOnly, null);
+    }
+
+
+    /**
+     *  Create a new call with audio and optionally video, limiting the bandwidth the call may use.
+     *
+     *  @param callListener      A listener to receive notifications of call related events
+     *  @param context           An application context with which to access system resources
+     *  @param glView            A GLSurfaceView into which video from the call should be rendered, or null if the call is audio only
+     *  @param audioOnly         Specify true for an audio-only call
+     *  @param bandwidthProfile  The bandwidth limits for the call, such as RespokeBandwidthProfile.LOW, or null for no limits
+     *
+     *  @return A new RespokeCall instance
+     */
+    public RespokeCall startCall(RespokeCall.Listener callListener, Context context, GLSurfaceView glView, boolean audioOnly, RespokeBandwidthProfile bandwidthProfile) {
+        return startCall(callListener, context, glView, audioOnly, bandwidthProfile, null);
+    }
+
+
+    /**
+     *  Create a new call with audio and optionally video, limiting the bandwidth the call may use and choosing the
+     *  camera and capture format for local video.
+     *
+     *  @param callListener      A listener to receive notifications of call related events
+     *  @param context           An application context with which to access system resources
+     *  @param glView            A GLSurfaceView into which video from the call should be rendered, or null if the call is audio only
+     *  @param audioOnly         Specify true for an audio-only call
+     *  @param bandwidthProfile  The bandwidth limits for the call, such as RespokeBandwidthProfile.LOW, or null for no limits
+     *  @param captureProfile    The camera and capture format for local video, or null for the front camera
+     *
+     *  @return A new RespokeCall instance
+     */
+    public RespokeCall startCall(RespokeCall.Listener callListener, Context context, GLSurfaceView glView, boolean audioOnly, RespokeBandwidthProfile bandwidthProfile, RespokeCaptureProfile captureProfile) {
         RespokeCall call = null;
 
-        if ((null != signalingChannel) && (signalingChannel.connected)) {
+        if ((null != signalingChannel) && (signalingChannel.isConnected())) {
             call = new RespokeCall(signalingChannel, this, false);
             call.setListener(callListener);
+            call.setBandwidthProfile(bandwidthProfile);
+            call.setCaptureProfile(captureProfile);
 
             call.startCall(context, glView, audioOnly);
         }
@@ -347,6 +392,16 @@ public class RespokeEndpoint {
     }
 
 
+    /**
+     *  Move this endpoint to a new signaling channel after the client has migrated its socket. This method is used internally by the SDK should not be called by your client application.
+     *
+     *  @param channel  The signaling channel to use from now on
+     */
+    public void setSignalingChannel(RespokeSignalingChannel channel) {
+        signalingChannel = channel;
+    }
+
+
     /**
      *  Create a new DirectConnection.  This method creates a new Call as well, attaching this DirectConnection to
      *  it for the purposes of creating a peer-to-peer link for sending data such as messages to the other endpoint.
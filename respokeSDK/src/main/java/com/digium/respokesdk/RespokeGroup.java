@@ -231,6 +231,12 @@ public class RespokeGroup {
             @Override
             public void onSuccess(Object response) {
                 joined = true;
+                RespokeOutboundQueue outboundQueue = getOutboundQueue();
+
+                if (null != outboundQueue) {
+                    outboundQueue.groupJoined(groupID);
+                }
+
                 Respoke.postTaskSuccess(completionListener);
             }
 
@@ -263,6 +269,11 @@ public class RespokeGroup {
                         @Override
                         public void onSuccess(Object response) {
                             joined = false;
+                            RespokeOutboundQueue outboundQueue = getOutboundQueue();
+
+                            if (null != outboundQueue) {
+                                outboundQueue.groupLeft(groupID);
+                            }
 
                             Respoke.postTaskSuccess(completionListener);
                         }
@@ -294,7 +305,7 @@ public class RespokeGroup {
     }
 
     public boolean isConnected() {
-        return (null != signalingChannel) && signalingChannel.connected;
+        return (null != signalingChannel) && signalingChannel.isConnected();
     }
 
     /**
@@ -317,9 +328,12 @@ public class RespokeGroup {
      **/
     public void sendMessage(String message, boolean push, boolean persist,
                             final Respoke.TaskCompletionListener completionListener) {
-        if (isJoined()) {
+        RespokeClient client = clientReference.get();
+        RespokeOutboundQueue outboundQueue = (null != client) ? client.getOutboundQueue() : null;
+
+        // With the outbound queue enabled, messages to a joined group are held while disconnected rather than failing
+        if (isJoined() || (joined && (null != outboundQueue))) {
             if ((null != groupID) && (groupID.length() > 0)) {
-                RespokeClient client = clientReference.get();
                 if (null != client) {
 
                     JSONObject data = new JSONObject();
@@ -335,9 +349,16 @@ public class RespokeGroup {
                     }
 
                     String urlEndpoint = "/v1/channels/" + groupID + "/publish/";
+
+                    if (null != outboundQueue) {
+                        outboundQueue.enqueue("post", urlEndpoint, data, groupID, completionListener);
+                        return;
+                    }
+
                     signalingChannel.sendRESTMessage("post", urlEndpoint, data, new RespokeSignalingChannel.RESTListener() {
                         @Override
                         public void onSuccess(Object response) {
+                            RespokeMetrics.MESSAGES_SENT.increment();
                             Respoke.postTaskSuccess(completionListener);
                         }
 
@@ -422,6 +443,16 @@ public class RespokeGroup {
     }
 
 
+    /**
+     *  Move this group to a new signaling channel after the client has migrated its socket. This is used internally to the SDK and should not be called directly by your client application.
+     *
+     *  @param channel  The signaling channel to use from now on
+     */
+    public void setSignalingChannel(RespokeSignalingChannel channel) {
+        signalingChannel = channel;
+    }
+
+
     //** Private methods
 
 
@@ -443,4 +474,15 @@ public class RespokeGroup {
     }
 
 
+    /**
+     *  Get the durable outbound queue of the client managing this group
+     *
+     *  @return The outbound queue, or null if it is not enabled
+     */
+    private RespokeOutboundQueue getOutboundQueue() {
+        RespokeClient client = clientReference.get();
+        return (null != client) ? client.getOutboundQueue() : null;
+    }
+
+
 }
@@ -0,0 +1,601 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.lang.ref.WeakReference;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ *  A persistent queue of outbound REST requests, such as messages, which are stored on disk until the Respoke
+ *  service has acknowledged them. Requests queued while the client is disconnected are replayed in order, in
+ *  batches, once a connection is available again. Requests survive the process being restarted, but completion
+ *  listeners do not; use the queue Listener to track requests across restarts.
+ *
+ *  Requests are stored separately for each application and endpoint ID, so a client that connects as a different
+ *  endpoint never replays another endpoint's requests. Requests queued before the client has connected for the first
+ *  time are only held in memory, and are stored under the identity of the endpoint that then connects.
+ *
+ *  Messages to a group are held until the client has joined that group on the current connection, since the service
+ *  rejects messages from endpoints that are not members.
+ *
+ *  Requests the service rejects for exceeding its rate limit stay queued, and the batch is retried after a backoff
+ *  delay that grows for as long as the service keeps rejecting them.
+ *
+ *  Delivery is at-least-once: a request that was sent just before the connection dropped may be replayed if its
+ *  acknowledgement was lost.
+ */
+public class RespokeOutboundQueue {
+
+    private static final String TAG = "RespokeOutboundQueue";
+    private static final String QUEUE_FILE_PREFIX = "respoke_outbound_queue_";
+    public static final int BATCH_SIZE = 10;  ///< The number of requests sent before waiting for their acknowledgements
+    public static final int MAX_QUEUED_REQUESTS = 1000;  ///< The maximum number of requests held by the queue
+
+    private final File filesDir;
+    private File queueFile;  ///< The file for the current identity, or null until the identity is known. Guarded by this.
+    private final RespokeWorkerThread persistThread;  ///< Writes the queue to disk off of the calling thread
+    private final ArrayList<QueuedRequest> requests;  ///< The pending requests, in the order they were queued
+    private final HashMap<String, Respoke.TaskCompletionListener> completionListeners;
+    private final HashSet<String> joinedGroupIDs;  ///< The groups joined on the current connection, whose messages may be sent
+    private WeakReference<Listener> listenerReference;
+    private RespokeSignalingChannel signalingChannel;  ///< The channel to replay requests through, or null while disconnected
+    private int inFlightCount;  ///< The number of requests in the current batch still awaiting acknowledgement
+    private int generation;  ///< Incremented whenever the connection changes so that late acknowledgements are ignored
+    private boolean batchRateLimited;  ///< Indicates if the service rate-limited a request in the current batch
+    private final RespokeReconnectScheduler retryScheduler;  ///< Delays the next batch with backoff while the service is rate-limiting requests
+
+
+    /**
+     *  A listener interface to track the completion of queued requests, including those restored from disk
+     */
+    public interface Listener {
+
+        /**
+         *  Receive a notification that a queued request was acknowledged by the service and removed from the queue
+         *
+         *  @param requestID  The ID returned when the request was queued
+         */
+        void onRequestSent(String requestID);
+
+
+        /**
+         *  Receive a notification that the service rejected a queued request and it was removed from the queue
+         *
+         *  @param requestID     The ID returned when the request was queued
+         *  @param errorMessage  A human-readable description of the error
+         */
+        void onRequestFailed(String requestID, String errorMessage);
+
+    }
+
+
+    /**
+     *  A REST request waiting to be sent
+     */
+    private static class QueuedRequest {
+        String requestID;
+        String httpMethod;
+        String url;
+        JSONObject data;
+        String groupID;  ///< The group the request is addressed to, or null if it does not depend on group membership
+        boolean inFlight;
+    }
+
+
+    /**
+     *  Create a queue. Requests persisted by a previous instance are restored once the identity is set.
+     *
+     *  @param context  An application context with which to access the file system
+     */
+    public RespokeOutboundQueue(Context context) {
+        filesDir = context.getFilesDir();
+        requests = new ArrayList<QueuedRequest>();
+        completionListeners = new HashMap<String, Respoke.TaskCompletionListener>();
+        joinedGroupIDs = new HashSet<String>();
+        persistThread = new RespokeWorkerThread("RespokeOutboundQueue");
+        persistThread.start();
+        persistThread.prepareHandler();
+        retryScheduler = new RespokeReconnectScheduler(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        });
+    }
+
+
+    /**
+     *  Set the application and endpoint the queued requests belong to, restoring any requests persisted for them.
+     *  Requests queued before the first identity was set are kept and stored under it. Requests queued under a
+     *  previous identity stay on disk until that endpoint connects again, and their completion listeners are dropped
+     *  just as they would be by a restart. This is used internally to the SDK and should not be called directly by your client application.
+     *
+     *  @param appID       The application ID, or null when connecting with a brokered token
+     *  @param endpointID  The ID of the local endpoint
+     */
+    public void setIdentity(String appID, String endpointID) {
+        File newFile = new File(filesDir, queueFileName(appID, endpointID));
+
+        synchronized (this) {
+            if (newFile.equals(queueFile)) {
+                return;
+            }
+
+            ArrayList<QueuedRequest> unassigned = new ArrayList<QueuedRequest>();
+
+            if (null == queueFile) {
+                unassigned.addAll(requests);
+            } else {
+                completionListeners.clear();
+            }
+
+            generation++;
+            clearInFlight();
+            requests.clear();
+            queueFile = newFile;
+            restore();
+
+            // Anything queued before the identity was known was queued after the restored requests
+            requests.addAll(unassigned);
+        }
+
+        persist();
+    }
+
+
+    /**
+     *  Set a receiver for the Listener interface
+     *
+     *  @param listener  The new receiver for events from the Listener interface for this queue
+     */
+    public void setListener(Listener listener) {
+        listenerReference = new WeakReference<Listener>(listener);
+    }
+
+
+    /**
+     *  Get the number of requests waiting to be acknowledged
+     *
+     *  @return The number of pending requests
+     */
+    public synchronized int size() {
+        return requests.size();
+    }
+
+
+    /**
+     *  Add a request to the end of the queue and persist it. If a connection is available, it is sent right away.
+     *
+     *  @param httpMethod          The HTTP method of the request
+     *  @param url                 The URL path of the request
+     *  @param data                The body of the request
+     *  @param completionListener  An optional listener to notify on the UI thread when the request has been acknowledged
+     *
+     *  @return The ID of the queued request, or null if the queue is full
+     */
+    public String enqueue(String httpMethod, String url, JSONObject data, Respoke.TaskCompletionListener completionListener) {
+        return enqueue(httpMethod, url, data, null, completionListener);
+    }
+
+
+    /**
+     *  Add a request for a group to the end of the queue and persist it. It is sent once a connection is available and
+     *  the client has joined the group on that connection.
+     *
+     *  @param httpMethod          The HTTP method of the request
+     *  @param url                 The URL path of the request
+     *  @param data                The body of the request
+     *  @param groupID             The ID of the group the request is addressed to, or null if it does not depend on group membership
+     *  @param completionListener  An optional listener to notify on the UI thread when the request has been acknowledged
+     *
+     *  @return The ID of the queued request, or null if the queue is full
+     */
+    public String enqueue(String httpMethod, String url, JSONObject data, String groupID, Respoke.TaskCompletionListener completionListener) {
+        QueuedRequest request = new QueuedRequest();
+        request.requestID = Respoke.makeGUID();
+        request.httpMethod = httpMethod;
+        request.url = url;
+        request.data = data;
+        request.groupID = groupID;
+
+        synchronized (this) {
+            if (requests.size() >= MAX_QUEUED_REQUESTS) {
+                Respoke.postTaskError(completionListener, "The outbound queue is full");
+                return null;
+            }
+
+            requests.add(request);
+
+            if (null != completionListener) {
+                completionListeners.put(request.requestID, completionListener);
+            }
+        }
+
+        persist();
+        flush();
+
+        return request.requestID;
+    }
+
+
+    /**
+     *  Notify the queue that a connection is available. This is used internally to the SDK and should not be called directly by your client application.
+     *
+     *  @param channel         The connected signaling channel to send requests through
+     *  @param joinedGroupIDs  The groups already joined on this connection
+     */
+    public void connectionAvailable(RespokeSignalingChannel channel, Collection<String> joinedGroupIDs) {
+        synchronized (this) {
+            generation++;
+            signalingChannel = channel;
+            this.joinedGroupIDs.clear();
+            this.joinedGroupIDs.addAll(joinedGroupIDs);
+            clearInFlight();
+        }
+
+        retryScheduler.reset();
+        flush();
+    }
+
+
+    /**
+     *  Notify the queue that the connection was lost. Requests that were not acknowledged remain queued. This is used internally to the SDK and should not be called directly by your client application.
+     */
+    public void connectionLost() {
+        synchronized (this) {
+            generation++;
+            signalingChannel = null;
+            joinedGroupIDs.clear();
+            clearInFlight();
+        }
+
+        retryScheduler.reset();
+    }
+
+
+    /**
+     *  Notify the queue that the client joined a group on the current connection, releasing any requests held for it. This is used internally to the SDK and should not be called directly by your client application.
+     *
+     *  @param groupID  The ID of the group that was joined
+     */
+    public void groupJoined(String groupID) {
+        synchronized (this) {
+            joinedGroupIDs.add(groupID);
+        }
+
+        flush();
+    }
+
+
+    /**
+     *  Notify the queue that the client left a group. Requests for it are held until it is joined again. This is used internally to the SDK and should not be called directly by your client application.
+     *
+     *  @param groupID  The ID of the group that was left
+     */
+    public synchronized void groupLeft(String groupID) {
+        joinedGroupIDs.remove(groupID);
+    }
+
+
+    /**
+     *  Remove every request from the queue and from disk without sending them
+     */
+    public void clear() {
+        synchronized (this) {
+            generation++;
+            requests.clear();
+            completionListeners.clear();
+            inFlightCount = 0;
+        }
+
+        persist();
+    }
+
+
+    /**
+     *  Stop using this queue. Pending requests remain on disk and will be restored by the next queue that is created.
+     */
+    public void close() {
+        connectionLost();
+        retryScheduler.shutdown();
+
+        // Quit from the persistence thread itself so that any writes already posted are completed first
+        persistThread.postTask(new Runnable() {
+            @Override
+            public void run() {
+                persistThread.quit();
+            }
+        });
+    }
+
+
+    //** Private methods
+
+
+    /**
+     *  Send the next batch of requests if a connection is available and no batch is outstanding
+     */
+    private void flush() {
+        ArrayList<QueuedRequest> batch = new ArrayList<QueuedRequest>();
+        RespokeSignalingChannel channel;
+        final int batchGeneration;
+
+        synchronized (this) {
+            channel = signalingChannel;
+
+            if ((null == channel) || !channel.isConnected() || (inFlightCount > 0) || retryScheduler.isPending()) {
+                // A rate-limited batch is retried once its backoff delay has passed
+                return;
+            }
+
+            for (QueuedRequest eachRequest : requests) {
+                if (batch.size() >= BATCH_SIZE) {
+                    break;
+                }
+
+                if ((null != eachRequest.groupID) && !joinedGroupIDs.contains(eachRequest.groupID)) {
+                    // Hold it until the group has been joined, later requests for other routes may still go
+                    continue;
+                }
+
+                eachRequest.inFlight = true;
+                batch.add(eachRequest);
+            }
+
+            inFlightCount = batch.size();
+            batchGeneration = generation;
+            batchRateLimited = false;
+        }
+
+        // The signaling channel sends requests one at a time in the order they are given, which preserves the queue order
+        for (final QueuedRequest eachRequest : batch) {
+            channel.sendRESTMessage(eachRequest.httpMethod, eachRequest.url, eachRequest.data, new RespokeSignalingChannel.RESTListener() {
+                @Override
+                public void onSuccess(Object response) {
+                    requestCompleted(eachRequest, batchGeneration, null);
+                }
+
+                @Override
+                public void onError(String errorMessage) {
+                    requestCompleted(eachRequest, batchGeneration, errorMessage);
+                }
+            });
+        }
+    }
+
+
+    private void requestCompleted(QueuedRequest request, int batchGeneration, String errorMessage) {
+        boolean rateLimited = RespokeSignalingChannel.ERROR_RATE_LIMITED.equals(errorMessage);
+        boolean transientError = RespokeSignalingChannel.ERROR_NOT_CONNECTED.equals(errorMessage) || rateLimited;
+        boolean removed = false;
+        boolean batchDone;
+        boolean retryLater;
+        Respoke.TaskCompletionListener completionListener = null;
+
+        synchronized (this) {
+            if (batchGeneration != generation) {
+                // The connection changed since this batch was sent, so the request is still queued for the next attempt
+                return;
+            }
+
+            request.inFlight = false;
+            inFlightCount--;
+
+            if (rateLimited) {
+                // Leave the request where it is, the batch is retried after a backoff delay
+                batchRateLimited = true;
+            } else if (transientError) {
+                // Leave the request where it is, it will be retried on the next connection
+            } else if (requests.remove(request)) {
+                removed = true;
+                completionListener = completionListeners.remove(request.requestID);
+            }
+
+            batchDone = (inFlightCount == 0);
+            retryLater = batchRateLimited;
+
+            if (batchDone && retryLater) {
+                // Still connected, so nothing else would trigger another attempt. Scheduled under the lock so that no
+                // other batch can start before the backoff delay is in place.
+                retryScheduler.schedule();
+            }
+        }
+
+        if (removed) {
+            persist();
+            Listener listener = (null != listenerReference) ? listenerReference.get() : null;
+
+            if (null == errorMessage) {
+                RespokeMetrics.MESSAGES_SENT.increment();
+                Respoke.postTaskSuccess(completionListener);
+
+                if (null != listener) {
+                    listener.onRequestSent(request.requestID);
+                }
+            } else {
+                Respoke.postTaskError(completionListener, errorMessage);
+
+                if (null != listener) {
+                    listener.onRequestFailed(request.requestID, errorMessage);
+                }
+            }
+        }
+
+        if (batchDone && !retryLater && !transientError) {
+            retryScheduler.reset();
+            flush();
+        }
+    }
+
+
+    private void clearInFlight() {
+        for (QueuedRequest eachRequest : requests) {
+            eachRequest.inFlight = false;
+        }
+
+        inFlightCount = 0;
+    }
+
+
+    /**
+     *  Write a snapshot of the queue to disk on the persistence thread
+     */
+    private void persist() {
+        final String contents;
+        final File file;
+
+        synchronized (this) {
+            if (null == queueFile) {
+                // Held in memory until the identity the requests belong to is known
+                return;
+            }
+
+            file = queueFile;
+            JSONArray array = new JSONArray();
+
+            for (QueuedRequest eachRequest : requests) {
+                try {
+                    JSONObject entry = new JSONObject();
+                    entry.put("id", eachRequest.requestID);
+                    entry.put("method", eachRequest.httpMethod);
+                    entry.put("url", eachRequest.url);
+
+                    if (null != eachRequest.data) {
+                        entry.put("data", eachRequest.data);
+                    }
+
+                    if (null != eachRequest.groupID) {
+                        entry.put("group", eachRequest.groupID);
+                    }
+
+                    array.put(entry);
+                } catch (JSONException e) {
+                    Log.d(TAG, "Unable to encode queued request " + eachRequest.requestID);
+                }
+            }
+
+            contents = array.toString();
+        }
+
+        persistThread.postTask(new Runnable() {
+            @Override
+            public void run() {
+                writeQueueFile(file, contents);
+            }
+        });
+    }
+
+
+    private void writeQueueFile(File queueFile, String contents) {
+        // Write to a temporary file first so that a crash mid-write can not corrupt the existing queue
+        File tempFile = new File(queueFile.getPath() + ".tmp");
+        FileOutputStream stream = null;
+
+        try {
+            stream = new FileOutputStream(tempFile);
+            stream.write(contents.getBytes("UTF-8"));
+            stream.getFD().sync();
+            stream.close();
+            stream = null;
+
+            if (!tempFile.renameTo(queueFile)) {
+                Log.d(TAG, "Unable to replace the outbound queue file");
+            }
+        } catch (IOException e) {
+            Log.d(TAG, "Unable to write the outbound queue file");
+        } finally {
+            if (null != stream) {
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                    // Nothing more can be done
+                }
+            }
+        }
+    }
+
+
+    private void restore() {
+        if (!queueFile.exists()) {
+            return;
+        }
+
+        FileInputStream stream = null;
+
+        try {
+            stream = new FileInputStream(queueFile);
+            byte[] contents = new byte[(int) queueFile.length()];
+            int offset = 0;
+
+            while (offset < contents.length) {
+                int count = stream.read(contents, offset, contents.length - offset);
+                if (count < 0) {
+                    break;
+                }
+                offset += count;
+            }
+
+            JSONArray array = new JSONArray(new String(contents, 0, offset, "UTF-8"));
+
+            for (int ii = 0; ii < array.length(); ii++) {
+                JSONObject entry = array.getJSONObject(ii);
+                QueuedRequest request = new QueuedRequest();
+                request.requestID = entry.getString("id");
+                request.httpMethod = entry.getString("method");
+                request.url = entry.getString("url");
+                request.data = entry.optJSONObject("data");
+                request.groupID = entry.has("group") ? entry.getString("group") : null;
+                requests.add(request);
+            }
+
+            Log.d(TAG, "Restored " + requests.size() + " queued requests");
+        } catch (IOException e) {
+            Log.d(TAG, "Unable to read the outbound queue file");
+        } catch (JSONException e) {
+            Log.d(TAG, "Discarding an unreadable outbound queue file");
+        } finally {
+            if (null != stream) {
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                    // Nothing more can be done
+                }
+            }
+        }
+    }
+
+
+    private static String queueFileName(String appID, String endpointID) {
+        try {
+            // The encoder escapes '@', so the separator can not be confused with part of either ID
+            return QUEUE_FILE_PREFIX + URLEncoder.encode((null != appID) ? appID : "", "UTF-8") + "@" + URLEncoder.encode(endpointID, "UTF-8") + ".json";
+        } catch (UnsupportedEncodingException e) {
+            // Every platform supports UTF-8
+            return QUEUE_FILE_PREFIX + (appID + "@" + endpointID).hashCode() + ".json";
+        }
+    }
+}
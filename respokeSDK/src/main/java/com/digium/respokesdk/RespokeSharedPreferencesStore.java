@@ -0,0 +1,51 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ *  Keeps the SDK's persistent values in the application's default-named shared preferences, where earlier versions
+ *  of the SDK stored them
+ */
+public class RespokeSharedPreferencesStore implements RespokeKeyValueStore {
+
+    private final SharedPreferences prefs;
+
+
+    /**
+     *  Create a store
+     *
+     *  @param context  An application context with which to access the shared preferences
+     */
+    public RespokeSharedPreferencesStore(Context context) {
+        prefs = context.getSharedPreferences(context.getPackageName(), Context.MODE_PRIVATE);
+    }
+
+
+    @Override
+    public String getString(String key, String defaultValue) {
+        return prefs.getString(key, defaultValue);
+    }
+
+
+    @Override
+    public void putString(String key, String value) {
+        prefs.edit().putString(key, value).apply();
+    }
+
+
+    @Override
+    public void remove(String key) {
+        prefs.edit().remove(key).apply();
+    }
+}
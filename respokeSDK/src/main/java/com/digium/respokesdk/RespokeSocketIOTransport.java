@@ -0,0 +1,101 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import org.json.JSONArray;
+
+import com.koushikdutta.async.http.AsyncHttpClient;
+import com.koushikdutta.async.http.socketio.Acknowledge;
+import com.koushikdutta.async.http.socketio.ConnectCallback;
+import com.koushikdutta.async.http.socketio.DisconnectCallback;
+import com.koushikdutta.async.http.socketio.ErrorCallback;
+import com.koushikdutta.async.http.socketio.EventCallback;
+import com.koushikdutta.async.http.socketio.SocketIOClient;
+
+
+/**
+ *  Carries signaling over the AndroidAsync socket.io client
+ */
+public class RespokeSocketIOTransport implements RespokeSignalingTransport {
+
+    private volatile SocketIOClient client;  ///< The connected socket, or null
+
+
+    public void connect(String url, final String[] eventNames, final Listener listener) {
+        SocketIOClient.connect(AsyncHttpClient.getDefaultInstance(), url, new ConnectCallback() {
+            @Override
+            public void onConnectCompleted(Exception ex, SocketIOClient newClient) {
+                if (ex != null) {
+                    listener.onConnectFailed(ex.toString(), RespokeSocketIOTransport.this);
+                    return;
+                }
+
+                client = newClient;
+
+                newClient.setDisconnectCallback(new DisconnectCallback() {
+                    @Override
+                    public void onDisconnect(Exception e) {
+                        if (null != e) {
+                            e.printStackTrace();
+                        }
+
+                        client = null;
+                        listener.onDisconnect(RespokeSocketIOTransport.this);
+                    }
+                });
+
+                newClient.setErrorCallback(new ErrorCallback() {
+                    @Override
+                    public void onError(String error) {
+                        listener.onError(error, RespokeSocketIOTransport.this);
+                    }
+                });
+
+                for (final String eachName : eventNames) {
+                    newClient.on(eachName, new EventCallback() {
+                        @Override
+                        public void onEvent(JSONArray arguments, Acknowledge acknowledge) {
+                            listener.onEvent(eachName, arguments, RespokeSocketIOTransport.this);
+                        }
+                    });
+                }
+
+                listener.onConnect(RespokeSocketIOTransport.this);
+            }
+        });
+    }
+
+
+    public void emit(String name, JSONArray arguments, final Acknowledgement acknowledgement) {
+        SocketIOClient currentClient = client;
+
+        if (null != currentClient) {
+            currentClient.emit(name, arguments, new Acknowledge() {
+                @Override
+                public void acknowledge(JSONArray arguments) {
+                    acknowledgement.acknowledge(arguments);
+                }
+            });
+        } else {
+            // The socket closed after the request was dequeued, so it will never be acknowledged
+            acknowledgement.acknowledge(null);
+        }
+    }
+
+
+    public void disconnect() {
+        SocketIOClient currentClient = client;
+
+        if (null != currentClient) {
+            currentClient.disconnect();
+        }
+    }
+}
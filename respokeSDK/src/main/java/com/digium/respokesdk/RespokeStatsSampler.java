@@ -0,0 +1,318 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdk;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import org.webrtc.PeerConnection;
+import org.webrtc.StatsObserver;
+import org.webrtc.StatsReport;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ *  Polls the WebRTC statistics of a call at a fixed interval and reduces each set of raw reports to a
+ *  RespokeCallStats summary. The most recent summaries are kept in a bounded history, which stays available after
+ *  the call has ended so it can be attached to a problem report.
+ */
+public class RespokeStatsSampler {
+
+    public static final int DEFAULT_HISTORY_SIZE = 120;  ///< The number of samples kept by default, which is two minutes at one sample per second
+
+    private final WeakReference<RespokeCall> callReference;
+    private final RespokeCallStats[] history;  ///< A ring buffer of the most recent samples
+    private int historyStart;  ///< The index of the oldest sample in the ring buffer
+    private int historyCount;  ///< The number of samples in the ring buffer
+    private HashMap<String, StreamCounters> previousCounters;  ///< The cumulative counters of each stream as of the last sample, keyed by ssrc
+    private WeakReference<Listener> listenerReference;
+    private final Handler sampleHandler;
+    private long sampleInterval;
+    private boolean running;
+    private final Runnable sampleTask = new Runnable() {
+        @Override
+        public void run() {
+            RespokeCall call = callReference.get();
+
+            if (running && (null != call) && call.isActive()) {
+                PeerConnection peerConnection = call.getPeerConnection();
+
+                // The peer connection is created once the TURN credentials arrive, so keep polling until it exists
+                if (null != peerConnection) {
+                    peerConnection.getStats(statsObserver, null);
+                }
+
+                sampleHandler.postDelayed(this, sampleInterval);
+            }
+        }
+    };
+    private final StatsObserver statsObserver = new StatsObserver() {
+        @Override
+        public void onComplete(StatsReport[] reports) {
+            final RespokeCallStats stats = process(reports, SystemClock.elapsedRealtime());
+
+            sampleHandler.post(new Runnable() {
+                public void run() {
+                    RespokeCall call = callReference.get();
+                    Listener listener = (null != listenerReference) ? listenerReference.get() : null;
+
+                    if (running && (null != call)) {
+                        call.statsSampled(stats);
+                    }
+
+                    if (running && (null != listener)) {
+                        listener.onCallStats(stats, RespokeStatsSampler.this);
+                    }
+                }
+            });
+        }
+    };
+
+
+    /**
+     *  A listener interface to receive each new sample
+     */
+    public interface Listener {
+
+        /**
+         *  Receive a new sample of the call statistics. This is called on the UI thread.
+         *
+         *  @param stats   The summary of the sample
+         *  @param sender  The sampler that took the sample
+         */
+        void onCallStats(RespokeCallStats stats, RespokeStatsSampler sender);
+
+    }
+
+
+    private static class StreamCounters {
+        double timestamp;
+        long bytes;
+        long packets;
+        long packetsLost;
+    }
+
+
+    /**
+     *  Create a sampler for a call. Sampling does not begin until start is called.
+     *
+     *  @param call         The call to sample
+     *  @param historySize  The number of samples to keep
+     */
+    public RespokeStatsSampler(RespokeCall call, int historySize) {
+        callReference = new WeakReference<RespokeCall>(call);
+        history = new RespokeCallStats[Math.max(1, historySize)];
+        previousCounters = new HashMap<String, StreamCounters>();
+        sampleHandler = new Handler(Looper.getMainLooper());
+    }
+
+
+    /**
+     *  Set a receiver for each new sample
+     *
+     *  @param listener  The receiver for samples, or null to stop receiving them
+     */
+    public void setListener(Listener listener) {
+        listenerReference = new WeakReference<Listener>(listener);
+    }
+
+
+    /**
+     *  Get the receiver of each new sample
+     *
+     *  @return The listener, or null if there is none
+     */
+    public Listener getListener() {
+        return (null != listenerReference) ? listenerReference.get() : null;
+    }
+
+
+    /**
+     *  Begin sampling, replacing any earlier interval. Sampling stops by itself when the call ends.
+     *
+     *  @param interval  The time between samples, in milliseconds
+     */
+    public void start(long interval) {
+        sampleHandler.removeCallbacks(sampleTask);
+        sampleInterval = interval;
+        running = true;
+        sampleHandler.postDelayed(sampleTask, interval);
+    }
+
+
+    /**
+     *  Stop sampling. The history is kept.
+     */
+    public void stop() {
+        running = false;
+        sampleHandler.removeCallbacks(sampleTask);
+    }
+
+
+    /**
+     *  Indicates if the sampler is currently polling the call
+     *
+     *  @return True if sampling
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+
+    /**
+     *  Get the samples in the history, oldest first
+     *
+     *  @return A copy of the history
+     */
+    public synchronized List<RespokeCallStats> getHistory() {
+        ArrayList<RespokeCallStats> result = new ArrayList<RespokeCallStats>(historyCount);
+
+        for (int ii = 0; ii < historyCount; ii++) {
+            result.add(history[(historyStart + ii) % history.length]);
+        }
+
+        return result;
+    }
+
+
+    /**
+     *  Get the most recent sample
+     *
+     *  @return The sample, or null if none has been taken
+     */
+    public synchronized RespokeCallStats getLatest() {
+        return (historyCount > 0) ? history[(historyStart + historyCount - 1) % history.length] : null;
+    }
+
+
+    /**
+     *  Reduce a set of raw WebRTC reports to a summary and add it to the history. This is used internally to the SDK and should not be called directly by your client application.
+     *
+     *  @param reports  The reports delivered by the peer connection
+     *  @param now      The time of the sample, in milliseconds of device uptime
+     *
+     *  @return The summary
+     */
+    public synchronized RespokeCallStats process(StatsReport[] reports, long now) {
+        ArrayList<RespokeCallStats.TrackStats> tracks = new ArrayList<RespokeCallStats.TrackStats>();
+        HashMap<String, StreamCounters> currentCounters = new HashMap<String, StreamCounters>();
+
+        for (StatsReport eachReport : reports) {
+            if ("ssrc".equals(eachReport.type)) {
+                tracks.add(summarizeStream(eachReport, currentCounters));
+            }
+        }
+
+        // Only keep the counters of streams that still exist, so the map cannot grow over a long call
+        previousCounters = currentCounters;
+
+        RespokeCallStats stats = new RespokeCallStats(now, tracks);
+
+        if (historyCount < history.length) {
+            history[(historyStart + historyCount) % history.length] = stats;
+            historyCount++;
+        } else {
+            history[historyStart] = stats;
+            historyStart = (historyStart + 1) % history.length;
+        }
+
+        return stats;
+    }
+
+
+    //** Private methods
+
+
+    private RespokeCallStats.TrackStats summarizeStream(StatsReport report, HashMap<String, StreamCounters> currentCounters) {
+        String trackId = null;
+        String mediaType = "audio";
+        boolean outbound = false;
+        long packetsSent = RespokeCallStats.UNKNOWN;
+        long rtt = RespokeCallStats.UNKNOWN;
+        long jitter = RespokeCallStats.UNKNOWN;
+        int frameRate = RespokeCallStats.UNKNOWN;
+        int encodeUsage = RespokeCallStats.UNKNOWN;
+        StreamCounters counters = new StreamCounters();
+        counters.timestamp = report.timestamp;
+
+        for (StatsReport.Value eachValue : report.values) {
+            String name = eachValue.name;
+
+            if ("googTrackId".equals(name)) {
+                trackId = eachValue.value;
+            } else if ("mediaType".equals(name)) {
+                mediaType = eachValue.value;
+            } else if ("bytesSent".equals(name)) {
+                outbound = true;
+                counters.bytes = parseLong(eachValue.value);
+            } else if ("bytesReceived".equals(name)) {
+                counters.bytes = parseLong(eachValue.value);
+            } else if ("packetsSent".equals(name)) {
+                packetsSent = parseLong(eachValue.value);
+            } else if ("packetsReceived".equals(name)) {
+                counters.packets = parseLong(eachValue.value);
+            } else if ("packetsLost".equals(name)) {
+                counters.packetsLost = parseLong(eachValue.value);
+            } else if ("googRtt".equals(name)) {
+                rtt = parseLong(eachValue.value);
+            } else if ("googJitterReceived".equals(name)) {
+                jitter = parseLong(eachValue.value);
+            } else if ("googFrameRateSent".equals(name) || "googFrameRateReceived".equals(name)) {
+                frameRate = (int) parseLong(eachValue.value);
+            } else if ("googEncodeUsagePercent".equals(name)) {
+                encodeUsage = (int) parseLong(eachValue.value);
+            }
+        }
+
+        if (outbound) {
+            counters.packets = packetsSent;
+        }
+
+        currentCounters.put(report.id, counters);
+        StreamCounters previous = previousCounters.get(report.id);
+        double bitrate = 0;
+        long bytes = counters.bytes;
+        long packets = counters.packets;
+        long lost = counters.packetsLost;
+
+        if (null != previous) {
+            double elapsed = counters.timestamp - previous.timestamp;
+            bytes -= previous.bytes;
+            packets -= previous.packets;
+            lost -= previous.packetsLost;
+
+            if (elapsed > 0) {
+                // Bits per millisecond is the same as kilobits per second
+                bitrate = (bytes * 8) / elapsed;
+            }
+        }
+
+        // Received packets do not include the lost ones, but sent packets do
+        long expected = outbound ? packets : (packets + lost);
+        double loss = ((expected > 0) && (lost > 0)) ? (lost * 100.0 / expected) : 0;
+
+        return new RespokeCallStats.TrackStats(report.id, trackId, mediaType, outbound, Math.max(0, bitrate),
+                Math.min(100, loss), rtt, jitter, frameRate, encodeUsage);
+    }
+
+
+    private static long parseLong(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return RespokeCallStats.UNKNOWN;
+        }
+    }
+}
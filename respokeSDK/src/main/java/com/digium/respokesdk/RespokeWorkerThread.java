@@ -16,7 +16,7 @@ import android.os.HandlerThread;
 /**
  * Implements a worker thread for queueing and processing socket transactions with the Respoke service
  */
-public class RespokeWorkerThread extends HandlerThread {
+public class RespokeWorkerThread extends HandlerThread implements RespokeScheduler {
 
     private Handler workerHandler;
 
@@ -36,6 +36,11 @@ public class RespokeWorkerThread extends HandlerThread {
     }
 
 
+    public void cancelTask(Runnable task) {
+        workerHandler.removeCallbacks(task);
+    }
+
+
     public void prepareHandler(){
         workerHandler = new Handler(getLooper());
     }
@@ -45,4 +50,34 @@ public class RespokeWorkerThread extends HandlerThread {
         // Cancel all pending tasks and callbacks, but leave the thread ready to run new tasks
         workerHandler.removeCallbacksAndMessages(null);
     }
+
+
+    @Override
+    public void post(Runnable task) {
+        postTask(task);
+    }
+
+
+    @Override
+    public void postDelayed(Runnable task, long delayMillis) {
+        postTaskDelayed(task, delayMillis);
+    }
+
+
+    @Override
+    public void cancel(Runnable task) {
+        cancelTask(task);
+    }
+
+
+    @Override
+    public void cancelAll() {
+        cancelAllTasks();
+    }
+
+
+    @Override
+    public void shutdown() {
+        quit();
+    }
 }
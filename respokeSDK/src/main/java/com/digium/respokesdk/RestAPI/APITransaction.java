@@ -32,6 +32,7 @@ import android.os.AsyncTask;
 import android.util.Log;
 
 import com.digium.respokesdk.BuildConfig;
+import com.digium.respokesdk.RespokeSignalingProtocol;
 
 
 public class APITransaction {
@@ -43,7 +44,7 @@ public class APITransaction {
      * Rejects a message if the body size is greater than this. It is enforced server side, so changing this
      * won't make the bodySizeLimit any bigger, this just gives you a sensible error if it's too big.
      */
-    public static final long bodySizeLimit = 20000;
+    public static final long bodySizeLimit = RespokeSignalingProtocol.BODY_SIZE_LIMIT;
 
 	public boolean abort;
     public boolean success;
@@ -0,0 +1,359 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdktest.functional;
+
+import com.digium.respokesdk.Respoke;
+import com.digium.respokesdk.RespokeCall;
+import com.digium.respokesdk.RespokeClient;
+import com.digium.respokesdk.RespokeDataChannel;
+import com.digium.respokesdk.RespokeDataChannelOptions;
+import com.digium.respokesdk.RespokeDirectConnection;
+import com.digium.respokesdk.RespokeEndpoint;
+import com.digium.respokesdk.RespokeGroup;
+import com.digium.respokesdk.RespokeSendQueue;
+import com.digium.respokesdktest.RespokeTestCase;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+public class DataChannelTests extends RespokeTestCase implements RespokeClient.Listener, RespokeCall.Listener, RespokeDirectConnection.Listener, RespokeDirectConnection.ChannelListener, RespokeDataChannel.Listener {
+
+    private static final int DRAIN_MESSAGE_COUNT = 200;
+    private static final int DRAIN_MESSAGE_SIZE = 1000;
+
+    private volatile boolean didConnect;
+    private volatile boolean didHangup;
+    private RespokeEndpoint firstEndpoint;
+    private RespokeDirectConnection callerDirectConnection;
+    private volatile RespokeDirectConnection calleeDirectConnection;
+    private volatile boolean didGetCallerOnOpen;
+    private volatile boolean didGetCalleeOnOpen;
+    private final Map<String, RespokeDataChannel> calleeOpenedChannels = Collections.synchronizedMap(new HashMap<String, RespokeDataChannel>());
+    private final List<RespokeDataChannel> openedChannels = Collections.synchronizedList(new ArrayList<RespokeDataChannel>());
+    private final List<RespokeDataChannel> closedChannels = Collections.synchronizedList(new ArrayList<RespokeDataChannel>());
+    private final List<String> receivedMessages = Collections.synchronizedList(new ArrayList<String>());
+    private volatile int sentCount;
+    private volatile int failedCount;
+    private volatile Condition condition;
+
+
+    /**
+     *  Something the test is waiting for, checked whenever a callback arrives
+     */
+    private interface Condition {
+        boolean isMet();
+    }
+
+
+    public void testNamedChannels() {
+        final String testEndpointID = generateTestEndpointID();
+        final RespokeClient firstClient = createTestClient(testEndpointID, this);
+        final String secondTestEndpointID = generateTestEndpointID();
+        final RespokeClient secondClient = createTestClient(secondTestEndpointID, this);
+
+        firstEndpoint = secondClient.getEndpoint(testEndpointID, false);
+        RespokeEndpoint secondEndpoint = firstClient.getEndpoint(secondTestEndpointID, false);
+
+        callerDirectConnection = secondEndpoint.startDirectConnection();
+        callerDirectConnection.setListener(this);
+        RespokeCall call = callerDirectConnection.getCall();
+        call.setListener(this);
+
+        assertTrue("Test timed out", waitFor(RespokeTestCase.CALL_TEST_TIMEOUT, new Condition() {
+            @Override
+            public boolean isMet() {
+                return didConnect && didGetCallerOnOpen && didGetCalleeOnOpen;
+            }
+        }));
+
+        // Messages on each label should arrive on the channel with the same label
+
+        final RespokeDataChannel chat = callerDirectConnection.openChannel("chat", RespokeDataChannelOptions.RELIABLE);
+        final RespokeDataChannel state = callerDirectConnection.openChannel("state", RespokeDataChannelOptions.UNRELIABLE);
+        assertNotNull("Should open a channel", chat);
+        assertNotNull("Should open a channel", state);
+        assertSame("Should return the open channel for a label that is already open", chat, callerDirectConnection.openChannel("chat", null));
+        chat.setListener(this);
+        state.setListener(this);
+
+        assertTrue("Test timed out", waitFor(RespokeTestCase.TEST_TIMEOUT, new Condition() {
+            @Override
+            public boolean isMet() {
+                return openedChannels.contains(chat) && openedChannels.contains(state) && calleeOpenedChannels.containsKey("chat") && calleeOpenedChannels.containsKey("state");
+            }
+        }));
+
+        chat.sendMessage("on chat", null);
+        state.sendMessage("on state", null);
+
+        assertTrue("Test timed out", waitFor(RespokeTestCase.TEST_TIMEOUT, new Condition() {
+            @Override
+            public boolean isMet() {
+                return receivedMessages.size() >= 2;
+            }
+        }));
+
+        assertTrue("Should route the chat message to the chat channel", receivedMessages.contains("chat:on chat"));
+        assertTrue("Should route the state message to the state channel", receivedMessages.contains("state:on state"));
+
+        // A sender that outruns the channel should have its backlog drained without losing anything
+
+        receivedMessages.clear();
+        chat.configureSendQueue(RespokeSendQueue.POLICY_FAIL, 2 * DRAIN_MESSAGE_SIZE, 8 * DRAIN_MESSAGE_SIZE, DRAIN_MESSAGE_COUNT * DRAIN_MESSAGE_SIZE);
+        Respoke.TaskCompletionListener completion = new Respoke.TaskCompletionListener() {
+            @Override
+            public void onSuccess() {
+                sentCount++;
+                update();
+            }
+
+            @Override
+            public void onError(String errorMessage) {
+                failedCount++;
+                update();
+            }
+        };
+
+        char[] text = new char[DRAIN_MESSAGE_SIZE];
+        Arrays.fill(text, 'x');
+        String message = new String(text);
+
+        for (int ii = 0; ii < DRAIN_MESSAGE_COUNT; ii++) {
+            chat.sendMessage(message, completion);
+        }
+
+        assertTrue("Test timed out", waitFor(RespokeTestCase.TEST_TIMEOUT, new Condition() {
+            @Override
+            public boolean isMet() {
+                return ((sentCount + failedCount) == DRAIN_MESSAGE_COUNT) && (receivedMessages.size() == DRAIN_MESSAGE_COUNT);
+            }
+        }));
+
+        assertEquals("Should not fail any queued message", 0, failedCount);
+        assertTrue("Should be writable once drained", chat.isWritable());
+
+        // When both clients open the same label at once, both should end up on the caller's channel
+
+        final RespokeDataChannel callerShared = callerDirectConnection.openChannel("shared", null);
+        final RespokeDataChannel calleeShared = calleeDirectConnection.openChannel("shared", null);
+        callerShared.setListener(this);
+        calleeShared.setListener(this);
+
+        assertTrue("Test timed out", waitFor(RespokeTestCase.TEST_TIMEOUT, new Condition() {
+            @Override
+            public boolean isMet() {
+                return closedChannels.contains(calleeShared) && calleeOpenedChannels.containsKey("shared");
+            }
+        }));
+
+        assertSame("The caller should keep its own channel", callerShared, callerDirectConnection.getChannel("shared"));
+        assertSame("The callee should switch to the caller's channel", calleeOpenedChannels.get("shared"), calleeDirectConnection.getChannel("shared"));
+
+        receivedMessages.clear();
+        calleeDirectConnection.getChannel("shared").sendMessage("back to the caller", null);
+
+        assertTrue("Test timed out", waitFor(RespokeTestCase.TEST_TIMEOUT, new Condition() {
+            @Override
+            public boolean isMet() {
+                return receivedMessages.contains("shared:back to the caller");
+            }
+        }));
+
+        // Closing a channel should close it on both sides, and leave the others open
+
+        final RespokeDataChannel calleeChat = calleeOpenedChannels.get("chat");
+        chat.close();
+
+        assertTrue("Test timed out", waitFor(RespokeTestCase.TEST_TIMEOUT, new Condition() {
+            @Override
+            public boolean isMet() {
+                return closedChannels.contains(chat) && closedChannels.contains(calleeChat);
+            }
+        }));
+
+        assertNull("Should forget a closed channel", callerDirectConnection.getChannel("chat"));
+        assertNull("Should forget a channel the remote client closed", calleeDirectConnection.getChannel("chat"));
+        assertTrue("Should leave the other channels open", state.isOpen());
+
+        call.hangup(true);
+
+        assertTrue("Test timed out", waitFor(RespokeTestCase.TEST_TIMEOUT, new Condition() {
+            @Override
+            public boolean isMet() {
+                return didHangup && closedChannels.contains(state);
+            }
+        }));
+    }
+
+
+    // RespokeClient.Listener methods
+
+
+    public void onConnect(RespokeClient sender) {
+        asyncTaskDone = true;
+    }
+
+
+    public void onDisconnect(RespokeClient sender, boolean reconnecting) {
+        // Not under test
+    }
+
+
+    public void onError(RespokeClient sender, String errorMessage) {
+        assertTrue("Should not produce any client errors during testing", false);
+        asyncTaskDone = true;
+    }
+
+
+    public void onCall(RespokeClient sender, RespokeCall call) {
+        // Not under test
+    }
+
+
+    public void onIncomingDirectConnection(RespokeDirectConnection directConnection, RespokeEndpoint endpoint) {
+        assertTrue("Should originate from the first Endpoint", endpoint == firstEndpoint);
+        calleeDirectConnection = directConnection;
+        calleeDirectConnection.setListener(this);
+        directConnection.accept(getContext());
+        update();
+    }
+
+
+    public void onMessage(String message, RespokeEndpoint endpoint, RespokeGroup group, Date timestamp, Boolean didSend) {
+        // Not under test
+    }
+
+
+    // RespokeCall.Listener methods
+
+
+    public void onError(String errorMessage, RespokeCall sender) {
+        assertTrue("Should perform a call without any errors. Error: " + errorMessage, false);
+        asyncTaskDone = true;
+    }
+
+
+    public void onHangup(RespokeCall sender) {
+        didHangup = true;
+        update();
+    }
+
+
+    public void onConnected(RespokeCall sender) {
+        didConnect = true;
+        update();
+    }
+
+
+    public void directConnectionAvailable(RespokeDirectConnection directConnection, RespokeEndpoint endpoint) {
+        // Not under test
+    }
+
+
+    // RespokeDirectConnection.Listener methods
+
+
+    public void onStart(RespokeDirectConnection sender) {
+        // Not under test
+    }
+
+
+    public void onOpen(RespokeDirectConnection sender) {
+        if (sender == callerDirectConnection) {
+            didGetCallerOnOpen = true;
+        } else {
+            didGetCalleeOnOpen = true;
+        }
+
+        update();
+    }
+
+
+    public void onClose(RespokeDirectConnection sender) {
+        // Not under test
+    }
+
+
+    public void onMessage(String message, RespokeDirectConnection sender) {
+        assertTrue("No messages should have been received on the main channel", false);
+    }
+
+
+    // RespokeDirectConnection.ChannelListener methods
+
+
+    public void onChannelOpened(RespokeDataChannel channel, RespokeDirectConnection sender) {
+        assertTrue("Only the callee should be told about channels opened by the remote client", sender == calleeDirectConnection);
+        channel.setListener(this);
+        calleeOpenedChannels.put(channel.getLabel(), channel);
+        update();
+    }
+
+
+    // RespokeDataChannel.Listener methods
+
+
+    public void onOpen(RespokeDataChannel sender) {
+        assertTrue("Should be called in UI thread", RespokeTestCase.currentlyOnUIThread());
+        openedChannels.add(sender);
+        update();
+    }
+
+
+    public void onClose(RespokeDataChannel sender) {
+        assertTrue("Should be called in UI thread", RespokeTestCase.currentlyOnUIThread());
+        closedChannels.add(sender);
+        update();
+    }
+
+
+    public void onMessage(String message, RespokeDataChannel sender) {
+        assertTrue("Should be called in UI thread", RespokeTestCase.currentlyOnUIThread());
+        receivedMessages.add(sender.getLabel() + ":" + message);
+        update();
+    }
+
+
+    public void onBinaryMessage(ByteBuffer message, RespokeDataChannel sender) {
+        assertTrue("No binary messages should have been received", false);
+    }
+
+
+    public void onWritabilityChanged(boolean writable, RespokeDataChannel sender) {
+        // The drain is checked through the send completions
+    }
+
+
+    //** Private methods
+
+
+    private boolean waitFor(long timeoutSecs, Condition newCondition) {
+        condition = newCondition;
+        asyncTaskDone = newCondition.isMet();
+        return waitForCompletion(timeoutSecs);
+    }
+
+
+    private void update() {
+        Condition current = condition;
+
+        if ((null != current) && current.isMet()) {
+            asyncTaskDone = true;
+        }
+    }
+}
@@ -18,10 +18,14 @@ import com.digium.respokesdk.RespokeEndpoint;
 import com.digium.respokesdk.RespokeGroup;
 import com.digium.respokesdktest.RespokeTestCase;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Date;
 
 
-public class DirectConnectionTests extends RespokeTestCase implements RespokeClient.Listener, RespokeEndpoint.Listener, RespokeCall.Listener, RespokeDirectConnection.Listener {
+public class DirectConnectionTests extends RespokeTestCase implements RespokeClient.Listener, RespokeEndpoint.Listener, RespokeCall.Listener, RespokeDirectConnection.Listener, RespokeDirectConnection.BinaryListener {
+
+    private static final byte[] TEST_BINARY_MESSAGE = new byte[]{ 0, 1, 2, (byte) 0xfe, (byte) 0xff, 0, 42 };
 
     private boolean callbackDidSucceed;
     private boolean messageReceived;
@@ -37,6 +41,7 @@ public class DirectConnectionTests extends RespokeTestCase implements RespokeCli
     private RespokeDirectConnection callerDirectConnection;
     private RespokeDirectConnection calleeDirectConnection;
     private Object receivedMessageObject;
+    private byte[] receivedBinaryMessage;
 
 
     public void testDirectConnection() {
@@ -102,6 +107,35 @@ public class DirectConnectionTests extends RespokeTestCase implements RespokeCli
         assertTrue("Received message should be a string", receivedMessageObject instanceof String);
         assertTrue("Should have received correct message", receivedMessageObject.equals(TEST_MESSAGE));
 
+        // Test sending a binary message over the direct connection
+
+        asyncTaskDone = false;
+        callbackDidSucceed = false;
+        messageReceived = false;
+        receivedBinaryMessage = null;
+        ByteBuffer binaryMessage = ByteBuffer.allocateDirect(TEST_BINARY_MESSAGE.length);
+        binaryMessage.put(TEST_BINARY_MESSAGE);
+        binaryMessage.flip();
+        callerDirectConnection.sendBinary(binaryMessage, new Respoke.TaskCompletionListener() {
+            @Override
+            public void onSuccess() {
+                assertTrue("Should be called in UI thread", RespokeTestCase.currentlyOnUIThread());
+                callbackDidSucceed = true;
+                asyncTaskDone = messageReceived;
+            }
+
+            @Override
+            public void onError(String errorMessage) {
+                assertTrue("Should not encounter an error when sending binary data over a direct connection. Error: " + errorMessage, false);
+                asyncTaskDone = true;
+            }
+        });
+
+        assertEquals("sendBinary should leave the buffer position alone", 0, binaryMessage.position());
+        assertTrue("Test timed out", waitForCompletion(RespokeTestCase.TEST_TIMEOUT));
+        assertTrue("sendBinary should have called the successHandler", callbackDidSucceed);
+        assertTrue("Should have received the same bytes", Arrays.equals(TEST_BINARY_MESSAGE, receivedBinaryMessage));
+
         asyncTaskDone = false;
         didGetCallerOnClose = false;
         didGetCalleeOnClose = false;
@@ -248,4 +282,20 @@ public class DirectConnectionTests extends RespokeTestCase implements RespokeCli
         asyncTaskDone = callbackDidSucceed;
     }
 
+
+    // RespokeDirectConnection.BinaryListener methods
+
+
+    public void onBinaryMessage(ByteBuffer message, RespokeDirectConnection sender) {
+        assertTrue("Should reference the correct direct connection object", sender == calleeDirectConnection);
+        assertTrue("Should not be writable", message.isReadOnly());
+
+        // The buffer is only valid during this callback, so copy it before handing it to the test thread
+        byte[] copy = new byte[message.remaining()];
+        message.get(copy);
+        receivedBinaryMessage = copy;
+        messageReceived = true;
+        asyncTaskDone = callbackDidSucceed;
+    }
+
 }
@@ -0,0 +1,67 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdktest.unit;
+
+import com.digium.respokesdk.RespokeCallSetupTimeline;
+import com.digium.respokesdktest.RespokeTestCase;
+
+
+public class RespokeCallSetupTimelineTests extends RespokeTestCase {
+
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        RespokeCallSetupTimeline.getAggregate().reset();
+    }
+
+
+    public void testPhasesAreRecordedOnce() throws InterruptedException {
+        RespokeCallSetupTimeline timeline = new RespokeCallSetupTimeline();
+        assertEquals("Unreached phases should report -1", -1, timeline.getElapsed(RespokeCallSetupTimeline.PHASE_ICE_CONNECTED));
+
+        assertTrue("Should record the first mark", timeline.mark(RespokeCallSetupTimeline.PHASE_SETUP_STARTED));
+        Thread.sleep(50);
+        assertTrue("Should record the first mark", timeline.mark(RespokeCallSetupTimeline.PHASE_ICE_CONNECTED));
+        long elapsed = timeline.getElapsed(RespokeCallSetupTimeline.PHASE_ICE_CONNECTED);
+        assertTrue("Should measure the time since setup started", elapsed >= 50);
+
+        Thread.sleep(20);
+        assertFalse("Should ignore a second mark", timeline.mark(RespokeCallSetupTimeline.PHASE_ICE_CONNECTED));
+        assertEquals("Should keep the first timestamp", elapsed, timeline.getElapsed(RespokeCallSetupTimeline.PHASE_ICE_CONNECTED));
+        assertEquals("Should measure the duration between phases", elapsed, timeline.getDuration(RespokeCallSetupTimeline.PHASE_SETUP_STARTED, RespokeCallSetupTimeline.PHASE_ICE_CONNECTED));
+        assertEquals("Should not measure a duration to an unreached phase", -1, timeline.getDuration(RespokeCallSetupTimeline.PHASE_SETUP_STARTED, RespokeCallSetupTimeline.PHASE_FIRST_MEDIA));
+    }
+
+
+    public void testAggregate() throws InterruptedException {
+        RespokeCallSetupTimeline fast = new RespokeCallSetupTimeline();
+        fast.mark(RespokeCallSetupTimeline.PHASE_SETUP_STARTED);
+        fast.mark(RespokeCallSetupTimeline.PHASE_ICE_CONNECTED);
+
+        RespokeCallSetupTimeline slow = new RespokeCallSetupTimeline();
+        slow.mark(RespokeCallSetupTimeline.PHASE_SETUP_STARTED);
+        Thread.sleep(50);
+        slow.mark(RespokeCallSetupTimeline.PHASE_ICE_CONNECTED);
+
+        assertTrue("Should add the timeline", fast.complete());
+        assertTrue("Should add the timeline", slow.complete());
+        assertFalse("Should only add a timeline once", slow.complete());
+
+        RespokeCallSetupTimeline.Aggregate aggregate = RespokeCallSetupTimeline.getAggregate();
+        assertEquals("Should count both setups", 2, aggregate.getCount(RespokeCallSetupTimeline.PHASE_ICE_CONNECTED));
+        assertEquals("Should not count unreached phases", 0, aggregate.getCount(RespokeCallSetupTimeline.PHASE_FIRST_MEDIA));
+        assertEquals("Should report no average for unreached phases", -1, aggregate.getAverage(RespokeCallSetupTimeline.PHASE_FIRST_MEDIA));
+        assertTrue("Should record the slowest setup", aggregate.getMaximum(RespokeCallSetupTimeline.PHASE_ICE_CONNECTED) >= 50);
+        assertTrue("Should record the fastest setup", aggregate.getMinimum(RespokeCallSetupTimeline.PHASE_ICE_CONNECTED) < 50);
+        assertEquals("Should name the phase", "iceConnected", RespokeCallSetupTimeline.getPhaseName(RespokeCallSetupTimeline.PHASE_ICE_CONNECTED));
+    }
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdktest.unit;
+
+import android.hardware.Camera;
+
+import com.digium.respokesdk.RespokeCamera;
+import com.digium.respokesdktest.RespokeTestCase;
+
+import java.util.List;
+
+
+public class RespokeCameraTests extends RespokeTestCase {
+
+
+    public void testDiscoveryIsCached() {
+        List<RespokeCamera> cameras = RespokeCamera.getCameras();
+        assertEquals("Should find every camera on the device", Camera.getNumberOfCameras(), cameras.size());
+        assertSame("Should only discover the cameras once", cameras, RespokeCamera.getCameras());
+
+        for (RespokeCamera each : cameras) {
+            assertTrue("Should use the WebRTC device name", each.deviceName.startsWith("Camera " + each.index + ", Facing "));
+        }
+    }
+
+
+    public void testPreferredFacingComesFirst() {
+        List<RespokeCamera> ordered = RespokeCamera.getCamerasInOrder(RespokeCamera.FACING_BACK);
+        assertEquals("Should include every camera", RespokeCamera.getCameras().size(), ordered.size());
+
+        boolean seenOtherFacing = false;
+
+        for (RespokeCamera each : ordered) {
+            if (RespokeCamera.FACING_BACK != each.facing) {
+                seenOtherFacing = true;
+            } else {
+                assertFalse("Back cameras should come before the others", seenOtherFacing);
+            }
+        }
+    }
+}
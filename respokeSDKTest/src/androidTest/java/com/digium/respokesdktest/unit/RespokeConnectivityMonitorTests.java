@@ -0,0 +1,77 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdktest.unit;
+
+import com.digium.respokesdk.Respoke;
+import com.digium.respokesdk.RespokeClient;
+import com.digium.respokesdk.RespokeConnectivityMonitor;
+import com.digium.respokesdktest.RespokeTestCase;
+
+import java.util.ArrayList;
+
+
+public class RespokeConnectivityMonitorTests extends RespokeTestCase implements RespokeConnectivityMonitor.Listener {
+
+    private ArrayList<String> receivedChanges;
+
+
+    public void testSimulatedNetworkChanges() {
+        receivedChanges = new ArrayList<String>();
+        RespokeConnectivityMonitor monitor = new RespokeConnectivityMonitor(getContext(), this);
+
+        asyncTaskDone = false;
+        monitor.simulateNetworkChange(true, "wifi:home");
+        assertTrue("Test timed out", waitForCompletion(RespokeTestCase.TEST_TIMEOUT));
+        assertEquals("Should report the new network", "wifi:home", receivedChanges.get(0));
+
+        // Reporting the same network again is not a change
+        monitor.simulateNetworkChange(true, "wifi:home");
+
+        asyncTaskDone = false;
+        monitor.simulateNetworkChange(true, "mobile:internet");
+        assertTrue("Test timed out", waitForCompletion(RespokeTestCase.TEST_TIMEOUT));
+        assertEquals("Should only report actual changes", 2, receivedChanges.size());
+        assertEquals("Should report the handover", "mobile:internet", receivedChanges.get(1));
+
+        asyncTaskDone = false;
+        monitor.simulateNetworkChange(false, null);
+        assertTrue("Test timed out", waitForCompletion(RespokeTestCase.TEST_TIMEOUT));
+        assertEquals("Should report the loss of the network", "none", receivedChanges.get(2));
+        assertFalse("Should indicate the network is not connected", monitor.isNetworkConnected());
+        assertNull("Should not have a network identity", monitor.getNetworkIdentity());
+    }
+
+
+    public void testUnconnectedClientMonitoring() {
+        RespokeClient client = Respoke.sharedInstance().createClient(getContext());
+
+        assertNull("Should not monitor connectivity unless asked to", client.getConnectivityMonitor());
+        client.setConnectivityMonitoringEnabled(true, getContext());
+        assertNotNull("Should create a monitor when enabled", client.getConnectivityMonitor());
+
+        // A network change while not connected should not crash or connect
+        client.getConnectivityMonitor().simulateNetworkChange(true, "wifi:test");
+        assertFalse("Should not be connected", client.isConnected());
+
+        client.setConnectivityMonitoringEnabled(false, getContext());
+        assertNull("Should release the monitor when disabled", client.getConnectivityMonitor());
+    }
+
+
+    // RespokeConnectivityMonitor.Listener methods
+
+
+    public void onNetworkChanged(boolean connected, String networkIdentity, RespokeConnectivityMonitor sender) {
+        assertTrue("Should be called in UI thread", RespokeTestCase.currentlyOnUIThread());
+        receivedChanges.add(connected ? networkIdentity : "none");
+        asyncTaskDone = true;
+    }
+}
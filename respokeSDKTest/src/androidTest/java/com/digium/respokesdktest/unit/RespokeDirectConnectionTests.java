@@ -0,0 +1,84 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdktest.unit;
+
+import com.digium.respokesdk.RespokeCompressor;
+import com.digium.respokesdk.RespokeDirectConnection;
+import com.digium.respokesdktest.RespokeTestCase;
+
+import org.json.JSONArray;
+
+
+public class RespokeDirectConnectionTests extends RespokeTestCase {
+
+
+    public void testRawTextNegotiation() {
+        RespokeDirectConnection directConnection = new RespokeDirectConnection(null);
+        assertFalse("Should use the JSON envelope until the remote client's capabilities are known", directConnection.usesRawText());
+
+        JSONArray localCapabilities = directConnection.getLocalCapabilities();
+        assertEquals("Should advertise raw text", RespokeDirectConnection.CAPABILITY_RAW_TEXT, localCapabilities.optString(0));
+
+        directConnection.remoteCapabilitiesReceived(localCapabilities);
+        assertTrue("Should use raw text when both clients support it", directConnection.usesRawText());
+
+        JSONArray unknownCapabilities = new JSONArray();
+        unknownCapabilities.put("somethingElse");
+        directConnection.remoteCapabilitiesReceived(unknownCapabilities);
+        assertFalse("Should fall back when the remote client does not support it", directConnection.usesRawText());
+
+        directConnection.remoteCapabilitiesReceived(null);
+        assertFalse("Should fall back for clients that do not list capabilities, such as web browsers", directConnection.usesRawText());
+    }
+
+
+    public void testDeflateOnlyWhenCompressing() {
+        RespokeDirectConnection directConnection = new RespokeDirectConnection(null);
+        JSONArray remoteCapabilities = new JSONArray();
+        remoteCapabilities.put(RespokeDirectConnection.CAPABILITY_DEFLATE);
+
+        assertFalse("Should not offer deflate without compression", directConnection.getLocalCapabilities().toString().contains(RespokeDirectConnection.CAPABILITY_DEFLATE));
+        directConnection.remoteCapabilitiesReceived(remoteCapabilities);
+        assertFalse("Should leave binary messages unchanged when only the remote client compresses", directConnection.usesDeflate());
+
+        directConnection.setCompression(RespokeCompressor.DEFAULT_THRESHOLD);
+        assertTrue("Should offer deflate once compression is enabled", directConnection.getLocalCapabilities().toString().contains(RespokeDirectConnection.CAPABILITY_DEFLATE));
+        directConnection.remoteCapabilitiesReceived(remoteCapabilities);
+        assertTrue("Should use deflate when both clients compress", directConnection.usesDeflate());
+
+        RespokeDirectConnection.setDefaultCompression(RespokeCompressor.DEFAULT_THRESHOLD);
+
+        try {
+            assertTrue("New connections should start with the default", new RespokeDirectConnection(null).getLocalCapabilities().toString().contains(RespokeDirectConnection.CAPABILITY_DEFLATE));
+        } finally {
+            RespokeDirectConnection.setDefaultCompression(0);
+        }
+    }
+
+
+    public void testDeflateWhenAnswering() {
+        RespokeDirectConnection directConnection = new RespokeDirectConnection(null);
+        directConnection.setCompression(RespokeCompressor.DEFAULT_THRESHOLD);
+        JSONArray remoteCapabilities = new JSONArray();
+        remoteCapabilities.put(RespokeDirectConnection.CAPABILITY_DEFLATE);
+
+        // The answering client receives the offer before building its own session description
+        directConnection.remoteCapabilitiesReceived(remoteCapabilities);
+        assertTrue("Should offer deflate in the answer", directConnection.getLocalCapabilities().toString().contains(RespokeDirectConnection.CAPABILITY_DEFLATE));
+        assertTrue("Should use deflate once the answer offers it", directConnection.usesDeflate());
+
+        RespokeDirectConnection otherConnection = new RespokeDirectConnection(null);
+        otherConnection.remoteCapabilitiesReceived(remoteCapabilities);
+        assertFalse("Should not offer deflate without compression", otherConnection.getLocalCapabilities().toString().contains(RespokeDirectConnection.CAPABILITY_DEFLATE));
+        assertFalse("Should not use deflate when the answer does not offer it", otherConnection.usesDeflate());
+    }
+
+}
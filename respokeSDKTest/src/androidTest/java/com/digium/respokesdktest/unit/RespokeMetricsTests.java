@@ -0,0 +1,91 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdktest.unit;
+
+import com.digium.respokesdk.RespokeMetrics;
+import com.digium.respokesdktest.RespokeTestCase;
+
+import java.util.HashMap;
+
+
+public class RespokeMetricsTests extends RespokeTestCase implements RespokeMetrics.Exporter {
+
+    private HashMap<String, Long> exportedValues = new HashMap<String, Long>();
+    private HashMap<String, long[]> exportedHistograms = new HashMap<String, long[]>();
+
+
+    public void testDisabledByDefault() {
+        RespokeMetrics.setExporter(null, 0);
+        RespokeMetrics.Counter counter = RespokeMetrics.counter("test.disabled");
+
+        counter.increment();
+        assertFalse("Should not record without an exporter", RespokeMetrics.isEnabled());
+        assertEquals("Should ignore increments while disabled", 0, counter.get());
+        assertEquals("Should not time anything while disabled", 0, RespokeMetrics.startTiming());
+    }
+
+
+    public void testRecordingAndExport() {
+        RespokeMetrics.Counter counter = RespokeMetrics.counter("test.counter");
+        RespokeMetrics.Gauge gauge = RespokeMetrics.gauge("test.gauge");
+        RespokeMetrics.Histogram histogram = RespokeMetrics.histogram("test.histogram", new long[]{10, 100});
+
+        asyncTaskDone = false;
+        RespokeMetrics.setExporter(this, 100);
+
+        counter.increment();
+        counter.add(4);
+        gauge.set(42);
+        histogram.record(5);
+        histogram.record(50);
+        histogram.record(500);
+
+        assertTrue("Test timed out", waitForCompletion(RespokeTestCase.TEST_TIMEOUT));
+        RespokeMetrics.setExporter(null, 0);
+
+        synchronized (this) {
+            assertEquals("Should export the counter", 5, exportedValues.get("test.counter").longValue());
+            assertEquals("Should export the gauge", 42, exportedValues.get("test.gauge").longValue());
+            assertNotNull("Should export the built-in metrics", exportedValues.get("respoke.client.connects"));
+
+            long[] counts = exportedHistograms.get("test.histogram");
+            assertEquals("Should have an overflow bucket", 3, counts.length);
+            assertEquals("Should bucket the small value", 1, counts[0]);
+            assertEquals("Should bucket the medium value", 1, counts[1]);
+            assertEquals("Should bucket the large value", 1, counts[2]);
+            assertEquals("Should sum the values", 555, exportedValues.get("test.histogram.sum").longValue());
+        }
+    }
+
+
+    // RespokeMetrics.Exporter methods
+
+
+    public synchronized void exportCounter(String name, long value) {
+        exportedValues.put(name, value);
+    }
+
+
+    public synchronized void exportGauge(String name, long value) {
+        exportedValues.put(name, value);
+    }
+
+
+    public synchronized void exportHistogram(String name, long[] bucketBounds, long[] counts, long sum) {
+        exportedValues.put(name + ".sum", sum);
+        exportedHistograms.put(name, counts.clone());
+    }
+
+
+    public synchronized void exportComplete() {
+        asyncTaskDone = true;
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdktest.unit;
+
+import com.digium.respokesdk.Respoke;
+import com.digium.respokesdk.RespokeClient;
+import com.digium.respokesdk.RespokeEndpoint;
+import com.digium.respokesdk.RespokeMetrics;
+import com.digium.respokesdk.RespokeOutboundQueue;
+import com.digium.respokesdktest.RespokeTestCase;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+
+public class RespokeOutboundQueueTests extends RespokeTestCase {
+
+    private static final String APP_ID = "outboundQueueTestApp";
+    private static final String ENDPOINT_ID = "outboundQueueTestEndpoint";
+    private static final String OTHER_ENDPOINT_ID = "outboundQueueOtherEndpoint";
+
+    private boolean callbackDidFire;
+
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        // Start every test with empty queues on disk
+        for (String eachEndpointID : new String[] { ENDPOINT_ID, OTHER_ENDPOINT_ID }) {
+            RespokeOutboundQueue queue = new RespokeOutboundQueue(getContext());
+            queue.setIdentity(APP_ID, eachEndpointID);
+            queue.clear();
+            queue.close();
+            restoreQueueWithSize(eachEndpointID, 0).close();
+        }
+    }
+
+
+    public void testQueuedRequestsSurviveRestart() throws JSONException, InterruptedException {
+        RespokeOutboundQueue queue = new RespokeOutboundQueue(getContext());
+        queue.setIdentity(APP_ID, ENDPOINT_ID);
+        assertEquals("Should start empty", 0, queue.size());
+
+        for (int ii = 0; ii < 3; ii++) {
+            JSONObject data = new JSONObject();
+            data.put("message", "queued " + ii);
+            assertNotNull("Should return a request ID", queue.enqueue("post", "/v1/messages", data, null));
+        }
+
+        assertEquals("Should hold the requests while disconnected", 3, queue.size());
+        queue.close();
+
+        RespokeOutboundQueue restoredQueue = restoreQueueWithSize(ENDPOINT_ID, 3);
+        assertEquals("Should restore the queued requests", 3, restoredQueue.size());
+        restoredQueue.clear();
+        assertEquals("Should be empty after clearing", 0, restoredQueue.size());
+        restoredQueue.close();
+    }
+
+
+    public void testQueuesAreKeptPerEndpoint() throws JSONException, InterruptedException {
+        RespokeOutboundQueue queue = new RespokeOutboundQueue(getContext());
+
+        // Requests queued before the identity is known belong to the first endpoint that connects
+        assertNotNull("Should return a request ID", queue.enqueue("post", "/v1/messages", new JSONObject(), null));
+        queue.setIdentity(APP_ID, ENDPOINT_ID);
+        assertNotNull("Should return a request ID", queue.enqueue("post", "/v1/messages", new JSONObject(), null));
+        assertEquals("Should keep the requests queued before the identity was set", 2, queue.size());
+
+        queue.setIdentity(APP_ID, OTHER_ENDPOINT_ID);
+        assertEquals("Should not hold another endpoint's requests", 0, queue.size());
+        assertNotNull("Should return a request ID", queue.enqueue("post", "/v1/channels/someGroup/publish/", new JSONObject(), "someGroup", null));
+        queue.close();
+
+        RespokeOutboundQueue firstQueue = restoreQueueWithSize(ENDPOINT_ID, 2);
+        assertEquals("Should restore only the first endpoint's requests", 2, firstQueue.size());
+        firstQueue.close();
+
+        RespokeOutboundQueue otherQueue = restoreQueueWithSize(OTHER_ENDPOINT_ID, 1);
+        assertEquals("Should restore only the other endpoint's requests", 1, otherQueue.size());
+        otherQueue.close();
+    }
+
+
+    public void testMessagesAreQueuedWhileDisconnected() {
+        RespokeClient client = Respoke.sharedInstance().createClient(getContext());
+        RespokeEndpoint endpoint = client.getEndpoint("someEndpointID", false);
+
+        assertNull("Should not queue messages unless asked to", client.getOutboundQueue());
+        client.setOutboundQueueEnabled(true, getContext());
+        assertNotNull("Should create a queue when enabled", client.getOutboundQueue());
+
+        long sentCount = RespokeMetrics.MESSAGES_SENT.get();
+        callbackDidFire = false;
+        endpoint.sendMessage("Hello", false, false, new Respoke.TaskCompletionListener() {
+            @Override
+            public void onSuccess() {
+                callbackDidFire = true;
+            }
+
+            @Override
+            public void onError(String errorMessage) {
+                callbackDidFire = true;
+            }
+        });
+
+        assertEquals("Should hold the message until the client connects", 1, client.getOutboundQueue().size());
+
+        // Give a (wrong) completion a chance to be delivered before confirming that none was
+        asyncTaskDone = false;
+        waitForCompletion(1);
+        assertFalse("Should not complete the message while disconnected", callbackDidFire);
+        assertEquals("Should not count the message as sent until it is acknowledged", sentCount, RespokeMetrics.MESSAGES_SENT.get());
+
+        client.getOutboundQueue().clear();
+        client.setOutboundQueueEnabled(false, getContext());
+        assertNull("Should release the queue when disabled", client.getOutboundQueue());
+    }
+
+
+    /**
+     *  The queue is written on a background thread, so allow it a moment to reach the disk before giving up
+     */
+    private RespokeOutboundQueue restoreQueueWithSize(String endpointID, int expectedSize) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + (RespokeTestCase.TEST_TIMEOUT * 1000);
+        RespokeOutboundQueue queue = new RespokeOutboundQueue(getContext());
+        queue.setIdentity(APP_ID, endpointID);
+
+        while ((queue.size() != expectedSize) && (System.currentTimeMillis() < deadline)) {
+            queue.close();
+            Thread.sleep(100);
+            queue = new RespokeOutboundQueue(getContext());
+            queue.setIdentity(APP_ID, endpointID);
+        }
+
+        return queue;
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdktest.unit;
+
+import com.digium.respokesdk.RespokeReconnectScheduler;
+import com.digium.respokesdktest.RespokeTestCase;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+
+public class RespokeReconnectSchedulerTests extends RespokeTestCase {
+
+
+    public void testDelayIsCappedAndJittered() {
+        Random random = new Random(42);
+        boolean sawDifferentDelays = false;
+        long previousDelay = -1;
+
+        for (int attempt = 0; attempt < 64; attempt++) {
+            long delay = RespokeReconnectScheduler.computeDelay(attempt, 500, 30000, random);
+            long ceiling = (attempt < 6) ? (500L << attempt) : 30000;
+
+            assertTrue("Delay should never be negative", delay >= 0);
+            assertTrue("Delay should not exceed the backoff ceiling", delay <= ceiling);
+
+            if ((previousDelay >= 0) && (previousDelay != delay)) {
+                sawDifferentDelays = true;
+            }
+            previousDelay = delay;
+        }
+
+        assertTrue("Delays should be jittered", sawDifferentDelays);
+    }
+
+
+    public void testReconnectNowSkipsTheWait() throws InterruptedException {
+        final CountDownLatch fired = new CountDownLatch(1);
+        RespokeReconnectScheduler scheduler = new RespokeReconnectScheduler(new Runnable() {
+            @Override
+            public void run() {
+                fired.countDown();
+            }
+        }, 60000, 60000);
+
+        scheduler.schedule();
+        assertTrue("An attempt should be pending", scheduler.isPending());
+        assertEquals("Should not schedule a second attempt while one is pending", -1, scheduler.schedule());
+
+        assertTrue("Should move up the pending attempt", scheduler.reconnectNow());
+        assertTrue("Attempt should fire immediately", fired.await(5, TimeUnit.SECONDS));
+        assertFalse("No attempt should be pending after it fires", scheduler.isPending());
+        assertFalse("Should do nothing when no attempt is pending", scheduler.reconnectNow());
+
+        scheduler.shutdown();
+    }
+
+
+    public void testCancelPreventsAttempt() throws InterruptedException {
+        final CountDownLatch fired = new CountDownLatch(1);
+        RespokeReconnectScheduler scheduler = new RespokeReconnectScheduler(new Runnable() {
+            @Override
+            public void run() {
+                fired.countDown();
+            }
+        }, 0, 0);
+
+        scheduler.schedule();
+        scheduler.cancel();
+
+        assertFalse("Cancelled attempt should not fire", fired.await(1, TimeUnit.SECONDS));
+        assertEquals("Cancel should not reset the backoff", 1, scheduler.getAttemptCount());
+
+        scheduler.reset();
+        assertEquals("Reset should clear the backoff", 0, scheduler.getAttemptCount());
+
+        scheduler.shutdown();
+    }
+}
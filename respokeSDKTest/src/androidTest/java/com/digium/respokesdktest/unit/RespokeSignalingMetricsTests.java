@@ -0,0 +1,110 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdktest.unit;
+
+import com.digium.respokesdk.RespokeSignalingMetrics;
+import com.digium.respokesdktest.RespokeTestCase;
+
+
+public class RespokeSignalingMetricsTests extends RespokeTestCase implements RespokeSignalingMetrics.Listener {
+
+    private RespokeSignalingMetrics.Snapshot receivedSnapshot;
+
+
+    public void testRouteRecording() {
+        RespokeSignalingMetrics metrics = new RespokeSignalingMetrics();
+        String route = RespokeSignalingMetrics.routeForURL("/v1/messages?foo=bar");
+        assertEquals("Should strip the query string", "/v1/messages", route);
+
+        for (int ii = 0; ii < 10; ii++) {
+            metrics.requestQueued();
+        }
+
+        assertEquals("Should track the queue depth", 10, metrics.getSnapshot().queueDepth);
+
+        for (int ii = 0; ii < 10; ii++) {
+            metrics.requestDequeued(route, ii);
+            metrics.requestAcknowledged(route, (ii < 9) ? 20 : 2000, false, false);
+        }
+
+        metrics.requestAcknowledged(route, 40, false, true);
+        metrics.requestTimedOut(route);
+
+        RespokeSignalingMetrics.Snapshot snapshot = metrics.getSnapshot();
+        RespokeSignalingMetrics.RouteSnapshot routeSnapshot = snapshot.routes.get(route);
+
+        assertEquals("Should have drained the queue", 0, snapshot.queueDepth);
+        assertEquals("Should remember the deepest queue", 10, snapshot.maxQueueDepth);
+        assertTrue("Should have seen inbound traffic", snapshot.millisSinceLastInbound >= 0);
+        assertEquals("Should count the requests", 10, routeSnapshot.requestCount);
+        assertEquals("Should record the longest queue wait", 9, routeSnapshot.maxQueueWait);
+        assertEquals("Should count the rate limit", 1, routeSnapshot.rateLimitedCount);
+        assertEquals("Should count the timeout", 1, routeSnapshot.timeoutCount);
+        assertEquals("Should not count successes as errors", 0, routeSnapshot.errorCount);
+        assertEquals("Median should fall in the 25ms bucket", 25, routeSnapshot.getAckLatencyPercentile(50));
+        assertEquals("The slow ack should land in the 2500ms bucket", 2500, routeSnapshot.getAckLatencyPercentile(100));
+    }
+
+
+    public void testRouteTemplates() {
+        assertEquals("Should replace the group ID", "/v1/channels/{id}/publish/", RespokeSignalingMetrics.routeForURL("/v1/channels/someGroup/publish/"));
+        assertEquals("Should replace every ID", "/v1/connections/{id}/push-token/{id}", RespokeSignalingMetrics.routeForURL("/v1/connections/someConnection/push-token/someToken"));
+        assertEquals("Should replace IDs and strip the query string", "/v1/groups/{id}/history", RespokeSignalingMetrics.routeForURL("/v1/groups/someGroup/history?limit=10"));
+        assertEquals("Should leave routes without IDs alone", "/v1/group-history-search", RespokeSignalingMetrics.routeForURL("/v1/group-history-search"));
+
+        RespokeSignalingMetrics metrics = new RespokeSignalingMetrics();
+
+        for (int ii = 0; ii < RespokeSignalingMetrics.MAX_ROUTES * 2; ii++) {
+            String route = RespokeSignalingMetrics.routeForURL("/v1/channels/group" + ii + "/publish/");
+            metrics.requestDequeued(route, 0);
+        }
+
+        RespokeSignalingMetrics.Snapshot snapshot = metrics.getSnapshot();
+        assertEquals("Should record messages to every group under one route", 1, snapshot.routes.size());
+        assertEquals("Should count every message", RespokeSignalingMetrics.MAX_ROUTES * 2, snapshot.routes.get("/v1/channels/{id}/publish/").requestCount);
+    }
+
+
+    public void testRouteTableIsBounded() {
+        RespokeSignalingMetrics metrics = new RespokeSignalingMetrics();
+
+        for (int ii = 0; ii < RespokeSignalingMetrics.MAX_ROUTES * 2; ii++) {
+            metrics.requestDequeued("/v1/channels/group" + ii + "/publish/", 0);
+        }
+
+        RespokeSignalingMetrics.Snapshot snapshot = metrics.getSnapshot();
+        assertTrue("Should not track more routes than the limit", snapshot.routes.size() <= RespokeSignalingMetrics.MAX_ROUTES + 1);
+        assertNotNull("Should fold extra routes together", snapshot.routes.get(RespokeSignalingMetrics.OTHER_ROUTE));
+    }
+
+
+    public void testPeriodicReports() {
+        RespokeSignalingMetrics metrics = new RespokeSignalingMetrics();
+        metrics.requestQueued();
+
+        asyncTaskDone = false;
+        metrics.setListener(this, 100);
+        assertTrue("Test timed out", waitForCompletion(RespokeTestCase.TEST_TIMEOUT));
+        assertEquals("Should report the current metrics", 1, receivedSnapshot.queueDepth);
+
+        metrics.setListener(null, 100);
+    }
+
+
+    // RespokeSignalingMetrics.Listener methods
+
+
+    public void onSignalingMetrics(RespokeSignalingMetrics.Snapshot snapshot, RespokeSignalingMetrics sender) {
+        assertTrue("Should be called in UI thread", RespokeTestCase.currentlyOnUIThread());
+        receivedSnapshot = snapshot;
+        asyncTaskDone = true;
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright 2015, Digium, Inc.
+ * All rights reserved.
+ *
+ * This source code is licensed under The MIT License found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ * For all details and documentation:  https://www.respoke.io
+ */
+
+package com.digium.respokesdktest.unit;
+
+import com.digium.respokesdk.RespokeCallStats;
+import com.digium.respokesdk.RespokeStatsSampler;
+import com.digium.respokesdktest.RespokeTestCase;
+
+import org.webrtc.StatsReport;
+
+import java.util.List;
+
+
+public class RespokeStatsSamplerTests extends RespokeTestCase {
+
+
+    public void testRatesAreComputedBetweenSamples() {
+        RespokeStatsSampler sampler = new RespokeStatsSampler(null, RespokeStatsSampler.DEFAULT_HISTORY_SIZE);
+
+        sampler.process(new StatsReport[]{ outboundVideo(1000, 125000, 1000, 0), inboundAudio(1000, 10000, 500, 0) }, 1000);
+        RespokeCallStats stats = sampler.process(new StatsReport[]{ outboundVideo(2000, 250000, 2000, 50), inboundAudio(2000, 14000, 590, 10), new StatsReport("bweforvideo", "VideoBwe", 2000, new StatsReport.Value[0]) }, 2000);
+
+        assertEquals("Should only summarize the streams", 2, stats.tracks.size());
+
+        RespokeCallStats.TrackStats video = stats.getTrack("video", true);
+        assertNotNull("Should find the outbound video", video);
+        assertEquals("Should compute the bitrate over the last second", 1000.0, video.bitrateKbps, 0.01);
+        assertEquals("Should compute the loss over the last second", 5.0, video.packetLossPercent, 0.01);
+        assertEquals("Should report the round trip time", 80, video.rttMillis);
+        assertEquals("Should report the frame rate", 30, video.frameRate);
+        assertEquals("Should not report jitter for an outbound stream", RespokeCallStats.UNKNOWN, video.jitterMillis);
+
+        RespokeCallStats.TrackStats audio = stats.getTrack("audio", false);
+        assertNotNull("Should find the inbound audio", audio);
+        assertEquals("Should compute the bitrate over the last second", 32.0, audio.bitrateKbps, 0.01);
+        assertEquals("Should count lost packets as expected ones", 10.0, audio.packetLossPercent, 0.01);
+        assertEquals("Should report the jitter", 12, audio.jitterMillis);
+        assertNull("Should not find a stream that does not exist", stats.getTrack("video", false));
+    }
+
+
+    public void testHistoryIsBounded() {
+        RespokeStatsSampler sampler = new RespokeStatsSampler(null, 3);
+        assertNull("Should have no samples yet", sampler.getLatest());
+
+        for (int ii = 1; ii <= 5; ii++) {
+            sampler.process(new StatsReport[]{ inboundAudio(ii * 1000, ii * 4000, ii * 50, 0) }, ii * 1000);
+        }
+
+        List<RespokeCallStats> history = sampler.getHistory();
+        assertEquals("Should only keep the most recent samples", 3, history.size());
+        assertEquals("Should return the oldest kept sample first", 3000, history.get(0).timestamp);
+        assertEquals("Should return the newest sample last", 5000, history.get(2).timestamp);
+        assertSame("Should return the newest sample as the latest", history.get(2), sampler.getLatest());
+    }
+
+
+    private static StatsReport outboundVideo(double timestamp, long bytesSent, long packetsSent, long packetsLost) {
+        return new StatsReport("ssrc_1234_send", "ssrc", timestamp, new StatsReport.Value[]{
+                new StatsReport.Value("mediaType", "video"),
+                new StatsReport.Value("googTrackId", "ARDAMSv0"),
+                new StatsReport.Value("bytesSent", Long.toString(bytesSent)),
+                new StatsReport.Value("packetsSent", Long.toString(packetsSent)),
+                new StatsReport.Value("packetsLost", Long.toString(packetsLost)),
+                new StatsReport.Value("googRtt", "80"),
+                new StatsReport.Value("googFrameRateSent", "30")
+        });
+    }
+
+
+    private static StatsReport inboundAudio(double timestamp, long bytesReceived, long packetsReceived, long packetsLost) {
+        return new StatsReport("ssrc_5678_recv", "ssrc", timestamp, new StatsReport.Value[]{
+                new StatsReport.Value("mediaType", "audio"),
+                new StatsReport.Value("bytesReceived", Long.toString(bytesReceived)),
+                new StatsReport.Value("packetsReceived", Long.toString(packetsReceived)),
+                new StatsReport.Value("packetsLost", Long.toString(packetsLost)),
+                new StatsReport.Value("googJitterReceived", "12")
+        });
+    }
+}